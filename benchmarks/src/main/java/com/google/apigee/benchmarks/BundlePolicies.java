@@ -0,0 +1,92 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.benchmarks;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.apigee.flow.execution.spi.Execution;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Reads policies from the example proxy bundle, so that the flow simulator runs the callouts with
+ * exactly the properties the bundle gives them. Only the policy types the simulated flow uses are
+ * supported: JavaCallout, and AssignMessage with AssignVariable elements.
+ */
+final class BundlePolicies {
+  private final Path policies;
+
+  BundlePolicies(Path apiproxy) {
+    this.policies = apiproxy.resolve("policies");
+    if (!Files.isDirectory(policies)) {
+      throw new IllegalArgumentException("no policies directory in " + apiproxy);
+    }
+  }
+
+  private Element read(String name, String expectedType) throws Exception {
+    Path file = policies.resolve(name + ".xml");
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+    Document doc = factory.newDocumentBuilder().parse(file.toFile());
+    Element root = doc.getDocumentElement();
+    if (!root.getTagName().equals(expectedType)) {
+      throw new IllegalArgumentException(
+          String.format("policy %s is a %s, not a %s", name, root.getTagName(), expectedType));
+    }
+    return root;
+  }
+
+  private static String childText(Element parent, String tag) {
+    NodeList nodes = parent.getElementsByTagName(tag);
+    return (nodes.getLength() == 0) ? null : nodes.item(0).getTextContent();
+  }
+
+  /** A new instance of the callout class, with the properties from the policy. */
+  Execution javaCallout(String name) throws Exception {
+    Element policy = read(name, "JavaCallout");
+    Map<String, String> properties = new LinkedHashMap<String, String>();
+    NodeList nodes = policy.getElementsByTagName("Property");
+    for (int i = 0; i < nodes.getLength(); i++) {
+      Element property = (Element) nodes.item(i);
+      properties.put(property.getAttribute("name"), property.getTextContent());
+    }
+    String className = childText(policy, "ClassName").trim();
+    return (Execution)
+        Class.forName(className).getConstructor(Map.class).newInstance(properties);
+  }
+
+  /** An execution that sets the variables of the AssignVariable elements in the policy. */
+  Execution assignVariables(String name) throws Exception {
+    Element policy = read(name, "AssignMessage");
+    final Map<String, String> variables = new LinkedHashMap<String, String>();
+    NodeList nodes = policy.getElementsByTagName("AssignVariable");
+    for (int i = 0; i < nodes.getLength(); i++) {
+      Element assign = (Element) nodes.item(i);
+      variables.put(childText(assign, "Name").trim(), childText(assign, "Value"));
+    }
+    return (msgCtxt, exeCtxt) -> {
+      for (Map.Entry<String, String> entry : variables.entrySet()) {
+        msgCtxt.setVariable(entry.getKey(), entry.getValue());
+      }
+      return ExecutionResult.SUCCESS;
+    };
+  }
+}
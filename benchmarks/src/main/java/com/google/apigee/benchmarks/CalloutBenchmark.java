@@ -0,0 +1,146 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.benchmarks;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.apigee.flow.message.Message;
+import com.google.apigee.callouts.ContentSetter;
+import com.google.apigee.callouts.MultipartFormCreatorV2;
+import com.google.apigee.callouts.MultipartFormParserV2;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.multipartform.Part;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs each callout end to end against the fakes from the callout test tree. As in Apigee, one
+ * callout instance serves every execution; each execution gets a fresh message context.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CalloutBenchmark {
+  @Param({"1", "8", "64"})
+  public int partCount;
+
+  @Param({"1024", "65536"})
+  public int payloadSize;
+
+  @Param({"16", "70"})
+  public int boundaryLength;
+
+  private String contentType;
+  private byte[] form;
+  private byte[][] partContents;
+  private MultipartFormParserV2 parser;
+  private MultipartFormCreatorV2 creator;
+  private ContentSetter contentSetter;
+  private final FakeExecutionContext exeCtxt = new FakeExecutionContext();
+  private final byte[] chunk = new byte[8192];
+
+  @Setup
+  public void setup() throws IOException {
+    Random random = new Random(Payloads.SEED);
+    String boundary = Payloads.boundary(boundaryLength, random);
+    List<Part> parts = Payloads.parts(partCount, payloadSize, random);
+    contentType = "multipart/form-data; boundary=" + boundary;
+    form = Payloads.form(boundary, parts);
+    partContents = new byte[partCount][];
+    for (int i = 0; i < partCount; i++) {
+      partContents[i] = parts.get(i).getPartContent();
+    }
+
+    Map<String, String> props = new HashMap<String, String>();
+    parser = new MultipartFormParserV2(props);
+
+    props = new HashMap<String, String>();
+    props.put("descriptor", JavaxJsonBenchmark.descriptor(partCount));
+    creator = new MultipartFormCreatorV2(props);
+
+    props = new HashMap<String, String>();
+    props.put("contentVar", "content_0");
+    props.put("contentType", "text/plain");
+    contentSetter = new ContentSetter(props);
+  }
+
+  private FakeMessageContext newContext(FakeMessage message) {
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    return msgCtxt;
+  }
+
+  private static void check(ExecutionResult result, FakeMessageContext msgCtxt, String prefix) {
+    if (result != ExecutionResult.SUCCESS || msgCtxt.getVariable(prefix + "error") != null) {
+      throw new IllegalStateException("callout failed: " + msgCtxt.getVariable(prefix + "error"));
+    }
+  }
+
+  @Benchmark
+  public String parse() {
+    FakeMessage message = new FakeMessage();
+    FakeMessageContext msgCtxt = newContext(message);
+    message.setHeader("content-type", contentType);
+    message.setContent(new ByteArrayInputStream(form));
+    check(parser.execute(msgCtxt, exeCtxt), msgCtxt, "mpf_");
+    return msgCtxt.getVariable("mpf_itemcount");
+  }
+
+  @Benchmark
+  public long create() throws IOException {
+    FakeMessage message = new FakeMessage();
+    FakeMessageContext msgCtxt = newContext(message);
+    for (int i = 0; i < partCount; i++) {
+      msgCtxt.setVariable("content_" + i, partContents[i]);
+    }
+    check(creator.execute(msgCtxt, exeCtxt), msgCtxt, "mpf_");
+    // the form may be written as it is read, so read it.
+    Message result = msgCtxt.getVariable("message");
+    return Payloads.drain(result.getContentAsStream(), chunk);
+  }
+
+  @Benchmark
+  public long setContent() throws IOException {
+    FakeMessage message = new FakeMessage();
+    FakeMessageContext msgCtxt = newContext(message);
+    msgCtxt.setVariable("content_0", partContents[0]);
+    check(contentSetter.execute(msgCtxt, exeCtxt), msgCtxt, "cs_");
+    Message result = msgCtxt.getVariable("message");
+    return Payloads.drain(result.getContentAsStream(), chunk);
+  }
+}
@@ -0,0 +1,337 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.benchmarks;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.apigee.flow.execution.spi.Execution;
+import com.apigee.flow.message.Message;
+import com.google.apigee.callouts.CalloutBase;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.metrics.Histogram;
+import com.google.apigee.workload.MultipartWorkload;
+import com.google.apigee.workload.MultipartWorkload.SizeDistribution;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the callouts in the order the example proxy uses them, in process, with no network: parse
+ * the inbound form (Java-ParseMultipartForm-1), build an outbound form (the AssignVariable policies
+ * and Java-CreateMultipartForm-Multi), and set the response content (Java-SetResponseContent).
+ * Requests arrive at a fixed average rate whether or not earlier ones have finished, as they do at
+ * a gateway, so queueing shows up in the end-to-end latency. At the end, it prints latency
+ * percentiles and the throughput of each step.
+ *
+ * <p>The callouts build message content lazily, so the time to read the outbound request, as the
+ * gateway would when sending it to the target, counts toward the create step; likewise the time
+ * to read the response counts toward the set-content step.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.google.apigee.benchmarks.FlowSimulator \
+ *     --rate=200 --duration=30 --warmup=10 --threads=8 --parts=4 --part-size=16384
+ * </pre>
+ */
+public final class FlowSimulator {
+  private static final String[] STEP_NAMES = {
+    "Java-ParseMultipartForm-1", "Java-CreateMultipartForm-Multi", "Java-SetResponseContent"
+  };
+  private static final int PAYLOAD_COUNT = 32;
+
+  private final Map<String, String> options;
+  private final List<MultipartWorkload> workloads = new ArrayList<MultipartWorkload>();
+  private final List<byte[]> bodies = new ArrayList<byte[]>();
+  private final List<List<Execution>> steps = new ArrayList<List<Execution>>();
+  private final FakeExecutionContext exeCtxt = new FakeExecutionContext();
+
+  private final StepStats[] stats = new StepStats[STEP_NAMES.length];
+  private final StepStats endToEnd;
+  private final AtomicLong failures = new AtomicLong();
+  private volatile long measureFrom;
+
+  /** Latency and per-second completions of one step, for the measured part of a run. */
+  private static final class StepStats {
+    final String name;
+    final Histogram latency = new Histogram();
+    final AtomicLongArray completionsPerSecond;
+    final AtomicLong errors = new AtomicLong();
+
+    StepStats(String name, int seconds) {
+      this.name = name;
+      this.completionsPerSecond = new AtomicLongArray(seconds);
+    }
+
+    void record(long started, long finished, long measureFrom) {
+      latency.record(finished - started);
+      int second = (int) ((finished - measureFrom) / 1_000_000_000L);
+      if (second < completionsPerSecond.length()) {
+        completionsPerSecond.incrementAndGet(second);
+      }
+    }
+  }
+
+  private FlowSimulator(Map<String, String> options) throws Exception {
+    this.options = options;
+    int seconds = intOption("duration", 30);
+    for (int i = 0; i < STEP_NAMES.length; i++) {
+      stats[i] = new StepStats(STEP_NAMES[i], seconds);
+    }
+    endToEnd = new StepStats("end-to-end", seconds);
+
+    // one instance of each policy, shared by all threads, as in the gateway
+    BundlePolicies policies = new BundlePolicies(Paths.get(option("bundle", "../bundle/apiproxy")));
+    steps.add(Arrays.asList(policies.javaCallout("Java-ParseMultipartForm-1")));
+    steps.add(
+        Arrays.asList(
+            policies.assignVariables("AV-TextFileData"),
+            policies.assignVariables("AV-ImageData"),
+            policies.javaCallout("Java-CreateMultipartForm-Multi")));
+    steps.add(Arrays.asList(policies.javaCallout("Java-SetResponseContent")));
+
+    long seed = Long.parseLong(option("seed", Long.toString(Payloads.SEED)));
+    int parts = intOption("parts", 4);
+    int partSize = intOption("part-size", 16 * 1024);
+    for (int i = 0; i < PAYLOAD_COUNT; i++) {
+      MultipartWorkload workload =
+          new MultipartWorkload()
+              .withSeed(seed + i)
+              .withPartCount(parts)
+              .withSizes(SizeDistribution.logNormal(partSize, 1.0, 64 * partSize))
+              .withBinaryFraction(0.5)
+              .withBoundaryLength(40);
+      workloads.add(workload);
+      bodies.add(Payloads.readAll(workload.openStream()));
+    }
+  }
+
+  private String option(String name, String defaultValue) {
+    String value = options.get(name);
+    return (value == null) ? defaultValue : value;
+  }
+
+  private int intOption(String name, int defaultValue) {
+    return Integer.parseInt(option(name, Integer.toString(defaultValue)));
+  }
+
+  private static long drain(InputStream in) throws IOException {
+    try {
+      return Payloads.drain(in, new byte[8192]);
+    } finally {
+      in.close();
+    }
+  }
+
+  private boolean runStep(int index, FakeMessageContext msgCtxt) throws IOException {
+    boolean ok = true;
+    for (Execution execution : steps.get(index)) {
+      ExecutionResult result = execution.execute(msgCtxt, exeCtxt);
+      // the creator reports errors in a variable, and returns SUCCESS
+      if (result != ExecutionResult.SUCCESS
+          || (execution instanceof CalloutBase
+              && msgCtxt.getVariable(((CalloutBase) execution).getVarnamePrefix() + "error")
+                  != null)) {
+        ok = false;
+        break;
+      }
+    }
+    if (ok && index > 0) {
+      // the gateway sends the message on, which is when lazily built content is produced
+      Message message = msgCtxt.getVariable("message");
+      drain(message.getContentAsStream());
+    }
+    return ok;
+  }
+
+  /** One request through the whole flow. */
+  private void handle(long arrival, int payload) {
+    boolean measured = arrival >= measureFrom;
+    try {
+      FakeMessage request = new FakeMessage();
+      request.setVerbose(false);
+      FakeMessageContext msgCtxt = new FakeMessageContext(request);
+      msgCtxt.setVerbose(false);
+      msgCtxt.setVariable("message", request);
+      request.setHeader("content-type", workloads.get(payload).getContentType());
+      request.setContent(new ByteArrayInputStream(bodies.get(payload)));
+
+      for (int i = 0; i < steps.size(); i++) {
+        if (i == 2) {
+          // the response flow: "message" is now the response
+          FakeMessage response = new FakeMessage();
+          response.setVerbose(false);
+          msgCtxt.setVariable("message", response);
+        }
+        long started = System.nanoTime();
+        boolean ok = runStep(i, msgCtxt);
+        long finished = System.nanoTime();
+        if (!ok) {
+          failures.incrementAndGet();
+          if (measured) {
+            stats[i].errors.incrementAndGet();
+          }
+          return;
+        }
+        if (measured) {
+          stats[i].record(started, finished, measureFrom);
+        }
+      }
+      if (measured) {
+        // from when the request should have arrived, so time spent queued is counted
+        endToEnd.record(arrival, System.nanoTime(), measureFrom);
+      }
+    } catch (Exception e) {
+      failures.incrementAndGet();
+    }
+  }
+
+  private void run() throws Exception {
+    double rate = Double.parseDouble(option("rate", "200"));
+    int warmup = intOption("warmup", 10);
+    int duration = intOption("duration", 30);
+    int threads = intOption("threads", 2 * Runtime.getRuntime().availableProcessors());
+    boolean poisson = !"uniform".equals(option("arrivals", "poisson"));
+    Random random = new Random(Long.parseLong(option("seed", Long.toString(Payloads.SEED))));
+
+    System.out.printf(
+        "%.0f requests/s (%s arrivals) on %d threads; warmup %ds, measured %ds\n",
+        rate, poisson ? "poisson" : "uniform", threads, warmup, duration);
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    long start = System.nanoTime();
+    measureFrom = start + warmup * 1_000_000_000L;
+    long end = measureFrom + duration * 1_000_000_000L;
+    double meanGap = 1e9 / rate;
+    long next = start;
+    long offered = 0;
+    while (next < end) {
+      long wait = next - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      final long arrival = next;
+      final int payload = random.nextInt(bodies.size());
+      pool.execute(() -> handle(arrival, payload));
+      if (arrival >= measureFrom) {
+        offered++;
+      }
+      double gap = poisson ? -Math.log(1.0 - random.nextDouble()) * meanGap : meanGap;
+      next += (long) gap;
+    }
+    pool.shutdown();
+    if (!pool.awaitTermination(5, TimeUnit.MINUTES)) {
+      System.out.println("requests still queued after five minutes; the report is partial");
+      pool.shutdownNow();
+    }
+    report(offered, duration);
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  private void report(long offered, int duration) {
+    List<StepStats> all = new ArrayList<StepStats>(Arrays.asList(stats));
+    all.add(endToEnd);
+
+    System.out.printf(
+        "\noffered %d requests (%.1f/s), completed %d, failed %d\n",
+        offered, (double) offered / duration, endToEnd.latency.getCount(), failures.get());
+    System.out.printf(
+        "\n%-32s %9s %7s %9s %9s %9s %9s\n",
+        "latency (ms)", "count", "errors", "p50", "p99", "p999", "max");
+    for (StepStats s : all) {
+      System.out.printf(
+          "%-32s %9d %7d %9.3f %9.3f %9.3f %9.3f\n",
+          s.name,
+          s.latency.getCount(),
+          s.errors.get(),
+          millis(s.latency.percentile(0.50)),
+          millis(s.latency.percentile(0.99)),
+          millis(s.latency.percentile(0.999)),
+          millis(s.latency.getMax()));
+    }
+
+    System.out.printf(
+        "\n%-32s %9s %9s %9s %9s\n", "throughput (per 1s window)", "mean", "min", "p50", "max");
+    for (StepStats s : all) {
+      long[] perSecond = new long[s.completionsPerSecond.length()];
+      for (int i = 0; i < perSecond.length; i++) {
+        perSecond[i] = s.completionsPerSecond.get(i);
+      }
+      Arrays.sort(perSecond);
+      System.out.printf(
+          "%-32s %9.1f %9d %9d %9d\n",
+          s.name,
+          (double) Arrays.stream(perSecond).sum() / perSecond.length,
+          perSecond[0],
+          perSecond[perSecond.length / 2],
+          perSecond[perSecond.length - 1]);
+    }
+
+    if (options.containsKey("histograms")) {
+      for (StepStats s : all) {
+        System.out.printf("\n%s latency histogram\n", s.name);
+        long total = Math.max(1, s.latency.getCount());
+        for (long[] row : s.latency.powerOfTwoBuckets()) {
+          int bar = (int) (50 * row[1] / total);
+          System.out.printf(
+              "  <= %10.3f ms %9d %s\n", millis(row[0]), row[1], repeat('#', bar));
+        }
+      }
+    }
+  }
+
+  private static String repeat(char c, int n) {
+    char[] chars = new char[n];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+
+  /** Options are given as --name=value, or --name for a flag. */
+  static Map<String, String> parseOptions(String[] args) {
+    Map<String, String> options = new HashMap<String, String>();
+    for (String arg : args) {
+      if (!arg.startsWith("--")) {
+        throw new IllegalArgumentException("unexpected argument: " + arg);
+      }
+      int eq = arg.indexOf('=');
+      if (eq < 0) {
+        options.put(arg.substring(2), "true");
+      } else {
+        options.put(arg.substring(2, eq), arg.substring(eq + 1));
+      }
+    }
+    return options;
+  }
+
+  public static void main(String[] args) throws Exception {
+    new FlowSimulator(parseOptions(args)).run();
+  }
+}
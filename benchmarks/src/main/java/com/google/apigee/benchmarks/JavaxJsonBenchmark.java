@@ -0,0 +1,75 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.benchmarks;
+
+import com.google.apigee.json.JavaxJson;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JavaxJsonBenchmark {
+  @Param({"1", "8", "64"})
+  public int partCount;
+
+  private String descriptor;
+
+  @Setup
+  public void setup() {
+    descriptor = descriptor(partCount);
+  }
+
+  /** A creator descriptor with the given number of parts. */
+  static String descriptor(int partCount) {
+    StringBuilder sb = new StringBuilder("{\n");
+    for (int i = 0; i < partCount; i++) {
+      boolean binary = (i % 2) == 1;
+      String name = Payloads.partName(i);
+      sb.append(String.format("  \"%s\" : {\n", name))
+          .append(String.format("    \"content-var\" : \"content_%d\",\n", i))
+          .append(
+              String.format(
+                  "    \"content-type\" : \"%s\",\n",
+                  binary ? "application/octet-stream" : "text/plain"));
+      if (binary) {
+        sb.append(String.format("    \"file-name\" : \"%s\",\n", name));
+      }
+      sb.append("    \"want-b64-decode\" : false\n")
+          .append((i < partCount - 1) ? "  },\n" : "  }\n");
+    }
+    return sb.append("}\n").toString();
+  }
+
+  @Benchmark
+  public Map<?, ?> fromJson() {
+    return JavaxJson.fromJson(descriptor, Map.class);
+  }
+}
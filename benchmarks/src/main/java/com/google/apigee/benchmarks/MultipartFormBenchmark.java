@@ -0,0 +1,80 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.benchmarks;
+
+import com.google.apigee.multipartform.MultipartForm;
+import com.google.apigee.multipartform.Part;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultipartFormBenchmark {
+  @Param({"1", "8", "64"})
+  public int partCount;
+
+  @Param({"1024", "65536"})
+  public int payloadSize;
+
+  @Param({"16", "70"})
+  public int boundaryLength;
+
+  @Param({"", "base64"})
+  public String transferEncoding;
+
+  private MultipartForm form;
+  private final byte[] chunk = new byte[8192];
+
+  @Setup
+  public void setup() {
+    Random random = new Random(Payloads.SEED);
+    String boundary = Payloads.boundary(boundaryLength, random);
+    List<Part> parts = Payloads.parts(partCount, payloadSize, random);
+    if (!transferEncoding.isEmpty()) {
+      for (Part part : parts) {
+        part.setTransferEncoding(transferEncoding);
+      }
+    }
+    form = new MultipartForm(boundary, parts);
+  }
+
+  @Benchmark
+  public long openStream() throws IOException {
+    return Payloads.drain(form.openStream(), chunk);
+  }
+
+  @Benchmark
+  public long getContentLength() throws IOException {
+    return form.getContentLength();
+  }
+}
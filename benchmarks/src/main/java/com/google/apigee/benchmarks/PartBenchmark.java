@@ -0,0 +1,69 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.benchmarks;
+
+import com.google.apigee.multipartform.Part;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PartBenchmark {
+  @Param({"256", "65536", "1048576"})
+  public int payloadSize;
+
+  @Param({"false", "true"})
+  public boolean binary;
+
+  private byte[] data;
+
+  @Setup
+  public void setup() throws IOException {
+    Random random = new Random(Payloads.SEED);
+    String headers =
+        binary
+            ? "Content-Disposition: form-data; name=\"file1.bin\"; filename=\"file1.bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n"
+            : "Content-Disposition: form-data; name=\"field0\"\r\n" + "Content-Type: text/plain\r\n";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write((headers + "\r\n").getBytes(StandardCharsets.UTF_8));
+    out.write(Payloads.content(payloadSize, binary, random));
+    data = out.toByteArray();
+  }
+
+  @Benchmark
+  public Part parse() throws IOException {
+    return Part.parse(data);
+  }
+}
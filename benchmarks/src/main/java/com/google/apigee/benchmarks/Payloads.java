@@ -0,0 +1,109 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.benchmarks;
+
+import com.google.apigee.multipartform.MultipartForm;
+import com.google.apigee.multipartform.Part;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Builds the inputs for the benchmarks. The same seed always gives the same payloads. */
+final class Payloads {
+  static final long SEED = 20250404L;
+  private static final char[] alphanumeric =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+  private static final String text =
+      "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor.\r\n";
+
+  private Payloads() {}
+
+  /** A boundary of the given length, shaped like the ones the creator generates. */
+  static String boundary(int length, Random random) {
+    int randomLength = Math.min(14, length);
+    StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; i < length - randomLength; i++) {
+      sb.append('-');
+    }
+    for (int i = 0; i < randomLength; i++) {
+      sb.append(alphanumeric[random.nextInt(alphanumeric.length)]);
+    }
+    return sb.toString();
+  }
+
+  static byte[] content(int size, boolean binary, Random random) {
+    byte[] content = new byte[size];
+    if (binary) {
+      random.nextBytes(content);
+    } else {
+      byte[] line = text.getBytes(StandardCharsets.US_ASCII);
+      for (int i = 0; i < size; i++) {
+        content[i] = line[i % line.length];
+      }
+    }
+    return content;
+  }
+
+  /** Alternates text parts and binary file parts. */
+  static List<Part> parts(int partCount, int partSize, Random random) {
+    List<Part> parts = new ArrayList<Part>();
+    for (int i = 0; i < partCount; i++) {
+      boolean binary = (i % 2) == 1;
+      Part part =
+          new Part(partName(i))
+              .withContentType(binary ? "application/octet-stream" : "text/plain")
+              .withPartContent(content(partSize, binary, random));
+      if (binary) {
+        part.setFileName(partName(i));
+      }
+      parts.add(part);
+    }
+    return parts;
+  }
+
+  static String partName(int index) {
+    return (index % 2 == 1) ? String.format("file%d.bin", index) : String.format("field%d", index);
+  }
+
+  static byte[] form(String boundary, List<Part> parts) throws IOException {
+    return readAll(new MultipartForm(boundary, parts).openStream());
+  }
+
+  static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] chunk = new byte[8192];
+    int n;
+    while ((n = in.read(chunk, 0, chunk.length)) != -1) {
+      out.write(chunk, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  /** Reads the stream to the end, and returns the number of bytes. */
+  static long drain(InputStream in, byte[] chunk) throws IOException {
+    long count = 0;
+    int n;
+    while ((n = in.read(chunk, 0, chunk.length)) != -1) {
+      count += n;
+    }
+    in.close();
+    return count;
+  }
+}
@@ -0,0 +1,88 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.benchmarks;
+
+import com.apigee.flow.message.MessageContext;
+import com.google.apigee.callouts.CalloutBase;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResolvePropertyValueBenchmark {
+  @Param({
+    "message",
+    "{source_var}",
+    "multipart/form-data; boundary={mpf_boundary}",
+    "{a}-{b}-{c}"
+  })
+  public String spec;
+
+  private Resolver resolver;
+  private FakeMessageContext msgCtxt;
+
+  @Setup
+  public void setup() {
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("source_var", "message");
+    msgCtxt.setVariable("mpf_boundary", "--------------------QCN1DGMIPH8GPY");
+    msgCtxt.setVariable("a", "alpha");
+    msgCtxt.setVariable("b", "bravo");
+    msgCtxt.setVariable("c", "charlie");
+    resolver = new Resolver(new HashMap<String, String>());
+  }
+
+  @Benchmark
+  public String resolvePropertyValue() {
+    return resolver.resolve(spec, msgCtxt);
+  }
+
+  /** Exposes the protected method to the benchmark. */
+  static final class Resolver extends CalloutBase {
+    Resolver(Map<String, String> properties) {
+      super(properties);
+    }
+
+    public String getVarnamePrefix() {
+      return "bench_";
+    }
+
+    String resolve(String spec, MessageContext msgCtxt) {
+      return resolvePropertyValue(spec, msgCtxt);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.benchmarks;
+
+import com.google.apigee.stream.StreamSearcher;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StreamSearcherBenchmark {
+  // same as the parser
+  private static final int BUFFER_SIZE = 2048;
+
+  @Param({"1024", "65536", "1048576"})
+  public int payloadSize;
+
+  @Param({"16", "40", "70"})
+  public int boundaryLength;
+
+  private StreamSearcher searcher;
+  private byte[] data;
+
+  @Setup
+  public void setup() throws IOException {
+    Random random = new Random(Payloads.SEED);
+    byte[] boundary = Payloads.boundary(boundaryLength, random).getBytes(StandardCharsets.UTF_8);
+    searcher = new StreamSearcher(boundary);
+
+    // a part as the parser sees it: the CRLF after the previous boundary,
+    // the part, then the CRLF and the next boundary.
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+    out.write(Payloads.content(payloadSize, false, random));
+    out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+    out.write(boundary);
+    data = out.toByteArray();
+  }
+
+  private InputStream input() {
+    return new BufferedInputStream(new ByteArrayInputStream(data), BUFFER_SIZE);
+  }
+
+  @Benchmark
+  public long search() throws IOException {
+    return searcher.search(input());
+  }
+
+  @Benchmark
+  public byte[] searchAndExtract() throws IOException {
+    return searcher.searchAndExtract(input());
+  }
+
+  @Benchmark
+  public long searchAndExtractToSink() throws IOException {
+    return searcher.searchAndExtract(input(), NullOutputStream.INSTANCE);
+  }
+
+  static final class NullOutputStream extends OutputStream {
+    static final NullOutputStream INSTANCE = new NullOutputStream();
+
+    public void write(int b) {}
+
+    public void write(byte[] b, int off, int len) {}
+  }
+}
@@ -0,0 +1,118 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.benchmarks;
+
+import com.google.apigee.multipartform.Part;
+import com.google.apigee.multipartform.UrlEncodedForm;
+import com.google.apigee.multipartform.UrlEncodedFormReader;
+import com.google.apigee.stream.ByteArrayContentOutputStream;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading and writing application/x-www-form-urlencoded forms with many fields, against splitting
+ * the form into strings and decoding each with URLDecoder, as a script would.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UrlEncodedFormBenchmark {
+  // same as the parser, for a body of unknown length
+  private static final int BUFFER_SIZE = 2048;
+
+  @Param({"16", "1024", "16384"})
+  public int fieldCount;
+
+  @Param({"16", "256"})
+  public int valueSize;
+
+  private UrlEncodedForm form;
+  private byte[] data;
+  private final byte[] chunk = new byte[8192];
+
+  @Setup
+  public void setup() throws IOException {
+    Random random = new Random(Payloads.SEED);
+    List<Part> parts = new ArrayList<Part>();
+    for (int i = 0; i < fieldCount; i++) {
+      // text with spaces and CRLFs, and some binary, so that escapes are common
+      parts.add(
+          new Part(Payloads.partName(i))
+              .withPartContent(Payloads.content(valueSize, (i % 4) == 3, random)));
+    }
+    form = new UrlEncodedForm(parts);
+    data = Payloads.readAll(form.openStream());
+  }
+
+  @Benchmark
+  public int read() throws IOException {
+    UrlEncodedFormReader reader =
+        new UrlEncodedFormReader(
+            new BufferedInputStream(new ByteArrayInputStream(data), BUFFER_SIZE),
+            BUFFER_SIZE,
+            () -> new ByteArrayContentOutputStream(valueSize),
+            0);
+    int count = 0;
+    while (reader.next() != null) {
+      count++;
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int splitAndDecode() throws IOException {
+    String body = new String(data, StandardCharsets.US_ASCII);
+    int count = 0;
+    for (String field : body.split("&")) {
+      int eq = field.indexOf('=');
+      String name = URLDecoder.decode(field.substring(0, eq), "UTF-8");
+      String value = URLDecoder.decode(field.substring(eq + 1), "ISO-8859-1");
+      count += name.length() + value.length();
+    }
+    return count;
+  }
+
+  @Benchmark
+  public long openStream() throws IOException {
+    return Payloads.drain(form.openStream(), chunk);
+  }
+
+  @Benchmark
+  public long getContentLength() throws IOException {
+    return form.getContentLength();
+  }
+}
@@ -0,0 +1,106 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.benchmarks;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.google.apigee.callouts.MultipartFormParserV2;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.workload.MultipartWorkload;
+import com.google.apigee.workload.MultipartWorkload.SizeDistribution;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Parses bodies from the synthetic workload generator, in a few shapes of traffic. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WorkloadBenchmark {
+  @Param({"form-fields", "uploads", "near-misses"})
+  public String shape;
+
+  private MultipartWorkload workload;
+  private byte[] body;
+  private MultipartFormParserV2 parser;
+  private final FakeExecutionContext exeCtxt = new FakeExecutionContext();
+
+  static MultipartWorkload workload(String shape) {
+    MultipartWorkload workload = new MultipartWorkload().withSeed(Payloads.SEED);
+    switch (shape) {
+      case "form-fields":
+        // many small text fields, as from an HTML form
+        return workload
+            .withPartCount(32)
+            .withSizes(SizeDistribution.uniform(8, 256))
+            .withBoundaryLength(38);
+      case "uploads":
+        // a few fields and some files, sizes with a long tail
+        return workload
+            .withPartCount(6)
+            .withSizes(SizeDistribution.logNormal(64 * 1024, 1.5, 8 * 1024 * 1024))
+            .withBinaryFraction(0.5)
+            .withBoundaryLength(40);
+      case "near-misses":
+        // content that keeps the searcher backtracking
+        return workload
+            .withPartCount(4)
+            .withSizes(SizeDistribution.fixed(256 * 1024))
+            .withBoundaryLength(70)
+            .withNearMissesPerPart(256);
+      default:
+        throw new IllegalArgumentException("unknown shape: " + shape);
+    }
+  }
+
+  @Setup
+  public void setup() throws IOException {
+    workload = workload(shape);
+    body = Payloads.readAll(workload.openStream());
+    parser = new MultipartFormParserV2(new HashMap<String, String>());
+  }
+
+  @Benchmark
+  public String parse() {
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    message.setHeader("content-type", workload.getContentType());
+    message.setContent(new ByteArrayInputStream(body));
+    if (parser.execute(msgCtxt, exeCtxt) != ExecutionResult.SUCCESS) {
+      throw new IllegalStateException("callout failed: " + msgCtxt.getVariable("mpf_error"));
+    }
+    return msgCtxt.getVariable("mpf_itemcount");
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.callouts;
+
+import com.google.apigee.metrics.Histogram;
+
+/**
+ * Learns the sizes a callout instance sees, such as message bodies or parts, and suggests buffer
+ * sizes from them. One instance of a callout serves all the requests through its policy, from many
+ * threads, so the sizes are kept in a {@link Histogram}, which records without locking.
+ *
+ * <p>The histogram starts again after {@link #WINDOW} sizes, so that the suggestions follow changes
+ * in traffic. Until it has seen {@link #MIN_SAMPLES} sizes, there is nothing to go on, and the
+ * suggestions fall back to a hint such as a Content-Length, or to the lower bound.
+ */
+final class BufferSizing {
+  static final int DEFAULT_READ_BUFFER_MIN = 2048;
+  static final int DEFAULT_READ_BUFFER_MAX = 64 * 1024;
+  static final int DEFAULT_INITIAL_CAPACITY_MAX = 4 * 1024 * 1024;
+  static final int MIN_INITIAL_CAPACITY = 256;
+  static final int MIN_SAMPLES = 8;
+  static final long WINDOW = 4096;
+
+  private final Histogram sizes = new Histogram();
+
+  void record(long size) {
+    sizes.record(size);
+    if (sizes.getCount() >= WINDOW) {
+      // two threads may both reset; that loses a few sizes, no more
+      sizes.reset();
+    }
+  }
+
+  /**
+   * Returns the size at or below which the given fraction of the recorded sizes fall, or -1 if too
+   * few have been recorded to say.
+   */
+  long expected(double fraction) {
+    return (sizes.getCount() < MIN_SAMPLES) ? -1 : sizes.percentile(fraction);
+  }
+
+  /**
+   * Returns the size for a read buffer, for input of about the expected size: the next power of
+   * two, within the bounds. A negative expected size gives the lower bound.
+   */
+  static int readBufferSize(long expected, int min, int max) {
+    if (expected <= min) {
+      return min;
+    }
+    long size = Long.highestOneBit(expected);
+    if (size < expected) {
+      size <<= 1;
+    }
+    return (int) Math.min(size, Math.max(min, max));
+  }
+
+  /**
+   * Returns the initial capacity for an output buffer that is to hold about the expected number of
+   * bytes, within the bounds. A negative expected size gives the smallest capacity.
+   */
+  static int initialCapacity(long expected, int max) {
+    if (expected < MIN_INITIAL_CAPACITY) {
+      return MIN_INITIAL_CAPACITY;
+    }
+    return (int) Math.min(expected, Math.max(MIN_INITIAL_CAPACITY, max));
+  }
+
+  /** Returns the expected size, but no more than the limit, when both are known. */
+  static long capped(long expected, long limit) {
+    return (expected < 0 || limit < 0) ? expected : Math.min(expected, limit);
+  }
+}
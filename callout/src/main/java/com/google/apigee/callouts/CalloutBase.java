@@ -15,18 +15,31 @@
 
 package com.google.apigee.callouts;
 
+import com.apigee.flow.message.Message;
 import com.apigee.flow.message.MessageContext;
-import java.io.ByteArrayOutputStream;
+import com.google.apigee.metrics.ExecutionMetrics;
+import com.google.apigee.multipartform.Part;
+import com.google.apigee.stream.ByteArrayContentOutputStream;
+import com.google.apigee.stream.Content;
+import com.google.apigee.stream.ContentDigest;
+import com.google.apigee.stream.DirectBufferArena;
+import com.google.apigee.stream.SpillFiles;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,8 +49,25 @@ public abstract class CalloutBase {
       Pattern.compile(variableReferencePatternString);
   private static final String commonError = "^(.+?)[:;] (.+)$";
   private static final Pattern commonErrorPattern = Pattern.compile(commonError);
+  private static final String arenaVariable = "mpf_arena";
+  private static final String spillVariable = "mpf_spill";
+  private static final long DEFAULT_DECODED_SIZE_LIMIT = 64L * 1024 * 1024;
   protected Map<String, String> properties; // read-only
 
+  /**
+   * What a callout compiled from its configuration, with the text it was compiled from, so that a
+   * callout can keep what it last compiled while the configuration stays the same.
+   */
+  protected static final class Compiled<T> {
+    final String key;
+    final T value;
+
+    Compiled(String key, T value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
   public CalloutBase(Map properties) {
     // convert the untyped Map to a generic map
     Map<String, String> m = new HashMap<String, String>();
@@ -69,12 +99,244 @@ public abstract class CalloutBase {
     return dest;
   }
 
+  protected String getSource(MessageContext msgCtxt) throws Exception {
+    String source = getSimpleOptionalProperty("source", msgCtxt);
+    if (source == null) {
+      source = "message";
+    }
+    return source;
+  }
+
+  protected String getDestination(MessageContext msgCtxt) throws Exception {
+    String destination = getSimpleOptionalProperty("destination", msgCtxt);
+    if (destination == null) {
+      destination = "message";
+    }
+    return destination;
+  }
+
   protected boolean getDebug() {
     String wantDebug = (String) this.properties.get("debug");
     boolean debug = (wantDebug != null) && Boolean.parseBoolean(wantDebug);
     return debug;
   }
 
+  protected boolean getWantDirectMemory(MessageContext msgCtxt) throws Exception {
+    String wantDirect = getSimpleOptionalProperty("direct-memory", msgCtxt);
+    return (wantDirect != null) && Boolean.parseBoolean(wantDirect);
+  }
+
+  // With the metrics property absent, this is one map lookup, and the callout
+  // records nothing.
+  protected ExecutionMetrics newMetrics(MessageContext msgCtxt) throws Exception {
+    String wantMetrics = getSimpleOptionalProperty("metrics", msgCtxt);
+    return (wantMetrics != null && Boolean.parseBoolean(wantMetrics))
+        ? ExecutionMetrics.start()
+        : ExecutionMetrics.DISABLED;
+  }
+
+  // The arena is shared by all the callouts in a message flow, so that content
+  // parsed into direct memory can be handed on to a created form or a message.
+  protected DirectBufferArena getArena(MessageContext msgCtxt) {
+    DirectBufferArena arena = findArena(msgCtxt);
+    if (arena == null) {
+      arena = new DirectBufferArena(getDebug());
+      msgCtxt.setVariable(arenaVariable, arena);
+    }
+    return arena;
+  }
+
+  protected DirectBufferArena findArena(MessageContext msgCtxt) {
+    Object arena = msgCtxt.getVariable(arenaVariable);
+    if ((arena instanceof DirectBufferArena) && !((DirectBufferArena) arena).isReleased()) {
+      return (DirectBufferArena) arena;
+    }
+    return null;
+  }
+
+  // Returns the spill threshold in bytes, or 0 if content is not to be spilled to disk.
+  protected long getSpillThreshold(MessageContext msgCtxt) throws Exception {
+    String thresholdStr = getSimpleOptionalProperty("spill-threshold", msgCtxt);
+    if (thresholdStr == null) {
+      return 0;
+    }
+    long threshold = parseNumber("spill-threshold", thresholdStr);
+    if (threshold <= 0) {
+      throw new IllegalStateException("configuration error: spill-threshold must be positive");
+    }
+    return threshold;
+  }
+
+  // Returns a positive size from a property, such as a bound on buffer sizes.
+  protected int getSizeProperty(String propName, int defaultValue, MessageContext msgCtxt)
+      throws Exception {
+    String sizeStr = getSimpleOptionalProperty(propName, msgCtxt);
+    if (sizeStr == null) {
+      return defaultValue;
+    }
+    long size = parseNumber(propName, sizeStr);
+    if (size <= 0) {
+      throw new IllegalStateException("configuration error: " + propName + " must be positive");
+    }
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalStateException("configuration error: " + propName + " is too large");
+    }
+    return (int) size;
+  }
+
+  // A property that is not a number is a configuration error, rather than a failure of the flow.
+  private static long parseNumber(String propName, String value) {
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalStateException(
+          String.format("configuration error: %s must be a number, not %s", propName, value));
+    }
+  }
+
+  // Digest algorithms, such as "sha256, crc32c", from a comma-separated property.
+  protected List<String> getDigestAlgorithms(String propName, MessageContext msgCtxt)
+      throws Exception {
+    return ContentDigest.algorithms(getSimpleOptionalProperty(propName, msgCtxt));
+  }
+
+  // Whether digests are published in base64, rather than hex.
+  protected boolean getWantBase64Digests(MessageContext msgCtxt) throws Exception {
+    String encoding = getSimpleOptionalProperty("digest-encoding", msgCtxt);
+    if (encoding == null || encoding.equals("hex")) {
+      return false;
+    }
+    if (encoding.equals("base64")) {
+      return true;
+    }
+    throw new IllegalStateException(
+        String.format(
+            "configuration error: digest-encoding must be hex or base64, not %s", encoding));
+  }
+
+  // Media types, such as "text/*" or "application/*+json", from a comma-separated property.
+  protected Predicate<String> getMediaTypes(
+      String propName, String defaultTypes, MessageContext msgCtxt) throws Exception {
+    String types = getSimpleOptionalProperty(propName, msgCtxt);
+    List<String> patterns = new ArrayList<String>();
+    for (String pattern : ((types == null) ? defaultTypes : types).split(",")) {
+      if (!pattern.trim().isEmpty()) {
+        patterns.add(pattern.trim().toLowerCase());
+      }
+    }
+    return mediaType -> {
+      for (String pattern : patterns) {
+        if (matches(pattern, mediaType)) {
+          return true;
+        }
+      }
+      return false;
+    };
+  }
+
+  static boolean matches(String pattern, String mediaType) {
+    int star = pattern.indexOf('*');
+    if (star < 0) {
+      return pattern.equals(mediaType);
+    }
+    return mediaType.length() >= pattern.length() - 1
+        && mediaType.startsWith(pattern.substring(0, star))
+        && mediaType.endsWith(pattern.substring(star + 1));
+  }
+
+  // The largest body to accept after undoing its Content-Encoding.
+  protected long getDecodedSizeLimit(MessageContext msgCtxt) throws Exception {
+    String limitStr = getSimpleOptionalProperty("decoded-size-limit", msgCtxt);
+    if (limitStr == null) {
+      return DEFAULT_DECODED_SIZE_LIMIT;
+    }
+    long limit = parseNumber("decoded-size-limit", limitStr);
+    if (limit <= 0) {
+      throw new IllegalStateException("configuration error: decoded-size-limit must be positive");
+    }
+    return limit;
+  }
+
+  // Returns the Content-Length of the message, or -1 if it is absent or not a number.
+  protected static long getContentLength(Message message) {
+    String lengthStr = message.getHeader("content-length");
+    if (lengthStr != null) {
+      try {
+        return Long.parseLong(lengthStr.trim());
+      } catch (NumberFormatException e) {
+        // treat as absent
+      }
+    }
+    return -1;
+  }
+
+  // Like the arena, the spill files are shared by all the callouts in a message flow.
+  // A callout with a different threshold replaces them; the flow gives up its
+  // reference to the files it replaces, which are deleted once no message
+  // content stream needs them.
+  protected SpillFiles getSpillFiles(MessageContext msgCtxt, long threshold) throws Exception {
+    SpillFiles spillFiles = findSpillFiles(msgCtxt);
+    if (spillFiles == null || spillFiles.getThreshold() != threshold) {
+      if (spillFiles != null) {
+        spillFiles.close();
+      }
+      String directory = getSimpleOptionalProperty("spill-directory", msgCtxt);
+      Path path = Paths.get((directory != null) ? directory : System.getProperty("java.io.tmpdir"));
+      spillFiles = new SpillFiles(path, threshold);
+      msgCtxt.setVariable(spillVariable, spillFiles);
+    }
+    return spillFiles;
+  }
+
+  protected SpillFiles findSpillFiles(MessageContext msgCtxt) {
+    Object spillFiles = msgCtxt.getVariable(spillVariable);
+    if ((spillFiles instanceof SpillFiles) && !((SpillFiles) spillFiles).isReleased()) {
+      return (SpillFiles) spillFiles;
+    }
+    return null;
+  }
+
+  // Wraps a stream handed to a message, so that the arena or the spill files that
+  // hold any of the given content stay readable until the stream is closed, after
+  // the message has been sent. The flow holds them too, for the variables that
+  // refer to them, unless release-parsed-content says that this is their last use.
+  protected InputStream releaseOnClose(
+      MessageContext msgCtxt, InputStream in, Collection<Content> contents) throws Exception {
+    DirectBufferArena arena = findArena(msgCtxt);
+    if (arena != null && contents.stream().anyMatch(arena::holds)) {
+      in = arena.releaseOnClose(in);
+    }
+    SpillFiles spillFiles = findSpillFiles(msgCtxt);
+    if (spillFiles != null && contents.stream().anyMatch(spillFiles::holds)) {
+      in = spillFiles.releaseOnClose(in);
+    }
+    String wantRelease = getSimpleOptionalProperty("release-parsed-content", msgCtxt);
+    if (wantRelease != null && Boolean.parseBoolean(wantRelease)) {
+      if (arena != null) {
+        arena.close();
+      }
+      if (spillFiles != null) {
+        spillFiles.close();
+      }
+    }
+    return in;
+  }
+
+  protected static List<Content> contentsOf(List<Part> parts) {
+    List<Content> contents = new ArrayList<Content>(parts.size());
+    for (Part part : parts) {
+      contents.add(part.getContent());
+    }
+    return contents;
+  }
+
+  protected void setDirectMemoryDiagnostics(MessageContext msgCtxt) {
+    if (getDebug() && DirectBufferArena.getLeakCount() > 0) {
+      msgCtxt.setVariable(varName("direct_memory_leaks"), DirectBufferArena.getLeakCount() + "");
+      msgCtxt.setVariable(varName("direct_memory_leak_site"), DirectBufferArena.getLastLeakSite());
+    }
+  }
+
   protected String normalizeString(String s) {
     s = s.replaceAll("^ +", "");
     s = s.replaceAll("(\r|\n) +", "\n");
@@ -140,15 +402,22 @@ public abstract class CalloutBase {
   }
 
   public static byte[] streamToByteArray(InputStream is) throws IOException {
-    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    return streamToByteArray(is, 1024, 1024);
+  }
+
+  /**
+   * Reads the stream to the end. With an initial capacity close to the size of the stream, the
+   * buffer need not grow, and when it is exactly right, the result is the buffer itself.
+   */
+  public static byte[] streamToByteArray(InputStream is, int initialCapacity, int chunkSize)
+      throws IOException {
+    ByteArrayContentOutputStream buffer = new ByteArrayContentOutputStream(initialCapacity);
     int nRead;
-    byte[] data = new byte[1024];
+    byte[] data = new byte[chunkSize];
     while ((nRead = is.read(data, 0, data.length)) != -1) {
       buffer.write(data, 0, nRead);
     }
-
-    buffer.flush();
-    return buffer.toByteArray();
+    return buffer.toContent().toByteArray();
   }
 
   protected static String getStackTraceAsString(Throwable t) {
@@ -169,20 +438,26 @@ public abstract class CalloutBase {
     }
   }
 
-  static Random threadSafeRandom = new SecureRandom();
+  // One generator per thread. A single shared SecureRandom serializes every
+  // callout that needs a boundary, since its nextBytes is synchronized.
+  private static final ThreadLocal<Random> threadSafeRandom =
+      ThreadLocal.withInitial(SecureRandom::new);
+
+  private static final char[] CHARSET_AZ_09 =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
 
   public static String randomString(char[] characterSet, int length) {
+    Random random = threadSafeRandom.get();
     char[] result = new char[length];
     for (int i = 0; i < result.length; i++) {
       // picks a random index out of character set > random character
-      int randomCharIndex = threadSafeRandom.nextInt(characterSet.length);
+      int randomCharIndex = random.nextInt(characterSet.length);
       result[i] = characterSet[randomCharIndex];
     }
     return new String(result);
   }
 
   public static String randomAlphanumeric(int length) {
-    char[] CHARSET_AZ_09 = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
     return randomString(CHARSET_AZ_09, length);
   }
 
@@ -22,8 +22,12 @@ import com.apigee.flow.execution.ExecutionResult;
 import com.apigee.flow.execution.spi.Execution;
 import com.apigee.flow.message.Message;
 import com.apigee.flow.message.MessageContext;
+import com.google.apigee.metrics.CalloutMetrics;
+import com.google.apigee.metrics.ExecutionMetrics;
+import com.google.apigee.stream.Content;
 import java.io.ByteArrayInputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.Map;
 
 public class ContentSetter extends CalloutBase implements Execution {
@@ -38,14 +42,6 @@ public class ContentSetter extends CalloutBase implements Execution {
     return varprefix;
   }
 
-  private String getDestination(MessageContext msgCtxt) throws Exception {
-    String destination = getSimpleOptionalProperty("destination", msgCtxt);
-    if (destination == null) {
-      destination = "message";
-    }
-    return destination;
-  }
-
   private String getContentVar(MessageContext msgCtxt) throws Exception {
     return getSimpleRequiredProperty("contentVar", msgCtxt);
   }
@@ -56,7 +52,12 @@ public class ContentSetter extends CalloutBase implements Execution {
 
   public ExecutionResult execute(
       final MessageContext msgCtxt, final ExecutionContext execContext) {
+    long started = System.nanoTime();
+    ExecutionMetrics metrics = ExecutionMetrics.DISABLED;
+    boolean succeeded = false;
     try {
+      metrics = newMetrics(msgCtxt);
+      long mark = metrics.mark();
       boolean mustSetDestination = false;
       String contentVar = getContentVar(msgCtxt);
       String destination = getDestination(msgCtxt);
@@ -68,19 +69,35 @@ public class ContentSetter extends CalloutBase implements Execution {
                 msgCtxt.getClientConnection().getMessageFactory().createRequest(msgCtxt));
       }
       Object content = msgCtxt.getVariable(contentVar);
-      byte[] contentBytes =
-          (content instanceof byte[])
-              ? (byte[]) content
-              : ((String) content).getBytes(StandardCharsets.UTF_8);
-      msgCtxt.setVariable(varName("payload_length"), contentBytes.length);
       String contentType = getContentType(msgCtxt);
       if (contentType != null) {
         message.setHeader("content-type", contentType);
       }
-      message.setContent(new ByteArrayInputStream(contentBytes));
+      mark = metrics.phase("setup", mark);
+      if (content instanceof Content) {
+        // content held in direct memory or a spill file; stream it rather than
+        // copying it onto the heap.
+        Content c = (Content) content;
+        msgCtxt.setVariable(varName("payload_length"), c.length() + "");
+        metrics.add("bytes_written", c.length());
+        message.setContent(
+            releaseOnClose(msgCtxt, c.openStream(), Collections.singletonList(c)));
+      } else {
+        byte[] contentBytes =
+            (content instanceof byte[])
+                ? (byte[]) content
+                : ((String) content).getBytes(StandardCharsets.UTF_8);
+        msgCtxt.setVariable(varName("payload_length"), contentBytes.length + "");
+        metrics.add("bytes_written", contentBytes.length);
+        message.setContent(
+            releaseOnClose(
+                msgCtxt, new ByteArrayInputStream(contentBytes), Collections.emptyList()));
+      }
       if (mustSetDestination) {
         msgCtxt.setVariable(destination, message);
       }
+      metrics.phase("set", mark);
+      succeeded = true;
       return ExecutionResult.SUCCESS;
     } catch (IllegalStateException exc1) {
       setExceptionVariables(exc1, msgCtxt);
@@ -92,6 +109,9 @@ public class ContentSetter extends CalloutBase implements Execution {
       }
       setExceptionVariables(e, msgCtxt);
       return ExecutionResult.ABORT;
+    } finally {
+      CalloutMetrics.getInstance().recordContentSet(System.nanoTime() - started, succeeded);
+      metrics.publish(msgCtxt, varprefix);
     }
   }
 }
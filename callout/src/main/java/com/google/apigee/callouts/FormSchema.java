@@ -0,0 +1,160 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.callouts;
+
+import com.google.apigee.multipartform.Part;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+/**
+ * The fields a form may have, compiled from a schema like this:
+ *
+ * <pre>
+ * {
+ *   "fields" : {
+ *     "document" : { "required" : true, "content-types" : [ "application/pdf" ],
+ *                    "max-size" : 10485760 },
+ *     "note" : { "max-size" : 1024 }
+ *   },
+ *   "additional-fields" : false
+ * }
+ * </pre>
+ *
+ * <p>A part is checked as soon as its headers are read, and its size as its content is, so that a
+ * form that breaks the schema fails before the rest of it is read. A compiled schema holds no
+ * state of its own, and serves all the requests through a policy.
+ */
+final class FormSchema {
+  private static final class Field {
+    boolean required;
+    List<String> contentTypes;
+    long maxSize = -1;
+  }
+
+  private final Map<String, Field> fields = new HashMap<String, Field>();
+  private final List<String> required = new ArrayList<String>();
+  private boolean additionalFields;
+
+  private FormSchema() {}
+
+  private static IllegalStateException invalid(String problem) {
+    return new IllegalStateException("configuration error: schema " + problem);
+  }
+
+  static FormSchema compile(String schema) {
+    JsonObject spec;
+    try {
+      spec = Json.createReader(new StringReader(schema)).readObject();
+    } catch (RuntimeException e) {
+      throw invalid("is not a JSON object");
+    }
+    FormSchema compiled = new FormSchema();
+    try {
+      compiled.additionalFields = spec.getBoolean("additional-fields", false);
+      JsonObject fields = spec.getJsonObject("fields");
+      if (fields == null) {
+        throw invalid("has no fields");
+      }
+      for (Map.Entry<String, JsonValue> entry : fields.entrySet()) {
+        if (entry.getValue().getValueType() != JsonValue.ValueType.OBJECT) {
+          throw invalid("has an invalid rule for field " + entry.getKey());
+        }
+        JsonObject rule = (JsonObject) entry.getValue();
+        Field field = new Field();
+        field.required = rule.getBoolean("required", false);
+        JsonNumber maxSize = rule.getJsonNumber("max-size");
+        if (maxSize != null) {
+          field.maxSize = maxSize.longValueExact();
+          if (field.maxSize < 0) {
+            throw invalid("has a negative max-size for field " + entry.getKey());
+          }
+        }
+        JsonArray contentTypes = rule.getJsonArray("content-types");
+        if (contentTypes != null) {
+          field.contentTypes = new ArrayList<String>();
+          for (JsonString contentType : contentTypes.getValuesAs(JsonString.class)) {
+            field.contentTypes.add(contentType.getString().trim().toLowerCase());
+          }
+        }
+        compiled.fields.put(entry.getKey(), field);
+        if (field.required) {
+          compiled.required.add(entry.getKey());
+        }
+      }
+    } catch (ClassCastException | ArithmeticException e) {
+      throw invalid("has a value of the wrong type");
+    }
+    return compiled;
+  }
+
+  private static String mediaType(String contentType) {
+    if (contentType == null) {
+      // RFC 7578, section 4.4
+      return "text/plain";
+    }
+    int semi = contentType.indexOf(';');
+    return ((semi < 0) ? contentType : contentType.substring(0, semi)).trim().toLowerCase();
+  }
+
+  /**
+   * Checks the headers of a part, and returns the most bytes its content may have, or -1 for no
+   * limit.
+   */
+  long checkHeaders(Part part) {
+    Field field = fields.get(part.getName());
+    if (field == null) {
+      if (!additionalFields) {
+        throw new IllegalStateException(
+            String.format("schema violation: field %s is not expected", part.getName()));
+      }
+      return -1;
+    }
+    if (field.contentTypes != null) {
+      String mediaType = mediaType(part.getContentType());
+      boolean allowed = false;
+      for (String pattern : field.contentTypes) {
+        allowed |= CalloutBase.matches(pattern, mediaType);
+      }
+      if (!allowed) {
+        throw new IllegalStateException(
+            String.format(
+                "schema violation: field %s may not have content-type %s",
+                part.getName(), mediaType));
+      }
+    }
+    return field.maxSize;
+  }
+
+  /** Checks that the names of the fields in a form include all that are required. */
+  void checkRequired(Collection<String> names) {
+    for (String name : required) {
+      if (!names.contains(name)) {
+        throw new IllegalStateException(
+            String.format("schema violation: field %s is required", name));
+      }
+    }
+  }
+}
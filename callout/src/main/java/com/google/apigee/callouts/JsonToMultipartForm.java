@@ -0,0 +1,184 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.callouts;
+
+import com.apigee.flow.execution.ExecutionContext;
+import com.apigee.flow.execution.ExecutionResult;
+import com.apigee.flow.execution.spi.Execution;
+import com.apigee.flow.message.Message;
+import com.apigee.flow.message.MessageContext;
+import com.google.apigee.metrics.ExecutionMetrics;
+import com.google.apigee.multipartform.JsonFormReader;
+import com.google.apigee.multipartform.MultipartForm;
+import com.google.apigee.multipartform.Part;
+import com.google.apigee.stream.ContentDecoding;
+import com.google.apigee.stream.ContentOutputStream;
+import com.google.apigee.stream.CountingInputStream;
+import com.google.apigee.stream.DirectBufferArena;
+import com.google.apigee.stream.SpillFiles;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Replaces the content of a message with a multipart form made from the JSON document in a source
+ * message. The document is read with a streaming parser, base64 values are decoded into the parts
+ * as they are read, and the form is produced as the message is sent, so the form is never held in
+ * memory as a whole.
+ */
+public class JsonToMultipartForm extends CalloutBase implements Execution {
+  private static final String varprefix = "mpf_";
+
+  // the rules last compiled, keyed by their text; a JsonFormReader holds no state of a read
+  private volatile Compiled<JsonFormReader> compiled;
+
+  public JsonToMultipartForm(Map properties) {
+    super(properties);
+  }
+
+  public String getVarnamePrefix() {
+    return varprefix;
+  }
+
+  private boolean getIgnoreUnmatched(MessageContext msgCtxt) throws Exception {
+    String unmatched = getSimpleOptionalProperty("unmatched", msgCtxt);
+    if (unmatched == null || unmatched.equals("text")) {
+      return false;
+    }
+    if (unmatched.equals("ignore")) {
+      return true;
+    }
+    throw new IllegalStateException(
+        String.format("configuration error: unmatched must be text or ignore, not %s", unmatched));
+  }
+
+  private JsonFormReader getReader(MessageContext msgCtxt) throws Exception {
+    String rules = getSimpleOptionalProperty("rules", msgCtxt);
+    boolean ignoreUnmatched = getIgnoreUnmatched(msgCtxt);
+    String key = ignoreUnmatched + ":" + rules;
+    Compiled<JsonFormReader> entry = compiled;
+    if (entry != null && entry.key.equals(key)) {
+      return entry.value;
+    }
+    JsonFormReader reader = new JsonFormReader(rules, ignoreUnmatched);
+    compiled = new Compiled<JsonFormReader>(key, reader);
+    return reader;
+  }
+
+  public ExecutionResult execute(final MessageContext msgCtxt, final ExecutionContext execContext) {
+    ExecutionMetrics metrics = ExecutionMetrics.DISABLED;
+    try {
+      metrics = newMetrics(msgCtxt);
+      long mark = metrics.mark();
+      Message source = (Message) msgCtxt.getVariable(getSource(msgCtxt));
+      if (source == null) {
+        throw new IllegalStateException("source message is null.");
+      }
+      String destinationName = getDestination(msgCtxt);
+      Message destination = (Message) msgCtxt.getVariable(destinationName);
+      if (destination == null) {
+        throw new IllegalStateException(
+            String.format("message <%s> does not exist", destinationName));
+      }
+      JsonFormReader reader = getReader(msgCtxt);
+
+      boolean wantDirectMemory = getWantDirectMemory(msgCtxt);
+      long spillThreshold = getSpillThreshold(msgCtxt);
+      if (wantDirectMemory && spillThreshold > 0) {
+        throw new IllegalStateException(
+            "configuration error: use either direct-memory or spill-threshold, not both");
+      }
+      DirectBufferArena arena = wantDirectMemory ? getArena(msgCtxt) : null;
+      SpillFiles spillFiles =
+          (spillThreshold > 0) ? getSpillFiles(msgCtxt, spillThreshold) : null;
+      // with neither, each decoded value gets a heap buffer of its exact size
+      Supplier<ContentOutputStream> contentSupplier =
+          (arena != null)
+              ? arena::newOutputStream
+              : (spillFiles != null) ? spillFiles::newOutputStream : null;
+
+      int readBufferSize =
+          BufferSizing.readBufferSize(
+              getContentLength(source),
+              getSizeProperty("read-buffer-min", BufferSizing.DEFAULT_READ_BUFFER_MIN, msgCtxt),
+              getSizeProperty("read-buffer-max", BufferSizing.DEFAULT_READ_BUFFER_MAX, msgCtxt));
+      // The parser holds a value whole; a buffer as large as the document
+      // need not grow to hold a long base64 value.
+      int parserBufferSize =
+          (source.getHeader("content-encoding") == null)
+              ? BufferSizing.initialCapacity(
+                  getContentLength(source),
+                  getSizeProperty(
+                      "initial-capacity-max", BufferSizing.DEFAULT_INITIAL_CAPACITY_MAX, msgCtxt))
+              : 0;
+      metrics.add("read_buffer_size", readBufferSize);
+      metrics.add("parser_buffer_size", parserBufferSize);
+      mark = metrics.phase("setup", mark);
+
+      CountingInputStream body = new CountingInputStream(source.getContentAsStream());
+      List<Part> parts;
+      try (InputStream json =
+          ContentDecoding.decode(
+              body,
+              source.getHeader("content-encoding"),
+              readBufferSize,
+              getDecodedSizeLimit(msgCtxt))) {
+        parts = reader.read(json, contentSupplier, parserBufferSize);
+      }
+      metrics.add("bytes_read", body.getCount());
+      metrics.add("parts", parts.size());
+      msgCtxt.setVariable(varName("itemcount"), parts.size() + "");
+      List<String> names = new ArrayList<String>();
+      for (Part part : parts) {
+        names.add(part.getName());
+      }
+      msgCtxt.setVariable(varName("items"), String.join(", ", names));
+      mark = metrics.phase("parse", mark);
+
+      String boundary = "--------------------" + randomAlphanumeric(14);
+      MultipartForm form = new MultipartForm(boundary, parts);
+      long contentLength = form.getContentLength();
+      msgCtxt.setVariable(varName("boundary"), boundary);
+      msgCtxt.setVariable(varName("ctype"), form.getContentType());
+      msgCtxt.setVariable(varName("payload_length"), contentLength + "");
+      // the parts are encoded as the message is sent
+      destination.setContent(releaseOnClose(msgCtxt, form.openStream(), contentsOf(parts)));
+      destination.removeHeader("content-length");
+      destination.removeHeader("content-encoding");
+      destination.removeHeader("content-type");
+      destination.setHeader("content-type", form.getContentType());
+      destination.setHeader("content-length", Long.toString(contentLength));
+      msgCtxt.setVariable(destinationName + ".header.modified", "true");
+      if (arena != null) {
+        setDirectMemoryDiagnostics(msgCtxt);
+      }
+      metrics.add("bytes_written", contentLength);
+      metrics.phase("encode", mark);
+      return ExecutionResult.SUCCESS;
+    } catch (Exception e) {
+      if (getDebug()) {
+        String stacktrace = getStackTraceAsString(e);
+        msgCtxt.setVariable(varName("stacktrace"), stacktrace);
+      }
+      setExceptionVariables(e, msgCtxt);
+      return ExecutionResult.ABORT;
+    } finally {
+      metrics.publish(msgCtxt, varprefix);
+    }
+  }
+}
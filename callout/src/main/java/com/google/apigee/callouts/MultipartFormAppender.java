@@ -0,0 +1,126 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.callouts;
+
+import com.apigee.flow.execution.ExecutionContext;
+import com.apigee.flow.execution.ExecutionResult;
+import com.apigee.flow.execution.spi.Execution;
+import com.apigee.flow.message.Message;
+import com.apigee.flow.message.MessageContext;
+import com.google.apigee.json.JavaxJson;
+import com.google.apigee.metrics.ExecutionMetrics;
+import com.google.apigee.multipartform.MultipartAppendingInputStream;
+import com.google.apigee.multipartform.Part;
+import com.google.apigee.stream.ContentDecoding;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends parts, made as the creator makes them from a descriptor, to the multipart form in a
+ * source message. The form is copied to the destination as the destination is sent, and only its
+ * close delimiter is looked for, so its parts are neither parsed nor held in memory.
+ */
+public class MultipartFormAppender extends CalloutBase implements Execution {
+  private static final String varprefix = "mpf_";
+
+  public MultipartFormAppender(Map properties) {
+    super(properties);
+  }
+
+  public String getVarnamePrefix() {
+    return varprefix;
+  }
+
+  public ExecutionResult execute(final MessageContext msgCtxt, final ExecutionContext execContext) {
+    ExecutionMetrics metrics = ExecutionMetrics.DISABLED;
+    try {
+      metrics = newMetrics(msgCtxt);
+      long mark = metrics.mark();
+      Message source = (Message) msgCtxt.getVariable(getSource(msgCtxt));
+      if (source == null) {
+        throw new IllegalStateException("source message is null.");
+      }
+      String destinationName = getDestination(msgCtxt);
+      Message destination = (Message) msgCtxt.getVariable(destinationName);
+      if (destination == null) {
+        throw new IllegalStateException(
+            String.format("message <%s> does not exist", destinationName));
+      }
+      String ctype = source.getHeader("content-type");
+      if (ctype == null) {
+        throw new IllegalStateException("missing content-type header");
+      }
+      if (!ctype.startsWith("multipart/form-data; boundary=")) {
+        throw new IllegalStateException("content-type does not contain multipart/form-data");
+      }
+      // the new parts are written with the boundary of the form
+      String boundary = ctype.substring("multipart/form-data; boundary=".length());
+
+      String descriptor = getSimpleRequiredProperty("descriptor", msgCtxt);
+      @SuppressWarnings("unchecked")
+      Map<String, Object> descriptorMap = JavaxJson.fromJson(descriptor, Map.class);
+      List<Part> parts = new ArrayList<Part>();
+      for (Map.Entry<String, Object> entry : descriptorMap.entrySet()) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> partDefinition = (Map<String, Object>) entry.getValue();
+        parts.add(MultipartFormCreatorV2.newPart(msgCtxt, entry.getKey(), partDefinition, false));
+      }
+      metrics.add("parts", parts.size());
+
+      int readBufferSize =
+          BufferSizing.readBufferSize(
+              getContentLength(source),
+              getSizeProperty("read-buffer-min", BufferSizing.DEFAULT_READ_BUFFER_MIN, msgCtxt),
+              getSizeProperty("read-buffer-max", BufferSizing.DEFAULT_READ_BUFFER_MAX, msgCtxt));
+      metrics.add("read_buffer_size", readBufferSize);
+      InputStream body =
+          ContentDecoding.decode(
+              source.getContentAsStream(),
+              source.getHeader("content-encoding"),
+              readBufferSize,
+              getDecodedSizeLimit(msgCtxt));
+
+      // The source content is read only as the destination content is; get
+      // the one before setting the other, as they may be the same message.
+      destination.setContent(
+          releaseOnClose(
+              msgCtxt,
+              new MultipartAppendingInputStream(body, boundary, parts, readBufferSize),
+              contentsOf(parts)));
+      // the length of an epilogue after the close delimiter is not known ahead
+      destination.removeHeader("content-length");
+      destination.removeHeader("content-encoding");
+      destination.removeHeader("content-type");
+      destination.setHeader("content-type", ctype);
+      msgCtxt.setVariable(varName("boundary"), boundary);
+      msgCtxt.setVariable(varName("ctype"), ctype);
+      msgCtxt.setVariable(destinationName + ".header.modified", "true");
+      metrics.phase("setup", mark);
+      return ExecutionResult.SUCCESS;
+    } catch (Exception e) {
+      if (getDebug()) {
+        String stacktrace = getStackTraceAsString(e);
+        msgCtxt.setVariable(varName("stacktrace"), stacktrace);
+      }
+      setExceptionVariables(e, msgCtxt);
+      return ExecutionResult.ABORT;
+    } finally {
+      metrics.publish(msgCtxt, varprefix);
+    }
+  }
+}
@@ -21,19 +21,37 @@ import com.apigee.flow.execution.spi.Execution;
 import com.apigee.flow.message.Message;
 import com.apigee.flow.message.MessageContext;
 import com.google.apigee.json.JavaxJson;
+import com.google.apigee.metrics.CalloutMetrics;
+import com.google.apigee.metrics.ExecutionMetrics;
+import com.google.apigee.metrics.FlightEvents;
+import com.google.apigee.multipartform.Form;
 import com.google.apigee.multipartform.MultipartForm;
 import com.google.apigee.multipartform.Part;
+import com.google.apigee.multipartform.UrlEncodedForm;
+import com.google.apigee.stream.CompressingInputStream;
+import com.google.apigee.stream.Content;
+import com.google.apigee.stream.ContentDigest;
+import com.google.apigee.stream.DigestingInputStream;
+import com.google.apigee.stream.DirectBufferArena;
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 public class MultipartFormCreatorV2 extends CalloutBase implements Execution {
   private static final String varprefix = "mpf_";
   private static final boolean wantStringDefault = true;
 
+  // the sizes of the forms this instance has assembled on the heap
+  private final BufferSizing payloadSizes = new BufferSizing();
+
   public MultipartFormCreatorV2(Map properties) {
     super(properties);
   }
@@ -50,12 +68,17 @@ public class MultipartFormCreatorV2 extends CalloutBase implements Execution {
     return Boolean.parseBoolean(wantDecode.toLowerCase());
   }
 
-  private String getDestination(MessageContext msgCtxt) throws Exception {
-    String destination = getSimpleOptionalProperty("destination", msgCtxt);
-    if (destination == null) {
-      destination = "message";
+  // multipart/form-data, or application/x-www-form-urlencoded
+  private boolean getWantUrlEncoded(MessageContext msgCtxt) throws Exception {
+    String contentType = getSimpleOptionalProperty("content-type", msgCtxt);
+    if (contentType == null || contentType.equalsIgnoreCase("multipart/form-data")) {
+      return false;
+    }
+    if (contentType.equalsIgnoreCase(UrlEncodedForm.CONTENT_TYPE)) {
+      return true;
     }
-    return destination;
+    throw new IllegalStateException(
+        String.format("configuration error: unsupported content-type %s", contentType));
   }
 
   private String getDescriptor(MessageContext msgCtxt) throws Exception {
@@ -78,12 +101,213 @@ public class MultipartFormCreatorV2 extends CalloutBase implements Execution {
     return getSimpleRequiredProperty("part-name", msgCtxt);
   }
 
+  // content-digest or content-md5, the header to carry a digest; or null for none
+  private String getDigestHeader(String propName, List<String> algorithms, MessageContext msgCtxt)
+      throws Exception {
+    String header = getSimpleOptionalProperty(propName, msgCtxt);
+    if (header == null || header.equals("none")) {
+      return null;
+    }
+    if (!header.equals("content-digest") && !header.equals("content-md5")) {
+      throw new IllegalStateException(
+          String.format(
+              "configuration error: %s must be none, content-digest, or content-md5, not %s",
+              propName, header));
+    }
+    // the digests for the header: digests, or part-digests
+    String digestsProp = propName.replace("-header", "s");
+    if (header.equals("content-md5") && !algorithms.contains("md5")) {
+      throw new IllegalStateException(
+          String.format(
+              "configuration error: %s %s needs md5 in %s", propName, header, digestsProp));
+    }
+    if (algorithms.isEmpty()) {
+      throw new IllegalStateException(
+          String.format("configuration error: %s %s needs %s", propName, header, digestsProp));
+    }
+    return header;
+  }
+
+  private static String headerName(String digestHeader) {
+    return digestHeader.equals("content-md5") ? "Content-MD5" : "Content-Digest";
+  }
+
+  private static String headerValue(String digestHeader, Map<String, byte[]> digests) {
+    return digestHeader.equals("content-md5")
+        ? ContentDigest.encode(digests.get("md5"), true)
+        : ContentDigest.headerValue(digests);
+  }
+
+  /**
+   * The digest variables of one execution. Digests that are known before execute returns are set
+   * by execute; a form that is streamed is digested only as it is sent, after execute has returned,
+   * and its digests are set when the form has been read to its end, for use in later flows.
+   */
+  private final class DigestVariables {
+    private final MessageContext msgCtxt;
+    private final boolean base64;
+    private final Map<String, String> pending = new LinkedHashMap<String, String>();
+    private boolean published;
+
+    DigestVariables(MessageContext msgCtxt, boolean base64) {
+      this.msgCtxt = msgCtxt;
+      this.base64 = base64;
+    }
+
+    // Sets a variable for each digest, as prefix + algorithm + suffix.
+    synchronized void add(String prefix, String suffix, Map<String, byte[]> digests) {
+      for (Map.Entry<String, byte[]> digest : digests.entrySet()) {
+        String name = varName(prefix + digest.getKey() + suffix);
+        String value = ContentDigest.encode(digest.getValue(), base64);
+        if (published) {
+          msgCtxt.setVariable(name, value);
+        } else {
+          pending.put(name, value);
+        }
+      }
+    }
+
+    // Sets the digests known so far, and any others as they become known.
+    synchronized void publish() {
+      for (Map.Entry<String, String> variable : pending.entrySet()) {
+        msgCtxt.setVariable(variable.getKey(), variable.getValue());
+      }
+      pending.clear();
+      published = true;
+    }
+  }
+
+  // Content that is digested as it is first read to its end, which is as the form is written.
+  private static Content digesting(
+      final Content content, List<String> algorithms, Consumer<Map<String, byte[]>> onEnd) {
+    final AtomicBoolean digested = new AtomicBoolean();
+    return new Content() {
+      public long length() {
+        return content.length();
+      }
+
+      public InputStream openStream() {
+        // a form read once for its own digests is read again as it is sent
+        if (digested.getAndSet(true)) {
+          return content.openStream();
+        }
+        return new DigestingInputStream(content.openStream(), algorithms, onEnd);
+      }
+
+      public byte[] toByteArray() {
+        return content.toByteArray();
+      }
+    };
+  }
+
+  private static int intOption(Map<String, Object> partDefinition, String key, int defaultValue) {
+    Object value = partDefinition.get(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    if (value instanceof Number) {
+      return ((Number) value).intValue();
+    }
+    return Integer.parseInt(value.toString());
+  }
+
+  // The part is compressed as the form is streamed out; here we decide only
+  // whether to compress it, and how.
+  private static void applyCompression(
+      Part part, String partName, Map<String, Object> partDefinition) {
+    String compression = (String) partDefinition.get("compression");
+    if (compression == null || compression.equals("") || compression.equals("none")) {
+      return;
+    }
+    if (!CompressingInputStream.isSupported(compression)) {
+      throw new IllegalStateException(
+          String.format("part %s has unsupported compression %s", partName, compression));
+    }
+    int level = intOption(partDefinition, "compression-level", -1);
+    if (level < -1 || level > 9) {
+      throw new IllegalStateException(
+          String.format("part %s has invalid compression-level %d", partName, level));
+    }
+    int minSize = intOption(partDefinition, "compression-min-size", 0);
+    if (part.getContent().length() < minSize) {
+      return;
+    }
+    part.setContentEncoding(compression.toLowerCase());
+    part.withCompressionLevel(level);
+  }
+
+  /**
+   * Makes a part from its definition in a descriptor, with the content from the variable that the
+   * definition names.
+   */
+  static Part newPart(
+      MessageContext msgCtxt,
+      String partName,
+      Map<String, Object> partDefinition,
+      boolean urlEncoded) {
+    String transferEncoding = (String) partDefinition.get("transfer-encoding");
+    if (!MultipartForm.isSupportedTransferEncoding(transferEncoding)) {
+      throw new IllegalStateException(
+          String.format(
+              "part %s has unsupported transfer-encoding %s", partName, transferEncoding));
+    }
+    Object partContent = msgCtxt.getVariable((String) partDefinition.get("content-var"));
+    if (partContent == null) {
+      throw new IllegalStateException(String.format("part %s has missing content", partName));
+    } else if (partContent instanceof String) {
+      partContent = ((String) partContent).getBytes(StandardCharsets.UTF_8);
+      if ((Boolean) partDefinition.get("want-b64-decode")) {
+        partContent = Base64.getDecoder().decode((byte[]) partContent);
+      } else if ("base64".equalsIgnoreCase(transferEncoding)) {
+        // The string is already base64; the form encodes the part as it
+        // is written, so decode it here rather than encode it twice.
+        partContent = Base64.getMimeDecoder().decode((byte[]) partContent);
+      }
+    } else if (!(partContent instanceof byte[]) && !(partContent instanceof Content)) {
+      throw new IllegalStateException(String.format("part %s not of supported type", partName));
+    }
+
+    if (urlEncoded && (transferEncoding != null || partDefinition.get("compression") != null)) {
+      // a urlencoded field has no headers to declare an encoding
+      throw new IllegalStateException(
+          String.format(
+              "part %s: transfer-encoding and compression need multipart/form-data", partName));
+    }
+
+    Part part = new Part(partName).withContentType((String) partDefinition.get("content-type"));
+    if (partContent instanceof Content) {
+      part.setPartContent((Content) partContent);
+    } else {
+      part.setPartContent((byte[]) partContent);
+    }
+
+    if (partDefinition.get("file-name") != null && !partDefinition.get("file-name").equals("")) {
+      part.setFileName((String) partDefinition.get("file-name"));
+    }
+
+    if (transferEncoding != null) {
+      part.setTransferEncoding(transferEncoding);
+    }
+
+    applyCompression(part, partName, partDefinition);
+    return part;
+  }
+
   public ExecutionResult execute(final MessageContext msgCtxt, final ExecutionContext execContext) {
+    long started = System.nanoTime();
+    ExecutionMetrics metrics = ExecutionMetrics.DISABLED;
+    long bytesWritten = 0;
+    int partCount = 0;
+    boolean succeeded = false;
     try {
+      metrics = newMetrics(msgCtxt);
+      long mark = metrics.mark();
       String descriptor = getDescriptor(msgCtxt);
 
+      Object event = FlightEvents.INSTANCE.begin(FlightEvents.Kind.DESCRIPTOR_COMPILATION);
       @SuppressWarnings("unchecked")
       Map<String, Object> descriptorMap = JavaxJson.fromJson(descriptor, Map.class);
+      FlightEvents.INSTANCE.end(event, null, descriptor.length(), "javax.json");
       // Map<String, Object> map = gson.fromJson(new StringReader(), Map.class);
       // eg
       // {
@@ -99,8 +323,12 @@ public class MultipartFormCreatorV2 extends CalloutBase implements Execution {
       //   }
       // }
 
-      String boundary = "--------------------" + randomAlphanumeric(14);
-      msgCtxt.setVariable(varName("boundary"), boundary);
+      boolean urlEncoded = getWantUrlEncoded(msgCtxt);
+      String boundary = null;
+      if (!urlEncoded) {
+        boundary = "--------------------" + randomAlphanumeric(14);
+        msgCtxt.setVariable(varName("boundary"), boundary);
+      }
       String destination = getDestination(msgCtxt);
       Message message = (Message) msgCtxt.getVariable(destination);
       if (message == null) {
@@ -110,53 +338,140 @@ public class MultipartFormCreatorV2 extends CalloutBase implements Execution {
         //     msgCtxt.createMessage(
         //         msgCtxt.getClientConnection().getMessageFactory().createRequest(msgCtxt));
       }
-      message.setHeader("content-type", "multipart/form-data; boundary=" + boundary);
-      msgCtxt.setVariable(varName("ctype"), "multipart/form-data; boundary=" + boundary);
+      List<String> partAlgorithms = getDigestAlgorithms("part-digests", msgCtxt);
+      String partDigestHeader = getDigestHeader("part-digest-header", partAlgorithms, msgCtxt);
+      List<String> algorithms = getDigestAlgorithms("digests", msgCtxt);
+      String digestHeader = getDigestHeader("digest-header", algorithms, msgCtxt);
+      boolean base64 = getWantBase64Digests(msgCtxt);
+      if (urlEncoded && partDigestHeader != null) {
+        throw new IllegalStateException(
+            "configuration error: part-digest-header needs multipart/form-data");
+      }
+      DigestVariables digestVariables = new DigestVariables(msgCtxt, base64);
+      mark = metrics.phase("setup", mark);
 
       List<Part> parts = new ArrayList<Part>();
+      // the content of the parts as held, before any is wrapped to be digested
+      List<Content> contents = new ArrayList<Content>();
       for (Map.Entry<String, Object> entry : descriptorMap.entrySet()) {
         String partName = entry.getKey();
         @SuppressWarnings("unchecked")
         Map<String, Object> partDefinition = (Map<String, Object>) entry.getValue();
 
-        Object partContent = msgCtxt.getVariable((String) partDefinition.get("content-var"));
-        if (partContent == null) {
-          throw new IllegalStateException(String.format("part %s has missing content", partName));
-        } else if (partContent instanceof String) {
-          partContent = ((String) partContent).getBytes(StandardCharsets.UTF_8);
-          if ((Boolean) partDefinition.get("want-b64-decode")) {
-            partContent = Base64.getDecoder().decode((byte[]) partContent);
+        Part part = newPart(msgCtxt, partName, partDefinition, urlEncoded);
+        contents.add(part.getContent());
+        if (!partAlgorithms.isEmpty()) {
+          String suffix = "_" + (parts.size() + 1);
+          if (partDigestHeader != null) {
+            // The headers of the part come before its content; digest the
+            // content where it is held, before the form is written.
+            if (part.getContentEncoding() != null) {
+              throw new IllegalStateException(
+                  String.format(
+                      "part %s: part-digest-header cannot be used with compression", partName));
+            }
+            Map<String, byte[]> digests =
+                DigestingInputStream.digest(part.getContent().openStream(), partAlgorithms);
+            digestVariables.add("item_", suffix, digests);
+            part.withHeader(headerName(partDigestHeader), headerValue(partDigestHeader, digests));
+          } else {
+            part.setPartContent(
+                digesting(
+                    part.getContent(),
+                    partAlgorithms,
+                    digests -> digestVariables.add("item_", suffix, digests)));
           }
-        } else if (!(partContent instanceof byte[])) {
-          throw new IllegalStateException(String.format("part %s not of supported type", partName));
         }
-
-        Part part =
-            new Part(partName)
-                .withPartContent((byte[]) partContent)
-                .withContentType((String) partDefinition.get("content-type"));
-
-        if (partDefinition.get("file-name") != null
-            && !partDefinition.get("file-name").equals("")) {
-          part.setFileName((String) partDefinition.get("file-name"));
-        }
-
-        if (partDefinition.get("transfer-encoding") != null) {
-          part.setTransferEncoding((String) partDefinition.get("transfer-encoding"));
-        }
-
         parts.add(part);
+        metrics.add("bytes_read", part.getContent().length());
+        metrics.add("parts", 1);
       }
+      partCount = parts.size();
+      mark = metrics.phase("parts", mark);
 
-      MultipartForm mpf = new MultipartForm(boundary, parts);
-      byte[] payload = streamToByteArray(mpf.openStream());
-      msgCtxt.setVariable(varName("payload_length"), payload.length);
-      message.setContent(new ByteArrayInputStream(payload));
+      Form form = urlEncoded ? new UrlEncodedForm(parts) : new MultipartForm(boundary, parts);
+      message.setHeader("content-type", form.getContentType());
+      msgCtxt.setVariable(varName("ctype"), form.getContentType());
+      event = FlightEvents.INSTANCE.begin(FlightEvents.Kind.PAYLOAD_ASSEMBLY);
+      String engine;
+      InputStream formStream = form.openStream();
+      DigestingInputStream digesting = null;
+      if (!algorithms.isEmpty()) {
+        // The form is digested as it is written, once it has been read to its end.
+        digesting =
+            new DigestingInputStream(
+                formStream,
+                algorithms,
+                digests -> digestVariables.add("payload_", "", digests));
+        formStream = digesting;
+      }
+      long contentLength = form.getContentLength();
+      if (contentLength >= 0) {
+        // The length of the form is known in advance, so there is no need to
+        // assemble it here; the parts are encoded as the message is sent.
+        msgCtxt.setVariable(varName("payload_length"), contentLength + "");
+        bytesWritten = contentLength;
+        message.setHeader("content-length", Long.toString(contentLength));
+        if (digestHeader != null) {
+          // The digests are wanted before the body is sent: read the form once
+          // to digest it, without keeping it, and again as it is sent.
+          digesting.readToEnd();
+          digesting.close();
+          formStream = form.openStream();
+        }
+        message.setContent(releaseOnClose(msgCtxt, formStream, contents));
+        engine = "streamed";
+      } else if (getWantDirectMemory(msgCtxt)) {
+        // assemble the payload off-heap; the arena is released when the
+        // message content stream is closed.
+        DirectBufferArena arena = getArena(msgCtxt);
+        Content payload = arena.copyOf(formStream);
+        msgCtxt.setVariable(varName("payload_length"), payload.length() + "");
+        bytesWritten = payload.length();
+        message.setContent(
+            releaseOnClose(msgCtxt, payload.openStream(), Collections.singletonList(payload)));
+        setDirectMemoryDiagnostics(msgCtxt);
+        engine = "direct";
+      } else {
+        // the length is not known ahead, as when a part is compressed; size the
+        // buffer from the forms this instance has assembled before
+        long expected = payloadSizes.expected(0.9);
+        byte[] payload =
+            streamToByteArray(
+                formStream,
+                BufferSizing.initialCapacity(
+                    expected,
+                    getSizeProperty(
+                        "initial-capacity-max",
+                        BufferSizing.DEFAULT_INITIAL_CAPACITY_MAX,
+                        msgCtxt)),
+                BufferSizing.readBufferSize(
+                    expected,
+                    getSizeProperty(
+                        "read-buffer-min", BufferSizing.DEFAULT_READ_BUFFER_MIN, msgCtxt),
+                    getSizeProperty(
+                        "read-buffer-max", BufferSizing.DEFAULT_READ_BUFFER_MAX, msgCtxt)));
+        msgCtxt.setVariable(varName("payload_length"), payload.length + "");
+        bytesWritten = payload.length;
+        payloadSizes.record(payload.length);
+        message.setContent(
+            releaseOnClose(msgCtxt, new ByteArrayInputStream(payload), Collections.emptyList()));
+        engine = "heap";
+      }
+      if (digestHeader != null) {
+        message.removeHeader(headerName(digestHeader));
+        message.setHeader(
+            headerName(digestHeader), headerValue(digestHeader, digesting.getDigests()));
+      }
+      digestVariables.publish();
+      FlightEvents.INSTANCE.end(event, null, bytesWritten, engine);
+      metrics.phase("encode", mark);
       // if (mustSetDestination) {
       //   msgCtxt.setVariable(destination, message);
       // }
 
       msgCtxt.setVariable(destination + ".header.modified", "true");
+      succeeded = true;
       return ExecutionResult.SUCCESS;
     } catch (IllegalStateException exc1) {
       setExceptionVariables(exc1, msgCtxt);
@@ -168,6 +483,11 @@ public class MultipartFormCreatorV2 extends CalloutBase implements Execution {
       }
       setExceptionVariables(e, msgCtxt);
       return ExecutionResult.SUCCESS;
+    } finally {
+      CalloutMetrics.getInstance()
+          .recordCreate(System.nanoTime() - started, bytesWritten, partCount, succeeded);
+      metrics.add("bytes_written", bytesWritten);
+      metrics.publish(msgCtxt, varprefix);
     }
   }
 }
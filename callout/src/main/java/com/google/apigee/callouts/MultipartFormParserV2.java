@@ -20,18 +20,43 @@ import com.apigee.flow.execution.ExecutionResult;
 import com.apigee.flow.execution.spi.Execution;
 import com.apigee.flow.message.Message;
 import com.apigee.flow.message.MessageContext;
+import com.google.apigee.metrics.CalloutMetrics;
+import com.google.apigee.metrics.ExecutionMetrics;
+import com.google.apigee.metrics.FlightEvents;
 import com.google.apigee.multipartform.Part;
+import com.google.apigee.multipartform.PartOutputStream;
+import com.google.apigee.multipartform.UrlEncodedFormReader;
+import com.google.apigee.stream.ByteArrayContentOutputStream;
+import com.google.apigee.stream.ContentDecoding;
+import com.google.apigee.stream.ContentDigest;
+import com.google.apigee.stream.ContentOutputStream;
+import com.google.apigee.stream.CountingInputStream;
+import com.google.apigee.stream.DigestingContentOutputStream;
+import com.google.apigee.stream.DirectBufferArena;
+import com.google.apigee.stream.LimitExceededException;
+import com.google.apigee.stream.SpillFiles;
 import com.google.apigee.stream.StreamSearcher;
 import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Supplier;
 
 public class MultipartFormParserV2 extends CalloutBase implements Execution {
   private static final String varprefix = "mpf_";
   private static final boolean wantStringDefault = true;
-  private static int BUFFER_SIZE = 2048;
+
+  // the sizes of the bodies and parts this instance has parsed
+  private final BufferSizing bodySizes = new BufferSizing();
+  private final BufferSizing partSizes = new BufferSizing();
+  // the schema last compiled, with its source
+  private volatile Compiled<FormSchema> compiled;
 
   public MultipartFormParserV2(Map properties) {
     super(properties);
@@ -41,14 +66,6 @@ public class MultipartFormParserV2 extends CalloutBase implements Execution {
     return varprefix;
   }
 
-  private String getSource(MessageContext msgCtxt) throws Exception {
-    String source = getSimpleOptionalProperty("source", msgCtxt);
-    if (source == null) {
-      source = "message";
-    }
-    return source;
-  }
-
   public static int safeStringToInt(String str) {
     try {
       return Integer.parseInt(str);
@@ -65,8 +82,167 @@ public class MultipartFormParserV2 extends CalloutBase implements Execution {
     return safeStringToInt(sizeLimitStr);
   }
 
+  // With exact-part-content, the CRLF that begins each delimiter is left out of
+  // the part before it, as well as the "--" and the boundary.
+  private boolean getWantExactPartContent(MessageContext msgCtxt) throws Exception {
+    String wantExact = getSimpleOptionalProperty("exact-part-content", msgCtxt);
+    return (wantExact != null) && Boolean.parseBoolean(wantExact);
+  }
+
+  private FormSchema getSchema(MessageContext msgCtxt) throws Exception {
+    String schema = getSimpleOptionalProperty("schema", msgCtxt);
+    if (schema == null) {
+      return null;
+    }
+    Compiled<FormSchema> entry = compiled;
+    if (entry != null && entry.key.equals(schema)) {
+      return entry.value;
+    }
+    FormSchema formSchema = FormSchema.compile(schema);
+    compiled = new Compiled<FormSchema>(schema, formSchema);
+    return formSchema;
+  }
+
+  // Digests the content of each part as it is written, and keeps the stream
+  // for the part being read, until that part is published.
+  private static final class DigestingSupplier implements Supplier<ContentOutputStream> {
+    private final Supplier<ContentOutputStream> contentSupplier;
+    private final List<String> algorithms;
+    private final boolean base64;
+    private DigestingContentOutputStream current;
+
+    DigestingSupplier(
+        Supplier<ContentOutputStream> contentSupplier, List<String> algorithms, boolean base64) {
+      this.contentSupplier = contentSupplier;
+      this.algorithms = algorithms;
+      this.base64 = base64;
+    }
+
+    public ContentOutputStream get() {
+      current = new DigestingContentOutputStream(contentSupplier.get(), algorithms);
+      return current;
+    }
+  }
+
+  private static boolean isUrlEncoded(String ctype) {
+    int semi = ctype.indexOf(';');
+    String mediaType = (semi < 0) ? ctype : ctype.substring(0, semi);
+    return mediaType.trim().equalsIgnoreCase("application/x-www-form-urlencoded");
+  }
+
+  // Reads the parts of a multipart form, and publishes each of them. Returns
+  // the metrics mark after the last part.
+  private long parseMultipart(
+      MessageContext msgCtxt,
+      InputStream bis,
+      StreamSearcher searcher,
+      Supplier<ContentOutputStream> contentSupplier,
+      DirectBufferArena arena,
+      SpillFiles spillFiles,
+      DigestingSupplier digesting,
+      FormSchema schema,
+      Set<String> fieldNames,
+      List<String> names,
+      ExecutionMetrics metrics,
+      long mark)
+      throws IOException {
+    int numFound = 0;
+    long position = searcher.search(bis);
+    if (position != -1) {
+      for (; ; ) {
+        // With a schema, each part is checked once its headers are read, and
+        // its size as its content is, so a bad form fails as early as it can.
+        PartOutputStream partStream =
+            new PartOutputStream(
+                contentSupplier,
+                metrics.isEnabled(),
+                (schema != null) ? schema::checkHeaders : null);
+        Object event = FlightEvents.INSTANCE.begin(FlightEvents.Kind.BOUNDARY_SCAN);
+        long scanned = searcher.searchAndExtract(bis, partStream);
+        FlightEvents.INSTANCE.end(event, null, scanned, null);
+        if (scanned == -1) {
+          break;
+        }
+        event = FlightEvents.INSTANCE.begin(FlightEvents.Kind.PART_MATERIALIZATION);
+        partStream.close();
+        numFound++;
+        Part part = partStream.getPart();
+        if (part == null) {
+          throw new IllegalStateException("part is null");
+        }
+        fieldNames.add(part.getName());
+        if (event != null) {
+          FlightEvents.INSTANCE.end(
+              event,
+              part.getName(),
+              part.getContent().length(),
+              (arena != null)
+                  ? "direct"
+                  : SpillFiles.isSpilled(part.getContent()) ? "spill" : "heap");
+        }
+        if (metrics.isEnabled()) {
+          // header parsing happens within the scan; the marks before and after
+          // it divide the scan, so that each phase is reported apart
+          if (partStream.getHeaderEnded() != 0) {
+            metrics.add("scan_nanos", partStream.getHeaderStarted() - mark);
+            metrics.add(
+                "headers_nanos", partStream.getHeaderEnded() - partStream.getHeaderStarted());
+            mark = partStream.getHeaderEnded();
+          }
+          mark = metrics.phase("scan", mark);
+          metrics.add("buffer_growths", partStream.getGrowthCount());
+          metrics.add("bytes_written", part.getContent().length());
+          metrics.add("parts", 1);
+        }
+        names.add(publishPart(msgCtxt, numFound, part, arena, spillFiles, digesting));
+        mark = metrics.phase("publish", mark);
+      }
+    }
+    return mark;
+  }
+
+  // Sets the variables for one part, and returns its name as published.
+  private String publishPart(
+      MessageContext msgCtxt,
+      int numFound,
+      Part part,
+      DirectBufferArena arena,
+      SpillFiles spillFiles,
+      DigestingSupplier digesting) {
+    if (part.getName() == null) {
+      throw new IllegalStateException("part.getName() is null");
+    }
+    String fileName = part.getName().replaceAll("[^a-zA-Z0-9_\\. ]", "");
+    msgCtxt.setVariable(varName("item_filename_" + numFound), fileName);
+    msgCtxt.setVariable(
+        varName("item_content_" + numFound),
+        (arena != null || spillFiles != null) ? part.getContent() : part.getPartContent());
+    if ("text/plain".equals(part.getContentType()) && !SpillFiles.isSpilled(part.getContent())) {
+      msgCtxt.setVariable(
+          varName("item_content_" + numFound + "_string"), new String(part.getPartContent()));
+    }
+    msgCtxt.setVariable(varName("item_content-type_" + numFound), part.getContentType());
+    msgCtxt.setVariable(varName("item_size_" + numFound), part.getContent().length() + "");
+    if (digesting != null) {
+      for (Entry<String, byte[]> digest : digesting.current.getDigests().entrySet()) {
+        msgCtxt.setVariable(
+            varName("item_" + digest.getKey() + "_" + numFound),
+            ContentDigest.encode(digest.getValue(), digesting.base64));
+      }
+    }
+    partSizes.record(part.getContent().length());
+    return fileName;
+  }
+
   public ExecutionResult execute(final MessageContext msgCtxt, final ExecutionContext execContext) {
+    long started = System.nanoTime();
+    ExecutionMetrics metrics = ExecutionMetrics.DISABLED;
+    CountingInputStream body = null;
+    int partCount = 0;
+    boolean succeeded = false;
     try {
+      metrics = newMetrics(msgCtxt);
+      long mark = metrics.mark();
       String source = getSource(msgCtxt);
       int sizeLimit = getSizeLimit(msgCtxt);
       Message message = (Message) msgCtxt.getVariable(source);
@@ -78,53 +254,148 @@ public class MultipartFormParserV2 extends CalloutBase implements Execution {
       if (ctype == null) {
         throw new IllegalStateException("missing content-type header");
       }
-      if (!ctype.startsWith("multipart/form-data; boundary=")) {
-        throw new IllegalStateException("content-type does not contain multipart/form-data");
+      boolean urlEncoded = isUrlEncoded(ctype);
+      if (!urlEncoded && !ctype.startsWith("multipart/form-data; boundary=")) {
+        throw new IllegalStateException(
+            "content-type does not contain multipart/form-data"
+                + " or application/x-www-form-urlencoded");
       }
-      String boundary = ctype.substring("multipart/form-data; boundary=".length());
 
-      StreamSearcher searcher =
-          new StreamSearcher(boundary.getBytes(StandardCharsets.UTF_8), sizeLimit);
+      // With direct memory, part content goes straight from the stream into
+      // off-heap buffers, and the content variables hold a Content, not a byte[].
+      // With a spill threshold, larger parts go to temporary files instead.
+      boolean wantDirectMemory = getWantDirectMemory(msgCtxt);
+      long spillThreshold = getSpillThreshold(msgCtxt);
+      if (wantDirectMemory && spillThreshold > 0) {
+        throw new IllegalStateException(
+            "configuration error: use either direct-memory or spill-threshold, not both");
+      }
+      DirectBufferArena arena = wantDirectMemory ? getArena(msgCtxt) : null;
+      SpillFiles spillFiles =
+          (spillThreshold > 0) ? getSpillFiles(msgCtxt, spillThreshold) : null;
+
+      // Size the read buffer for the body, and the heap buffers for parts, from
+      // the Content-Length, and from the sizes seen before, so that large
+      // uploads are read in large chunks, and their parts need not grow their
+      // buffers many times over. With a Content-Encoding, the parts may be
+      // larger than the body, so the Content-Length does not limit them.
+      long contentLength = getContentLength(message);
+      String contentEncoding = message.getHeader("content-encoding");
+      int readBufferSize =
+          BufferSizing.readBufferSize(
+              (contentLength >= 0) ? contentLength : bodySizes.expected(0.5),
+              getSizeProperty("read-buffer-min", BufferSizing.DEFAULT_READ_BUFFER_MIN, msgCtxt),
+              getSizeProperty("read-buffer-max", BufferSizing.DEFAULT_READ_BUFFER_MAX, msgCtxt));
+      int partCapacity =
+          BufferSizing.initialCapacity(
+              BufferSizing.capped(
+                  partSizes.expected(0.9), (contentEncoding == null) ? contentLength : -1),
+              getSizeProperty(
+                  "initial-capacity-max", BufferSizing.DEFAULT_INITIAL_CAPACITY_MAX, msgCtxt));
+      metrics.add("read_buffer_size", readBufferSize);
+      metrics.add("part_capacity", partCapacity);
+      Supplier<ContentOutputStream> storage =
+          (arena != null)
+              ? arena::newOutputStream
+              : (spillFiles != null)
+                  ? spillFiles::newOutputStream
+                  : () -> new ByteArrayContentOutputStream(partCapacity);
+      // Digests are computed as the content of each part is written, to
+      // wherever it goes, rather than read back from there afterwards.
+      List<String> digestAlgorithms = getDigestAlgorithms("digests", msgCtxt);
+      DigestingSupplier digesting =
+          digestAlgorithms.isEmpty()
+              ? null
+              : new DigestingSupplier(storage, digestAlgorithms, getWantBase64Digests(msgCtxt));
+      Supplier<ContentOutputStream> contentSupplier = (digesting != null) ? digesting : storage;
+
+      FormSchema schema = getSchema(msgCtxt);
+      Set<String> fieldNames = new HashSet<String>();
       List<String> names = new ArrayList<String>();
+      long decodedSizeLimit = getDecodedSizeLimit(msgCtxt);
+      mark = metrics.phase("setup", mark);
+      // A body with a Content-Encoding is inflated as it is read, so the
+      // scanner sees the decoded form without the whole body being inflated first.
+      body = new CountingInputStream(message.getContentAsStream());
       try (BufferedInputStream bis =
-          new BufferedInputStream(message.getContentAsStream(), BUFFER_SIZE)) {
-        byte[] buf = null;
-        int numFound = 0;
-        long position = searcher.search(bis);
-        if (position != -1) {
-          do {
-            buf = searcher.searchAndExtract(bis);
-            if (buf != null) {
-              numFound++;
-              Part part = Part.parse(buf);
-              if (part == null) {
-                throw new IllegalStateException("part is null");
-              }
-              if (part.getName() == null) {
-                throw new IllegalStateException("part.getName() is null");
-              }
-              String fileName = part.getName().replaceAll("[^a-zA-Z0-9_\\. ]", "");
-              names.add(fileName);
-              msgCtxt.setVariable(varName("item_filename_" + numFound), fileName);
-              msgCtxt.setVariable(varName("item_content_" + numFound), part.getPartContent());
-              if ("text/plain".equals(part.getContentType())) {
-                msgCtxt.setVariable(
-                    varName("item_content_" + numFound + "_string"),
-                    new String(part.getPartContent()));
-              }
-              msgCtxt.setVariable(varName("item_content-type_" + numFound), part.getContentType());
-              msgCtxt.setVariable(varName("item_size_" + numFound), part.getSize() + "");
+          new BufferedInputStream(
+              ContentDecoding.decode(body, contentEncoding, readBufferSize, decodedSizeLimit),
+              readBufferSize)) {
+        boolean limitReached;
+        if (urlEncoded) {
+          // With a schema, each field is checked once its name is read, and
+          // the size of its value as the value is.
+          UrlEncodedFormReader reader =
+              new UrlEncodedFormReader(
+                  bis,
+                  readBufferSize,
+                  contentSupplier,
+                  sizeLimit,
+                  (schema != null) ? schema::checkHeaders : null);
+          for (; ; ) {
+            Object event = FlightEvents.INSTANCE.begin(FlightEvents.Kind.BOUNDARY_SCAN);
+            Part part = reader.next();
+            if (part == null) {
+              FlightEvents.INSTANCE.end(event, null, -1, null);
+              break;
             }
-          } while (buf != null);
+            FlightEvents.INSTANCE.end(event, part.getName(), part.getContent().length(), null);
+            fieldNames.add(part.getName());
+            if (metrics.isEnabled()) {
+              mark = metrics.phase("scan", mark);
+              metrics.add("bytes_written", part.getContent().length());
+              metrics.add("parts", 1);
+            }
+            names.add(
+                publishPart(msgCtxt, names.size() + 1, part, arena, spillFiles, digesting));
+            mark = metrics.phase("publish", mark);
+          }
+          limitReached = reader.isLimitReached();
+        } else {
+          String boundary = ctype.substring("multipart/form-data; boundary=".length());
+          StreamSearcher searcher =
+              new StreamSearcher(
+                  boundary.getBytes(StandardCharsets.UTF_8),
+                  sizeLimit,
+                  getWantExactPartContent(msgCtxt));
+          mark =
+              parseMultipart(
+                  msgCtxt,
+                  bis,
+                  searcher,
+                  contentSupplier,
+                  arena,
+                  spillFiles,
+                  digesting,
+                  schema,
+                  fieldNames,
+                  names,
+                  metrics,
+                  mark);
+          limitReached = searcher.isLimitReached();
+        }
+        metrics.phase("scan", mark);
+        if (schema != null) {
+          schema.checkRequired(fieldNames);
         }
+        if (limitReached) {
+          CalloutMetrics.getInstance().recordLimitViolation();
+        }
+        partCount = names.size();
+        bodySizes.record(body.getCount());
         msgCtxt.setVariable(varName("itemcount"), names.size() + "");
         if (names.size() > 0) {
           msgCtxt.setVariable(varName("items"), String.join(", ", names));
         }
       } finally {
+        setDirectMemoryDiagnostics(msgCtxt);
       }
+      succeeded = true;
       return ExecutionResult.SUCCESS;
     } catch (IllegalStateException exc1) {
+      if (exc1 instanceof LimitExceededException) {
+        CalloutMetrics.getInstance().recordLimitViolation();
+      }
       if (getDebug()) {
         String stacktrace = getStackTraceAsString(exc1);
         msgCtxt.setVariable(varName("stacktrace"), stacktrace);
@@ -138,6 +409,12 @@ public class MultipartFormParserV2 extends CalloutBase implements Execution {
       }
       setExceptionVariables(e, msgCtxt);
       return ExecutionResult.SUCCESS;
+    } finally {
+      long bytesRead = (body != null) ? body.getCount() : 0L;
+      CalloutMetrics.getInstance()
+          .recordParse(System.nanoTime() - started, bytesRead, partCount, succeeded);
+      metrics.add("bytes_read", bytesRead);
+      metrics.publish(msgCtxt, varprefix);
     }
   }
 }
@@ -0,0 +1,207 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.callouts;
+
+import com.apigee.flow.execution.ExecutionContext;
+import com.apigee.flow.execution.ExecutionResult;
+import com.apigee.flow.execution.spi.Execution;
+import com.apigee.flow.message.Message;
+import com.apigee.flow.message.MessageContext;
+import com.google.apigee.metrics.ExecutionMetrics;
+import com.google.apigee.multipartform.MultipartRewritingInputStream;
+import com.google.apigee.multipartform.Part;
+import com.google.apigee.multipartform.PartRewrite;
+import com.google.apigee.stream.ContentDecoding;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+/**
+ * Copies the multipart form in a source message to a destination message, with parts dropped,
+ * renamed or given new headers, as the destination message is sent. The content of the parts is
+ * copied a buffer at a time, so no part is held in memory, and a malformed form shows up as an
+ * error in sending the message.
+ */
+public class MultipartFormRewriter extends CalloutBase implements Execution {
+  private static final String varprefix = "mpf_";
+
+  // the rules last compiled, keyed by their text
+  private volatile Compiled<Function<Part, PartRewrite>> compiled;
+
+  public MultipartFormRewriter(Map properties) {
+    super(properties);
+  }
+
+  public String getVarnamePrefix() {
+    return varprefix;
+  }
+
+  private boolean getWantNewBoundary(MessageContext msgCtxt) throws Exception {
+    String wantNew = getSimpleOptionalProperty("new-boundary", msgCtxt);
+    return (wantNew != null) && Boolean.parseBoolean(wantNew);
+  }
+
+  private boolean getDropUnmatched(MessageContext msgCtxt) throws Exception {
+    String unmatched = getSimpleOptionalProperty("unmatched", msgCtxt);
+    if (unmatched == null || unmatched.equals("keep")) {
+      return false;
+    }
+    if (unmatched.equals("drop")) {
+      return true;
+    }
+    throw new IllegalStateException(
+        String.format("configuration error: unmatched must be keep or drop, not %s", unmatched));
+  }
+
+  private Function<Part, PartRewrite> getRules(MessageContext msgCtxt) throws Exception {
+    String rules = getSimpleOptionalProperty("rules", msgCtxt);
+    boolean dropUnmatched = getDropUnmatched(msgCtxt);
+    String key = dropUnmatched + ":" + rules;
+    Compiled<Function<Part, PartRewrite>> entry = compiled;
+    if (entry != null && entry.key.equals(key)) {
+      return entry.value;
+    }
+    Function<Part, PartRewrite> function = compileRules(rules, dropUnmatched);
+    compiled = new Compiled<Function<Part, PartRewrite>>(key, function);
+    return function;
+  }
+
+  // eg
+  // {
+  //   "client-meta" : { "drop" : true },
+  //   "file" : { "name" : "document", "headers" : { "content-type" : "application/pdf" } }
+  // }
+  static Function<Part, PartRewrite> compileRules(String rules, boolean dropUnmatched) {
+    final Map<String, PartRewrite> byName = new HashMap<String, PartRewrite>();
+    if (rules != null) {
+      JsonObject spec;
+      try {
+        spec = Json.createReader(new StringReader(rules)).readObject();
+      } catch (RuntimeException e) {
+        throw new IllegalStateException("configuration error: rules are not a JSON object", e);
+      }
+      for (Map.Entry<String, JsonValue> entry : spec.entrySet()) {
+        if (entry.getValue().getValueType() != JsonValue.ValueType.OBJECT) {
+          throw new IllegalStateException(
+              String.format("configuration error: invalid rule for part %s", entry.getKey()));
+        }
+        JsonObject rule = (JsonObject) entry.getValue();
+        PartRewrite rewrite =
+            new PartRewrite()
+                .withDrop(rule.getBoolean("drop", false))
+                .withName(rule.getString("name", null))
+                .withFileName(rule.getString("file-name", null));
+        JsonObject headers = rule.getJsonObject("headers");
+        if (headers != null) {
+          for (Map.Entry<String, JsonValue> header : headers.entrySet()) {
+            JsonValue value = header.getValue();
+            if (value.getValueType() != JsonValue.ValueType.STRING
+                && value.getValueType() != JsonValue.ValueType.NULL) {
+              throw new IllegalStateException(
+                  String.format(
+                      "configuration error: header %s of part %s must be a string or null",
+                      header.getKey(), entry.getKey()));
+            }
+            rewrite.withHeader(
+                header.getKey(),
+                (value.getValueType() == JsonValue.ValueType.STRING)
+                    ? ((JsonString) value).getString()
+                    : null);
+          }
+        }
+        byName.put(entry.getKey(), rewrite);
+      }
+    }
+    final PartRewrite unmatched = dropUnmatched ? new PartRewrite().withDrop(true) : null;
+    return part -> {
+      PartRewrite rewrite = byName.get(part.getName());
+      return (rewrite != null) ? rewrite : unmatched;
+    };
+  }
+
+  public ExecutionResult execute(final MessageContext msgCtxt, final ExecutionContext execContext) {
+    ExecutionMetrics metrics = ExecutionMetrics.DISABLED;
+    try {
+      metrics = newMetrics(msgCtxt);
+      long mark = metrics.mark();
+      Message source = (Message) msgCtxt.getVariable(getSource(msgCtxt));
+      if (source == null) {
+        throw new IllegalStateException("source message is null.");
+      }
+      String destinationName = getDestination(msgCtxt);
+      Message destination = (Message) msgCtxt.getVariable(destinationName);
+      if (destination == null) {
+        throw new IllegalStateException(
+            String.format("message <%s> does not exist", destinationName));
+      }
+      String ctype = source.getHeader("content-type");
+      if (ctype == null) {
+        throw new IllegalStateException("missing content-type header");
+      }
+      if (!ctype.startsWith("multipart/form-data; boundary=")) {
+        throw new IllegalStateException("content-type does not contain multipart/form-data");
+      }
+      String boundary = ctype.substring("multipart/form-data; boundary=".length());
+      Function<Part, PartRewrite> rules = getRules(msgCtxt);
+      String newBoundary =
+          getWantNewBoundary(msgCtxt)
+              ? "--------------------" + randomAlphanumeric(14)
+              : boundary;
+      msgCtxt.setVariable(varName("boundary"), newBoundary);
+
+      int readBufferSize =
+          BufferSizing.readBufferSize(
+              getContentLength(source),
+              getSizeProperty("read-buffer-min", BufferSizing.DEFAULT_READ_BUFFER_MIN, msgCtxt),
+              getSizeProperty("read-buffer-max", BufferSizing.DEFAULT_READ_BUFFER_MAX, msgCtxt));
+      metrics.add("read_buffer_size", readBufferSize);
+      InputStream body =
+          ContentDecoding.decode(
+              source.getContentAsStream(),
+              source.getHeader("content-encoding"),
+              readBufferSize,
+              getDecodedSizeLimit(msgCtxt));
+
+      // The source content is read only as the destination content is; get
+      // the one before setting the other, as they may be the same message.
+      destination.setContent(
+          new MultipartRewritingInputStream(body, boundary, newBoundary, readBufferSize, rules));
+      destination.removeHeader("content-length");
+      destination.removeHeader("content-encoding");
+      destination.removeHeader("content-type");
+      destination.setHeader("content-type", "multipart/form-data; boundary=" + newBoundary);
+      msgCtxt.setVariable(varName("ctype"), "multipart/form-data; boundary=" + newBoundary);
+      msgCtxt.setVariable(destinationName + ".header.modified", "true");
+      metrics.phase("setup", mark);
+      return ExecutionResult.SUCCESS;
+    } catch (Exception e) {
+      if (getDebug()) {
+        String stacktrace = getStackTraceAsString(e);
+        msgCtxt.setVariable(varName("stacktrace"), stacktrace);
+      }
+      setExceptionVariables(e, msgCtxt);
+      return ExecutionResult.ABORT;
+    } finally {
+      metrics.publish(msgCtxt, varprefix);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.callouts;
+
+import com.apigee.flow.execution.ExecutionContext;
+import com.apigee.flow.execution.ExecutionResult;
+import com.apigee.flow.execution.spi.Execution;
+import com.apigee.flow.message.Message;
+import com.apigee.flow.message.MessageContext;
+import com.google.apigee.metrics.ExecutionMetrics;
+import com.google.apigee.multipartform.MultipartToJsonInputStream;
+import com.google.apigee.stream.ContentDecoding;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Replaces the content of a message with a JSON document that holds the parts of the multipart
+ * form in a source message. The document is produced as the message is sent, so the form is never
+ * held in memory, and a malformed form shows up as an error in sending the message.
+ */
+public class MultipartFormToJson extends CalloutBase implements Execution {
+  private static final String varprefix = "mpf_";
+  private static final String DEFAULT_TEXT_TYPES =
+      "text/*, application/json, application/*+json, application/xml, application/*+xml,"
+          + " application/x-www-form-urlencoded";
+
+  public MultipartFormToJson(Map properties) {
+    super(properties);
+  }
+
+  public String getVarnamePrefix() {
+    return varprefix;
+  }
+
+  public ExecutionResult execute(final MessageContext msgCtxt, final ExecutionContext execContext) {
+    ExecutionMetrics metrics = ExecutionMetrics.DISABLED;
+    try {
+      metrics = newMetrics(msgCtxt);
+      long mark = metrics.mark();
+      Message source = (Message) msgCtxt.getVariable(getSource(msgCtxt));
+      if (source == null) {
+        throw new IllegalStateException("source message is null.");
+      }
+      String destinationName = getDestination(msgCtxt);
+      Message destination = (Message) msgCtxt.getVariable(destinationName);
+      if (destination == null) {
+        throw new IllegalStateException(
+            String.format("message <%s> does not exist", destinationName));
+      }
+      String ctype = source.getHeader("content-type");
+      if (ctype == null) {
+        throw new IllegalStateException("missing content-type header");
+      }
+      if (!ctype.startsWith("multipart/form-data; boundary=")) {
+        throw new IllegalStateException("content-type does not contain multipart/form-data");
+      }
+      String boundary = ctype.substring("multipart/form-data; boundary=".length());
+      // parts to pass as text
+      Predicate<String> isText =
+          getMediaTypes("text-content-types", DEFAULT_TEXT_TYPES, msgCtxt);
+
+      int readBufferSize =
+          BufferSizing.readBufferSize(
+              getContentLength(source),
+              getSizeProperty("read-buffer-min", BufferSizing.DEFAULT_READ_BUFFER_MIN, msgCtxt),
+              getSizeProperty("read-buffer-max", BufferSizing.DEFAULT_READ_BUFFER_MAX, msgCtxt));
+      metrics.add("read_buffer_size", readBufferSize);
+      InputStream body =
+          ContentDecoding.decode(
+              source.getContentAsStream(),
+              source.getHeader("content-encoding"),
+              readBufferSize,
+              getDecodedSizeLimit(msgCtxt));
+
+      // The source content is read only as the destination content is; get
+      // the one before setting the other, as they may be the same message.
+      destination.setContent(
+          new MultipartToJsonInputStream(body, boundary, readBufferSize, isText));
+      destination.removeHeader("content-length");
+      destination.removeHeader("content-encoding");
+      destination.removeHeader("content-type");
+      destination.setHeader("content-type", "application/json");
+      msgCtxt.setVariable(destinationName + ".header.modified", "true");
+      metrics.phase("setup", mark);
+      return ExecutionResult.SUCCESS;
+    } catch (Exception e) {
+      if (getDebug()) {
+        String stacktrace = getStackTraceAsString(e);
+        msgCtxt.setVariable(varName("stacktrace"), stacktrace);
+      }
+      setExceptionVariables(e, msgCtxt);
+      return ExecutionResult.ABORT;
+    } finally {
+      metrics.publish(msgCtxt, varprefix);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.callouts;
+
+import com.apigee.flow.execution.ExecutionContext;
+import com.apigee.flow.execution.ExecutionResult;
+import com.apigee.flow.execution.spi.Execution;
+import com.apigee.flow.message.Message;
+import com.apigee.flow.message.MessageContext;
+import com.google.apigee.metrics.ExecutionMetrics;
+import com.google.apigee.multipartform.ZipToMultipartInputStream;
+import com.google.apigee.stream.ContentDecoding;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Replaces the content of a message with a multipart form that holds the files in the ZIP archive
+ * in a source message, one part per file. The form is produced as the message is sent, so neither
+ * the archive nor the files are held in memory, and a malformed archive shows up as an error in
+ * sending the message.
+ */
+public class ZipToMultipartForm extends CalloutBase implements Execution {
+  private static final String varprefix = "mpf_";
+
+  public ZipToMultipartForm(Map properties) {
+    super(properties);
+  }
+
+  public String getVarnamePrefix() {
+    return varprefix;
+  }
+
+  public ExecutionResult execute(final MessageContext msgCtxt, final ExecutionContext execContext) {
+    ExecutionMetrics metrics = ExecutionMetrics.DISABLED;
+    try {
+      metrics = newMetrics(msgCtxt);
+      long mark = metrics.mark();
+      Message source = (Message) msgCtxt.getVariable(getSource(msgCtxt));
+      if (source == null) {
+        throw new IllegalStateException("source message is null.");
+      }
+      String destinationName = getDestination(msgCtxt);
+      Message destination = (Message) msgCtxt.getVariable(destinationName);
+      if (destination == null) {
+        throw new IllegalStateException(
+            String.format("message <%s> does not exist", destinationName));
+      }
+      String ctype = source.getHeader("content-type");
+      if (ctype != null && !ctype.startsWith("application/zip")
+          && !ctype.startsWith("application/x-zip-compressed")
+          && !ctype.startsWith("application/octet-stream")) {
+        throw new IllegalStateException("content-type is not application/zip");
+      }
+      String partName = getSimpleOptionalProperty("part-name", msgCtxt);
+      long decodedSizeLimit = getDecodedSizeLimit(msgCtxt);
+
+      int readBufferSize =
+          BufferSizing.readBufferSize(
+              getContentLength(source),
+              getSizeProperty("read-buffer-min", BufferSizing.DEFAULT_READ_BUFFER_MIN, msgCtxt),
+              getSizeProperty("read-buffer-max", BufferSizing.DEFAULT_READ_BUFFER_MAX, msgCtxt));
+      metrics.add("read_buffer_size", readBufferSize);
+      InputStream body =
+          ContentDecoding.decode(
+              source.getContentAsStream(),
+              source.getHeader("content-encoding"),
+              readBufferSize,
+              decodedSizeLimit);
+
+      String boundary = "--------------------" + randomAlphanumeric(14);
+      String contentType = "multipart/form-data; boundary=" + boundary;
+      // The source content is read only as the destination content is; get
+      // the one before setting the other, as they may be the same message.
+      destination.setContent(
+          new ZipToMultipartInputStream(body, boundary, partName, decodedSizeLimit));
+      destination.removeHeader("content-length");
+      destination.removeHeader("content-encoding");
+      destination.removeHeader("content-type");
+      destination.setHeader("content-type", contentType);
+      msgCtxt.setVariable(varName("boundary"), boundary);
+      msgCtxt.setVariable(varName("ctype"), contentType);
+      msgCtxt.setVariable(destinationName + ".header.modified", "true");
+      metrics.phase("setup", mark);
+      return ExecutionResult.SUCCESS;
+    } catch (Exception e) {
+      if (getDebug()) {
+        String stacktrace = getStackTraceAsString(e);
+        msgCtxt.setVariable(varName("stacktrace"), stacktrace);
+      }
+      setExceptionVariables(e, msgCtxt);
+      return ExecutionResult.ABORT;
+    } finally {
+      metrics.publish(msgCtxt, varprefix);
+    }
+  }
+}
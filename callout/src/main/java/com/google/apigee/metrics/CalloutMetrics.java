@@ -0,0 +1,271 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.metrics;
+
+import com.google.apigee.stream.DirectBufferArena;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts and distributions across all executions of the callouts in this process. Every execution
+ * records into the one instance, so the counters are LongAdders, which many threads can update at
+ * once without contending.
+ *
+ * <p>The instance is registered with the platform MBean server as {@value #OBJECT_NAME}, for JMX
+ * clients such as jconsole. If the callouts are loaded again by another class loader, as when a
+ * proxy is redeployed, the new instance replaces the one registered before, so that the server
+ * does not keep the old class loader, and its pool of direct memory, reachable. Where the runtime
+ * does not allow access to the MBean server, the counts are still kept, and are available from
+ * {@link #getInstance()}.
+ */
+public final class CalloutMetrics implements MultipartCalloutsMXBean {
+  public static final String OBJECT_NAME = "com.google.apigee.callouts:type=MultipartCallouts";
+
+  private static final CalloutMetrics instance = new CalloutMetrics();
+
+  static {
+    try {
+      instance.register(ManagementFactory.getPlatformMBeanServer());
+    } catch (Exception | LinkageError e) {
+      // no JMX here; the counts are still kept
+    }
+  }
+
+  private final LongAdder parses = new LongAdder();
+  private final LongAdder parseFailures = new LongAdder();
+  private final LongAdder partsParsed = new LongAdder();
+  private final LongAdder bytesParsed = new LongAdder();
+  private final Histogram parseLatency = new Histogram();
+  private final Histogram parseSize = new Histogram();
+
+  private final LongAdder creates = new LongAdder();
+  private final LongAdder createFailures = new LongAdder();
+  private final LongAdder partsCreated = new LongAdder();
+  private final LongAdder bytesCreated = new LongAdder();
+  private final Histogram createLatency = new Histogram();
+  private final Histogram createSize = new Histogram();
+
+  private final LongAdder contentSets = new LongAdder();
+  private final LongAdder contentSetFailures = new LongAdder();
+  private final Histogram contentSetLatency = new Histogram();
+
+  private final LongAdder limitViolations = new LongAdder();
+
+  private volatile ObjectName registeredName;
+
+  CalloutMetrics() {}
+
+  public static CalloutMetrics getInstance() {
+    return instance;
+  }
+
+  // Registers this instance under the one name, unregistering whatever was
+  // registered there before.
+  void register(MBeanServer server) throws JMException {
+    ObjectName name = new ObjectName(OBJECT_NAME);
+    for (int attempt = 0; ; attempt++) {
+      try {
+        server.unregisterMBean(name);
+      } catch (InstanceNotFoundException e) {
+        // nothing to replace
+      }
+      try {
+        server.registerMBean(this, name);
+        registeredName = name;
+        return;
+      } catch (InstanceAlreadyExistsException e) {
+        // another loader registered in between; replace that one
+        if (attempt == 2) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  /** Returns the name under which this instance is registered, or null if it is not. */
+  public ObjectName getRegisteredName() {
+    return registeredName;
+  }
+
+  /**
+   * @param nanos the time the execution took
+   * @param bytes the size of the body read
+   * @param parts the number of parts found
+   */
+  public void recordParse(long nanos, long bytes, int parts, boolean succeeded) {
+    parses.increment();
+    if (!succeeded) {
+      parseFailures.increment();
+    }
+    partsParsed.add(parts);
+    bytesParsed.add(bytes);
+    parseLatency.record(nanos);
+    parseSize.record(bytes);
+  }
+
+  /**
+   * @param nanos the time the execution took
+   * @param bytes the size of the form, or 0 if none was produced
+   * @param parts the number of parts in the form
+   */
+  public void recordCreate(long nanos, long bytes, int parts, boolean succeeded) {
+    creates.increment();
+    if (!succeeded) {
+      createFailures.increment();
+    }
+    partsCreated.add(parts);
+    bytesCreated.add(bytes);
+    createLatency.record(nanos);
+    createSize.record(bytes);
+  }
+
+  public void recordContentSet(long nanos, boolean succeeded) {
+    contentSets.increment();
+    if (!succeeded) {
+      contentSetFailures.increment();
+    }
+    contentSetLatency.record(nanos);
+  }
+
+  /** Counts input rejected or cut short because it exceeded a configured limit. */
+  public void recordLimitViolation() {
+    limitViolations.increment();
+  }
+
+  private static Map<String, Long> distribution(Histogram histogram) {
+    Map<String, Long> map = new LinkedHashMap<String, Long>();
+    map.put("count", histogram.getCount());
+    map.put("mean", histogram.getMean());
+    map.put("p50", histogram.percentile(0.50));
+    map.put("p90", histogram.percentile(0.90));
+    map.put("p99", histogram.percentile(0.99));
+    map.put("p999", histogram.percentile(0.999));
+    map.put("max", histogram.getMax());
+    return map;
+  }
+
+  public long getParseCount() {
+    return parses.sum();
+  }
+
+  public long getParseFailureCount() {
+    return parseFailures.sum();
+  }
+
+  public long getPartsParsed() {
+    return partsParsed.sum();
+  }
+
+  public long getBytesParsed() {
+    return bytesParsed.sum();
+  }
+
+  public Map<String, Long> getParseLatencyNanos() {
+    return distribution(parseLatency);
+  }
+
+  public Map<String, Long> getParseSizeBytes() {
+    return distribution(parseSize);
+  }
+
+  public long getCreateCount() {
+    return creates.sum();
+  }
+
+  public long getCreateFailureCount() {
+    return createFailures.sum();
+  }
+
+  public long getPartsCreated() {
+    return partsCreated.sum();
+  }
+
+  public long getBytesCreated() {
+    return bytesCreated.sum();
+  }
+
+  public Map<String, Long> getCreateLatencyNanos() {
+    return distribution(createLatency);
+  }
+
+  public Map<String, Long> getCreateSizeBytes() {
+    return distribution(createSize);
+  }
+
+  public long getContentSetCount() {
+    return contentSets.sum();
+  }
+
+  public long getContentSetFailureCount() {
+    return contentSetFailures.sum();
+  }
+
+  public Map<String, Long> getContentSetLatencyNanos() {
+    return distribution(contentSetLatency);
+  }
+
+  public long getLimitViolationCount() {
+    return limitViolations.sum();
+  }
+
+  public long getDirectPoolHits() {
+    return DirectBufferArena.getPoolHits();
+  }
+
+  public long getDirectPoolMisses() {
+    return DirectBufferArena.getPoolMisses();
+  }
+
+  public double getDirectPoolHitRate() {
+    long hits = DirectBufferArena.getPoolHits();
+    long total = hits + DirectBufferArena.getPoolMisses();
+    return (total == 0) ? 0.0 : (double) hits / total;
+  }
+
+  public int getDirectPoolBlocks() {
+    return DirectBufferArena.getPooledBlockCount();
+  }
+
+  public long getDirectPoolDroppedBlocks() {
+    return DirectBufferArena.getDroppedBlocks();
+  }
+
+  public long getDirectMemoryLeaks() {
+    return DirectBufferArena.getLeakCount();
+  }
+
+  public void reset() {
+    for (LongAdder adder :
+        new LongAdder[] {
+          parses, parseFailures, partsParsed, bytesParsed,
+          creates, createFailures, partsCreated, bytesCreated,
+          contentSets, contentSetFailures, limitViolations
+        }) {
+      adder.reset();
+    }
+    for (Histogram histogram :
+        new Histogram[] {parseLatency, parseSize, createLatency, createSize, contentSetLatency}) {
+      histogram.reset();
+    }
+  }
+}
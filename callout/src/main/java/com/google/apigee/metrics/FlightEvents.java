@@ -0,0 +1,82 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.metrics;
+
+/**
+ * Events for Java Flight Recorder, around the phases of the callouts, so that their work can be
+ * seen alongside GC, allocation and thread events in one recording.
+ *
+ * <p>The events themselves use jdk.jfr, which is not in Java 8. They are built from
+ * src/main/java11 into META-INF/versions/11 of the multi-release jar, and loaded by name. Where
+ * they are absent, as on Java 8, or the runtime has no jdk.jfr module, {@link #INSTANCE} does
+ * nothing.
+ *
+ * <p>Use: {@code Object event = FlightEvents.INSTANCE.begin(FlightEvents.Kind.PART_HEADERS); ...
+ * FlightEvents.INSTANCE.end(event, name, size, engine);}. When the kind of event is not being
+ * recorded, begin returns null, and end returns at once.
+ */
+public abstract class FlightEvents {
+  private static final String JFR_IMPLEMENTATION = "com.google.apigee.metrics.JfrFlightEvents";
+
+  public enum Kind {
+    /** Searching for the next boundary, and copying the part on the way. Size: bytes scanned. */
+    BOUNDARY_SCAN,
+    /** Parsing the headers of one part. Name: the part name. */
+    PART_HEADERS,
+    /** Completing the content of one part. Name, size, and engine: heap, direct or spill. */
+    PART_MATERIALIZATION,
+    /** Reading the descriptor of a form to create. Size: the descriptor length. */
+    DESCRIPTOR_COMPILATION,
+    /** Laying out a created form. Size: the form length. Engine: streamed, direct or heap. */
+    PAYLOAD_ASSEMBLY
+  }
+
+  public static final FlightEvents INSTANCE = load();
+
+  private static FlightEvents load() {
+    try {
+      Class<?> c = Class.forName(JFR_IMPLEMENTATION);
+      return (FlightEvents) c.getDeclaredConstructor().newInstance();
+    } catch (Exception | LinkageError e) {
+      // Java 8, or a runtime without jdk.jfr
+      return new Disabled();
+    }
+  }
+
+  private static final class Disabled extends FlightEvents {
+    public Object begin(Kind kind) {
+      return null;
+    }
+
+    public void end(Object event, String name, long size, String engine) {}
+  }
+
+  /** Returns true if events can be recorded, rather than always discarded. */
+  public boolean isAvailable() {
+    return !(this instanceof Disabled);
+  }
+
+  /** Starts timing an event, or returns null if events of this kind are not being recorded. */
+  public abstract Object begin(Kind kind);
+
+  /**
+   * Ends the event and commits it, with the given fields. Fields that do not apply to the kind of
+   * event are ignored.
+   *
+   * @param event what {@link #begin(Kind)} returned; may be null
+   */
+  public abstract void end(Object event, String name, long size, String engine);
+}
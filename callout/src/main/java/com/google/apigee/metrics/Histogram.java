@@ -0,0 +1,142 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values, such as durations in nanoseconds or sizes in bytes. Values
+ * below 16 are counted exactly; above that, each power of two is split into 16 buckets, so a
+ * reported percentile is within about 6% of the true value.
+ *
+ * <p>Each bucket is a LongAdder, so many threads can record at once without contending. Reading
+ * while others record gives a consistent enough view for monitoring, not an exact snapshot.
+ */
+public final class Histogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+  public Histogram() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int sub = (int) (value >>> shift) - SUB_BUCKETS;
+    return (shift + 1) * SUB_BUCKETS + sub;
+  }
+
+  /** The largest value counted in the bucket. */
+  static long upperBoundOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lower + ((1L << shift) - 1);
+  }
+
+  /** Counts a value. Negative values are counted as zero. */
+  public void record(long value) {
+    long v = Math.max(0L, value);
+    buckets[bucketOf(v)].increment();
+    count.increment();
+    sum.add(v);
+    max.accumulate(v);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getSum() {
+    return sum.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public long getMean() {
+    long n = count.sum();
+    return (n == 0) ? 0 : sum.sum() / n;
+  }
+
+  /** Returns the value at or below which the given fraction of the recorded values fall. */
+  public long percentile(double fraction) {
+    long total = count.sum();
+    if (total == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(fraction * total));
+    long seen = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      seen += buckets[i].sum();
+      if (seen >= target) {
+        return Math.min(upperBoundOf(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  /**
+   * Returns the counts per power of two, as rows of {upper bound, count}, without the empty rows at
+   * either end.
+   */
+  public long[][] powerOfTwoBuckets() {
+    long[] byPower = new long[64];
+    for (int i = 0; i < buckets.length; i++) {
+      long n = buckets[i].sum();
+      if (n != 0) {
+        byPower[63 - Long.numberOfLeadingZeros(Math.max(1, upperBoundOf(i)))] += n;
+      }
+    }
+    int first = 0;
+    while (first < 63 && byPower[first] == 0) {
+      first++;
+    }
+    int last = 63;
+    while (last > first && byPower[last] == 0) {
+      last--;
+    }
+    long[][] rows = new long[last - first + 1][];
+    for (int p = first; p <= last; p++) {
+      rows[p - first] = new long[] {(p == 63) ? Long.MAX_VALUE : (2L << p) - 1, byPower[p]};
+    }
+    return rows;
+  }
+
+  public void reset() {
+    for (LongAdder bucket : buckets) {
+      bucket.reset();
+    }
+    count.reset();
+    sum.reset();
+    max.reset();
+  }
+}
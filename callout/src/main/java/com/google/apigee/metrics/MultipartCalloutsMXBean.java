@@ -0,0 +1,76 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link CalloutMetrics}. Counts are since the process started, or
+ * since the last {@link #reset()}. A distribution is a map with the keys count, mean, p50, p90,
+ * p99, p999 and max.
+ */
+public interface MultipartCalloutsMXBean {
+  long getParseCount();
+
+  long getParseFailureCount();
+
+  long getPartsParsed();
+
+  long getBytesParsed();
+
+  Map<String, Long> getParseLatencyNanos();
+
+  Map<String, Long> getParseSizeBytes();
+
+  long getCreateCount();
+
+  long getCreateFailureCount();
+
+  long getPartsCreated();
+
+  long getBytesCreated();
+
+  Map<String, Long> getCreateLatencyNanos();
+
+  Map<String, Long> getCreateSizeBytes();
+
+  long getContentSetCount();
+
+  long getContentSetFailureCount();
+
+  Map<String, Long> getContentSetLatencyNanos();
+
+  long getLimitViolationCount();
+
+  long getDirectPoolHits();
+
+  long getDirectPoolMisses();
+
+  /** The fraction of direct memory blocks taken from the pool, from 0 to 1. */
+  double getDirectPoolHitRate();
+
+  int getDirectPoolBlocks();
+
+  long getDirectPoolDroppedBlocks();
+
+  long getDirectMemoryLeaks();
+
+  /**
+   * Sets the counts and distributions back to zero. The direct memory pool figures belong to the
+   * pool, and are not reset.
+   */
+  void reset();
+}
@@ -0,0 +1,34 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.multipartform;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/** A form body assembled from parts, as it is read. */
+public interface Form {
+  /** Returns the value for the Content-Type header of the form. */
+  String getContentType();
+
+  /**
+   * Returns the length of the stream that openStream() returns, without assembling the form, or -1
+   * if that cannot be known in advance.
+   */
+  long getContentLength() throws IOException;
+
+  InputStream openStream();
+}
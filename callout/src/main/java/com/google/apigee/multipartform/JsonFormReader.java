@@ -0,0 +1,427 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.multipartform;
+
+import com.google.apigee.stream.Base64DecodingOutputStream;
+import com.google.apigee.stream.ByteArrayContentOutputStream;
+import com.google.apigee.stream.Content;
+import com.google.apigee.stream.ContentOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import javax.json.JsonWriter;
+import javax.json.stream.JsonParser;
+
+/**
+ * Reads the parts of a form from a JSON document, with a streaming JsonParser, according to rules
+ * that map the values in the document to parts. The rules are a JSON object; each name is a path to
+ * values in the document, such as "/file" or "/attachments/*&#47;data", where "*" matches any one
+ * property name or array index, and each value says what to make of the values at that path:
+ *
+ * <pre>
+ * {
+ *   "/file/data" : { "name" : "upload", "base64" : true,
+ *                    "file-name-field" : "name", "content-type-field" : "type" },
+ *   "/metadata" : { "json" : true },
+ *   "/client" : { "ignore" : true }
+ * }
+ * </pre>
+ *
+ * <p>A base64 string is decoded into the content of its part a chunk at a time, and a "data:" URL
+ * prefix, if any, gives the content type. The file-name-field and content-type-field name string
+ * properties of the object that holds the value; they are not used for values within an array. A
+ * rule with "json" makes one application/json part of an object or array. Values that no rule
+ * matches become text parts named by their property, or are ignored if so configured; objects and
+ * arrays that no rule matches are walked into.
+ *
+ * <p>An instance holds only the compiled rules, and may be shared between threads.
+ */
+public class JsonFormReader {
+  private static final int CHUNK_SIZE = 8192;
+  // the size of the buffer the parser starts with, by default
+  private static final int MIN_BUFFER_SIZE = 4096;
+  // sibling properties longer than this are not kept for file names and content types
+  private static final int MAX_FIELD_LENGTH = 1024;
+  // the buffer pool of the reference implementation, named so that it is loaded only if present
+  private static final String BUFFER_POOL = "org.glassfish.json.api.BufferPool";
+  private static final boolean HAVE_BUFFER_POOL = isPresent(BUFFER_POOL);
+
+  private static final class Rule {
+    final String[] path;
+    final String name;
+    final String contentType;
+    final String fileName;
+    final String fileNameField;
+    final String contentTypeField;
+    final boolean base64;
+    final boolean json;
+    final boolean ignore;
+
+    Rule(String[] path, JsonObject spec) {
+      this.path = path;
+      this.name = spec.getString("name", null);
+      this.contentType = spec.getString("content-type", null);
+      this.fileName = spec.getString("file-name", null);
+      this.fileNameField = spec.getString("file-name-field", null);
+      this.contentTypeField = spec.getString("content-type-field", null);
+      this.base64 = spec.getBoolean("base64", false);
+      this.json = spec.getBoolean("json", false);
+      this.ignore = spec.getBoolean("ignore", false);
+    }
+
+    boolean matches(List<String> current) {
+      if (path.length != current.size()) {
+        return false;
+      }
+      for (int i = path.length - 1; i >= 0; i--) {
+        if (!path[i].equals("*") && !path[i].equals(current.get(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  // a part waiting for the end of its object, for the fields named by its rule
+  private static final class Pending {
+    final Part part;
+    final Rule rule;
+
+    Pending(Part part, Rule rule) {
+      this.part = part;
+      this.rule = rule;
+    }
+  }
+
+  private static final class Frame {
+    final boolean array;
+    int index;
+    Map<String, String> fields;
+    List<Pending> pending;
+
+    Frame(boolean array) {
+      this.array = array;
+    }
+  }
+
+  private final List<Rule> rules = new ArrayList<Rule>();
+  private final boolean ignoreUnmatched;
+  private final boolean wantFields;
+
+  /**
+   * @param rulesJson the rules, as a JSON object; may be null, for none
+   * @param ignoreUnmatched whether to ignore values that no rule matches, rather than make text
+   *     parts of them
+   * @throws IllegalStateException if the rules are not valid
+   */
+  public JsonFormReader(String rulesJson, boolean ignoreUnmatched) {
+    this.ignoreUnmatched = ignoreUnmatched;
+    boolean wantFields = false;
+    if (rulesJson != null) {
+      JsonObject spec;
+      try {
+        spec = Json.createReader(new StringReader(rulesJson)).readObject();
+      } catch (RuntimeException e) {
+        throw new IllegalStateException("configuration error: rules are not a JSON object", e);
+      }
+      for (Map.Entry<String, JsonValue> entry : spec.entrySet()) {
+        String path = entry.getKey();
+        if (!path.startsWith("/")
+            || entry.getValue().getValueType() != JsonValue.ValueType.OBJECT) {
+          throw new IllegalStateException(
+              String.format("configuration error: invalid rule for %s", path));
+        }
+        Rule rule = new Rule(path.substring(1).split("/", -1), (JsonObject) entry.getValue());
+        wantFields |= rule.fileNameField != null || rule.contentTypeField != null;
+        rules.add(rule);
+      }
+    }
+    this.wantFields = wantFields;
+  }
+
+  private Rule match(List<String> path) {
+    for (Rule rule : rules) {
+      if (rule.matches(path)) {
+        return rule;
+      }
+    }
+    return null;
+  }
+
+  // the last property name in the path, rather than an array index
+  private static String defaultName(List<String> path, List<Frame> frames) {
+    for (int i = path.size() - 1; i >= 0; i--) {
+      if (!frames.get(i).array) {
+        return path.get(i);
+      }
+    }
+    return "value";
+  }
+
+  /**
+   * Reads the document, and returns its parts in document order.
+   *
+   * @param contentSupplier where to put the content of each part; or null, for heap buffers of the
+   *     decoded size
+   */
+  public List<Part> read(InputStream in, Supplier<ContentOutputStream> contentSupplier)
+      throws IOException {
+    return read(in, contentSupplier, 0);
+  }
+
+  /**
+   * Reads the document, and returns its parts in document order.
+   *
+   * @param contentSupplier where to put the content of each part; or null, for heap buffers of the
+   *     decoded size
+   * @param bufferSize the size of the buffer of the parser, in chars. The parser holds each value
+   *     whole in its buffer, and doubles the buffer to fit a longer one; with a buffer the size of
+   *     the document, a long base64 value is not copied over as the buffer grows.
+   */
+  public List<Part> read(
+      InputStream in, Supplier<ContentOutputStream> contentSupplier, int bufferSize)
+      throws IOException {
+    List<Part> parts = new ArrayList<Part>();
+    // the path to the current value, and the object or array each step is in
+    List<String> path = new ArrayList<String>();
+    List<Frame> frames = new ArrayList<Frame>();
+    String key = null;
+    byte[] chunk = new byte[CHUNK_SIZE];
+    try (JsonParser parser = newParser(in, bufferSize)) {
+      while (parser.hasNext()) {
+        JsonParser.Event event = parser.next();
+        if (event == JsonParser.Event.KEY_NAME) {
+          key = parser.getString();
+          continue;
+        }
+        if (event == JsonParser.Event.END_OBJECT || event == JsonParser.Event.END_ARRAY) {
+          Frame frame = frames.remove(frames.size() - 1);
+          if (!path.isEmpty()) {
+            path.remove(path.size() - 1);
+          }
+          if (frame.pending != null) {
+            for (Pending pending : frame.pending) {
+              resolveFields(pending, frame.fields);
+            }
+          }
+          continue;
+        }
+        // a value: where is it?
+        Frame parent = frames.isEmpty() ? null : frames.get(frames.size() - 1);
+        if (parent != null) {
+          path.add(parent.array ? Integer.toString(parent.index++) : key);
+        }
+        Rule rule = (parent != null) ? match(path) : null;
+        String name =
+            (rule != null && rule.name != null)
+                ? rule.name
+                : (parent != null) ? defaultName(path, frames) : "value";
+
+        if (event == JsonParser.Event.START_OBJECT || event == JsonParser.Event.START_ARRAY) {
+          if (rule != null && (rule.ignore || rule.json)) {
+            if (rule.ignore) {
+              if (event == JsonParser.Event.START_OBJECT) {
+                parser.skipObject();
+              } else {
+                parser.skipArray();
+              }
+            } else {
+              parts.add(jsonPart(name, rule, parser.getValue()));
+            }
+            path.remove(path.size() - 1);
+            continue;
+          }
+          Frame frame = new Frame(event == JsonParser.Event.START_ARRAY);
+          if (wantFields && !frame.array) {
+            frame.fields = new HashMap<String, String>();
+          }
+          frames.add(frame);
+          continue;
+        }
+
+        // a scalar
+        if (parent != null) {
+          path.remove(path.size() - 1);
+        }
+        String value = scalar(event, parser);
+        if (parent != null && parent.fields != null && value != null
+            && value.length() <= MAX_FIELD_LENGTH) {
+          parent.fields.put(key, value);
+        }
+        if (value == null || (rule != null && rule.ignore) || (rule == null && ignoreUnmatched)) {
+          continue;
+        }
+        Part part = new Part(name);
+        String contentType = (rule != null) ? rule.contentType : null;
+        if (rule != null && rule.base64) {
+          int comma = dataUrlComma(value);
+          if (comma > 0 && contentType == null) {
+            String mediaType = value.substring("data:".length(), value.indexOf(';'));
+            contentType = mediaType.isEmpty() ? null : mediaType;
+          }
+          try {
+            part.setPartContent(decodeBase64(value, comma + 1, contentSupplier, chunk));
+          } catch (IllegalStateException e) {
+            throw new IllegalStateException(
+                String.format("part %s: %s", name, e.getMessage()), e);
+          }
+          part.setContentType((contentType != null) ? contentType : "application/octet-stream");
+        } else {
+          part.setPartContent(value.getBytes(StandardCharsets.UTF_8));
+          part.setContentType((contentType != null) ? contentType : "text/plain");
+        }
+        if (rule != null) {
+          part.setFileName(rule.fileName);
+          // fields are kept only for values within an object, not an array
+          if (parent.fields != null
+              && (rule.fileNameField != null || rule.contentTypeField != null)) {
+            if (parent.pending == null) {
+              parent.pending = new ArrayList<Pending>();
+            }
+            parent.pending.add(new Pending(part, rule));
+          }
+        }
+        parts.add(part);
+      }
+    } catch (javax.json.JsonException e) {
+      throw new IllegalStateException("the content is not valid JSON: " + e.getMessage(), e);
+    }
+    return parts;
+  }
+
+  // The reference implementation takes the buffer of its parser from a pool
+  // in the configuration, under the name of its BufferPool interface. Where
+  // that interface is not present, another provider is in use, and it gets
+  // no pool; it sizes its buffers as it will.
+  private static JsonParser newParser(InputStream in, int bufferSize) {
+    if (bufferSize <= MIN_BUFFER_SIZE || !HAVE_BUFFER_POOL) {
+      return Json.createParser(in);
+    }
+    Map<String, Object> config = new HashMap<String, Object>();
+    config.put(BUFFER_POOL, new OneBufferPool(new char[bufferSize]));
+    return Json.createParserFactory(config).createParser(in);
+  }
+
+  private static boolean isPresent(String className) {
+    try {
+      Class.forName(className, false, JsonFormReader.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  // Hands out the one buffer, once, to the one parser it is made for. This
+  // class is loaded only where the interface it implements is present.
+  private static final class OneBufferPool implements org.glassfish.json.api.BufferPool {
+    private final char[] buffer;
+    private boolean taken;
+
+    OneBufferPool(char[] buffer) {
+      this.buffer = buffer;
+    }
+
+    public char[] take() {
+      if (taken) {
+        return new char[MIN_BUFFER_SIZE];
+      }
+      taken = true;
+      return buffer;
+    }
+
+    public void recycle(char[] buf) {}
+  }
+
+  private static String scalar(JsonParser.Event event, JsonParser parser) {
+    switch (event) {
+      case VALUE_STRING:
+      case VALUE_NUMBER:
+        return parser.getString();
+      case VALUE_TRUE:
+        return "true";
+      case VALUE_FALSE:
+        return "false";
+      default:
+        return null;
+    }
+  }
+
+  private static void resolveFields(Pending pending, Map<String, String> fields) {
+    Rule rule = pending.rule;
+    if (rule.fileNameField != null && fields.get(rule.fileNameField) != null) {
+      pending.part.setFileName(fields.get(rule.fileNameField));
+    }
+    if (rule.contentTypeField != null && fields.get(rule.contentTypeField) != null) {
+      pending.part.setContentType(fields.get(rule.contentTypeField));
+    }
+  }
+
+  // The position of the comma after "data:...;base64", or -1.
+  private static int dataUrlComma(String value) {
+    if (!value.startsWith("data:")) {
+      return -1;
+    }
+    int comma = value.indexOf(',');
+    return (comma > 0 && value.substring(0, comma).endsWith(";base64")) ? comma : -1;
+  }
+
+  // Decodes a base64 string into new content, a chunk at a time, so that the
+  // string is never copied whole. Unlike a MIME part, a JSON string has no
+  // line breaks to skip, so any character outside the alphabet is an error.
+  private static Content decodeBase64(
+      String value, int start, Supplier<ContentOutputStream> contentSupplier, byte[] chunk)
+      throws IOException {
+    ContentOutputStream content =
+        (contentSupplier != null)
+            ? contentSupplier.get()
+            : new ByteArrayContentOutputStream((value.length() - start) / 4 * 3 + 3);
+    try (OutputStream decoder = new Base64DecodingOutputStream(content, true)) {
+      int i = start;
+      while (i < value.length()) {
+        int n = Math.min(chunk.length, value.length() - i);
+        for (int j = 0; j < n; j++) {
+          chunk[j] = (byte) value.charAt(i + j);
+        }
+        decoder.write(chunk, 0, n);
+        i += n;
+      }
+    }
+    return content.toContent();
+  }
+
+  private static Part jsonPart(String name, Rule rule, JsonValue value) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (JsonWriter writer = Json.createWriter(out)) {
+      writer.write(value);
+    }
+    Part part = new Part(name).withPartContent(out.toByteArray());
+    part.setContentType((rule.contentType != null) ? rule.contentType : "application/json");
+    part.setFileName(rule.fileName);
+    return part;
+  }
+}
@@ -0,0 +1,136 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.multipartform;
+
+import com.google.apigee.stream.Bytes;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Copies a multipart body, as it is read, with more parts after its last. The body is copied as it
+ * is, up to its close delimiter; only the close delimiter is looked for, so the parts are not
+ * parsed, and memory is bounded by the read buffer. The new parts, and a new close delimiter,
+ * follow; any epilogue after the old close delimiter is left out.
+ */
+public class MultipartAppendingInputStream extends InputStream {
+  private final InputStream in;
+  // CRLF, "--", the boundary, and "--"
+  private final byte[] closeDelimiter;
+  private final byte[] buf;
+  private int pos;
+  private int limit;
+  private boolean eof;
+  // positions before this cannot start the close delimiter
+  private int scanned;
+  // the position of the close delimiter, once found, or -1
+  private int found = -1;
+  private final InputStream appended;
+
+  /**
+   * @param boundary the boundary of the body, which the new parts are written with
+   * @param parts the parts to append
+   */
+  public MultipartAppendingInputStream(
+      InputStream in, String boundary, List<Part> parts, int bufferSize) {
+    this.in = in;
+    this.closeDelimiter = ("\r\n--" + boundary + "--").getBytes(StandardCharsets.UTF_8);
+    this.buf = new byte[Math.max(bufferSize, 4 * closeDelimiter.length)];
+    // The close delimiter may come at the start of a body with no parts,
+    // with no CRLF before it; searching as if there were one finds it either
+    // way. The CRLF is not copied.
+    buf[0] = '\r';
+    buf[1] = '\n';
+    limit = 2;
+    pos = 2;
+    this.appended = new MultipartForm(boundary, parts).openStream();
+  }
+
+  // Moves unread bytes to the start of the buffer and reads more after them.
+  private boolean fill() throws IOException {
+    if (eof) {
+      return false;
+    }
+    int keep = Math.min(pos, scanned);
+    if (keep > 0) {
+      System.arraycopy(buf, keep, buf, 0, limit - keep);
+      limit -= keep;
+      pos -= keep;
+      scanned -= keep;
+    }
+    int n = in.read(buf, limit, buf.length - limit);
+    if (n == -1) {
+      eof = true;
+      return false;
+    }
+    limit += n;
+    return true;
+  }
+
+  private void search() {
+    int i = scanned;
+    int last = limit - closeDelimiter.length;
+    while (i <= last) {
+      if (buf[i] == '\r'
+          && Bytes.mismatch(buf, i, closeDelimiter, 0, closeDelimiter.length) == -1) {
+        found = i;
+        return;
+      }
+      i++;
+    }
+    scanned = i;
+  }
+
+  public int read() throws IOException {
+    byte[] one = new byte[1];
+    return (read(one, 0, 1) == -1) ? -1 : (one[0] & 0xFF);
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    for (; ; ) {
+      if (found < 0) {
+        search();
+      }
+      // bytes before the close delimiter, or before where it may yet start
+      int end = (found >= 0) ? found : scanned;
+      if (end > pos) {
+        int n = Math.min(len, end - pos);
+        System.arraycopy(buf, pos, b, off, n);
+        pos += n;
+        return n;
+      }
+      if (found >= 0) {
+        return appended.read(b, off, len);
+      }
+      if (!fill()) {
+        throw new IOException("multipart body ends without a close delimiter");
+      }
+    }
+  }
+
+  public void close() throws IOException {
+    try {
+      in.close();
+    } finally {
+      appended.close();
+    }
+  }
+}
@@ -15,17 +15,21 @@
 // ------------------------------------------------------------------
 package com.google.apigee.multipartform;
 
+import com.google.apigee.stream.Base64EncodingInputStream;
+import com.google.apigee.stream.CompressingInputStream;
+import com.google.apigee.stream.QuotedPrintableEncodingInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.SequenceInputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 
-public class MultipartForm {
+public class MultipartForm implements Form {
   private List<Part> parts;
   private String boundary;
 
@@ -34,56 +38,173 @@ public class MultipartForm {
     this.parts = parts;
   }
 
+  public String getContentType() {
+    return "multipart/form-data; boundary=" + boundary;
+  }
+
   private static boolean isEmptyString(String s){
     return s == null || s.trim().equals("");
   }
 
-  public InputStream openStream() {
-    // assemble content
-    List<InputStream> streams = new ArrayList<InputStream>();
-    for (Part part : parts) {
+  String leader(Part part) {
+    String contentDisposition =
+      String.format("form-data; name=\"%s\"", part.getName()) ;
+    if (!isEmptyString(part.getFileName())) {
+      contentDisposition += String.format("; filename=\"%s\"", part.getFileName());
+    }
 
-      String contentDisposition =
-        String.format("form-data; name=\"%s\"", part.getName()) ;
-      if (!isEmptyString(part.getFileName())) {
-        contentDisposition += String.format("; filename=\"%s\"", part.getFileName());
-      }
+    String leader =
+      "\r\n"
+      + "--"
+      + boundary
+      + "\r\n"
+      + "Content-Disposition: "
+      + contentDisposition
+      + "\r\n"
+      + "Content-Type: "
+      + part.getContentType()
+      + "\r\n";
 
-      String leader =
-        "\r\n"
-        + "--"
-        + boundary
-        + "\r\n"
-        + "Content-Disposition: "
-        + contentDisposition
-        + "\r\n"
-        + "Content-Type: "
-        + part.getContentType()
+    if (!isEmptyString(part.getTransferEncoding())) {
+      leader +=
+        ""
+        + "Content-Transfer-Encoding: "
+        + part.getTransferEncoding()
         + "\r\n";
+    }
 
-      if (!isEmptyString(part.getTransferEncoding())) {
-        leader +=
-          ""
-          + "Content-Transfer-Encoding: "
-          + part.getTransferEncoding()
-          + "\r\n";
-      }
-
-      leader += "\r\n";
+    if (!isEmptyString(part.getContentEncoding())) {
+      leader +=
+        ""
+        + "Content-Encoding: "
+        + part.getContentEncoding()
+        + "\r\n";
+    }
 
-      streams.add(new ByteArrayInputStream(leader.getBytes(StandardCharsets.UTF_8)));
-      streams.add(new ByteArrayInputStream(part.getPartContent()));
+    for (Map.Entry<String, String> header : part.getHeaders().entrySet()) {
+      leader += header.getKey() + ": " + header.getValue() + "\r\n";
     }
 
-    final String trailer =
-        "\r\n"
-        + "--"
-        + boundary
+    leader += "\r\n";
+    return leader;
+  }
+
+  String trailer() {
+    return
+      "\r\n"
+      + "--"
+      + boundary
       + "--\r\n";
-      streams.add(new ByteArrayInputStream(trailer.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static boolean isIdentityEncoding(String transferEncoding) {
+    return isEmptyString(transferEncoding)
+        || transferEncoding.equalsIgnoreCase("7bit")
+        || transferEncoding.equalsIgnoreCase("8bit")
+        || transferEncoding.equalsIgnoreCase("binary");
+  }
+
+  private static boolean isBase64(String transferEncoding) {
+    return "base64".equalsIgnoreCase(transferEncoding);
+  }
+
+  private static boolean isQuotedPrintable(String transferEncoding) {
+    return "quoted-printable".equalsIgnoreCase(transferEncoding);
+  }
+
+  /** Returns true if the transfer encoding is one that openStream() can apply. */
+  public static boolean isSupportedTransferEncoding(String transferEncoding) {
+    return isIdentityEncoding(transferEncoding)
+        || isBase64(transferEncoding)
+        || isQuotedPrintable(transferEncoding);
+  }
+
+  // The content of a part, as written into the form: compressed first, if
+  // asked, and then encoded for transfer. Both happen as the form is read.
+  private static InputStream encodedContent(Part part) {
+    InputStream content = part.getContent().openStream();
+    if (!isEmptyString(part.getContentEncoding())) {
+      content =
+          new CompressingInputStream(
+              content, part.getContentEncoding(), part.getCompressionLevel());
+    }
+    String transferEncoding = part.getTransferEncoding();
+    if (isBase64(transferEncoding)) {
+      content = new Base64EncodingInputStream(content);
+    } else if (isQuotedPrintable(transferEncoding)) {
+      content = new QuotedPrintableEncodingInputStream(content);
+    } else if (!isIdentityEncoding(transferEncoding)) {
+      throw new IllegalStateException(
+          String.format("unsupported transfer encoding: %s", transferEncoding));
+    }
+    return content;
+  }
+
+  private static long encodedLength(Part part) throws IOException {
+    if (!isEmptyString(part.getContentEncoding())) {
+      // the compressed size is not known until the part has been compressed
+      return -1;
+    }
+    String transferEncoding = part.getTransferEncoding();
+    if (isBase64(transferEncoding)) {
+      return Base64EncodingInputStream.encodedLength(part.getContent().length());
+    }
+    if (isQuotedPrintable(transferEncoding)) {
+      return QuotedPrintableEncodingInputStream.encodedLength(part.getContent().openStream());
+    }
+    return part.getContent().length();
+  }
+
+  /**
+   * Returns the length of the stream that openStream() returns, without assembling the form, or -1
+   * if that cannot be known in advance, as when a part is compressed. A quoted-printable part is
+   * read once to compute its encoded length.
+   */
+  public long getContentLength() throws IOException {
+    long length = 0;
+    for (Part part : parts) {
+      long contentLength = encodedLength(part);
+      if (contentLength < 0) {
+        return -1;
+      }
+      length += leader(part).getBytes(StandardCharsets.UTF_8).length + contentLength;
+    }
+    return length + trailer().getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  public InputStream openStream() {
+    // assemble content. The content of each part is opened only when the
+    // form is read up to it.
+    final Iterator<Part> partIterator = parts.iterator();
+    Enumeration<InputStream> streams =
+        new Enumeration<InputStream>() {
+          private Part pendingContent;
+          private boolean trailerDone;
+
+          public boolean hasMoreElements() {
+            return pendingContent != null || partIterator.hasNext() || !trailerDone;
+          }
+
+          public InputStream nextElement() {
+            if (pendingContent != null) {
+              InputStream content = encodedContent(pendingContent);
+              pendingContent = null;
+              return content;
+            }
+            if (partIterator.hasNext()) {
+              pendingContent = partIterator.next();
+              return new ByteArrayInputStream(
+                  leader(pendingContent).getBytes(StandardCharsets.UTF_8));
+            }
+            if (!trailerDone) {
+              trailerDone = true;
+              return new ByteArrayInputStream(trailer().getBytes(StandardCharsets.UTF_8));
+            }
+            throw new NoSuchElementException();
+          }
+        };
 
-    SequenceInputStream contentInputStream =
-        new SequenceInputStream(Collections.enumeration(streams));
+    SequenceInputStream contentInputStream = new SequenceInputStream(streams);
 
     return contentInputStream;
   }
@@ -0,0 +1,258 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.multipartform;
+
+import com.google.apigee.stream.ByteArrayContentOutputStream;
+import com.google.apigee.stream.Bytes;
+import com.google.apigee.stream.LimitExceededException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a multipart body one part at a time, leaving the caller to pull the content of each part.
+ * Where the StreamSearcher pushes a whole part into a sink, this reader returns from each read as
+ * soon as it has bytes that cannot belong to the delimiter, so a caller can produce its output as
+ * its own reader asks for it, with memory bounded by the read buffer.
+ *
+ * <p>The delimiter is CRLF, "--" and the boundary (RFC 2046 section 5.1.1); the CRLF belongs to the
+ * delimiter, not to the content of the part before it. Unnamed parts are skipped.
+ */
+public class MultipartReader {
+  private final InputStream in;
+  private final byte[] delimiter;
+  private byte[] buf;
+  private int pos;
+  private int limit;
+  private boolean eof;
+  private boolean done;
+  // positions before this cannot start a delimiter
+  private int scanned;
+  // the position of a delimiter found in the buffer, or -1
+  private int found = -1;
+  // whether the content of the current part has been read to its delimiter
+  private boolean atDelimiter = true;
+  private long bytesRead;
+  // the header block of the current part, as it is in the body
+  private byte[] headerBytes;
+  private final InputStream partStream =
+      new InputStream() {
+        public int read() throws IOException {
+          byte[] one = new byte[1];
+          return (read(one, 0, 1) == -1) ? -1 : (one[0] & 0xFF);
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+          return readContent(b, off, len);
+        }
+      };
+
+  public MultipartReader(InputStream in, String boundary, int bufferSize) {
+    this.in = in;
+    this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.UTF_8);
+    this.buf = new byte[Math.max(bufferSize, 4 * delimiter.length)];
+    // The first delimiter may come at the start of the body, with no CRLF
+    // before it; reading as if there were one finds it either way.
+    buf[0] = '\r';
+    buf[1] = '\n';
+    limit = 2;
+    atDelimiter = false;
+  }
+
+  /** Returns the number of bytes read from the underlying stream so far. */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  // Moves unread bytes to the start of the buffer and reads more after them.
+  private boolean fill() throws IOException {
+    if (eof) {
+      return false;
+    }
+    if (pos > 0) {
+      System.arraycopy(buf, pos, buf, 0, limit - pos);
+      limit -= pos;
+      scanned -= pos;
+      if (found >= 0) {
+        found -= pos;
+      }
+      pos = 0;
+    }
+    int n = in.read(buf, limit, buf.length - limit);
+    if (n == -1) {
+      eof = true;
+      return false;
+    }
+    limit += n;
+    bytesRead += n;
+    return true;
+  }
+
+  // Finds the next delimiter in the buffer, from where the last search stopped.
+  private void search() {
+    if (found >= 0) {
+      return;
+    }
+    int i = Math.max(scanned, pos);
+    int last = limit - delimiter.length;
+    while (i <= last) {
+      if (buf[i] == '\r' && Bytes.mismatch(buf, i, delimiter, 0, delimiter.length) == -1) {
+        found = i;
+        return;
+      }
+      i++;
+    }
+    scanned = i;
+  }
+
+  // Reads content of the current part, up to the next delimiter.
+  private int readContent(byte[] b, int off, int len) throws IOException {
+    if (atDelimiter) {
+      return -1;
+    }
+    if (len == 0) {
+      return 0;
+    }
+    for (; ; ) {
+      search();
+      if (found == pos) {
+        pos += delimiter.length;
+        found = -1;
+        atDelimiter = true;
+        return -1;
+      }
+      int end = (found >= 0) ? found : Math.max(pos, limit - (delimiter.length - 1));
+      if (end > pos) {
+        int n = Math.min(len, end - pos);
+        System.arraycopy(buf, pos, b, off, n);
+        pos += n;
+        return n;
+      }
+      if (!fill()) {
+        throw new IOException("multipart body ends within a part");
+      }
+    }
+  }
+
+  // Skips the rest of the current part. Returns false if the body ends first.
+  private boolean skipContent() throws IOException {
+    while (!atDelimiter) {
+      search();
+      if (found >= 0) {
+        pos = found + delimiter.length;
+        found = -1;
+        atDelimiter = true;
+      } else {
+        pos = Math.max(pos, limit - (delimiter.length - 1));
+        if (!fill()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private int readByte() throws IOException {
+    if (pos == limit && !fill()) {
+      return -1;
+    }
+    return buf[pos++] & 0xFF;
+  }
+
+  /**
+   * Skips what remains of the current part, and reads the headers of the next one.
+   *
+   * @return the next named part, with no content, or null after the close delimiter or at the end
+   *     of the body.
+   */
+  public Part nextPart() throws IOException {
+    for (; ; ) {
+      if (done || !skipContent()) {
+        done = true;
+        return null;
+      }
+      int c1 = readByte();
+      int c2 = readByte();
+      if (c1 == '-' && c2 == '-') {
+        // the close delimiter; the epilogue is ignored
+        done = true;
+        return null;
+      }
+      // transport padding, then CRLF
+      int prev = c1;
+      int cur = c2;
+      while (!(prev == '\r' && cur == '\n')) {
+        if (cur == -1) {
+          done = true;
+          return null;
+        }
+        prev = cur;
+        cur = readByte();
+      }
+      Part part = readHeaders();
+      atDelimiter = false;
+      if (part != null) {
+        return part;
+      }
+    }
+  }
+
+  private Part readHeaders() throws IOException {
+    ByteArrayContentOutputStream headers = new ByteArrayContentOutputStream(256);
+    int lineLength = 0;
+    int prev = 0;
+    for (; ; ) {
+      int cur = readByte();
+      if (cur == -1) {
+        break;
+      }
+      headers.write(cur);
+      if (headers.size() > PartOutputStream.MAX_HEADER_SIZE) {
+        throw new LimitExceededException("part headers exceed maximum size");
+      }
+      if (cur == '\n' && prev == '\r') {
+        if (lineLength == 1) {
+          break;
+        }
+        lineLength = 0;
+      } else {
+        lineLength++;
+      }
+      prev = cur;
+    }
+    headerBytes = headers.toContent().toByteArray();
+    return Part.parseHeaders(new ByteArrayInputStream(headerBytes));
+  }
+
+  /**
+   * Returns the headers of the part that {@link #nextPart()} returned last, as they are in the
+   * body, up to and including the empty line that ends them.
+   */
+  public byte[] getHeaderBytes() {
+    return headerBytes;
+  }
+
+  /**
+   * Returns a stream of the content of the part that {@link #nextPart()} returned last, as it is
+   * in the body, with any Content-Transfer-Encoding still applied. The stream ends at the
+   * delimiter; it throws an IOException if the body ends first.
+   */
+  public InputStream getPartStream() {
+    return partStream;
+  }
+}
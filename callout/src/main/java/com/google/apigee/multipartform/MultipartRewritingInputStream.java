@@ -0,0 +1,148 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.multipartform;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Copies a multipart body, as it is read, with parts dropped, renamed or given new headers, and
+ * with a new boundary if wanted. The content of a part is copied as it is in the body, with any
+ * Content-Transfer-Encoding, a buffer at a time; a dropped part is skipped over. Parts keep their
+ * order, and parts with no name are dropped.
+ */
+public class MultipartRewritingInputStream extends InputStream {
+  private enum State {
+    NEXT_PART,
+    CONTENT,
+    DONE
+  }
+
+  private final InputStream in;
+  private final MultipartReader reader;
+  private final String boundary;
+  private final Function<Part, PartRewrite> rules;
+  private State state = State.NEXT_PART;
+  private int partCount;
+  private int droppedCount;
+  // the bytes being read, between parts
+  private byte[] out;
+  private int outPos;
+  private int outLimit;
+
+  /**
+   * @param boundary the boundary of the body
+   * @param newBoundary the boundary of the copy; the same, or another that does not occur in the
+   *     content of any part
+   * @param rules what to do to each part; null, from the function, leaves the part as it is
+   */
+  public MultipartRewritingInputStream(
+      InputStream in,
+      String boundary,
+      String newBoundary,
+      int bufferSize,
+      Function<Part, PartRewrite> rules) {
+    this.in = in;
+    this.reader = new MultipartReader(in, boundary, bufferSize);
+    this.boundary = newBoundary;
+    this.rules = rules;
+  }
+
+  /** Returns the number of parts copied so far. */
+  public int getPartCount() {
+    return partCount;
+  }
+
+  /** Returns the number of parts dropped so far. */
+  public int getDroppedCount() {
+    return droppedCount;
+  }
+
+  private void emit(byte[] bytes) {
+    out = bytes;
+    outPos = 0;
+    outLimit = bytes.length;
+  }
+
+  // Moves to the next part to copy, and sets its delimiter and headers to be
+  // read. Returns false at the end of the body.
+  private boolean nextPart() throws IOException {
+    for (; ; ) {
+      Part part = reader.nextPart();
+      if (part == null) {
+        emit(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return false;
+      }
+      PartRewrite rewrite = rules.apply(part);
+      if (rewrite != null && rewrite.isDrop()) {
+        droppedCount++;
+        continue;
+      }
+      byte[] headers = reader.getHeaderBytes();
+      if (rewrite != null) {
+        headers = rewrite.rewriteHeaders(headers, part);
+      }
+      byte[] delimiter = ("\r\n--" + boundary + "\r\n").getBytes(StandardCharsets.UTF_8);
+      byte[] leader = new byte[delimiter.length + headers.length];
+      System.arraycopy(delimiter, 0, leader, 0, delimiter.length);
+      System.arraycopy(headers, 0, leader, delimiter.length, headers.length);
+      emit(leader);
+      partCount++;
+      return true;
+    }
+  }
+
+  public int read() throws IOException {
+    byte[] one = new byte[1];
+    return (read(one, 0, 1) == -1) ? -1 : (one[0] & 0xFF);
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    for (; ; ) {
+      if (outPos < outLimit) {
+        int n = Math.min(len, outLimit - outPos);
+        System.arraycopy(out, outPos, b, off, n);
+        outPos += n;
+        return n;
+      }
+      switch (state) {
+        case NEXT_PART:
+          state = nextPart() ? State.CONTENT : State.DONE;
+          break;
+        case CONTENT:
+          // part content goes straight from the reader to the caller
+          int n = reader.getPartStream().read(b, off, len);
+          if (n != -1) {
+            return n;
+          }
+          state = State.NEXT_PART;
+          break;
+        default:
+          return -1;
+      }
+    }
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,245 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.multipartform;
+
+import com.google.apigee.stream.Base64DecodingOutputStream;
+import com.google.apigee.stream.Base64EncodingInputStream;
+import com.google.apigee.stream.CountingInputStream;
+import com.google.apigee.stream.PumpInputStream;
+import com.google.apigee.stream.QuotedPrintableDecodingOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Predicate;
+
+/**
+ * Transcodes a multipart body to a JSON document, as the document is read:
+ *
+ * <pre>
+ * {"parts":[
+ *   {"name":"a","content-type":"text/plain","encoding":"text","content":"...","size":11},
+ *   {"name":"b","filename":"b.png","content-type":"image/png","encoding":"base64",
+ *    "content":"iVBORw0...","size":5342}]}
+ * </pre>
+ *
+ * <p>Text parts are escaped as JSON strings, and are taken to be UTF-8; other parts are encoded as
+ * base64. Any Content-Transfer-Encoding is undone first, and the size is that of the decoded
+ * content. The multipart body is read only as the document is, a buffer at a time, so memory does
+ * not grow with the size of the body or its parts.
+ */
+public class MultipartToJsonInputStream extends InputStream {
+  private static final int CHUNK_SIZE = 4096;
+  // the escape for each byte, or null for bytes that stand for themselves
+  private static final byte[][] ESCAPES = new byte[256][];
+
+  static {
+    for (int c = 0; c < 0x20; c++) {
+      ESCAPES[c] = String.format("\\u%04x", c).getBytes(StandardCharsets.US_ASCII);
+    }
+    ESCAPES['"'] = "\\\"".getBytes(StandardCharsets.US_ASCII);
+    ESCAPES['\\'] = "\\\\".getBytes(StandardCharsets.US_ASCII);
+    ESCAPES['\n'] = "\\n".getBytes(StandardCharsets.US_ASCII);
+    ESCAPES['\r'] = "\\r".getBytes(StandardCharsets.US_ASCII);
+    ESCAPES['\t'] = "\\t".getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private enum State {
+    START,
+    NEXT_PART,
+    CONTENT,
+    DONE
+  }
+
+  private final InputStream in;
+  private final MultipartReader reader;
+  private final Predicate<String> isText;
+  private final byte[] chunk = new byte[CHUNK_SIZE];
+  private final byte[] escaped = new byte[CHUNK_SIZE * 6];
+  private State state = State.START;
+  private int partCount;
+  // the bytes being read
+  private byte[] out;
+  private int outPos;
+  private int outLimit;
+  // the part being transcoded
+  private boolean text;
+  private CountingInputStream decoded;
+  private InputStream content;
+
+  /**
+   * @param isText whether a part with the given content type, in lower case and without
+   *     parameters, is text
+   */
+  public MultipartToJsonInputStream(
+      InputStream in, String boundary, int bufferSize, Predicate<String> isText) {
+    this.in = in;
+    this.reader = new MultipartReader(in, boundary, bufferSize);
+    this.isText = isText;
+  }
+
+  /** Returns the number of parts transcoded so far. */
+  public int getPartCount() {
+    return partCount;
+  }
+
+  /** Returns the media type of a Content-Type header value: in lower case, without parameters. */
+  public static String mediaType(String contentType) {
+    if (contentType == null) {
+      return "text/plain";
+    }
+    int semi = contentType.indexOf(';');
+    return ((semi < 0) ? contentType : contentType.substring(0, semi)).trim().toLowerCase();
+  }
+
+  private static void appendJsonString(StringBuilder sb, String s) {
+    sb.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c < 0x80 && ESCAPES[c] != null) {
+        sb.append(new String(ESCAPES[c], StandardCharsets.US_ASCII));
+      } else {
+        sb.append(c);
+      }
+    }
+    sb.append('"');
+  }
+
+  // Undoes a Content-Transfer-Encoding as the content is read.
+  static InputStream decoding(String transferEncoding, InputStream raw) {
+    if (transferEncoding != null) {
+      if (transferEncoding.equalsIgnoreCase("base64")) {
+        return new PumpInputStream(raw, Base64DecodingOutputStream::new);
+      }
+      if (transferEncoding.equalsIgnoreCase("quoted-printable")) {
+        return new PumpInputStream(raw, QuotedPrintableDecodingOutputStream::new);
+      }
+    }
+    return raw;
+  }
+
+  private void emit(String s) {
+    out = s.getBytes(StandardCharsets.UTF_8);
+    outPos = 0;
+    outLimit = out.length;
+  }
+
+  private void startPart(Part part) {
+    text = isText.test(mediaType(part.getContentType()));
+    decoded = new CountingInputStream(decoding(part.getTransferEncoding(), reader.getPartStream()));
+    content = text ? decoded : new Base64EncodingInputStream(decoded, false);
+    StringBuilder sb = new StringBuilder(128);
+    if (partCount++ > 0) {
+      sb.append(',');
+    }
+    sb.append("{\"name\":");
+    appendJsonString(sb, part.getName());
+    if (part.getFileName() != null) {
+      sb.append(",\"filename\":");
+      appendJsonString(sb, part.getFileName());
+    }
+    sb.append(",\"content-type\":");
+    appendJsonString(sb, part.getContentType());
+    sb.append(",\"encoding\":\"").append(text ? "text" : "base64").append("\",\"content\":\"");
+    emit(sb.toString());
+  }
+
+  // Escapes a chunk of text into the output.
+  private void escape(int n) {
+    int j = 0;
+    for (int i = 0; i < n; i++) {
+      byte[] e = ESCAPES[chunk[i] & 0xFF];
+      if (e == null) {
+        escaped[j++] = chunk[i];
+      } else {
+        System.arraycopy(e, 0, escaped, j, e.length);
+        j += e.length;
+      }
+    }
+    out = escaped;
+    outPos = 0;
+    outLimit = j;
+  }
+
+  // Produces the next bytes of the document. Returns false at its end.
+  private boolean fill() throws IOException {
+    for (; ; ) {
+      switch (state) {
+        case START:
+          emit("{\"parts\":[");
+          state = State.NEXT_PART;
+          return true;
+        case NEXT_PART:
+          Part part = reader.nextPart();
+          if (part == null) {
+            emit("]}");
+            state = State.DONE;
+          } else {
+            startPart(part);
+            state = State.CONTENT;
+          }
+          return true;
+        case CONTENT:
+          int n = content.read(chunk, 0, chunk.length);
+          if (n == -1) {
+            emit("\",\"size\":" + decoded.getCount() + "}");
+            content = null;
+            decoded = null;
+            state = State.NEXT_PART;
+            return true;
+          }
+          if (n == 0) {
+            continue;
+          }
+          if (text) {
+            escape(n);
+          } else {
+            // base64 needs no escaping
+            out = chunk;
+            outPos = 0;
+            outLimit = n;
+          }
+          return true;
+        default:
+          return false;
+      }
+    }
+  }
+
+  public int read() throws IOException {
+    byte[] one = new byte[1];
+    return (read(one, 0, 1) == -1) ? -1 : (one[0] & 0xFF);
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (outPos == outLimit) {
+      if (!fill()) {
+        return -1;
+      }
+    }
+    int n = Math.min(len, outLimit - outPos);
+    System.arraycopy(out, outPos, b, off, n);
+    outPos += n;
+    return n;
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,192 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.multipartform;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Transcodes a multipart body to a ZIP archive, as the archive is read, with one entry for each
+ * part. An entry is named by the file name of its part, without any directory, or else by the name
+ * of the part; a name used before gets a number. Any Content-Transfer-Encoding is undone first.
+ *
+ * <p>The archive is written a chunk of part content at a time, so memory is bounded by the read
+ * buffer and the window of the deflater. Entries are written with data descriptors, as their
+ * sizes are not known ahead; entries for content that is already compressed are deflated at level
+ * 0, which stores the content in the deflate format, since a STORED entry needs its size and CRC
+ * before its content.
+ */
+public class MultipartToZipInputStream extends InputStream {
+  private static final int CHUNK_SIZE = 8192;
+
+  private enum State {
+    NEXT_PART,
+    CONTENT,
+    DONE
+  }
+
+  // Collects what the archive writes, until it is read.
+  private static final class Sink extends OutputStream {
+    byte[] buf = new byte[CHUNK_SIZE + 1024];
+    int count;
+
+    public void write(int b) {
+      ensure(1);
+      buf[count++] = (byte) b;
+    }
+
+    public void write(byte[] b, int off, int len) {
+      ensure(len);
+      System.arraycopy(b, off, buf, count, len);
+      count += len;
+    }
+
+    private void ensure(int len) {
+      if (count + len > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + len));
+      }
+    }
+  }
+
+  private final InputStream in;
+  private final MultipartReader reader;
+  private final Predicate<String> isCompressed;
+  private final Sink sink = new Sink();
+  private final ZipOutputStream zip = new ZipOutputStream(sink);
+  private final byte[] chunk = new byte[CHUNK_SIZE];
+  private final Set<String> entryNames = new HashSet<String>();
+  private State state = State.NEXT_PART;
+  private InputStream content;
+  private int outPos;
+  private int entryCount;
+
+  /**
+   * @param isCompressed whether a part with the given content type, in lower case and without
+   *     parameters, is already compressed, and so is not to be deflated again
+   */
+  public MultipartToZipInputStream(
+      InputStream in, String boundary, int bufferSize, Predicate<String> isCompressed) {
+    this.in = in;
+    this.reader = new MultipartReader(in, boundary, bufferSize);
+    this.isCompressed = isCompressed;
+  }
+
+  /** Returns the number of entries written so far. */
+  public int getEntryCount() {
+    return entryCount;
+  }
+
+  // The file name without any directory, so that an entry cannot land
+  // outside the directory it is extracted to.
+  static String baseName(String fileName) {
+    if (fileName == null) {
+      return null;
+    }
+    int slash = Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\'));
+    String name = fileName.substring(slash + 1);
+    return (name.isEmpty() || name.equals(".") || name.equals("..")) ? null : name;
+  }
+
+  private String entryName(Part part) {
+    String name = baseName(part.getFileName());
+    if (name == null) {
+      name = baseName(part.getName());
+    }
+    if (name == null) {
+      name = "part";
+    }
+    String unique = name;
+    int dot = name.lastIndexOf('.');
+    for (int n = 2; !entryNames.add(unique); n++) {
+      unique = (dot > 0) ? name.substring(0, dot) + "-" + n + name.substring(dot) : name + "-" + n;
+    }
+    return unique;
+  }
+
+  // Writes more of the archive into the sink. Returns false at its end.
+  private boolean fill() throws IOException {
+    while (sink.count == 0) {
+      switch (state) {
+        case NEXT_PART:
+          Part part = reader.nextPart();
+          if (part == null) {
+            // writes the central directory, and frees the deflater
+            zip.close();
+            state = State.DONE;
+            return sink.count > 0;
+          }
+          boolean compressed =
+              isCompressed.test(MultipartToJsonInputStream.mediaType(part.getContentType()));
+          zip.setLevel(compressed ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+          zip.putNextEntry(new ZipEntry(entryName(part)));
+          content =
+              MultipartToJsonInputStream.decoding(
+                  part.getTransferEncoding(), reader.getPartStream());
+          state = State.CONTENT;
+          break;
+        case CONTENT:
+          int n = content.read(chunk, 0, chunk.length);
+          if (n == -1) {
+            zip.closeEntry();
+            entryCount++;
+            content = null;
+            state = State.NEXT_PART;
+          } else if (n > 0) {
+            zip.write(chunk, 0, n);
+          }
+          break;
+        default:
+          return false;
+      }
+    }
+    return true;
+  }
+
+  public int read() throws IOException {
+    byte[] one = new byte[1];
+    return (read(one, 0, 1) == -1) ? -1 : (one[0] & 0xFF);
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (outPos == sink.count) {
+      sink.count = 0;
+      outPos = 0;
+      if (!fill()) {
+        return -1;
+      }
+    }
+    int n = Math.min(len, sink.count - outPos);
+    System.arraycopy(sink.buf, outPos, b, off, n);
+    outPos += n;
+    return n;
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+}
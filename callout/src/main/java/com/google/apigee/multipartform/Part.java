@@ -16,29 +16,42 @@
 
 package com.google.apigee.multipartform;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import com.google.apigee.stream.ByteArrayContent;
+import com.google.apigee.stream.ByteArrayContentOutputStream;
+import com.google.apigee.stream.Content;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class Part {
-  private byte[] partContent;
+  private Content partContent;
 
   public void setPartContent(byte[] value) {
+    this.partContent = new ByteArrayContent(value);
+  }
+
+  public void setPartContent(Content value) {
     this.partContent = value;
   }
 
   public byte[] getPartContent() {
+    return partContent.toByteArray();
+  }
+
+  /** Returns the content without forcing it onto the heap. */
+  public Content getContent() {
     return partContent;
   }
 
   public int getSize() {
-    return partContent.length;
+    return (int) partContent.length();
   }
 
   private String fileName;
@@ -61,6 +74,30 @@ public class Part {
     return transferEncoding;
   }
 
+  private String contentEncoding;
+
+  public void setContentEncoding(String value) {
+    this.contentEncoding = value;
+  }
+
+  /** Returns the compression (gzip or deflate) to apply to the content when writing the part. */
+  public String getContentEncoding() {
+    return contentEncoding;
+  }
+
+  private int compressionLevel = -1;
+
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  private Map<String, String> headers = Collections.emptyMap();
+
+  /** Returns the headers, beyond those this class names, to write with the part. */
+  public Map<String, String> getHeaders() {
+    return headers;
+  }
+
   private String contentType;
 
   public void setContentType(String value) {
@@ -81,6 +118,11 @@ public class Part {
     this.name = partName;
   }
 
+  private static final Pattern namePattern =
+      Pattern.compile("\\bname=(['\"]?)([^'\"]+)\\1(?:;|\\sb|$)");
+  private static final Pattern fileNamePattern =
+      Pattern.compile("\\bfilename=(['\"]?)([^'\"]+)\\1(?:;|\\s|$)");
+
   private static String lineFrom(InputStream in) throws IOException {
     byte[] buf = new byte[256];
     int pos = 0;
@@ -103,25 +145,36 @@ public class Part {
     return (pos > 0) ? new String(Arrays.copyOf(buf, pos - 1), "UTF-8") : null;
   }
 
-  public static Part parse(byte[] bytes) throws IOException {
-    ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
+  /**
+   * Reads part headers from the stream, up to and including the empty line that ends them.
+   *
+   * @return a Part with no content, or null if the headers do not name the part.
+   */
+  public static Part parseHeaders(InputStream in) throws IOException {
     String partName = null;
+    String fileName = null;
     String ctype = null;
+    String transferEncoding = null;
     for (; ; ) {
-      String hdr = lineFrom(bis);
+      String hdr = lineFrom(in);
       if (hdr == null || hdr.length() == 0) break; // end of headers
       List<String> components =
           Arrays.stream(hdr.split(":", 2)).map(s -> s.trim()).collect(Collectors.toList());
 
       String headerName = components.get(0).toLowerCase();
       if (headerName.equals("content-disposition")) {
-        Pattern pattern = Pattern.compile("\\bname=(['\"]?)([^'\"]+)\\1(?:;|\\sb|$)");
-        Matcher matcher = pattern.matcher(components.get(1));
+        Matcher matcher = namePattern.matcher(components.get(1));
         if (matcher.find()) {
           partName = matcher.group(2);
         }
+        matcher = fileNamePattern.matcher(components.get(1));
+        if (matcher.find()) {
+          fileName = matcher.group(2);
+        }
       } else if (headerName.equals("content-type")) {
         ctype = components.get(1);
+      } else if (headerName.equals("content-transfer-encoding")) {
+        transferEncoding = components.get(1);
       }
     }
 
@@ -129,16 +182,22 @@ public class Part {
       return null;
     }
     // https://www.rfc-editor.org/rfc/rfc7578.html#section-4.4 default to text/plain
-    Part part = new Part(partName).withContentType(ctype == null ? "text/plain" : ctype);
+    return new Part(partName)
+        .withContentType(ctype == null ? "text/plain" : ctype)
+        .withTransferEncoding(transferEncoding)
+        .withFileName(fileName);
+  }
 
-    // remaining data is content
-    int b;
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    while ((b = bis.read()) != -1) {
-      baos.write(b);
-    }
-    part.setPartContent(baos.toByteArray());
-    return part;
+  /**
+   * Parses the headers and content of a part. Content sent with a base64 or quoted-printable
+   * Content-Transfer-Encoding is decoded.
+   */
+  public static Part parse(byte[] bytes) throws IOException {
+    PartOutputStream out =
+        new PartOutputStream(() -> new ByteArrayContentOutputStream(bytes.length));
+    out.write(bytes, 0, bytes.length);
+    out.close();
+    return out.getPart();
   }
 
   public Part withContentType(String contentType) {
@@ -151,6 +210,11 @@ public class Part {
   }
 
   public Part withPartContent(byte[] partContent) {
+    this.partContent = new ByteArrayContent(partContent);
+    return this;
+  }
+
+  public Part withPartContent(Content partContent) {
     this.partContent = partContent;
     return this;
   }
@@ -160,8 +224,26 @@ public class Part {
     return this;
   }
 
+  public Part withContentEncoding(String contentEncoding) {
+    this.contentEncoding = contentEncoding;
+    return this;
+  }
+
+  public Part withCompressionLevel(int compressionLevel) {
+    this.compressionLevel = compressionLevel;
+    return this;
+  }
+
   public Part withFileName(String fileName) {
     this.fileName = fileName;
     return this;
   }
+
+  public Part withHeader(String name, String value) {
+    if (headers.isEmpty()) {
+      headers = new LinkedHashMap<String, String>();
+    }
+    headers.put(name, value);
+    return this;
+  }
 }
@@ -0,0 +1,232 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.multipartform;
+
+import com.google.apigee.metrics.FlightEvents;
+import com.google.apigee.stream.Base64DecodingOutputStream;
+import com.google.apigee.stream.ByteArrayContentOutputStream;
+import com.google.apigee.stream.ContentOutputStream;
+import com.google.apigee.stream.LimitExceededException;
+import com.google.apigee.stream.QuotedPrintableDecodingOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Receives the bytes of one part of a form, as extracted by the StreamSearcher. The headers are
+ * accumulated and parsed; the bytes that follow them go directly into a {@link
+ * ContentOutputStream} obtained from the supplier, so that the content is never copied on its way
+ * to its final destination. Content with a base64 or quoted-printable Content-Transfer-Encoding is
+ * decoded on the way.
+ *
+ * <p>An optional check sees each part as soon as its headers are parsed, before any of its content
+ * is read, and may reject it, or cap the size of its content, which is enforced as it is written.
+ */
+public class PartOutputStream extends OutputStream {
+  public static final int MAX_HEADER_SIZE = 16 * 1024;
+
+  private final Supplier<ContentOutputStream> contentSupplier;
+  private final boolean timed;
+  private final ToLongFunction<Part> check;
+  private ByteArrayContentOutputStream headerBytes = new ByteArrayContentOutputStream(512);
+  private int headerGrowthCount;
+  // when the headers were parsed, as System.nanoTime(), if timed
+  private long headerStarted;
+  private long headerEnded;
+  private int lineLength;
+  private int prev;
+  private boolean inBody;
+  private Part part;
+  private OutputStream body;
+  private ContentOutputStream content;
+
+  public PartOutputStream(Supplier<ContentOutputStream> contentSupplier) {
+    this(contentSupplier, false);
+  }
+
+  /**
+   * @param timed whether to mark the time before and after the headers are parsed, for {@link
+   *     #getHeaderStarted()} and {@link #getHeaderEnded()}
+   */
+  public PartOutputStream(Supplier<ContentOutputStream> contentSupplier, boolean timed) {
+    this(contentSupplier, timed, null);
+  }
+
+  /**
+   * @param check called with each named part once its headers are parsed; returns the most bytes
+   *     its decoded content may have, or -1 for no limit, or throws to reject the part. Or null.
+   */
+  public PartOutputStream(
+      Supplier<ContentOutputStream> contentSupplier, boolean timed, ToLongFunction<Part> check) {
+    this.contentSupplier = contentSupplier;
+    this.timed = timed;
+    this.check = check;
+  }
+
+  public void write(int b) throws IOException {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (!inBody) {
+      int end = off + len;
+      int i = off;
+      while (i < end && !inBody) {
+        int cur = b[i++] & 0xFF;
+        // https://www.rfc-editor.org/rfc/rfc2046#section-5.1 says always CRLF
+        if (cur == '\n' && prev == '\r') {
+          if (lineLength == 1) {
+            inBody = true;
+          }
+          lineLength = 0;
+        } else {
+          lineLength++;
+        }
+        prev = cur;
+      }
+      headerBytes.write(b, off, i - off);
+      if (headerBytes.size() > MAX_HEADER_SIZE) {
+        throw new LimitExceededException("part headers exceed maximum size");
+      }
+      if (!inBody) {
+        return;
+      }
+      startBody();
+      len = end - i;
+      off = i;
+    }
+    if (len > 0) {
+      body.write(b, off, len);
+    }
+  }
+
+  private void startBody() throws IOException {
+    if (timed) {
+      headerStarted = System.nanoTime();
+    }
+    Object event = FlightEvents.INSTANCE.begin(FlightEvents.Kind.PART_HEADERS);
+    byte[] headers = headerBytes.toContent().toByteArray();
+    headerGrowthCount = headerBytes.getGrowthCount();
+    headerBytes = null;
+    part = Part.parseHeaders(new ByteArrayInputStream(headers));
+    if (event != null) {
+      String name = (part != null) ? part.getName() : null;
+      FlightEvents.INSTANCE.end(event, name, headers.length, null);
+    }
+    if (timed) {
+      headerEnded = System.nanoTime();
+    }
+    if (part == null) {
+      // an unnamed part; discard its content
+      body = new OutputStream() {
+        public void write(int b) {}
+
+        public void write(byte[] b, int off, int len) {}
+      };
+    } else {
+      long maxSize = (check != null) ? check.applyAsLong(part) : -1;
+      content = contentSupplier.get();
+      body =
+          decoding(
+              part.getTransferEncoding(),
+              (maxSize >= 0) ? limited(content, part.getName(), maxSize) : content);
+    }
+  }
+
+  // Counts the decoded content as it is written, and fails as soon as it
+  // passes the limit, rather than after the whole part has been read.
+  static OutputStream limited(
+      final OutputStream out, final String name, final long maxSize) {
+    return new OutputStream() {
+      private long count;
+
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      public void write(byte[] b, int off, int len) throws IOException {
+        count += len;
+        if (count > maxSize) {
+          throw new LimitExceededException(
+              String.format("part %s exceeds the limit of %d bytes", name, maxSize));
+        }
+        out.write(b, off, len);
+      }
+
+      public void flush() throws IOException {
+        out.flush();
+      }
+
+      public void close() throws IOException {
+        out.close();
+      }
+    };
+  }
+
+  private static OutputStream decoding(String transferEncoding, OutputStream out) {
+    if (transferEncoding != null) {
+      if (transferEncoding.equalsIgnoreCase("base64")) {
+        return new Base64DecodingOutputStream(out);
+      }
+      if (transferEncoding.equalsIgnoreCase("quoted-printable")) {
+        return new QuotedPrintableDecodingOutputStream(out);
+      }
+    }
+    // 7bit, 8bit, binary, or something we do not know: keep the content as is
+    return out;
+  }
+
+  public void close() throws IOException {
+    if (!inBody) {
+      inBody = true;
+      startBody();
+    }
+    body.close();
+    if (part != null) {
+      part.setPartContent(content.toContent());
+    }
+  }
+
+  /**
+   * Returns the System.nanoTime() at which parsing the headers started, or 0 if this stream was not
+   * created to measure it or the headers have not been parsed.
+   */
+  public long getHeaderStarted() {
+    return headerStarted;
+  }
+
+  /** Returns the System.nanoTime() at which parsing the headers ended, or 0. */
+  public long getHeaderEnded() {
+    return headerEnded;
+  }
+
+  /** Returns the number of times the buffers for the headers and the content have grown. */
+  public int getGrowthCount() {
+    return headerGrowthCount + ((content != null) ? content.getGrowthCount() : 0);
+  }
+
+  /**
+   * Returns the part, after this stream has been closed.
+   *
+   * @return the part, or null if the headers did not name the part.
+   */
+  public Part getPart() {
+    return part;
+  }
+}
@@ -0,0 +1,127 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.multipartform;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What to do to one part of a form as it is copied: drop it, or give it a new name, file name or
+ * headers. Headers it does not change are copied as they are.
+ */
+public class PartRewrite {
+  private boolean drop;
+  private String name;
+  private String fileName;
+  // by lower-case header name; a null value removes the header
+  private final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+  public PartRewrite withDrop(boolean drop) {
+    this.drop = drop;
+    return this;
+  }
+
+  public PartRewrite withName(String name) {
+    this.name = name;
+    return this;
+  }
+
+  public PartRewrite withFileName(String fileName) {
+    this.fileName = fileName;
+    return this;
+  }
+
+  /** Sets a header, or removes it, if the value is null. */
+  public PartRewrite withHeader(String headerName, String value) {
+    String key = headerName.toLowerCase();
+    if (key.equals("content-disposition")) {
+      throw new IllegalStateException("use the name and file name to change content-disposition");
+    }
+    headers.put(key, value);
+    return this;
+  }
+
+  public boolean isDrop() {
+    return drop;
+  }
+
+  public boolean changesHeaders() {
+    return name != null || fileName != null || !headers.isEmpty();
+  }
+
+  /**
+   * Returns the header block of a part, as it is to be in the form: the headers in the body,
+   * changed as this says.
+   *
+   * @param headerBytes the header block as it is in the body, up to and including the empty line
+   *     that ends it
+   * @param part the part, as read from those headers
+   */
+  public byte[] rewriteHeaders(byte[] headerBytes, Part part) {
+    if (!changesHeaders()) {
+      return headerBytes;
+    }
+    // one entry per header, with any folded lines that continue it
+    List<String> lines = new ArrayList<String>();
+    for (String line : new String(headerBytes, StandardCharsets.UTF_8).split("\r\n")) {
+      if (line.isEmpty()) {
+        continue;
+      }
+      if ((line.charAt(0) == ' ' || line.charAt(0) == '\t') && !lines.isEmpty()) {
+        lines.set(lines.size() - 1, lines.get(lines.size() - 1) + "\r\n" + line);
+      } else {
+        lines.add(line);
+      }
+    }
+    Map<String, String> pending = new LinkedHashMap<String, String>(headers);
+    StringBuilder sb = new StringBuilder(headerBytes.length + 64);
+    for (String line : lines) {
+      int colon = line.indexOf(':');
+      String key = ((colon < 0) ? line : line.substring(0, colon)).trim().toLowerCase();
+      if (key.equals("content-disposition") && (name != null || fileName != null)) {
+        sb.append("Content-Disposition: ").append(contentDisposition(part)).append("\r\n");
+      } else if (pending.containsKey(key)) {
+        String value = pending.remove(key);
+        if (value != null) {
+          sb.append(line, 0, colon + 1).append(' ').append(value).append("\r\n");
+        }
+      } else if (!headers.containsKey(key)) {
+        sb.append(line).append("\r\n");
+      }
+    }
+    for (Map.Entry<String, String> entry : pending.entrySet()) {
+      if (entry.getValue() != null) {
+        sb.append(entry.getKey()).append(": ").append(entry.getValue()).append("\r\n");
+      }
+    }
+    sb.append("\r\n");
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private String contentDisposition(Part part) {
+    String disposition =
+        String.format("form-data; name=\"%s\"", (name != null) ? name : part.getName());
+    String newFileName = (fileName != null) ? fileName : part.getFileName();
+    if (newFileName != null && !newFileName.isEmpty()) {
+      disposition += String.format("; filename=\"%s\"", newFileName);
+    }
+    return disposition;
+  }
+}
@@ -0,0 +1,113 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.multipartform;
+
+import com.google.apigee.stream.ByteArrayContent;
+import com.google.apigee.stream.Content;
+import com.google.apigee.stream.UrlEncodingInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An application/x-www-form-urlencoded body: the name and content of each part, encoded, as
+ * name=value pairs joined with "&amp;". The content type, file name and encodings of the parts do
+ * not apply, and are ignored.
+ */
+public class UrlEncodedForm implements Form {
+  public static final String CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+  private final List<Part> parts;
+
+  public UrlEncodedForm(List<Part> parts) {
+    this.parts = parts;
+  }
+
+  public String getContentType() {
+    return CONTENT_TYPE;
+  }
+
+  // "name=", preceded by "&" for every part but the first
+  private static byte[] leader(Part part, boolean first) {
+    byte[] name = UrlEncodingInputStream.encode(part.getName().getBytes(StandardCharsets.UTF_8));
+    byte[] leader = new byte[name.length + (first ? 1 : 2)];
+    int pos = 0;
+    if (!first) {
+      leader[pos++] = '&';
+    }
+    System.arraycopy(name, 0, leader, pos, name.length);
+    leader[leader.length - 1] = '=';
+    return leader;
+  }
+
+  /** Returns the length of the form. Content that is not on the heap is read once to count. */
+  public long getContentLength() throws IOException {
+    long length = 0;
+    boolean first = true;
+    for (Part part : parts) {
+      length += leader(part, first).length;
+      first = false;
+      Content content = part.getContent();
+      if (content instanceof ByteArrayContent) {
+        byte[] bytes = content.toByteArray();
+        length += UrlEncodingInputStream.encodedLength(bytes, 0, bytes.length);
+      } else {
+        length += UrlEncodingInputStream.encodedLength(content.openStream());
+      }
+    }
+    return length;
+  }
+
+  public InputStream openStream() {
+    final Iterator<Part> partIterator = parts.iterator();
+    Enumeration<InputStream> streams =
+        new Enumeration<InputStream>() {
+          private Part pendingContent;
+          private boolean first = true;
+
+          public boolean hasMoreElements() {
+            return pendingContent != null || partIterator.hasNext();
+          }
+
+          public InputStream nextElement() {
+            if (pendingContent != null) {
+              Content content = pendingContent.getContent();
+              InputStream encoded =
+                  (content instanceof ByteArrayContent)
+                      ? new UrlEncodingInputStream(content.toByteArray())
+                      : new UrlEncodingInputStream(content.openStream());
+              pendingContent = null;
+              return encoded;
+            }
+            if (partIterator.hasNext()) {
+              pendingContent = partIterator.next();
+              byte[] leader = leader(pendingContent, first);
+              first = false;
+              return new ByteArrayInputStream(leader);
+            }
+            throw new NoSuchElementException();
+          }
+        };
+    return new SequenceInputStream(streams);
+  }
+}
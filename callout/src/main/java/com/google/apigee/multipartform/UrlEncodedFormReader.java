@@ -0,0 +1,271 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.multipartform;
+
+import com.google.apigee.stream.ByteArrayContentOutputStream;
+import com.google.apigee.stream.ContentOutputStream;
+import com.google.apigee.stream.LimitExceededException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Reads the fields of an application/x-www-form-urlencoded body, one at a time, as parts. The body
+ * is read a chunk at a time, and each chunk is decoded in place: a decoded byte is never longer
+ * than the bytes it came from, so decoded bytes are written back into the chunk behind the read
+ * position, and each run of them is handed to the name or value in one write. Values go into a
+ * {@link ContentOutputStream} from the supplier, as the content of multipart parts does.
+ *
+ * <p>Decoding follows the WHATWG URL standard: "+" is a space, "%" and two hex digits is a byte,
+ * and a "%" not followed by two hex digits is kept as it is. Empty fields, as in "a=1&&b=2", are
+ * skipped; a field without "=" has an empty value.
+ *
+ * <p>As with {@link PartOutputStream}, an optional check sees each field as soon as its name has
+ * been read, before its value is, and may reject it, or cap the size of its value, which is
+ * enforced as the value is written.
+ */
+public class UrlEncodedFormReader {
+  private static final int MAX_NAME_SIZE = PartOutputStream.MAX_HEADER_SIZE;
+  // bytes that decode to themselves
+  private static final boolean[] PLAIN = new boolean[256];
+
+  // the value of each hex digit, or -1
+  private static final byte[] HEX = new byte[256];
+
+  static {
+    Arrays.fill(PLAIN, true);
+    PLAIN['&'] = PLAIN['='] = PLAIN['+'] = PLAIN['%'] = false;
+    Arrays.fill(HEX, (byte) -1);
+    for (int d = 0; d < 16; d++) {
+      HEX["0123456789abcdef".charAt(d)] = (byte) d;
+      HEX["0123456789ABCDEF".charAt(d)] = (byte) d;
+    }
+  }
+
+  private final InputStream in;
+  private final Supplier<ContentOutputStream> valueSupplier;
+  private final long sizeLimit;
+  private final ToLongFunction<Part> check;
+  private final byte[] buf;
+  private int pos;
+  private int limit;
+  private boolean eof;
+  private boolean limitReached;
+
+  // the field being read
+  private ByteArrayContentOutputStream name;
+  private Part part;
+  private ContentOutputStream value;
+  private OutputStream sink;
+  private long sinkCount;
+  // decoded bytes not yet handed to the sink are buf[spanStart, out)
+  private int spanStart;
+  private int out;
+  // 0, or 1 after a "%", or 2 after a "%" and one hex digit
+  private int percent;
+  private byte firstDigit;
+
+  /**
+   * @param sizeLimit the largest value to accept, or 0 for no limit. At a larger value, reading
+   *     stops, and {@link #isLimitReached()} returns true.
+   */
+  public UrlEncodedFormReader(
+      InputStream in, int bufferSize, Supplier<ContentOutputStream> valueSupplier, long sizeLimit) {
+    this(in, bufferSize, valueSupplier, sizeLimit, null);
+  }
+
+  /**
+   * @param check called with each field once its name is read; returns the most bytes its decoded
+   *     value may have, or -1 for no limit, or throws to reject the field. Or null.
+   */
+  public UrlEncodedFormReader(
+      InputStream in,
+      int bufferSize,
+      Supplier<ContentOutputStream> valueSupplier,
+      long sizeLimit,
+      ToLongFunction<Part> check) {
+    this.in = in;
+    this.valueSupplier = valueSupplier;
+    this.sizeLimit = sizeLimit;
+    this.check = check;
+    this.buf = new byte[Math.max(bufferSize, 16)];
+  }
+
+  /** Returns true if reading stopped because a value exceeded the size limit. */
+  public boolean isLimitReached() {
+    return limitReached;
+  }
+
+  private static int hex(byte b) {
+    return HEX[b & 0xFF];
+  }
+
+  private void put(byte b) throws IOException {
+    if (out < pos) {
+      buf[out++] = b;
+    } else {
+      // only when a "%" held over from the previous chunk turns out to be literal
+      flush();
+      sink.write(b);
+      sinkCount++;
+    }
+  }
+
+  private void flush() throws IOException {
+    int n = out - spanStart;
+    if (n > 0) {
+      sinkCount += n;
+      if (sink == name && sinkCount > MAX_NAME_SIZE) {
+        throw new LimitExceededException("field name exceeds maximum size");
+      }
+      sink.write(buf, spanStart, n);
+    }
+    spanStart = out = pos;
+  }
+
+  private void startValue() throws IOException {
+    flush();
+    // the name is complete, so the field can be checked before its value is read
+    part =
+        new Part(new String(name.toContent().toByteArray(), StandardCharsets.UTF_8))
+            .withContentType("text/plain");
+    long maxSize = (check != null) ? check.applyAsLong(part) : -1;
+    value = valueSupplier.get();
+    sink = (maxSize >= 0) ? PartOutputStream.limited(value, part.getName(), maxSize) : value;
+    sinkCount = 0;
+  }
+
+  private void endPercent() throws IOException {
+    // a "%" that did not start an escape is kept as it is
+    if (percent > 0) {
+      put((byte) '%');
+      if (percent == 2) {
+        put(firstDigit);
+      }
+      percent = 0;
+    }
+  }
+
+  private Part finishField() throws IOException {
+    endPercent();
+    flush();
+    if (value == null) {
+      startValue();
+    } else if (sizeLimit > 0 && sinkCount > sizeLimit) {
+      limitReached = true;
+      return null;
+    }
+    value.close();
+    part.setPartContent(value.toContent());
+    return part;
+  }
+
+  /**
+   * Returns the next field, or null at the end of the form, or when a value exceeds the size limit.
+   */
+  public Part next() throws IOException {
+    if (limitReached) {
+      return null;
+    }
+    name = new ByteArrayContentOutputStream(32);
+    value = null;
+    sink = name;
+    sinkCount = 0;
+    spanStart = out = pos;
+    boolean started = false;
+
+    for (; ; ) {
+      if (pos == limit) {
+        flush();
+        if (sizeLimit > 0 && value != null && sinkCount > sizeLimit) {
+          limitReached = true;
+          return null;
+        }
+        int n = eof ? -1 : in.read(buf, 0, buf.length);
+        if (n == -1) {
+          eof = true;
+          return started ? finishField() : null;
+        }
+        pos = spanStart = out = 0;
+        limit = n;
+      }
+      if (percent == 0) {
+        // move a run of plain bytes down in one go
+        int start = pos;
+        while (pos < limit && PLAIN[buf[pos] & 0xFF]) {
+          pos++;
+        }
+        if (pos > start) {
+          if (out != start) {
+            System.arraycopy(buf, start, buf, out, pos - start);
+          }
+          out += pos - start;
+          started = true;
+          continue;
+        }
+      }
+      byte b = buf[pos++];
+      if (percent != 0) {
+        int d = hex(b);
+        if (d >= 0) {
+          if (percent == 1) {
+            firstDigit = b;
+            percent = 2;
+          } else {
+            put((byte) ((hex(firstDigit) << 4) | d));
+            percent = 0;
+          }
+          continue;
+        }
+        endPercent();
+      }
+      if (b == '&') {
+        if (!started) {
+          // an empty field
+          continue;
+        }
+        return finishField();
+      }
+      started = true;
+      if (b == '=' && value == null) {
+        startValue();
+      } else if (b == '+') {
+        put((byte) ' ');
+      } else if (b == '%') {
+        if (pos + 1 < limit) {
+          // the whole escape is in this chunk
+          int hi = hex(buf[pos]);
+          int lo = hex(buf[pos + 1]);
+          if (hi >= 0 && lo >= 0) {
+            buf[out++] = (byte) ((hi << 4) | lo);
+            pos += 2;
+          } else {
+            put(b);
+          }
+        } else {
+          percent = 1;
+        }
+      } else {
+        put(b);
+      }
+    }
+  }
+}
@@ -0,0 +1,147 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.multipartform;
+
+import com.google.apigee.stream.LimitExceededException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Transcodes a ZIP archive to a multipart form, as the form is read, with one part for each file in
+ * the archive. Each part has the name of its file, without any directory, as its file name, and a
+ * content type guessed from that name. The archive is inflated a buffer at a time, straight into
+ * the form, so memory does not grow with the size of the archive or its entries.
+ */
+public class ZipToMultipartInputStream extends InputStream {
+  private enum State {
+    NEXT_ENTRY,
+    CONTENT,
+    DONE
+  }
+
+  private final ZipInputStream zip;
+  private final MultipartForm form;
+  private final String partName;
+  private final long sizeLimit;
+  private State state = State.NEXT_ENTRY;
+  private long inflated;
+  private int partCount;
+  // the bytes being read, between entries
+  private byte[] out;
+  private int outPos;
+  private int outLimit;
+
+  /**
+   * @param partName the name of each part; or null, to name each part by its file
+   * @param sizeLimit the most bytes the entries may inflate to, together
+   */
+  public ZipToMultipartInputStream(
+      InputStream in, String boundary, String partName, long sizeLimit) {
+    this.zip = new ZipInputStream(in);
+    this.form = new MultipartForm(boundary, Collections.<Part>emptyList());
+    this.partName = partName;
+    this.sizeLimit = sizeLimit;
+  }
+
+  /** Returns the number of parts written so far. */
+  public int getPartCount() {
+    return partCount;
+  }
+
+  /** Returns the content type for a file name, or application/octet-stream. */
+  public static String contentTypeFor(String fileName) {
+    String contentType = URLConnection.guessContentTypeFromName(fileName);
+    return (contentType != null) ? contentType : "application/octet-stream";
+  }
+
+  private void emit(String s) {
+    out = s.getBytes(StandardCharsets.UTF_8);
+    outPos = 0;
+    outLimit = out.length;
+  }
+
+  // Moves to the next file in the archive, and sets the delimiter and headers
+  // of its part to be read. Returns false after the last.
+  private boolean nextEntry() throws IOException {
+    for (; ; ) {
+      ZipEntry entry = zip.getNextEntry();
+      if (entry == null) {
+        emit(form.trailer());
+        return false;
+      }
+      String fileName = MultipartToZipInputStream.baseName(entry.getName());
+      if (entry.isDirectory() || fileName == null) {
+        continue;
+      }
+      Part part =
+          new Part((partName != null) ? partName : fileName)
+              .withFileName(fileName)
+              .withContentType(contentTypeFor(fileName));
+      emit(form.leader(part));
+      partCount++;
+      return true;
+    }
+  }
+
+  public int read() throws IOException {
+    byte[] one = new byte[1];
+    return (read(one, 0, 1) == -1) ? -1 : (one[0] & 0xFF);
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    for (; ; ) {
+      if (outPos < outLimit) {
+        int n = Math.min(len, outLimit - outPos);
+        System.arraycopy(out, outPos, b, off, n);
+        outPos += n;
+        return n;
+      }
+      switch (state) {
+        case NEXT_ENTRY:
+          state = nextEntry() ? State.CONTENT : State.DONE;
+          break;
+        case CONTENT:
+          // the entry is inflated straight into the caller's buffer
+          int n = zip.read(b, off, len);
+          if (n == -1) {
+            state = State.NEXT_ENTRY;
+            break;
+          }
+          inflated += n;
+          if (inflated > sizeLimit) {
+            throw new LimitExceededException(
+                String.format("archive content exceeds the limit of %d bytes", sizeLimit));
+          }
+          return n;
+        default:
+          return -1;
+      }
+    }
+  }
+
+  public void close() throws IOException {
+    zip.close();
+  }
+}
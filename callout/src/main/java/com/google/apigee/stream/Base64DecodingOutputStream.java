@@ -0,0 +1,133 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Decodes base64 text written to it, and writes the decoded bytes to the underlying stream. As with
+ * the MIME decoder in java.util.Base64, characters outside the base64 alphabet, such as line
+ * breaks, are ignored, and decoding stops at the first padding character. Both the basic and the
+ * URL-safe alphabets are accepted.
+ *
+ * <p>A strict decoder, for base64 that is not MIME content, rejects any character outside the
+ * alphabet, and anything but padding after the first padding character.
+ */
+public class Base64DecodingOutputStream extends FilterOutputStream {
+  private static final int PAD = -2;
+  private static final int[] sextets = new int[256];
+
+  static {
+    Arrays.fill(sextets, -1);
+    String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    for (int i = 0; i < alphabet.length(); i++) {
+      sextets[alphabet.charAt(i)] = i;
+    }
+    sextets['-'] = 62;
+    sextets['_'] = 63;
+    sextets['='] = PAD;
+  }
+
+  private final byte[] buffer = new byte[3 * 1024];
+  private int buffered;
+  private int quantum;
+  private int count;
+  private boolean padded;
+  private final boolean strict;
+
+  public Base64DecodingOutputStream(OutputStream out) {
+    this(out, false);
+  }
+
+  public Base64DecodingOutputStream(OutputStream out, boolean strict) {
+    super(out);
+    this.strict = strict;
+  }
+
+  public void write(int b) throws IOException {
+    int sextet = sextets[b & 0xFF];
+    if (strict && (sextet == -1 || (padded && sextet != PAD))) {
+      throw new IllegalStateException(
+          String.format("not valid base64: unexpected character 0x%02x", b & 0xFF));
+    }
+    if (padded || sextet == -1) {
+      return;
+    }
+    if (sextet == PAD) {
+      finishQuantum();
+      padded = true;
+      return;
+    }
+    quantum = (quantum << 6) | sextet;
+    if (++count == 4) {
+      if (buffered + 3 > buffer.length) {
+        flushBuffer();
+      }
+      buffer[buffered++] = (byte) (quantum >> 16);
+      buffer[buffered++] = (byte) (quantum >> 8);
+      buffer[buffered++] = (byte) quantum;
+      quantum = 0;
+      count = 0;
+    }
+  }
+
+  public void write(byte[] b, int off, int len) throws IOException {
+    for (int i = off; i < off + len; i++) {
+      write(b[i]);
+    }
+  }
+
+  // emits the bytes of a partial quantum, as at the end of the content
+  private void finishQuantum() throws IOException {
+    if (strict && count == 1) {
+      throw new IllegalStateException("not valid base64: the last unit has a single character");
+    }
+    if (buffered + 2 > buffer.length) {
+      flushBuffer();
+    }
+    if (count == 2) {
+      buffer[buffered++] = (byte) (quantum >> 4);
+    } else if (count == 3) {
+      buffer[buffered++] = (byte) (quantum >> 10);
+      buffer[buffered++] = (byte) (quantum >> 2);
+    }
+    quantum = 0;
+    count = 0;
+  }
+
+  private void flushBuffer() throws IOException {
+    if (buffered > 0) {
+      out.write(buffer, 0, buffered);
+      buffered = 0;
+    }
+  }
+
+  public void flush() throws IOException {
+    flushBuffer();
+    out.flush();
+  }
+
+  public void close() throws IOException {
+    if (!padded) {
+      finishQuantum();
+    }
+    flushBuffer();
+    out.close();
+  }
+}
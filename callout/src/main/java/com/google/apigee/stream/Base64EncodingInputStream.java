@@ -0,0 +1,123 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Encodes the bytes of an underlying stream as base64, as they are read, with MIME line wrapping
+ * (RFC 2045 section 6.8): lines of 76 characters, separated by CRLF, with no line break after the
+ * last line. The output is the same as that of {@code Base64.getMimeEncoder()}. Without line
+ * breaks, as for a JSON string, it is the same as that of {@code Base64.getEncoder()}.
+ */
+public class Base64EncodingInputStream extends InputStream {
+  private static final int LINE_LENGTH = 76;
+  // input bytes per output line
+  private static final int LINE_INPUT = LINE_LENGTH / 4 * 3;
+  private static final byte[] CRLF = new byte[] {'\r', '\n'};
+
+  private final InputStream in;
+  private final boolean lineBreaks;
+  private final Base64.Encoder encoder;
+  private final byte[] input = new byte[LINE_INPUT * 64];
+  private final byte[] output = new byte[(int) encodedLength(input.length)];
+  private final byte[] one = new byte[1];
+  private int outputLength;
+  private int outputPos;
+  // the line break between chunks, still to be read
+  private int crlfPos = CRLF.length;
+  private boolean first = true;
+  private boolean eof;
+
+  public Base64EncodingInputStream(InputStream in) {
+    this(in, true);
+  }
+
+  public Base64EncodingInputStream(InputStream in, boolean lineBreaks) {
+    this.in = in;
+    this.lineBreaks = lineBreaks;
+    this.encoder = lineBreaks ? Base64.getMimeEncoder() : Base64.getEncoder();
+  }
+
+  /** Returns the number of bytes this stream produces for an input of the given length. */
+  public static long encodedLength(long length) {
+    long chars = (length + 2) / 3 * 4;
+    long lines = (chars + LINE_LENGTH - 1) / LINE_LENGTH;
+    return chars + ((lines > 1) ? (lines - 1) * CRLF.length : 0);
+  }
+
+  // Encodes the next chunk of input. Chunks are a whole number of lines, so
+  // the line breaks fall in the same places as if the input were encoded at once.
+  private boolean fill() throws IOException {
+    int n = 0;
+    while (n < input.length) {
+      int r = in.read(input, n, input.length - n);
+      if (r == -1) break;
+      n += r;
+    }
+    if (n == 0) {
+      eof = true;
+      return false;
+    }
+    outputLength =
+        (n == input.length)
+            ? encoder.encode(input, output)
+            : encoder.encode(Arrays.copyOf(input, n), output);
+    if (first) {
+      first = false;
+    } else if (lineBreaks) {
+      crlfPos = 0;
+    }
+    outputPos = 0;
+    if (n < input.length) {
+      eof = true;
+    }
+    return true;
+  }
+
+  public int read() throws IOException {
+    int n = read(one, 0, 1);
+    return (n == -1) ? -1 : (one[0] & 0xFF);
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (crlfPos == CRLF.length && outputPos == outputLength) {
+      if (eof || !fill()) {
+        return -1;
+      }
+    }
+    if (crlfPos < CRLF.length) {
+      int n = Math.min(len, CRLF.length - crlfPos);
+      System.arraycopy(CRLF, crlfPos, b, off, n);
+      crlfPos += n;
+      return n;
+    }
+    int n = Math.min(len, outputLength - outputPos);
+    System.arraycopy(output, outputPos, b, off, n);
+    outputPos += n;
+    return n;
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,37 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Operations on ByteBuffers that newer Java versions do better. This is the Java 8 version; the jar
+ * also holds a version for Java 17 and later, in META-INF/versions/17. Both must behave the same.
+ */
+public final class Buffers {
+  private Buffers() {}
+
+  /**
+   * Copies bytes from the buffer, starting at an index, without changing the position of the
+   * buffer, so that many threads may read one buffer at once.
+   */
+  public static void get(ByteBuffer src, int index, byte[] dst, int off, int len) {
+    ByteBuffer view = src.duplicate();
+    view.limit(index + len);
+    view.position(index);
+    view.get(dst, off, len);
+  }
+}
@@ -0,0 +1,47 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/** Content held in a byte array on the Java heap. */
+public class ByteArrayContent implements Content {
+  private final byte[] bytes;
+
+  public ByteArrayContent(byte[] bytes) {
+    this.bytes = bytes;
+  }
+
+  public long length() {
+    return bytes.length;
+  }
+
+  public InputStream openStream() {
+    return new ByteArrayInputStream(bytes);
+  }
+
+  /** Returns the backing array itself, not a copy. */
+  public byte[] toByteArray() {
+    return bytes;
+  }
+
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(bytes);
+  }
+}
@@ -0,0 +1,73 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.util.Arrays;
+
+/**
+ * Like ByteArrayOutputStream, but unsynchronized, and it hands its buffer to the resulting {@link
+ * ByteArrayContent} without a further copy when the buffer happens to be exactly full.
+ */
+public class ByteArrayContentOutputStream extends ContentOutputStream {
+  private byte[] buf;
+  private int count;
+  private int growthCount;
+
+  public ByteArrayContentOutputStream(int initialCapacity) {
+    this.buf = new byte[Math.max(initialCapacity, 16)];
+  }
+
+  public ByteArrayContentOutputStream() {
+    this(256);
+  }
+
+  private void ensureCapacity(int minCapacity) {
+    if (minCapacity - buf.length > 0) {
+      int newCapacity = buf.length << 1;
+      if (newCapacity - minCapacity < 0) {
+        newCapacity = minCapacity;
+      }
+      if (newCapacity < 0) {
+        throw new OutOfMemoryError("content too large for a byte array");
+      }
+      buf = Arrays.copyOf(buf, newCapacity);
+      growthCount++;
+    }
+  }
+
+  public void write(int b) {
+    ensureCapacity(count + 1);
+    buf[count++] = (byte) b;
+  }
+
+  public void write(byte[] b, int off, int len) {
+    ensureCapacity(count + len);
+    System.arraycopy(b, off, buf, count, len);
+    count += len;
+  }
+
+  public int getGrowthCount() {
+    return growthCount;
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public Content toContent() {
+    return new ByteArrayContent((count == buf.length) ? buf : Arrays.copyOf(buf, count));
+  }
+}
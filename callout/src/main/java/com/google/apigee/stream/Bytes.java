@@ -0,0 +1,78 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Operations on byte arrays and streams that newer Java versions do better. This is the Java 8
+ * version; the jar also holds a version for Java 11 and later, in META-INF/versions/11, which uses
+ * the methods those versions added to Arrays and InputStream. Both must behave the same.
+ */
+public final class Bytes {
+  private static final int CHUNK_SIZE = 8192;
+
+  private Bytes() {}
+
+  /**
+   * Compares {@code length} bytes of two arrays, from the given offsets.
+   *
+   * @return the index, relative to the offsets, of the first byte that differs, or -1 if none does.
+   */
+  public static int mismatch(byte[] a, int aFrom, byte[] b, int bFrom, int length) {
+    for (int i = 0; i < length; i++) {
+      if (a[aFrom + i] != b[bFrom + i]) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Reads until the given number of bytes have been read, or the stream ends.
+   *
+   * @return the number of bytes read, which is less than len only at the end of the stream.
+   */
+  public static int readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+    int n = 0;
+    while (n < len) {
+      int r = in.read(b, off + n, len - n);
+      if (r == -1) {
+        break;
+      }
+      n += r;
+    }
+    return n;
+  }
+
+  /**
+   * Copies the rest of the stream to the output. The streams are not closed.
+   *
+   * @return the number of bytes copied.
+   */
+  public static long transfer(InputStream in, OutputStream out) throws IOException {
+    byte[] chunk = new byte[CHUNK_SIZE];
+    long count = 0;
+    int n;
+    while ((n = in.read(chunk, 0, chunk.length)) != -1) {
+      out.write(chunk, 0, n);
+      count += n;
+    }
+    return count;
+  }
+}
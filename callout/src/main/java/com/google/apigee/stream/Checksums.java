@@ -0,0 +1,94 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.util.zip.Checksum;
+
+/**
+ * Checksums that newer Java versions provide. This is the Java 8 version, which computes CRC32C
+ * in Java; the jar also holds a version for Java 11 and later, in META-INF/versions/11, which uses
+ * java.util.zip.CRC32C, an intrinsic on most processors. Both must compute the same values.
+ */
+public final class Checksums {
+  private Checksums() {}
+
+  /** Returns a new CRC32C (Castagnoli) checksum, as used by iSCSI and cloud storage. */
+  public static Checksum newCrc32c() {
+    return new Crc32c();
+  }
+
+  // CRC32C a slice of eight bytes at a time, with a table for each byte of the slice.
+  private static final class Crc32c implements Checksum {
+    private static final int[][] TABLES = new int[8][256];
+
+    static {
+      for (int n = 0; n < 256; n++) {
+        int crc = n;
+        for (int k = 0; k < 8; k++) {
+          crc = ((crc & 1) != 0) ? (crc >>> 1) ^ 0x82F63B78 : crc >>> 1;
+        }
+        TABLES[0][n] = crc;
+      }
+      for (int n = 0; n < 256; n++) {
+        for (int t = 1; t < 8; t++) {
+          TABLES[t][n] = (TABLES[t - 1][n] >>> 8) ^ TABLES[0][TABLES[t - 1][n] & 0xFF];
+        }
+      }
+    }
+
+    private int crc = 0xFFFFFFFF;
+
+    public void update(int b) {
+      crc = (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xFF];
+    }
+
+    public void update(byte[] b, int off, int len) {
+      int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+      int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+      int c = crc;
+      int end = off + len;
+      for (; off + 8 <= end; off += 8) {
+        int lo =
+            c
+                ^ ((b[off] & 0xFF)
+                    | (b[off + 1] & 0xFF) << 8
+                    | (b[off + 2] & 0xFF) << 16
+                    | (b[off + 3] & 0xFF) << 24);
+        c =
+            t7[lo & 0xFF]
+                ^ t6[(lo >>> 8) & 0xFF]
+                ^ t5[(lo >>> 16) & 0xFF]
+                ^ t4[lo >>> 24]
+                ^ t3[b[off + 4] & 0xFF]
+                ^ t2[b[off + 5] & 0xFF]
+                ^ t1[b[off + 6] & 0xFF]
+                ^ t0[b[off + 7] & 0xFF];
+      }
+      for (; off < end; off++) {
+        c = (c >>> 8) ^ t0[(c ^ b[off]) & 0xFF];
+      }
+      crc = c;
+    }
+
+    public long getValue() {
+      return (~crc) & 0xFFFFFFFFL;
+    }
+
+    public void reset() {
+      crc = 0xFFFFFFFF;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the bytes of an underlying stream as they are read, in the gzip (RFC 1952) or zlib
+ * (RFC 1950, the HTTP "deflate" coding) format. Only one input buffer and the deflater's own window
+ * are held in memory.
+ */
+public class CompressingInputStream extends InputStream {
+  private static final byte[] GZIP_HEADER =
+      new byte[] {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+  private final InputStream in;
+  private final Deflater deflater;
+  private final CRC32 crc;
+  private final byte[] inputBuffer = new byte[8192];
+  private byte[] pending;
+  private int pendingPos;
+  private boolean inputDone;
+  private boolean trailerQueued;
+  private boolean eof;
+
+  /**
+   * @param coding "gzip" or "deflate"
+   * @param level a compression level 0-9, or -1 for the default
+   */
+  public CompressingInputStream(InputStream in, String coding, int level) {
+    this.in = in;
+    if (isGzip(coding)) {
+      this.deflater = new Deflater(level, true);
+      this.crc = new CRC32();
+      this.pending = GZIP_HEADER.clone();
+    } else if ("deflate".equalsIgnoreCase(coding)) {
+      this.deflater = new Deflater(level, false);
+      this.crc = null;
+    } else {
+      throw new IllegalStateException(String.format("unsupported compression: %s", coding));
+    }
+  }
+
+  private static boolean isGzip(String coding) {
+    return "gzip".equalsIgnoreCase(coding) || "x-gzip".equalsIgnoreCase(coding);
+  }
+
+  public static boolean isSupported(String coding) {
+    return isGzip(coding) || "deflate".equalsIgnoreCase(coding);
+  }
+
+  public int read() throws IOException {
+    byte[] one = new byte[1];
+    int n = read(one, 0, 1);
+    return (n == -1) ? -1 : (one[0] & 0xFF);
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    for (; ; ) {
+      if (pending != null) {
+        int n = Math.min(len, pending.length - pendingPos);
+        System.arraycopy(pending, pendingPos, b, off, n);
+        pendingPos += n;
+        if (pendingPos == pending.length) {
+          pending = null;
+          pendingPos = 0;
+        }
+        return n;
+      }
+      if (eof) {
+        return -1;
+      }
+      if (!deflater.finished()) {
+        if (deflater.needsInput() && !inputDone) {
+          int n = in.read(inputBuffer, 0, inputBuffer.length);
+          if (n == -1) {
+            inputDone = true;
+            deflater.finish();
+          } else if (n > 0) {
+            if (crc != null) {
+              crc.update(inputBuffer, 0, n);
+            }
+            deflater.setInput(inputBuffer, 0, n);
+          }
+        }
+        int n = deflater.deflate(b, off, len);
+        if (n > 0) {
+          return n;
+        }
+        continue;
+      }
+      if (crc != null && !trailerQueued) {
+        trailerQueued = true;
+        pending = new byte[8];
+        writeIntLE(pending, 0, (int) crc.getValue());
+        writeIntLE(pending, 4, (int) deflater.getBytesRead());
+        continue;
+      }
+      eof = true;
+      deflater.end();
+    }
+  }
+
+  private static void writeIntLE(byte[] b, int off, int v) {
+    b[off] = (byte) v;
+    b[off + 1] = (byte) (v >> 8);
+    b[off + 2] = (byte) (v >> 16);
+    b[off + 3] = (byte) (v >> 24);
+  }
+
+  public void close() throws IOException {
+    if (!eof) {
+      eof = true;
+      deflater.end();
+    }
+    in.close();
+  }
+}
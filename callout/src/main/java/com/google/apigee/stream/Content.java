@@ -0,0 +1,40 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A read-only sequence of bytes of known length. The bytes may live on the heap, or elsewhere;
+ * callers that want to avoid a copy should use {@link #openStream()} or {@link
+ * #writeTo(OutputStream)} rather than {@link #toByteArray()}.
+ */
+public interface Content {
+  long length();
+
+  InputStream openStream();
+
+  /** Returns the bytes as an array. Implementations that are not heap-backed will copy. */
+  byte[] toByteArray();
+
+  default void writeTo(OutputStream out) throws IOException {
+    try (InputStream in = openStream()) {
+      Bytes.transfer(in, out);
+    }
+  }
+}
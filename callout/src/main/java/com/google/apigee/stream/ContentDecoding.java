@@ -0,0 +1,83 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** Wraps a stream so that content with an HTTP Content-Encoding is inflated as it is read. */
+public class ContentDecoding {
+
+  private ContentDecoding() {}
+
+  /**
+   * Returns a stream that yields the decoded content. Codings listed in the header are undone in
+   * reverse order, as per RFC 9110 section 8.4. The decoded content may not exceed {@code limit}
+   * bytes.
+   *
+   * @param contentEncoding the value of the Content-Encoding header; may be null.
+   * @throws IllegalStateException if a coding is not supported.
+   */
+  public static InputStream decode(
+      InputStream in, String contentEncoding, int bufferSize, long limit) throws IOException {
+    if (contentEncoding == null) {
+      return in;
+    }
+    String[] codings = contentEncoding.split(",");
+    boolean decoded = false;
+    for (int i = codings.length - 1; i >= 0; i--) {
+      String coding = codings[i].trim().toLowerCase();
+      if (coding.equals("") || coding.equals("identity")) {
+        continue;
+      }
+      if (coding.equals("gzip") || coding.equals("x-gzip")) {
+        in = new GZIPInputStream(in, bufferSize);
+      } else if (coding.equals("deflate")) {
+        in = inflate(in, bufferSize);
+      } else {
+        throw new IllegalStateException(
+            String.format("unsupported content-encoding: %s", coding));
+      }
+      decoded = true;
+    }
+    return (decoded) ? new LimitedInputStream(in, limit) : in;
+  }
+
+  // RFC 9110 says "deflate" means the zlib format, but some senders use raw
+  // deflate. Peek at the first two bytes to tell which.
+  private static InputStream inflate(InputStream in, int bufferSize) throws IOException {
+    PushbackInputStream pin = new PushbackInputStream(in, 2);
+    byte[] head = new byte[2];
+    int n = Bytes.readFully(pin, head, 0, 2);
+    pin.unread(head, 0, n);
+    boolean zlib =
+        n == 2 && (head[0] & 0x0F) == 8 && (((head[0] & 0xFF) << 8) | (head[1] & 0xFF)) % 31 == 0;
+    return new InflaterInputStream(pin, new Inflater(!zlib), bufferSize) {
+      // an Inflater passed in is not ended by InflaterInputStream.close()
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          inf.end();
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,165 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Checksum;
+
+/**
+ * A digest of content, computed as the content goes by: a message digest, such as SHA-256, or a
+ * checksum, such as CRC32C, whose value is taken as four bytes, most significant first.
+ */
+public abstract class ContentDigest {
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final String algorithm;
+
+  ContentDigest(String algorithm) {
+    this.algorithm = algorithm;
+  }
+
+  /** Returns the name of the algorithm, as given to {@link #of(String)}. */
+  public String getAlgorithm() {
+    return algorithm;
+  }
+
+  public abstract void update(byte[] b, int off, int len);
+
+  /** Returns the digest of the content so far, and resets this digest. */
+  public abstract byte[] digest();
+
+  /**
+   * Returns a new digest.
+   *
+   * @param algorithm one of sha256, sha512, md5, or crc32c
+   */
+  public static ContentDigest of(String algorithm) {
+    switch (algorithm) {
+      case "sha256":
+        return new Message(algorithm, "SHA-256");
+      case "sha512":
+        return new Message(algorithm, "SHA-512");
+      case "md5":
+        return new Message(algorithm, "MD5");
+      case "crc32c":
+        return new Check(algorithm, Checksums.newCrc32c());
+      default:
+        throw new IllegalStateException("unsupported digest: " + algorithm);
+    }
+  }
+
+  /**
+   * Returns the algorithms in a comma-separated list, in lower case and without hyphens, so that
+   * "SHA-256, md5" gives sha256 and md5. Throws IllegalStateException for any that is not
+   * supported.
+   */
+  public static List<String> algorithms(String spec) {
+    List<String> algorithms = new ArrayList<String>();
+    if (spec != null) {
+      for (String name : spec.split(",")) {
+        String algorithm = name.trim().toLowerCase(Locale.ROOT).replace("-", "");
+        if (!algorithm.isEmpty() && !algorithms.contains(algorithm)) {
+          of(algorithm);
+          algorithms.add(algorithm);
+        }
+      }
+    }
+    return algorithms;
+  }
+
+  /** Encodes a digest as lower-case hex, or, if base64 is true, as base64. */
+  public static String encode(byte[] digest, boolean base64) {
+    if (base64) {
+      return Base64.getEncoder().encodeToString(digest);
+    }
+    char[] chars = new char[digest.length * 2];
+    for (int i = 0; i < digest.length; i++) {
+      chars[2 * i] = HEX[(digest[i] >> 4) & 0xF];
+      chars[2 * i + 1] = HEX[digest[i] & 0xF];
+    }
+    return new String(chars);
+  }
+
+  /** Returns the name of an algorithm in the HTTP Digest Algorithm registry, as sha-256. */
+  public static String fieldName(String algorithm) {
+    return algorithm.startsWith("sha") ? "sha-" + algorithm.substring(3) : algorithm;
+  }
+
+  /**
+   * Returns the value of a Content-Digest or Repr-Digest header (RFC 9530) for the digests, by
+   * algorithm, as {@code sha-256=:...:, md5=:...:}.
+   */
+  public static String headerValue(Map<String, byte[]> digests) {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, byte[]> digest : digests.entrySet()) {
+      if (sb.length() > 0) {
+        sb.append(", ");
+      }
+      sb.append(fieldName(digest.getKey())).append("=:");
+      sb.append(encode(digest.getValue(), true)).append(':');
+    }
+    return sb.toString();
+  }
+
+  private static final class Message extends ContentDigest {
+    private final MessageDigest md;
+
+    Message(String algorithm, String jcaName) {
+      super(algorithm);
+      try {
+        md = MessageDigest.getInstance(jcaName);
+      } catch (NoSuchAlgorithmException e) {
+        // every Java platform has these
+        throw new IllegalStateException(e);
+      }
+    }
+
+    public void update(byte[] b, int off, int len) {
+      md.update(b, off, len);
+    }
+
+    public byte[] digest() {
+      return md.digest();
+    }
+  }
+
+  private static final class Check extends ContentDigest {
+    private final Checksum checksum;
+
+    Check(String algorithm, Checksum checksum) {
+      super(algorithm);
+      this.checksum = checksum;
+    }
+
+    public void update(byte[] b, int off, int len) {
+      checksum.update(b, off, len);
+    }
+
+    public byte[] digest() {
+      long value = checksum.getValue();
+      checksum.reset();
+      return new byte[] {
+        (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value
+      };
+    }
+  }
+}
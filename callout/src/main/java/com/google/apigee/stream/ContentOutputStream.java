@@ -0,0 +1,30 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.OutputStream;
+
+/** An OutputStream that accumulates what is written into a {@link Content}. */
+public abstract class ContentOutputStream extends OutputStream {
+
+  /** Returns the bytes written so far. */
+  public abstract Content toContent();
+
+  /** Returns the number of times the stream has had to grow a buffer by copying it. */
+  public int getGrowthCount() {
+    return 0;
+  }
+}
@@ -0,0 +1,82 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A ContentOutputStream that computes digests of what is written to it, on its way to another.
+ * Each chunk is digested as it is written, while it is still in the cache, so the digests take no
+ * second pass over the content, wherever the content ends up: on the heap, off it, or in a file.
+ */
+public class DigestingContentOutputStream extends ContentOutputStream {
+  private final ContentOutputStream out;
+  private final ContentDigest[] digests;
+  private Map<String, byte[]> values;
+
+  /** @param algorithms the digests to compute, as given to {@link ContentDigest#of(String)} */
+  public DigestingContentOutputStream(ContentOutputStream out, List<String> algorithms) {
+    this.out = out;
+    this.digests = new ContentDigest[algorithms.size()];
+    for (int i = 0; i < digests.length; i++) {
+      digests[i] = ContentDigest.of(algorithms.get(i));
+    }
+  }
+
+  public void write(int b) throws IOException {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  public void write(byte[] b, int off, int len) throws IOException {
+    for (ContentDigest digest : digests) {
+      digest.update(b, off, len);
+    }
+    out.write(b, off, len);
+  }
+
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  public void close() throws IOException {
+    out.close();
+  }
+
+  public Content toContent() {
+    return out.toContent();
+  }
+
+  public int getGrowthCount() {
+    return out.getGrowthCount();
+  }
+
+  /**
+   * Returns the digests of everything written, by algorithm, in the order they were asked for.
+   * After this, the digests do not change.
+   */
+  public Map<String, byte[]> getDigests() {
+    if (values == null) {
+      values = new LinkedHashMap<String, byte[]>();
+      for (ContentDigest digest : digests) {
+        values.put(digest.getAlgorithm(), digest.digest());
+      }
+    }
+    return values;
+  }
+}
@@ -0,0 +1,118 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * An InputStream that computes digests of what is read through it, a chunk at a time as the
+ * reader takes it, and hands them to a consumer when the stream ends. A reader that stops before
+ * the end gets no digests.
+ */
+public class DigestingInputStream extends FilterInputStream {
+  private static final int CHUNK_SIZE = 8192;
+
+  private final ContentDigest[] digests;
+  private final Consumer<Map<String, byte[]>> onEnd;
+  private Map<String, byte[]> values;
+
+  /**
+   * @param algorithms the digests to compute, as given to {@link ContentDigest#of(String)}
+   * @param onEnd receives the digests, by algorithm, when the stream ends; or null
+   */
+  public DigestingInputStream(
+      InputStream in, List<String> algorithms, Consumer<Map<String, byte[]>> onEnd) {
+    super(in);
+    this.digests = new ContentDigest[algorithms.size()];
+    for (int i = 0; i < digests.length; i++) {
+      digests[i] = ContentDigest.of(algorithms.get(i));
+    }
+    this.onEnd = onEnd;
+  }
+
+  /** Reads a stream to its end, and closes it, and returns its digests. */
+  public static Map<String, byte[]> digest(InputStream in, List<String> algorithms)
+      throws IOException {
+    try (DigestingInputStream digesting = new DigestingInputStream(in, algorithms, null)) {
+      return digesting.readToEnd();
+    }
+  }
+
+  /** Reads the rest of the stream, discarding it, and returns the digests. */
+  public Map<String, byte[]> readToEnd() throws IOException {
+    byte[] chunk = new byte[CHUNK_SIZE];
+    while (read(chunk, 0, chunk.length) != -1) {}
+    return values;
+  }
+
+  public int read() throws IOException {
+    byte[] one = new byte[1];
+    return (read(one, 0, 1) == -1) ? -1 : (one[0] & 0xFF);
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    int n = in.read(b, off, len);
+    if (n > 0) {
+      for (ContentDigest digest : digests) {
+        digest.update(b, off, n);
+      }
+    } else if (n == -1 && values == null) {
+      values = new LinkedHashMap<String, byte[]>();
+      for (ContentDigest digest : digests) {
+        values.put(digest.getAlgorithm(), digest.digest());
+      }
+      if (onEnd != null) {
+        onEnd.accept(values);
+      }
+    }
+    return n;
+  }
+
+  // skipped bytes are digested too
+  public long skip(long n) throws IOException {
+    byte[] chunk = new byte[(int) Math.min(CHUNK_SIZE, Math.max(n, 1))];
+    long skipped = 0;
+    while (skipped < n) {
+      int r = read(chunk, 0, (int) Math.min(chunk.length, n - skipped));
+      if (r == -1) {
+        break;
+      }
+      skipped += r;
+    }
+    return skipped;
+  }
+
+  public boolean markSupported() {
+    return false;
+  }
+
+  public void mark(int readlimit) {}
+
+  public void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
+  }
+
+  /** Returns the digests, by algorithm, once the stream has ended; or null before. */
+  public Map<String, byte[]> getDigests() {
+    return values;
+  }
+}
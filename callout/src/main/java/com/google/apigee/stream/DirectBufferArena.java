@@ -0,0 +1,406 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An arena of direct (off-heap) ByteBuffers, for holding part content outside the Java heap. The
+ * arena hands out fixed-size blocks from a process-wide pool; content written through {@link
+ * #newOutputStream()} is laid into those blocks.
+ *
+ * <p>The arena is reference counted. Its creator holds one reference, given up by {@link #close()},
+ * and each stream wrapped by {@link #releaseOnClose(InputStream)} holds another until it is closed.
+ * Once all are given up, the blocks go back to the pool, after which any content obtained from the
+ * arena is no longer readable. If the arena becomes unreachable first, its blocks are reclaimed
+ * into the pool the next time another arena is created.
+ *
+ * <p>An arena created with leak tracking remembers where it was created. If it becomes unreachable
+ * without having been released, the leak is counted and can be inspected via {@link
+ * #getLeakCount()} and {@link #getLastLeakSite()}.
+ *
+ * <p>An arena is meant to be used by one message flow at a time; it is not safe for concurrent
+ * writers.
+ */
+public final class DirectBufferArena implements Closeable {
+  public static final int BLOCK_SIZE = 64 * 1024;
+  private static final int MAX_POOLED_BLOCKS = 256;
+
+  private static final ConcurrentLinkedQueue<ByteBuffer> pool =
+      new ConcurrentLinkedQueue<ByteBuffer>();
+  private static final AtomicInteger pooledCount = new AtomicInteger();
+  private static final LongAdder poolHits = new LongAdder();
+  private static final LongAdder poolMisses = new LongAdder();
+  private static final LongAdder droppedBlocks = new LongAdder();
+
+  private static final ReferenceQueue<DirectBufferArena> collected =
+      new ReferenceQueue<DirectBufferArena>();
+  private static final Set<LeakRef> tracked =
+      Collections.newSetFromMap(new ConcurrentHashMap<LeakRef, Boolean>());
+  private static final AtomicLong leakCount = new AtomicLong();
+  private static volatile String lastLeakSite;
+
+  /**
+   * The state shared between an arena and its leak tracker. Reads from the blocks hold its lock, so
+   * that they cannot be recycled, and handed to another arena, in the middle of a read.
+   */
+  private static final class State {
+    final List<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+    volatile boolean released;
+    boolean closed;
+    int references = 1;
+  }
+
+  private static final class LeakRef extends PhantomReference<DirectBufferArena> {
+    final State state;
+    // where the arena was created, if it tracks leaks
+    final Throwable site;
+
+    LeakRef(DirectBufferArena arena, Throwable site) {
+      super(arena, collected);
+      this.state = arena.state;
+      this.site = site;
+    }
+  }
+
+  private final State state = new State();
+  private final LeakRef leakRef;
+  private ByteBuffer current;
+
+  public DirectBufferArena(boolean trackLeaks) {
+    reclaimLeaks();
+    leakRef =
+        new LeakRef(this, trackLeaks ? new Throwable("DirectBufferArena allocated here") : null);
+    tracked.add(leakRef);
+  }
+
+  public DirectBufferArena() {
+    this(false);
+  }
+
+  private static ByteBuffer acquireBlock() {
+    ByteBuffer block = pool.poll();
+    if (block == null) {
+      poolMisses.increment();
+      return ByteBuffer.allocateDirect(BLOCK_SIZE);
+    }
+    poolHits.increment();
+    pooledCount.decrementAndGet();
+    return block;
+  }
+
+  private static void recycleBlocks(List<ByteBuffer> blocks) {
+    for (ByteBuffer block : blocks) {
+      if (pooledCount.incrementAndGet() > MAX_POOLED_BLOCKS) {
+        // let the GC free it
+        pooledCount.decrementAndGet();
+        droppedBlocks.increment();
+      } else {
+        block.clear();
+        pool.offer(block);
+      }
+    }
+    blocks.clear();
+  }
+
+  /** Returns blocks held by arenas that were dropped without being released. */
+  public static void reclaimLeaks() {
+    Reference<? extends DirectBufferArena> ref;
+    while ((ref = collected.poll()) != null) {
+      LeakRef leak = (LeakRef) ref;
+      tracked.remove(leak);
+      synchronized (leak.state) {
+        if (!leak.state.released) {
+          leak.state.released = true;
+          if (leak.site != null) {
+            leakCount.incrementAndGet();
+            StackTraceElement[] frames = leak.site.getStackTrace();
+            lastLeakSite = (frames.length > 1) ? frames[1].toString() : "unknown";
+          }
+          recycleBlocks(leak.state.blocks);
+        }
+      }
+    }
+  }
+
+  /** Returns the number of blocks taken from the pool rather than newly allocated. */
+  public static long getPoolHits() {
+    return poolHits.sum();
+  }
+
+  /** Returns the number of blocks newly allocated because the pool was empty. */
+  public static long getPoolMisses() {
+    return poolMisses.sum();
+  }
+
+  /** Returns the number of blocks left to the GC because the pool was full. */
+  public static long getDroppedBlocks() {
+    return droppedBlocks.sum();
+  }
+
+  /** Returns the number of blocks now in the pool. */
+  public static int getPooledBlockCount() {
+    return pooledCount.get();
+  }
+
+  public static long getLeakCount() {
+    return leakCount.get();
+  }
+
+  public static String getLastLeakSite() {
+    return lastLeakSite;
+  }
+
+  public boolean isReleased() {
+    return state.released;
+  }
+
+  private void checkNotReleased() {
+    if (state.released) {
+      throw new IllegalStateException("direct memory arena has been released");
+    }
+  }
+
+  /** Returns the block to write into next, with at least one byte remaining. */
+  private ByteBuffer writableBlock() {
+    synchronized (state) {
+      checkNotReleased();
+      if (current == null || !current.hasRemaining()) {
+        current = acquireBlock();
+        state.blocks.add(current);
+      }
+      return current;
+    }
+  }
+
+  /** Returns a stream that lays content into this arena. */
+  public ContentOutputStream newOutputStream() {
+    return new ArenaOutputStream();
+  }
+
+  /** Copies the given stream into this arena. */
+  public Content copyOf(InputStream in) throws IOException {
+    ContentOutputStream out = newOutputStream();
+    Bytes.transfer(in, out);
+    return out.toContent();
+  }
+
+  /** Returns true if the content was laid into this arena. */
+  public boolean holds(Content content) {
+    return (content instanceof DirectContent) && ((DirectContent) content).arena() == this;
+  }
+
+  /**
+   * Wraps a stream so that this arena stays readable until the stream is closed. Use this for a
+   * stream of content from the arena handed to a message, so that the direct memory goes back to
+   * the pool once the message content has been sent, and the arena has been closed.
+   */
+  public InputStream releaseOnClose(InputStream in) {
+    synchronized (state) {
+      checkNotReleased();
+      state.references++;
+    }
+    return new FilterInputStream(in) {
+      private boolean closed;
+
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          if (!closed) {
+            closed = true;
+            release();
+          }
+        }
+      }
+    };
+  }
+
+  private void release() {
+    synchronized (state) {
+      if (state.released || --state.references > 0) {
+        return;
+      }
+      state.released = true;
+      current = null;
+      recycleBlocks(state.blocks);
+    }
+    tracked.remove(leakRef);
+    leakRef.clear();
+  }
+
+  /**
+   * Gives up the reference of the creator of the arena. Once streams from {@link
+   * #releaseOnClose(InputStream)} are closed too, all blocks go back to the pool, and content from
+   * this arena is unreadable.
+   */
+  public void close() {
+    synchronized (state) {
+      if (state.closed) {
+        return;
+      }
+      state.closed = true;
+    }
+    release();
+  }
+
+  /** A contiguous run of bytes within one block. */
+  private static final class Segment {
+    final ByteBuffer block;
+    final int offset;
+    int length;
+
+    Segment(ByteBuffer block, int offset) {
+      this.block = block;
+      this.offset = offset;
+    }
+  }
+
+  private final class ArenaOutputStream extends ContentOutputStream {
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private long length;
+
+    public void write(int b) {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    public void write(byte[] b, int off, int len) {
+      while (len > 0) {
+        synchronized (state) {
+          ByteBuffer block = writableBlock();
+          int n = Math.min(len, block.remaining());
+          Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+          if (last == null
+              || last.block != block
+              || last.offset + last.length != block.position()) {
+            last = new Segment(block, block.position());
+            segments.add(last);
+          }
+          block.put(b, off, n);
+          last.length += n;
+          length += n;
+          off += n;
+          len -= n;
+        }
+      }
+    }
+
+    public Content toContent() {
+      return new DirectContent(new ArrayList<Segment>(segments), length);
+    }
+  }
+
+  private final class DirectContent implements Content {
+    private final List<Segment> segments;
+    private final long length;
+
+    DirectContent(List<Segment> segments, long length) {
+      this.segments = segments;
+      this.length = length;
+    }
+
+    public long length() {
+      return length;
+    }
+
+    DirectBufferArena arena() {
+      return DirectBufferArena.this;
+    }
+
+    public InputStream openStream() {
+      checkNotReleased();
+      return new SegmentInputStream(segments);
+    }
+
+    public byte[] toByteArray() {
+      if (length > Integer.MAX_VALUE - 8) {
+        throw new IllegalStateException("content too large for a byte array");
+      }
+      byte[] result = new byte[(int) length];
+      synchronized (state) {
+        checkNotReleased();
+        int pos = 0;
+        for (Segment segment : segments) {
+          Buffers.get(segment.block, segment.offset, result, pos, segment.length);
+          pos += segment.length;
+        }
+      }
+      return result;
+    }
+  }
+
+  private final class SegmentInputStream extends InputStream {
+    private final List<Segment> segments;
+    private int index;
+    private Segment segment;
+    // the position within the segment; reads do not move the position of the block
+    private int position;
+
+    SegmentInputStream(List<Segment> segments) {
+      this.segments = segments;
+    }
+
+    private boolean advance() {
+      while (segment == null || position == segment.length) {
+        if (index == segments.size()) {
+          return false;
+        }
+        segment = segments.get(index++);
+        position = 0;
+      }
+      return true;
+    }
+
+    public int read() {
+      synchronized (state) {
+        checkNotReleased();
+        return advance() ? (segment.block.get(segment.offset + position++) & 0xFF) : -1;
+      }
+    }
+
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      synchronized (state) {
+        checkNotReleased();
+        if (!advance()) {
+          return -1;
+        }
+        int n = Math.min(len, segment.length - position);
+        Buffers.get(segment.block, segment.offset + position, b, off, n);
+        position += n;
+        return n;
+      }
+    }
+  }
+}
@@ -0,0 +1,29 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+/**
+ * Thrown when input exceeds a configured limit, such as the maximum decoded size of a body or the
+ * maximum size of the headers of a part. It is an IllegalStateException, so the callouts treat it
+ * as they do other bad input; it is distinct so that limit violations can be counted.
+ */
+public class LimitExceededException extends IllegalStateException {
+  private static final long serialVersionUID = 1L;
+
+  public LimitExceededException(String message) {
+    super(message);
+  }
+}
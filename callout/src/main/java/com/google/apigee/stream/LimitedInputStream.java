@@ -0,0 +1,75 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Passes through at most a fixed number of bytes from the underlying stream, and fails if the
+ * stream holds more. This guards against a small compressed payload that expands into an enormous
+ * one.
+ */
+public class LimitedInputStream extends FilterInputStream {
+  private final long limit;
+  private long count;
+
+  public LimitedInputStream(InputStream in, long limit) {
+    super(in);
+    this.limit = limit;
+  }
+
+  private void check() {
+    if (count > limit) {
+      throw new LimitExceededException(
+          String.format("decoded content exceeds the limit of %d bytes", limit));
+    }
+  }
+
+  public int read() throws IOException {
+    int b = super.read();
+    if (b != -1) {
+      count++;
+      check();
+    }
+    return b;
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    int n = super.read(b, off, len);
+    if (n > 0) {
+      count += n;
+      check();
+    }
+    return n;
+  }
+
+  public long skip(long n) throws IOException {
+    long skipped = super.skip(n);
+    count += skipped;
+    check();
+    return skipped;
+  }
+
+  public boolean markSupported() {
+    return false;
+  }
+
+  public long getCount() {
+    return count;
+  }
+}
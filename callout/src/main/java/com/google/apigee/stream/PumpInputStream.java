@@ -0,0 +1,97 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.Function;
+
+/**
+ * Applies a filter written as an OutputStream, such as {@link Base64DecodingOutputStream}, to the
+ * bytes of an InputStream, as they are read: each read that finds the output empty reads a chunk
+ * of input and writes it through the filter. Memory is bounded by the chunk and what the filter
+ * makes of it.
+ */
+public class PumpInputStream extends InputStream {
+  private static final int CHUNK_SIZE = 4096;
+
+  // the filter writes here, and reads are served from here
+  private static final class Output extends ByteArrayOutputStream {
+    private int pos;
+
+    Output() {
+      super(CHUNK_SIZE);
+    }
+
+    int read(byte[] b, int off, int len) {
+      int n = Math.min(len, count - pos);
+      System.arraycopy(buf, pos, b, off, n);
+      pos += n;
+      if (pos == count) {
+        reset();
+        pos = 0;
+      }
+      return n;
+    }
+
+    boolean isEmpty() {
+      return pos == count;
+    }
+  }
+
+  private final InputStream in;
+  private final Output output = new Output();
+  private final OutputStream filter;
+  private final byte[] chunk = new byte[CHUNK_SIZE];
+  private boolean eof;
+
+  /** @param filter returns the filter, writing to the given stream */
+  public PumpInputStream(InputStream in, Function<OutputStream, OutputStream> filter) {
+    this.in = in;
+    this.filter = filter.apply(output);
+  }
+
+  public int read() throws IOException {
+    byte[] one = new byte[1];
+    return (read(one, 0, 1) == -1) ? -1 : (one[0] & 0xFF);
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (output.isEmpty()) {
+      if (eof) {
+        return -1;
+      }
+      int n = in.read(chunk, 0, chunk.length);
+      if (n == -1) {
+        eof = true;
+        filter.close();
+      } else {
+        filter.write(chunk, 0, n);
+        filter.flush();
+      }
+    }
+    return output.read(b, off, len);
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+}
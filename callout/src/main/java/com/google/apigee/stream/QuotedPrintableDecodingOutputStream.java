@@ -0,0 +1,181 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Decodes quoted-printable text (RFC 2045 section 6.7) written to it, and writes the decoded bytes
+ * to the underlying stream. Soft line breaks are removed, and whitespace at the end of a line is
+ * dropped, as the RFC requires. A malformed escape is passed through as is.
+ */
+public class QuotedPrintableDecodingOutputStream extends FilterOutputStream {
+  private static final int MAX_PENDING_WHITESPACE = 1024;
+
+  private enum State {
+    TEXT,
+    EQUALS,
+    EQUALS_HEX,
+    EQUALS_WHITESPACE,
+    SOFT_BREAK_CR
+  }
+
+  private final byte[] buffer = new byte[4096];
+  private int buffered;
+  private final byte[] whitespace = new byte[MAX_PENDING_WHITESPACE];
+  private int whitespaceCount;
+  private State state = State.TEXT;
+  private int high;
+
+  public QuotedPrintableDecodingOutputStream(OutputStream out) {
+    super(out);
+  }
+
+  private static int hexValue(int c) {
+    if (c >= '0' && c <= '9') return c - '0';
+    if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+    if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+    return -1;
+  }
+
+  private void emit(int b) throws IOException {
+    if (buffered == buffer.length) {
+      flushBuffer();
+    }
+    buffer[buffered++] = (byte) b;
+  }
+
+  private void emitWhitespace() throws IOException {
+    for (int i = 0; i < whitespaceCount; i++) {
+      emit(whitespace[i]);
+    }
+    whitespaceCount = 0;
+  }
+
+  public void write(int b) throws IOException {
+    int c = b & 0xFF;
+    switch (state) {
+      case TEXT:
+        if (c == ' ' || c == '\t') {
+          if (whitespaceCount == whitespace.length) {
+            emitWhitespace();
+          }
+          whitespace[whitespaceCount++] = (byte) c;
+        } else if (c == '\r' || c == '\n') {
+          // trailing whitespace on a line was added in transport
+          whitespaceCount = 0;
+          emit(c);
+        } else {
+          emitWhitespace();
+          if (c == '=') {
+            state = State.EQUALS;
+          } else {
+            emit(c);
+          }
+        }
+        break;
+
+      case EQUALS:
+        if (hexValue(c) != -1) {
+          high = c;
+          state = State.EQUALS_HEX;
+        } else if (c == '\r') {
+          state = State.SOFT_BREAK_CR;
+        } else if (c == '\n') {
+          state = State.TEXT;
+        } else if (c == ' ' || c == '\t') {
+          whitespace[whitespaceCount++] = (byte) c;
+          state = State.EQUALS_WHITESPACE;
+        } else {
+          emit('=');
+          state = State.TEXT;
+          write(c);
+        }
+        break;
+
+      case EQUALS_HEX:
+        if (hexValue(c) != -1) {
+          emit((hexValue(high) << 4) | hexValue(c));
+          state = State.TEXT;
+        } else {
+          emit('=');
+          emit(high);
+          state = State.TEXT;
+          write(c);
+        }
+        break;
+
+      case EQUALS_WHITESPACE:
+        // a soft line break, with transport-added whitespace before the CRLF;
+        // or, if the line goes on, a malformed escape, passed through
+        if (c == '\r') {
+          whitespaceCount = 0;
+          state = State.SOFT_BREAK_CR;
+        } else if (c == '\n') {
+          whitespaceCount = 0;
+          state = State.TEXT;
+        } else if ((c == ' ' || c == '\t') && whitespaceCount < whitespace.length) {
+          whitespace[whitespaceCount++] = (byte) c;
+        } else {
+          // the whitespace is held as in TEXT, and goes out before c
+          emit('=');
+          state = State.TEXT;
+          write(c);
+        }
+        break;
+
+      case SOFT_BREAK_CR:
+        state = State.TEXT;
+        if (c != '\n') {
+          write(c);
+        }
+        break;
+    }
+  }
+
+  public void write(byte[] b, int off, int len) throws IOException {
+    for (int i = off; i < off + len; i++) {
+      write(b[i]);
+    }
+  }
+
+  private void flushBuffer() throws IOException {
+    if (buffered > 0) {
+      out.write(buffer, 0, buffered);
+      buffered = 0;
+    }
+  }
+
+  public void flush() throws IOException {
+    flushBuffer();
+    out.flush();
+  }
+
+  public void close() throws IOException {
+    if (state == State.EQUALS) {
+      emit('=');
+    } else if (state == State.EQUALS_HEX) {
+      emit('=');
+      emit(high);
+    }
+    // whitespace at the very end is also at the end of a line; drop it
+    whitespaceCount = 0;
+    flushBuffer();
+    out.close();
+  }
+}
@@ -0,0 +1,161 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Encodes the bytes of an underlying stream as quoted-printable (RFC 2045 section 6.7), as they are
+ * read. A CRLF in the input is kept as a line break; any other CR or LF is escaped. Encoded lines
+ * are at most 76 characters long, using soft line breaks as needed.
+ */
+public class QuotedPrintableEncodingInputStream extends InputStream {
+  private static final int MAX_LINE_LENGTH = 76;
+  private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+  private final InputStream in;
+  private final byte[] lookahead = new byte[2];
+  private int lookaheadCount;
+  private boolean inputDone;
+  // a small buffer, large enough for a soft break plus one escaped byte
+  private final byte[] output = new byte[8];
+  private int outputPos;
+  private int outputCount;
+  private int lineLength;
+
+  public QuotedPrintableEncodingInputStream(InputStream in) {
+    this.in = in;
+  }
+
+  /** Returns the number of bytes the encoding of the given stream produces, consuming it. */
+  public static long encodedLength(InputStream in) throws IOException {
+    long length = 0;
+    byte[] chunk = new byte[8192];
+    try (InputStream encoded = new QuotedPrintableEncodingInputStream(in)) {
+      int n;
+      while ((n = encoded.read(chunk, 0, chunk.length)) != -1) {
+        length += n;
+      }
+    }
+    return length;
+  }
+
+  // ensures at least count bytes of lookahead, unless the input ends first
+  private void fillLookahead(int count) throws IOException {
+    while (lookaheadCount < count && !inputDone) {
+      int b = in.read();
+      if (b == -1) {
+        inputDone = true;
+      } else {
+        lookahead[lookaheadCount++] = (byte) b;
+      }
+    }
+  }
+
+  private int nextInput() throws IOException {
+    fillLookahead(1);
+    if (lookaheadCount == 0) {
+      return -1;
+    }
+    int b = lookahead[0] & 0xFF;
+    lookahead[0] = lookahead[1];
+    lookaheadCount--;
+    return b;
+  }
+
+  private void put(int b) {
+    output[outputCount++] = (byte) b;
+  }
+
+  // appends a token, preceded by a soft line break if the token would not fit
+  private void putToken(int b, boolean escape) {
+    int width = escape ? 3 : 1;
+    if (lineLength + width > MAX_LINE_LENGTH - 1) {
+      put('=');
+      put('\r');
+      put('\n');
+      lineLength = 0;
+    }
+    if (escape) {
+      put('=');
+      put(HEX[(b >> 4) & 0x0F]);
+      put(HEX[b & 0x0F]);
+    } else {
+      put(b);
+    }
+    lineLength += width;
+  }
+
+  // encodes the next input byte into the output buffer
+  private boolean encodeNext() throws IOException {
+    outputPos = 0;
+    outputCount = 0;
+    int b = nextInput();
+    if (b == -1) {
+      return false;
+    }
+    if (b == '\r') {
+      fillLookahead(1);
+      if (lookaheadCount > 0 && lookahead[0] == '\n') {
+        nextInput();
+        put('\r');
+        put('\n');
+        lineLength = 0;
+        return true;
+      }
+      putToken(b, true);
+    } else if (b == ' ' || b == '\t') {
+      // whitespace at the end of a line must be escaped
+      fillLookahead(2);
+      boolean atLineEnd =
+          lookaheadCount == 0
+              || (lookaheadCount == 2 && lookahead[0] == '\r' && lookahead[1] == '\n');
+      putToken(b, atLineEnd);
+    } else {
+      putToken(b, b < 33 || b > 126 || b == '=');
+    }
+    return true;
+  }
+
+  public int read() throws IOException {
+    if (outputPos == outputCount && !encodeNext()) {
+      return -1;
+    }
+    return output[outputPos++] & 0xFF;
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    int n = 0;
+    while (n < len) {
+      if (outputPos == outputCount && !encodeNext()) {
+        break;
+      }
+      int count = Math.min(len - n, outputCount - outputPos);
+      System.arraycopy(output, outputPos, b, off + n, count);
+      outputPos += count;
+      n += count;
+    }
+    return (n == 0) ? -1 : n;
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,291 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Temporary files for content that is too large to hold in memory. Content written through {@link
+ * #newOutputStream()} stays on the heap until it exceeds the threshold, and then moves to a file in
+ * the spill directory.
+ *
+ * <p>Like {@link DirectBufferArena}, an instance is reference counted: its creator holds one
+ * reference, given up by {@link #close()}, and each stream wrapped by {@link
+ * #releaseOnClose(InputStream)} holds another until it is closed. Once all are given up, the files
+ * are deleted, after which content in them is no longer readable.
+ *
+ * <p>If an instance becomes unreachable without having been closed, its files are deleted the next
+ * time another instance is created.
+ */
+public final class SpillFiles implements Closeable {
+  private static final int BUFFER_SIZE = 8192;
+
+  private static final ReferenceQueue<SpillFiles> collected = new ReferenceQueue<SpillFiles>();
+  private static final Set<Tracker> tracked =
+      Collections.newSetFromMap(new ConcurrentHashMap<Tracker, Boolean>());
+
+  /** The files of an instance, shared with its tracker. */
+  private static final class State {
+    final ConcurrentLinkedQueue<Path> files = new ConcurrentLinkedQueue<Path>();
+    volatile boolean released;
+    boolean closed;
+    int references = 1;
+
+    void deleteFiles() {
+      released = true;
+      Path file;
+      while ((file = files.poll()) != null) {
+        try {
+          Files.deleteIfExists(file);
+        } catch (IOException e) {
+          // nothing more can be done
+        }
+      }
+    }
+  }
+
+  private static final class Tracker extends PhantomReference<SpillFiles> {
+    final State state;
+
+    Tracker(SpillFiles owner) {
+      super(owner, collected);
+      this.state = owner.state;
+    }
+  }
+
+  private final Path directory;
+  private final long threshold;
+  private final State state = new State();
+  private final Tracker tracker;
+
+  /**
+   * @param directory where to create the files
+   * @param threshold the number of bytes of one content to hold in memory, before moving it to a
+   *     file
+   */
+  public SpillFiles(Path directory, long threshold) {
+    reclaim();
+    this.directory = directory;
+    this.threshold = threshold;
+    this.tracker = new Tracker(this);
+    tracked.add(tracker);
+  }
+
+  private static void reclaim() {
+    Reference<? extends SpillFiles> ref;
+    while ((ref = collected.poll()) != null) {
+      Tracker t = (Tracker) ref;
+      tracked.remove(t);
+      synchronized (t.state) {
+        t.state.deleteFiles();
+      }
+    }
+  }
+
+  public long getThreshold() {
+    return threshold;
+  }
+
+  public boolean isReleased() {
+    return state.released;
+  }
+
+  /** Returns true if the content is held in a spill file, rather than in memory. */
+  public static boolean isSpilled(Content content) {
+    return content instanceof FileContent;
+  }
+
+  public ContentOutputStream newOutputStream() {
+    if (state.released) {
+      throw new IllegalStateException("spill files have been released");
+    }
+    return new SpillingOutputStream();
+  }
+
+  /** Returns true if the content is held in one of these files. */
+  public boolean holds(Content content) {
+    return (content instanceof FileContent) && ((FileContent) content).owner() == this;
+  }
+
+  /** Returns a stream that keeps the files until it is closed. */
+  public InputStream releaseOnClose(InputStream in) {
+    synchronized (state) {
+      if (state.released) {
+        throw new IllegalStateException("spill files have been released");
+      }
+      state.references++;
+    }
+    return new FilterInputStream(in) {
+      private boolean closed;
+
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          if (!closed) {
+            closed = true;
+            release();
+          }
+        }
+      }
+    };
+  }
+
+  private void release() {
+    synchronized (state) {
+      if (state.released || --state.references > 0) {
+        return;
+      }
+      state.deleteFiles();
+    }
+    tracked.remove(tracker);
+  }
+
+  /**
+   * Gives up the reference of the creator. Once streams from {@link #releaseOnClose(InputStream)}
+   * are closed too, the files are deleted, and content in them is unreadable.
+   */
+  public void close() {
+    synchronized (state) {
+      if (state.closed) {
+        return;
+      }
+      state.closed = true;
+    }
+    release();
+  }
+
+  private final class SpillingOutputStream extends ContentOutputStream {
+    private ByteArrayContentOutputStream memory = new ByteArrayContentOutputStream();
+    private int growthCount;
+    private Path file;
+    private OutputStream fileOut;
+    private long length;
+
+    private void spill() throws IOException {
+      file = Files.createTempFile(directory, "mpf-", ".part");
+      state.files.add(file);
+      fileOut = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE);
+      memory.toContent().writeTo(fileOut);
+      growthCount = memory.getGrowthCount();
+      memory = null;
+    }
+
+    public void write(int b) throws IOException {
+      if (memory != null && length + 1 > threshold) {
+        spill();
+      }
+      if (memory != null) {
+        memory.write(b);
+      } else {
+        fileOut.write(b);
+      }
+      length++;
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (memory != null && length + len > threshold) {
+        spill();
+      }
+      if (memory != null) {
+        memory.write(b, off, len);
+      } else {
+        fileOut.write(b, off, len);
+      }
+      length += len;
+    }
+
+    public void close() throws IOException {
+      if (fileOut != null) {
+        fileOut.close();
+      }
+    }
+
+    public int getGrowthCount() {
+      return (memory != null) ? memory.getGrowthCount() : growthCount;
+    }
+
+    public Content toContent() {
+      if (memory != null) {
+        return memory.toContent();
+      }
+      try {
+        fileOut.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return new FileContent(file, length);
+    }
+  }
+
+  private final class FileContent implements Content {
+    private final Path file;
+    private final long length;
+
+    FileContent(Path file, long length) {
+      this.file = file;
+      this.length = length;
+    }
+
+    SpillFiles owner() {
+      return SpillFiles.this;
+    }
+
+    public long length() {
+      return length;
+    }
+
+    public InputStream openStream() {
+      if (state.released) {
+        throw new IllegalStateException("spill files have been released");
+      }
+      try {
+        return new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    public byte[] toByteArray() {
+      if (length > Integer.MAX_VALUE - 8) {
+        throw new IllegalStateException("content is too large to hold in memory");
+      }
+      ByteArrayContentOutputStream out = new ByteArrayContentOutputStream((int) length);
+      try {
+        writeTo(out);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return out.toContent().toByteArray();
+    }
+  }
+}
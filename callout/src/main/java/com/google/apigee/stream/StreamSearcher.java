@@ -18,16 +18,36 @@ package com.google.apigee.stream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 
-/** A stream searching class based on the Knuth-Morris-Pratt algorithm. */
+/**
+ * A stream searching class based on the Knuth-Morris-Pratt algorithm. An instance reuses its
+ * buffers from one search to the next, so it must not be shared between threads.
+ */
 public class StreamSearcher {
   protected byte[] pattern;
   protected int[] borders;
   protected int partLimit;
   public static final int MAX_PATTERN_LENGTH = 512;
+  private static final int CHUNK_SIZE = 8192;
+  private static final byte[] DELIMITER_PREFIX = {'\r', '\n', '-', '-'};
+  private final boolean exactParts;
+  // scratch space for searchAndExtract, reused from one part to the next
+  private byte[] held;
+  private byte[] chunk;
+  private byte[] window;
+  private boolean limitReached;
 
   public StreamSearcher(byte[] pattern, int partLimit) {
+    this(pattern, partLimit, false);
+  }
+
+  /**
+   * With exactParts, searchAndExtract leaves the whole delimiter that precedes the pattern out of
+   * each part; see {@link #searchAndExtract(InputStream, OutputStream)}.
+   */
+  public StreamSearcher(byte[] pattern, int partLimit, boolean exactParts) {
     if (pattern.length > MAX_PATTERN_LENGTH) {
       throw new IllegalStateException(
           String.format("length of pattern exceeds maximum (%d)", MAX_PATTERN_LENGTH));
@@ -35,9 +55,15 @@ public class StreamSearcher {
     this.pattern = Arrays.copyOf(pattern, pattern.length);
     this.borders = new int[pattern.length + 1];
     this.partLimit = partLimit;
+    this.exactParts = exactParts;
     preProcess();
   }
 
+  /** Returns true if a search stopped because a part exceeded the part limit. */
+  public boolean isLimitReached() {
+    return limitReached;
+  }
+
   public StreamSearcher(byte[] pattern) {
     this(pattern, 0);
   }
@@ -60,6 +86,7 @@ public class StreamSearcher {
       bytesRead++;
 
       if (partLimit > 0 && bytesRead > partLimit) {
+        limitReached = true;
         return -1;
       }
       while (j >= 0 && (byte) b != pattern[j]) {
@@ -87,6 +114,7 @@ public class StreamSearcher {
       baos.write(b);
 
       if (partLimit > 0 && bytesRead > partLimit) {
+        limitReached = true;
         return null;
       }
       while (j >= 0 && (byte) b != pattern[j]) {
@@ -106,6 +134,214 @@ public class StreamSearcher {
     return null;
   }
 
+  /**
+   * Like {@link #searchAndExtract(InputStream)}, but rather than accumulating the part in memory,
+   * this writes the bytes of the part into the sink as they are read. Only the trailing bytes that
+   * might yet turn out to be the separator are held back. If the stream supports mark and reset,
+   * as a BufferedInputStream does, it is read a chunk at a time, and left just past the pattern.
+   *
+   * <p>The two bytes before the pattern are left out of the part. Where the pattern is the bare
+   * boundary of a form, those are the "--" of the delimiter, and the CRLF before them, which is
+   * also part of the delimiter (RFC 2046, section 5.1.1), is kept. With exactParts, the CRLF and
+   * the "--" are both left out when they are there; where they are not, as in forms whose
+   * delimiter lines are the boundary alone, the two bytes before the pattern are left out.
+   *
+   * @return the number of bytes written to the sink if the pattern is found, -1 otherwise. When -1
+   *     is returned, the sink may have received some bytes.
+   * @throws IOException
+   */
+  public long searchAndExtract(InputStream stream, OutputStream sink) throws IOException {
+    if (stream.markSupported()) {
+      return searchAndExtractChunked(stream, sink);
+    }
+    // The separator, and the bytes of the delimiter that precede it, are excluded from the part.
+    final int holdSize = pattern.length + (exactParts ? DELIMITER_PREFIX.length : 2);
+    if (held == null) {
+      held = new byte[holdSize];
+      chunk = new byte[CHUNK_SIZE];
+    }
+    final byte[] held = this.held;
+    final byte[] chunk = this.chunk;
+    int heldStart = 0;
+    int heldCount = 0;
+    int chunkCount = 0;
+    long written = 0;
+    long bytesRead = 0;
+    int b;
+    int j = 0;
+
+    while ((b = stream.read()) != -1) {
+      bytesRead++;
+
+      if (partLimit > 0 && bytesRead > partLimit) {
+        limitReached = true;
+        return -1;
+      }
+      // the CRLF following the previous separator is not part of the content
+      if (bytesRead > 2) {
+        if (heldCount == holdSize) {
+          chunk[chunkCount++] = held[heldStart];
+          if (chunkCount == chunk.length) {
+            sink.write(chunk, 0, chunkCount);
+            written += chunkCount;
+            chunkCount = 0;
+          }
+          held[heldStart] = (byte) b;
+          heldStart = (heldStart + 1) % holdSize;
+        } else {
+          held[(heldStart + heldCount++) % holdSize] = (byte) b;
+        }
+      }
+
+      while (j >= 0 && (byte) b != pattern[j]) {
+        j = borders[j];
+      }
+      ++j;
+
+      if (j == pattern.length) {
+        int before = heldCount - pattern.length;
+        int contentHeld = Math.max(0, before - delimiterPrefixLength(held, heldStart, before));
+        for (int k = 0; k < contentHeld; k++) {
+          if (chunkCount == chunk.length) {
+            sink.write(chunk, 0, chunkCount);
+            written += chunkCount;
+            chunkCount = 0;
+          }
+          chunk[chunkCount++] = held[(heldStart + k) % holdSize];
+        }
+        if (chunkCount > 0) {
+          sink.write(chunk, 0, chunkCount);
+          written += chunkCount;
+        }
+        return written;
+      }
+    }
+    return -1;
+  }
+
+  // Reads a chunk at a time and searches it in place, rather than reading a byte
+  // at a time. A candidate is checked against the whole pattern with
+  // Bytes.mismatch, which on newer runtimes compares many bytes at once. When
+  // the pattern is found, the stream is reset to the start of the chunk and
+  // skipped to the end of the pattern, where the byte-at-a-time search would
+  // leave it.
+  private long searchAndExtractChunked(InputStream stream, OutputStream sink) throws IOException {
+    final int holdSize = pattern.length + (exactParts ? DELIMITER_PREFIX.length : 2);
+    if (window == null) {
+      window = new byte[holdSize + CHUNK_SIZE];
+    }
+    final byte[] buf = window;
+    final byte first = pattern[0];
+    int count = 0; // bytes held back from the previous chunk, at the start of buf
+    int skip = 2; // the CRLF following the previous separator is not part of the content
+    long bytesRead = 0;
+    long written = 0;
+    int j = 0;
+
+    for (; ; ) {
+      stream.mark(CHUNK_SIZE);
+      int n = stream.read(buf, count, CHUNK_SIZE);
+      if (n == -1) {
+        return -1;
+      }
+      final int start = count;
+      final int end = count + n;
+      int found = -1;
+      int i = start;
+      while (i < end) {
+        if (j == 0) {
+          while (i < end && buf[i] != first) {
+            i++;
+          }
+          if (i == end) {
+            break;
+          }
+          int available = Math.min(pattern.length, end - i);
+          int d = Bytes.mismatch(buf, i, pattern, 0, available);
+          if (d == -1) {
+            if (available == pattern.length) {
+              found = i + available;
+              break;
+            }
+            // a match as far as the end of the chunk
+            j = available;
+            i = end;
+            break;
+          }
+          j = d;
+          i += d;
+        }
+        byte b = buf[i++];
+        while (j >= 0 && b != pattern[j]) {
+          j = borders[j];
+        }
+        ++j;
+        if (j == pattern.length) {
+          found = i;
+          break;
+        }
+      }
+
+      bytesRead += ((found != -1) ? found : end) - start;
+      if (partLimit > 0 && bytesRead > partLimit) {
+        limitReached = true;
+        return -1;
+      }
+      if (found != -1) {
+        int separatorStart = found - pattern.length;
+        int contentEnd =
+            separatorStart - delimiterPrefixLength(buf, skip, separatorStart - skip);
+        if (contentEnd > skip) {
+          sink.write(buf, skip, contentEnd - skip);
+          written += contentEnd - skip;
+        }
+        stream.reset();
+        skipFully(stream, found - start);
+        return written;
+      }
+      // the last bytes may yet turn out to be the separator; hold them back
+      int keep = Math.min(end, holdSize);
+      int flushEnd = end - keep;
+      if (flushEnd > skip) {
+        sink.write(buf, skip, flushEnd - skip);
+        written += flushEnd - skip;
+      }
+      skip = Math.max(0, skip - flushEnd);
+      System.arraycopy(buf, flushEnd, buf, 0, keep);
+      count = keep;
+    }
+  }
+
+  // Of the bytes before the separator, held from start, the number that are not
+  // content: with exactParts, the CRLF and "--" before a bare boundary; else two.
+  private int delimiterPrefixLength(byte[] held, int start, int before) {
+    if (exactParts && before >= DELIMITER_PREFIX.length) {
+      int k = 0;
+      while (k < DELIMITER_PREFIX.length
+          && held[(start + before - DELIMITER_PREFIX.length + k) % held.length]
+              == DELIMITER_PREFIX[k]) {
+        k++;
+      }
+      if (k == DELIMITER_PREFIX.length) {
+        return k;
+      }
+    }
+    return Math.min(2, Math.max(0, before));
+  }
+
+  private static void skipFully(InputStream stream, long n) throws IOException {
+    while (n > 0) {
+      long skipped = stream.skip(n);
+      if (skipped <= 0) {
+        if (stream.read() == -1) {
+          return;
+        }
+        skipped = 1;
+      }
+      n -= skipped;
+    }
+  }
+
   protected void preProcess() {
     int i = 0;
     int j = -1;
@@ -0,0 +1,161 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Encodes the bytes of an underlying stream for an application/x-www-form-urlencoded body, as they
+ * are read, following the WHATWG URL standard: letters, digits and "*-._" are kept, a space becomes
+ * "+", and any other byte becomes "%" and two hex digits.
+ */
+public class UrlEncodingInputStream extends InputStream {
+  private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+  private static final boolean[] KEEP = new boolean[256];
+
+  static {
+    for (int c = 'a'; c <= 'z'; c++) {
+      KEEP[c] = true;
+      KEEP[c - 'a' + 'A'] = true;
+    }
+    for (int c = '0'; c <= '9'; c++) {
+      KEEP[c] = true;
+    }
+    KEEP['*'] = KEEP['-'] = KEEP['.'] = KEEP['_'] = true;
+  }
+
+  private final InputStream in;
+  private final byte[] input;
+  private int inputPos;
+  private int inputCount;
+  // the rest of an escape that did not fit in the caller's array
+  private final byte[] pending = new byte[2];
+  private int pendingPos;
+  private int pendingCount;
+
+  public UrlEncodingInputStream(InputStream in) {
+    this.in = in;
+    this.input = new byte[4096];
+  }
+
+  /** Encodes the given bytes, without copying them first. */
+  public UrlEncodingInputStream(byte[] bytes) {
+    this.in = null;
+    this.input = bytes;
+    this.inputCount = bytes.length;
+  }
+
+  /** Returns the number of bytes the encoding of the given bytes produces. */
+  public static long encodedLength(byte[] b, int off, int len) {
+    long length = len;
+    for (int i = off; i < off + len; i++) {
+      if (!KEEP[b[i] & 0xFF] && b[i] != ' ') {
+        length += 2;
+      }
+    }
+    return length;
+  }
+
+  /** Returns the encoding of the given bytes. */
+  public static byte[] encode(byte[] b) {
+    byte[] encoded = new byte[(int) encodedLength(b, 0, b.length)];
+    int n = 0;
+    for (byte x : b) {
+      int c = x & 0xFF;
+      if (KEEP[c]) {
+        encoded[n++] = x;
+      } else if (c == ' ') {
+        encoded[n++] = '+';
+      } else {
+        encoded[n++] = '%';
+        encoded[n++] = HEX[c >> 4];
+        encoded[n++] = HEX[c & 0x0F];
+      }
+    }
+    return encoded;
+  }
+
+  /** Returns the number of bytes the encoding of the given stream produces, consuming it. */
+  public static long encodedLength(InputStream in) throws IOException {
+    long length = 0;
+    byte[] chunk = new byte[8192];
+    try (InputStream source = in) {
+      int n;
+      while ((n = source.read(chunk, 0, chunk.length)) != -1) {
+        length += encodedLength(chunk, 0, n);
+      }
+    }
+    return length;
+  }
+
+  public int read() throws IOException {
+    byte[] one = new byte[1];
+    return (read(one, 0, 1) == -1) ? -1 : (one[0] & 0xFF);
+  }
+
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    int n = 0;
+    while (pendingPos < pendingCount && n < len) {
+      b[off + n++] = pending[pendingPos++];
+    }
+    while (n < len) {
+      if (inputPos == inputCount) {
+        if (in == null || (n > 0 && in.available() <= 0)) {
+          break;
+        }
+        int r = in.read(input, 0, input.length);
+        if (r == -1) {
+          break;
+        }
+        inputPos = 0;
+        inputCount = r;
+      }
+      int c = input[inputPos++] & 0xFF;
+      if (KEEP[c]) {
+        b[off + n++] = (byte) c;
+      } else if (c == ' ') {
+        b[off + n++] = '+';
+      } else {
+        b[off + n++] = '%';
+        byte hi = HEX[c >> 4];
+        byte lo = HEX[c & 0x0F];
+        if (len - n >= 2) {
+          b[off + n++] = hi;
+          b[off + n++] = lo;
+        } else {
+          pending[0] = hi;
+          pending[1] = lo;
+          pendingPos = 0;
+          pendingCount = 2;
+          while (pendingPos < pendingCount && n < len) {
+            b[off + n++] = pending[pendingPos++];
+          }
+        }
+      }
+    }
+    return (n == 0) ? -1 : n;
+  }
+
+  public void close() throws IOException {
+    if (in != null) {
+      in.close();
+    }
+  }
+}
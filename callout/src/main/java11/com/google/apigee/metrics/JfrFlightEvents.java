@@ -0,0 +1,164 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The flight recorder events, loaded by {@link FlightEvents} where jdk.jfr is present. Whether
+ * each kind of event is enabled is checked before an event is created, so when nothing is being
+ * recorded, the callouts allocate nothing for these.
+ */
+final class JfrFlightEvents extends FlightEvents {
+  static final String CATEGORY = "Apigee Multipart";
+
+  @Name("com.google.apigee.BoundaryScan")
+  @Label("Boundary Scan")
+  @Category(CATEGORY)
+  @Description("Searching the form for the next boundary, copying the part on the way")
+  static final class BoundaryScan extends Event {
+    @Label("Bytes Scanned")
+    @DataAmount
+    long size;
+  }
+
+  @Name("com.google.apigee.PartHeaders")
+  @Label("Part Headers")
+  @Category(CATEGORY)
+  @Description("Parsing the headers of one part")
+  static final class PartHeaders extends Event {
+    @Label("Part Name")
+    String partName;
+  }
+
+  @Name("com.google.apigee.PartMaterialization")
+  @Label("Part Materialization")
+  @Category(CATEGORY)
+  @Description("Completing the content of one part")
+  static final class PartMaterialization extends Event {
+    @Label("Part Name")
+    String partName;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Engine")
+    @Description("Where the content is held: heap, direct or spill")
+    String engine;
+  }
+
+  @Name("com.google.apigee.DescriptorCompilation")
+  @Label("Descriptor Compilation")
+  @Category(CATEGORY)
+  @Description("Reading the descriptor of a form to create")
+  static final class DescriptorCompilation extends Event {
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Engine")
+    String engine;
+  }
+
+  @Name("com.google.apigee.PayloadAssembly")
+  @Label("Payload Assembly")
+  @Category(CATEGORY)
+  @Description("Laying out a created form")
+  static final class PayloadAssembly extends Event {
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Engine")
+    @Description("How the form is produced: streamed, direct or heap")
+    String engine;
+  }
+
+  private final EventType[] types = new EventType[Kind.values().length];
+
+  JfrFlightEvents() {
+    types[Kind.BOUNDARY_SCAN.ordinal()] = EventType.getEventType(BoundaryScan.class);
+    types[Kind.PART_HEADERS.ordinal()] = EventType.getEventType(PartHeaders.class);
+    types[Kind.PART_MATERIALIZATION.ordinal()] =
+        EventType.getEventType(PartMaterialization.class);
+    types[Kind.DESCRIPTOR_COMPILATION.ordinal()] =
+        EventType.getEventType(DescriptorCompilation.class);
+    types[Kind.PAYLOAD_ASSEMBLY.ordinal()] = EventType.getEventType(PayloadAssembly.class);
+  }
+
+  public Object begin(Kind kind) {
+    if (!types[kind.ordinal()].isEnabled()) {
+      return null;
+    }
+    Event event;
+    switch (kind) {
+      case BOUNDARY_SCAN:
+        event = new BoundaryScan();
+        break;
+      case PART_HEADERS:
+        event = new PartHeaders();
+        break;
+      case PART_MATERIALIZATION:
+        event = new PartMaterialization();
+        break;
+      case DESCRIPTOR_COMPILATION:
+        event = new DescriptorCompilation();
+        break;
+      default:
+        event = new PayloadAssembly();
+        break;
+    }
+    event.begin();
+    return event;
+  }
+
+  public void end(Object token, String name, long size, String engine) {
+    if (token == null) {
+      return;
+    }
+    Event event = (Event) token;
+    event.end();
+    if (!event.shouldCommit()) {
+      return;
+    }
+    if (event instanceof BoundaryScan) {
+      ((BoundaryScan) event).size = size;
+    } else if (event instanceof PartHeaders) {
+      ((PartHeaders) event).partName = name;
+    } else if (event instanceof PartMaterialization) {
+      PartMaterialization e = (PartMaterialization) event;
+      e.partName = name;
+      e.size = size;
+      e.engine = engine;
+    } else if (event instanceof DescriptorCompilation) {
+      DescriptorCompilation e = (DescriptorCompilation) event;
+      e.size = size;
+      e.engine = engine;
+    } else if (event instanceof PayloadAssembly) {
+      PayloadAssembly e = (PayloadAssembly) event;
+      e.size = size;
+      e.engine = engine;
+    }
+    event.commit();
+  }
+}
@@ -0,0 +1,42 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The Java 11 version of Bytes, loaded from META-INF/versions/11 of the jar. Arrays.mismatch is an
+ * intrinsic that compares many bytes per instruction, and some streams implement readNBytes and
+ * transferTo without copying through a chunk.
+ */
+public final class Bytes {
+  private Bytes() {}
+
+  public static int mismatch(byte[] a, int aFrom, byte[] b, int bFrom, int length) {
+    return Arrays.mismatch(a, aFrom, aFrom + length, b, bFrom, bFrom + length);
+  }
+
+  public static int readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+    return in.readNBytes(b, off, len);
+  }
+
+  public static long transfer(InputStream in, OutputStream out) throws IOException {
+    return in.transferTo(out);
+  }
+}
@@ -0,0 +1,31 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * The Java 11 version of Checksums, loaded from META-INF/versions/11 of the jar. CRC32C is an
+ * intrinsic that uses the CRC instructions of the processor.
+ */
+public final class Checksums {
+  private Checksums() {}
+
+  public static Checksum newCrc32c() {
+    return new CRC32C();
+  }
+}
@@ -0,0 +1,30 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The Java 17 version of Buffers, loaded from META-INF/versions/17 of the jar. The absolute bulk
+ * get copies without making a view of the buffer.
+ */
+public final class Buffers {
+  private Buffers() {}
+
+  public static void get(ByteBuffer src, int index, byte[] dst, int off, int len) {
+    src.get(index, dst, off, len);
+  }
+}
@@ -0,0 +1,298 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.callouts;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.apigee.flow.message.Message;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.workload.MultipartWorkload;
+import com.google.apigee.workload.MultipartWorkload.SizeDistribution;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.Properties;
+import java.util.Random;
+import org.testng.Assert;
+import org.testng.SkipException;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Measures the bytes allocated by one execution of a callout, and fails when that exceeds the
+ * budget in allocation-budgets.properties. A budget is a number of bytes per byte of payload, plus
+ * a fixed number of bytes. If a change needs more, raise the budget in the same change, so that the
+ * increase is reviewed.
+ */
+public class TestAllocationBudget {
+  private static final String testDataDir = "src/test/resources/test-data";
+  private static final int WARMUP_ITERATIONS = 20;
+  private static final int MEASURED_ITERATIONS = 10;
+
+  private com.sun.management.ThreadMXBean threadBean;
+  private Properties budgets;
+
+  /** One execution of a callout. Returns the size of the payload it handled. */
+  private interface Operation {
+    long run() throws Exception;
+  }
+
+  @BeforeClass
+  public void setup() throws IOException {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      throw new SkipException("this JVM cannot measure allocation per thread");
+    }
+    threadBean = (com.sun.management.ThreadMXBean) bean;
+    if (!threadBean.isThreadAllocatedMemorySupported()) {
+      throw new SkipException("this JVM cannot measure allocation per thread");
+    }
+    threadBean.setThreadAllocatedMemoryEnabled(true);
+
+    budgets = new Properties();
+    try (InputStream in =
+        TestAllocationBudget.class.getResourceAsStream("/allocation-budgets.properties")) {
+      budgets.load(in);
+    }
+  }
+
+  private long allocatedBytes() {
+    return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private void checkBudget(String name, Operation operation) throws Exception {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      operation.run();
+    }
+    long payloadSize = 0;
+    long allocated = 0;
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      long before = allocatedBytes();
+      payloadSize = operation.run();
+      allocated += allocatedBytes() - before;
+    }
+    allocated /= MEASURED_ITERATIONS;
+
+    double perByte = Double.parseDouble(budgets.getProperty(name + ".perByte"));
+    long fixed = Long.parseLong(budgets.getProperty(name + ".fixed"));
+    long budget = (long) (perByte * payloadSize) + fixed;
+    System.out.printf(
+        "%s: payload %d bytes, allocated %d bytes (%.2f per byte), budget %d bytes\n",
+        name, payloadSize, allocated, (double) allocated / payloadSize, budget);
+    Assert.assertTrue(
+        allocated <= budget,
+        String.format(
+            "%s allocated %d bytes per execution, over the budget of %d bytes",
+            name, allocated, budget));
+  }
+
+  private static FakeMessageContext newContext(FakeMessage message) {
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    return msgCtxt;
+  }
+
+  private static long drain(InputStream in) throws IOException {
+    byte[] chunk = new byte[8192];
+    long count = 0;
+    int n;
+    while ((n = in.read(chunk, 0, chunk.length)) != -1) {
+      count += n;
+    }
+    return count;
+  }
+
+  private Operation parse(final byte[] payload, final String contentType) {
+    final MultipartFormParserV2 callout = new MultipartFormParserV2(new Properties());
+    final FakeExecutionContext exeCtxt = new FakeExecutionContext();
+    return () -> {
+      FakeMessage message = new FakeMessage();
+      FakeMessageContext msgCtxt = newContext(message);
+      message.setHeader("content-type", contentType);
+      message.setContent(new ByteArrayInputStream(payload));
+      Assert.assertEquals(callout.execute(msgCtxt, exeCtxt), ExecutionResult.SUCCESS);
+      return payload.length;
+    };
+  }
+
+  @Test
+  public void parse_Reference() throws Exception {
+    byte[] payload = Files.readAllBytes(Paths.get(testDataDir, "MultiPart-payload.out"));
+    checkBudget(
+        "parse.reference",
+        parse(payload, "multipart/form-data; boundary=----------------------QCN1DGMIPH8GPY"));
+  }
+
+  @Test
+  public void parse_Uploads() throws Exception {
+    MultipartWorkload workload =
+        new MultipartWorkload()
+            .withSeed(33)
+            .withPartCount(4)
+            .withSizes(SizeDistribution.fixed(256 * 1024))
+            .withBinaryFraction(1.0)
+            .withBoundaryLength(40);
+    checkBudget(
+        "parse.uploads",
+        parse(TestBase.readAll(workload.openStream()), workload.getContentType()));
+  }
+
+  @Test
+  public void parse_Fields() throws Exception {
+    MultipartWorkload workload =
+        new MultipartWorkload()
+            .withSeed(33)
+            .withPartCount(64)
+            .withSizes(SizeDistribution.uniform(16, 512))
+            .withBoundaryLength(40);
+    checkBudget(
+        "parse.fields", parse(TestBase.readAll(workload.openStream()), workload.getContentType()));
+  }
+
+  private Operation create(final String descriptor, final Object content) {
+    Properties props = new Properties();
+    props.put("descriptor", descriptor);
+    final MultipartFormCreatorV2 callout = new MultipartFormCreatorV2(props);
+    final FakeExecutionContext exeCtxt = new FakeExecutionContext();
+    return () -> {
+      FakeMessage message = new FakeMessage();
+      FakeMessageContext msgCtxt = newContext(message);
+      msgCtxt.setVariable("partContent", content);
+      Assert.assertEquals(callout.execute(msgCtxt, exeCtxt), ExecutionResult.SUCCESS);
+      Assert.assertNull(msgCtxt.getVariable("mpf_error"));
+      Message result = msgCtxt.getVariable("message");
+      return drain(result.getContentAsStream());
+    };
+  }
+
+  private static String descriptor(String contentType, String extra) {
+    return "{\n"
+        + "  \"file1\" : {\n"
+        + "    \"content-var\" : \"partContent\",\n"
+        + "    \"content-type\" : \""
+        + contentType
+        + "\",\n"
+        + extra
+        + "    \"want-b64-decode\" : false\n"
+        + "  }\n"
+        + "}\n";
+  }
+
+  @Test
+  public void create_Reference() throws Exception {
+    byte[] image = Files.readAllBytes(Paths.get(testDataDir, "Logs_512px.png"));
+    checkBudget("create.reference", create(descriptor("image/png", ""), image));
+  }
+
+  @Test
+  public void create_Large() throws Exception {
+    byte[] content = new byte[1024 * 1024];
+    new Random(33).nextBytes(content);
+    checkBudget("create.large", create(descriptor("application/octet-stream", ""), content));
+  }
+
+  @Test
+  public void create_Base64() throws Exception {
+    byte[] content = new byte[1024 * 1024];
+    new Random(33).nextBytes(content);
+    checkBudget(
+        "create.base64",
+        create(
+            descriptor("application/octet-stream", "    \"transfer-encoding\" : \"base64\",\n"),
+            content));
+  }
+
+  @Test
+  public void create_Base64String() throws Exception {
+    byte[] content = new byte[256 * 1024];
+    new Random(33).nextBytes(content);
+    checkBudget(
+        "create.base64string",
+        create(
+            descriptor("application/octet-stream", "    \"transfer-encoding\" : \"base64\",\n"),
+            Base64.getMimeEncoder().encodeToString(content)));
+  }
+
+  private Operation toJson(final byte[] payload, final String contentType) {
+    final MultipartFormToJson callout = new MultipartFormToJson(new Properties());
+    final FakeExecutionContext exeCtxt = new FakeExecutionContext();
+    return () -> {
+      FakeMessage message = new FakeMessage();
+      FakeMessageContext msgCtxt = newContext(message);
+      message.setHeader("content-type", contentType);
+      message.setContent(new ByteArrayInputStream(payload));
+      Assert.assertEquals(callout.execute(msgCtxt, exeCtxt), ExecutionResult.SUCCESS);
+      drain(message.getContentAsStream());
+      return payload.length;
+    };
+  }
+
+  @Test
+  public void toJson_Uploads() throws Exception {
+    MultipartWorkload workload =
+        new MultipartWorkload()
+            .withSeed(33)
+            .withPartCount(4)
+            .withSizes(SizeDistribution.fixed(1024 * 1024))
+            .withBinaryFraction(0.5)
+            .withBoundaryLength(40);
+    checkBudget(
+        "tojson.uploads",
+        toJson(TestBase.readAll(workload.openStream()), workload.getContentType()));
+  }
+
+  private Operation fromJson(final byte[] payload, final String rules) {
+    Properties props = new Properties();
+    props.put("rules", rules);
+    final JsonToMultipartForm callout = new JsonToMultipartForm(props);
+    final FakeExecutionContext exeCtxt = new FakeExecutionContext();
+    return () -> {
+      FakeMessage message = new FakeMessage();
+      FakeMessageContext msgCtxt = newContext(message);
+      message.setHeader("content-type", "application/json");
+      message.setHeader("content-length", Integer.toString(payload.length));
+      message.setContent(new ByteArrayInputStream(payload));
+      Assert.assertEquals(callout.execute(msgCtxt, exeCtxt), ExecutionResult.SUCCESS);
+      drain(message.getContentAsStream());
+      return payload.length;
+    };
+  }
+
+  @Test
+  public void fromJson_Upload() throws Exception {
+    byte[] content = new byte[2 * 1024 * 1024];
+    new Random(34).nextBytes(content);
+    String json =
+        "{\"name\":\"scan.bin\",\"data\":\""
+            + Base64.getEncoder().encodeToString(content)
+            + "\"}";
+    checkBudget(
+        "fromjson.upload",
+        fromJson(
+            json.getBytes(StandardCharsets.UTF_8),
+            "{ \"/data\" : { \"base64\" : true, \"file-name-field\" : \"name\" } }"));
+  }
+}
@@ -19,6 +19,7 @@ package com.google.apigee.callouts;
 import com.google.apigee.fakes.FakeExecutionContext;
 import com.google.apigee.fakes.FakeMessage;
 import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.stream.Bytes;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -49,19 +50,10 @@ public abstract class TestBase {
     msgCtxt.setVariable("message", message);
   }
 
-  private static byte[] readAll(InputStream is) {
-    try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-      int nRead;
-      byte[] data = new byte[1024];
-      while ((nRead = is.read(data, 0, data.length)) != -1) {
-        os.write(data, 0, nRead);
-      }
-      os.flush();
-      byte[] b = os.toByteArray();
-      return b;
-    } catch (Exception ex1) {
-      return null;
-    }
+  protected static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Bytes.transfer(in, out);
+    return out.toByteArray();
   }
 
   protected static byte[] loadImageBytes(String filename) throws IOException {
@@ -0,0 +1,168 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.callouts;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.workload.MultipartWorkload;
+import com.google.apigee.workload.MultipartWorkload.SizeDistribution;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Properties;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestBufferSizing {
+
+  private static FakeMessageContext parse(
+      MultipartFormParserV2 callout,
+      MultipartWorkload workload,
+      boolean withContentLength,
+      ExecutionResult expected)
+      throws IOException {
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    message.setHeader("content-type", workload.getContentType());
+    byte[] body = TestBase.readAll(workload.openStream());
+    if (withContentLength) {
+      message.setHeader("content-length", Integer.toString(body.length));
+    }
+    message.setContent(new ByteArrayInputStream(body));
+    ExecutionResult result = callout.execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, expected, "ExecutionResult");
+    return msgCtxt;
+  }
+
+  private static long metric(FakeMessageContext msgCtxt, String name) {
+    return Long.parseLong((String) msgCtxt.getVariable("mpf_metrics_" + name));
+  }
+
+  @Test
+  public void readBufferSizes() {
+    Assert.assertEquals(BufferSizing.readBufferSize(-1, 2048, 65536), 2048);
+    Assert.assertEquals(BufferSizing.readBufferSize(300, 2048, 65536), 2048);
+    Assert.assertEquals(BufferSizing.readBufferSize(5000, 2048, 65536), 8192);
+    Assert.assertEquals(BufferSizing.readBufferSize(8192, 2048, 65536), 8192);
+    Assert.assertEquals(BufferSizing.readBufferSize(50L * 1024 * 1024, 2048, 65536), 65536);
+    // a lower bound above the upper one wins
+    Assert.assertEquals(BufferSizing.readBufferSize(50000, 4096, 1024), 4096);
+  }
+
+  @Test
+  public void initialCapacities() {
+    Assert.assertEquals(BufferSizing.initialCapacity(-1, 1 << 20), 256);
+    Assert.assertEquals(BufferSizing.initialCapacity(100, 1 << 20), 256);
+    Assert.assertEquals(BufferSizing.initialCapacity(300000, 1 << 20), 300000);
+    Assert.assertEquals(BufferSizing.initialCapacity(3000000, 1 << 20), 1 << 20);
+    Assert.assertEquals(BufferSizing.capped(-1, 1000), -1);
+    Assert.assertEquals(BufferSizing.capped(5000, -1), 5000);
+    Assert.assertEquals(BufferSizing.capped(5000, 1000), 1000);
+  }
+
+  @Test
+  public void expectedAfterEnoughSamples() {
+    BufferSizing sizing = new BufferSizing();
+    for (int i = 1; i < BufferSizing.MIN_SAMPLES; i++) {
+      sizing.record(1000 * i);
+      Assert.assertEquals(sizing.expected(0.9), -1L, "too few samples");
+    }
+    sizing.record(1000 * BufferSizing.MIN_SAMPLES);
+    long expected = sizing.expected(1.0);
+    Assert.assertTrue(expected >= 8000 && expected <= 8000 + 8000 / 16, "expected " + expected);
+
+    for (long i = BufferSizing.MIN_SAMPLES; i < BufferSizing.WINDOW; i++) {
+      sizing.record(10);
+    }
+    // the window is full; it starts again
+    Assert.assertEquals(sizing.expected(0.5), -1L, "reset");
+  }
+
+  @Test
+  public void partBuffersLearnTheirSize() throws Exception {
+    Properties props = new Properties();
+    props.put("metrics", "true");
+    MultipartFormParserV2 callout = new MultipartFormParserV2(props);
+    MultipartWorkload workload =
+        new MultipartWorkload()
+            .withSeed(40)
+            .withPartCount(4)
+            .withSizes(SizeDistribution.fixed(200 * 1024))
+            .withBinaryFraction(1.0);
+
+    FakeMessageContext first = parse(callout, workload, false, ExecutionResult.SUCCESS);
+    Assert.assertEquals(metric(first, "part_capacity"), 256L);
+    Assert.assertTrue(metric(first, "buffer_growths") >= 4 * 4, "growths before learning");
+
+    parse(callout, workload, false, ExecutionResult.SUCCESS);
+    FakeMessageContext third = parse(callout, workload, false, ExecutionResult.SUCCESS);
+    Assert.assertTrue(metric(third, "part_capacity") >= 200 * 1024, "capacity");
+    Assert.assertEquals(metric(third, "buffer_growths"), 0L, "growths after learning");
+  }
+
+  @Test
+  public void readBufferFromContentLength() throws Exception {
+    Properties props = new Properties();
+    props.put("metrics", "true");
+    props.put("read-buffer-max", "16384");
+    MultipartFormParserV2 callout = new MultipartFormParserV2(props);
+    MultipartWorkload small =
+        new MultipartWorkload().withSeed(40).withPartCount(2).withSizes(SizeDistribution.fixed(50));
+    MultipartWorkload large =
+        new MultipartWorkload()
+            .withSeed(40)
+            .withPartCount(2)
+            .withSizes(SizeDistribution.fixed(100000));
+
+    FakeMessageContext msgCtxt = parse(callout, small, true, ExecutionResult.SUCCESS);
+    Assert.assertEquals(metric(msgCtxt, "read_buffer_size"), 2048L);
+    msgCtxt = parse(callout, large, true, ExecutionResult.SUCCESS);
+    Assert.assertEquals(metric(msgCtxt, "read_buffer_size"), 16384L);
+    // the Content-Length also limits the capacity of a part buffer
+    Assert.assertTrue(metric(msgCtxt, "part_capacity") <= 2 * 100000 + 1024, "part capacity");
+  }
+
+  @Test
+  public void badBound() throws Exception {
+    Properties props = new Properties();
+    props.put("read-buffer-min", "0");
+    FakeMessageContext msgCtxt =
+        parse(
+            new MultipartFormParserV2(props),
+            new MultipartWorkload().withSeed(40),
+            false,
+            ExecutionResult.ABORT);
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_error"), "configuration error: read-buffer-min must be positive");
+
+    props.put("read-buffer-min", "16k");
+    msgCtxt =
+        parse(
+            new MultipartFormParserV2(props),
+            new MultipartWorkload().withSeed(40),
+            false,
+            ExecutionResult.ABORT);
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_error"),
+        "configuration error: read-buffer-min must be a number, not 16k");
+  }
+}
@@ -0,0 +1,393 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.callouts;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.apigee.flow.message.Message;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.stream.Content;
+import com.google.apigee.stream.DirectBufferArena;
+import com.google.apigee.workload.MultipartWorkload;
+import com.google.apigee.workload.MultipartWorkload.PartSpec;
+import com.google.apigee.workload.MultipartWorkload.SizeDistribution;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Apigee shares one instance of a callout among all the threads that run the policy. These tests
+ * run single instances of the parser, the creator and the ContentSetter from many threads at once,
+ * with a mix of payloads, and check every output byte for byte against the output of a
+ * single-threaded run.
+ *
+ * <p>The throughput test, in the "stress" group, is not run by default. It runs the same mix with
+ * 1, 2, 4 ... N threads and reports the throughput at each step; run it with "mvn test -Pstress".
+ * The system properties stress.threads and stress.iterations set N and the number of operations
+ * per thread.
+ */
+public class TestConcurrentCallouts {
+  private static final int PAYLOAD_COUNT = 6;
+
+  private final FakeExecutionContext exeCtxt = new FakeExecutionContext();
+  private final Set<String> boundaries = ConcurrentHashMap.newKeySet();
+  private List<Operation> operations;
+
+  /** One execution of a callout, which throws if the output is wrong. */
+  private interface Operation {
+    void run(Random random) throws Exception;
+  }
+
+  private static FakeMessageContext newContext(FakeMessage message) {
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    return msgCtxt;
+  }
+
+  private static byte[] bytesOf(Object content) {
+    return (content instanceof Content) ? ((Content) content).toByteArray() : (byte[]) content;
+  }
+
+  private static void check(ExecutionResult result, FakeMessageContext msgCtxt, String prefix) {
+    if (result != ExecutionResult.SUCCESS || msgCtxt.getVariable(prefix + "error") != null) {
+      throw new AssertionError(
+          String.format("callout failed: %s %s", result, msgCtxt.getVariable(prefix + "error")));
+    }
+  }
+
+  private static Properties properties(String... pairs) {
+    Properties props = new Properties();
+    for (int i = 0; i < pairs.length; i += 2) {
+      props.put(pairs[i], pairs[i + 1]);
+    }
+    return props;
+  }
+
+  // ------------------------------------------------------------------
+  // parser
+
+  private static class ParsePayload {
+    final String contentType;
+    final byte[] body;
+    final List<PartSpec> parts;
+    final List<byte[]> expected = new ArrayList<byte[]>();
+
+    ParsePayload(MultipartWorkload workload) throws IOException {
+      contentType = workload.getContentType();
+      body = TestBase.readAll(workload.openStream());
+      parts = workload.getParts();
+      for (PartSpec part : parts) {
+        // The parser keeps the CRLF that precedes a "--" delimiter line.
+        byte[] content = TestBase.readAll(part.openContent());
+        byte[] withCrlf = Arrays.copyOf(content, content.length + 2);
+        withCrlf[content.length] = '\r';
+        withCrlf[content.length + 1] = '\n';
+        expected.add(withCrlf);
+      }
+    }
+  }
+
+  private static List<ParsePayload> parsePayloads() throws IOException {
+    List<ParsePayload> payloads = new ArrayList<ParsePayload>();
+    for (int i = 0; i < PAYLOAD_COUNT; i++) {
+      MultipartWorkload workload = new MultipartWorkload().withSeed(3500 + i);
+      switch (i % 3) {
+        case 0:
+          workload.withPartCount(24).withSizes(SizeDistribution.uniform(8, 256));
+          break;
+        case 1:
+          workload
+              .withPartCount(4)
+              .withSizes(SizeDistribution.logNormal(16 * 1024, 1.0, 256 * 1024))
+              .withBinaryFraction(0.5);
+          break;
+        default:
+          workload
+              .withPartCount(3)
+              .withSizes(SizeDistribution.fixed(64 * 1024))
+              .withNearMissesPerPart(32);
+          break;
+      }
+      payloads.add(new ParsePayload(workload.withBoundaryLength(30 + 4 * i)));
+    }
+    return payloads;
+  }
+
+  private Operation parse(final MultipartFormParserV2 callout, final List<ParsePayload> payloads) {
+    return (random) -> {
+      ParsePayload payload = payloads.get(random.nextInt(payloads.size()));
+      FakeMessage message = new FakeMessage();
+      FakeMessageContext msgCtxt = newContext(message);
+      message.setHeader("content-type", payload.contentType);
+      message.setContent(new ByteArrayInputStream(payload.body));
+      check(callout.execute(msgCtxt, exeCtxt), msgCtxt, "mpf_");
+      try {
+        Assert.assertEquals(msgCtxt.getVariable("mpf_itemcount"), payload.parts.size() + "");
+        for (int i = 0; i < payload.parts.size(); i++) {
+          Assert.assertEquals(
+              msgCtxt.getVariable("mpf_item_filename_" + (i + 1)),
+              payload.parts.get(i).getName());
+          Assert.assertEquals(
+              bytesOf(msgCtxt.getVariable("mpf_item_content_" + (i + 1))),
+              payload.expected.get(i),
+              "content of part " + (i + 1));
+        }
+      } finally {
+        DirectBufferArena arena = msgCtxt.getVariable("mpf_arena");
+        if (arena != null) {
+          arena.close();
+        }
+      }
+    };
+  }
+
+  // ------------------------------------------------------------------
+  // creator
+
+  private static final String STREAMED_DESCRIPTOR =
+      "{\n"
+          + "  \"text\" : {\n"
+          + "    \"content-var\" : \"text\",\n"
+          + "    \"content-type\" : \"text/plain\",\n"
+          + "    \"want-b64-decode\" : false\n"
+          + "  },\n"
+          + "  \"data\" : {\n"
+          + "    \"content-var\" : \"data\",\n"
+          + "    \"content-type\" : \"application/octet-stream\",\n"
+          + "    \"file-name\" : \"data.bin\",\n"
+          + "    \"transfer-encoding\" : \"base64\",\n"
+          + "    \"want-b64-decode\" : false\n"
+          + "  }\n"
+          + "}\n";
+
+  // a compressed part makes the length unknown, so the form is assembled before it is sent
+  private static final String ASSEMBLED_DESCRIPTOR =
+      "{\n"
+          + "  \"text\" : {\n"
+          + "    \"content-var\" : \"text\",\n"
+          + "    \"content-type\" : \"text/plain\",\n"
+          + "    \"compression\" : \"gzip\",\n"
+          + "    \"want-b64-decode\" : false\n"
+          + "  },\n"
+          + "  \"data\" : {\n"
+          + "    \"content-var\" : \"data\",\n"
+          + "    \"content-type\" : \"application/octet-stream\",\n"
+          + "    \"file-name\" : \"data.bin\",\n"
+          + "    \"want-b64-decode\" : false\n"
+          + "  }\n"
+          + "}\n";
+
+  private static class CreatePayload {
+    final String text;
+    final byte[] data;
+
+    CreatePayload(Random random) {
+      StringBuilder sb = new StringBuilder();
+      int words = 50 + random.nextInt(2000);
+      for (int i = 0; i < words; i++) {
+        sb.append("word").append(random.nextInt(1000)).append(i % 12 == 11 ? '\n' : ' ');
+      }
+      text = sb.toString();
+      data = new byte[1024 + random.nextInt(128 * 1024)];
+      random.nextBytes(data);
+    }
+  }
+
+  /** Creates a form in this thread, returning the bytes with the boundary replaced by "{}". */
+  private byte[] create(MultipartFormCreatorV2 callout, CreatePayload payload) throws Exception {
+    FakeMessage message = new FakeMessage();
+    FakeMessageContext msgCtxt = newContext(message);
+    msgCtxt.setVariable("text", payload.text);
+    msgCtxt.setVariable("data", payload.data);
+    check(callout.execute(msgCtxt, exeCtxt), msgCtxt, "mpf_");
+    String boundary = msgCtxt.getVariable("mpf_boundary");
+    if (!boundaries.add(boundary)) {
+      throw new AssertionError("boundary used twice: " + boundary);
+    }
+    Message output = msgCtxt.getVariable("message");
+    Assert.assertEquals(
+        output.getHeader("content-type"), "multipart/form-data; boundary=" + boundary);
+    byte[] body = TestBase.readAll(output.getContentAsStream());
+    Assert.assertEquals(msgCtxt.getVariable("mpf_payload_length"), body.length + "");
+    // ISO-8859-1 maps every byte to one char, so this round trip is lossless
+    return new String(body, StandardCharsets.ISO_8859_1)
+        .replace(boundary, "{}")
+        .getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  private Operation create(final MultipartFormCreatorV2 callout, final List<CreatePayload> payloads)
+      throws Exception {
+    final List<byte[]> expected = new ArrayList<byte[]>();
+    for (CreatePayload payload : payloads) {
+      expected.add(create(callout, payload));
+    }
+    return (random) -> {
+      int index = random.nextInt(payloads.size());
+      Assert.assertEquals(create(callout, payloads.get(index)), expected.get(index), "form");
+    };
+  }
+
+  // ------------------------------------------------------------------
+  // ContentSetter
+
+  private Operation setContent(final ContentSetter callout, final List<CreatePayload> payloads) {
+    return (random) -> {
+      CreatePayload payload = payloads.get(random.nextInt(payloads.size()));
+      String contentType = "application/x-test-" + random.nextInt(1000);
+      FakeMessage message = new FakeMessage();
+      FakeMessageContext msgCtxt = newContext(message);
+      msgCtxt.setVariable("content", payload.data);
+      msgCtxt.setVariable("ctype", contentType);
+      check(callout.execute(msgCtxt, exeCtxt), msgCtxt, "cs_");
+      Message output = msgCtxt.getVariable("message");
+      Assert.assertEquals(output.getHeader("content-type"), contentType);
+      Assert.assertEquals(TestBase.readAll(output.getContentAsStream()), payload.data, "content");
+    };
+  }
+
+  // ------------------------------------------------------------------
+
+  @BeforeClass
+  public void setup() throws Exception {
+    List<ParsePayload> parsePayloads = parsePayloads();
+    Random random = new Random(35);
+    List<CreatePayload> createPayloads = new ArrayList<CreatePayload>();
+    for (int i = 0; i < PAYLOAD_COUNT; i++) {
+      createPayloads.add(new CreatePayload(random));
+    }
+
+    operations = new ArrayList<Operation>();
+    operations.add(parse(new MultipartFormParserV2(properties()), parsePayloads));
+    operations.add(
+        parse(new MultipartFormParserV2(properties("direct-memory", "true")), parsePayloads));
+    operations.add(
+        create(
+            new MultipartFormCreatorV2(properties("descriptor", STREAMED_DESCRIPTOR)),
+            createPayloads));
+    operations.add(
+        create(
+            new MultipartFormCreatorV2(properties("descriptor", ASSEMBLED_DESCRIPTOR)),
+            createPayloads));
+    operations.add(
+        create(
+            new MultipartFormCreatorV2(
+                properties("descriptor", ASSEMBLED_DESCRIPTOR, "direct-memory", "true")),
+            createPayloads));
+    operations.add(
+        setContent(
+            new ContentSetter(properties("contentVar", "content", "contentType", "{ctype}")),
+            createPayloads));
+  }
+
+  /**
+   * Runs operations chosen at random from the shared list, on the given number of threads, all
+   * starting together. Rethrows the first failure. Returns the elapsed time in nanoseconds.
+   */
+  private long runConcurrently(int threadCount, final int iterations) throws Exception {
+    final CountDownLatch ready = new CountDownLatch(threadCount);
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < threadCount; t++) {
+      final Random random = new Random(3500 + t);
+      Thread thread =
+          new Thread(
+              () -> {
+                ready.countDown();
+                try {
+                  start.await();
+                  for (int i = 0; i < iterations && failure.get() == null; i++) {
+                    operations.get(random.nextInt(operations.size())).run(random);
+                  }
+                } catch (Throwable e) {
+                  failure.compareAndSet(null, e);
+                }
+              },
+              "stress-" + t);
+      threads.add(thread);
+      thread.start();
+    }
+    ready.await();
+    long startTime = System.nanoTime();
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long elapsed = System.nanoTime() - startTime;
+    Throwable e = failure.get();
+    if (e instanceof Exception) {
+      throw (Exception) e;
+    }
+    if (e != null) {
+      throw (Error) e;
+    }
+    return elapsed;
+  }
+
+  @Test
+  public void sharedInstances() throws Exception {
+    int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+    runConcurrently(threads, 40);
+  }
+
+  @Test(groups = "stress")
+  public void throughputScaling() throws Exception {
+    int maxThreads =
+        Integer.getInteger("stress.threads", 2 * Runtime.getRuntime().availableProcessors());
+    int iterations = Integer.getInteger("stress.iterations", 400);
+    runConcurrently(maxThreads, iterations / 4); // warm up
+
+    double singleThreaded = 0;
+    double worst = Double.MAX_VALUE;
+    System.out.printf("%8s %12s %8s\n", "threads", "ops/s", "speedup");
+    for (int threads = 1; ; threads = Math.min(2 * threads, maxThreads)) {
+      long elapsed = runConcurrently(threads, iterations);
+      double throughput = threads * iterations / (elapsed / 1e9);
+      if (threads == 1) {
+        singleThreaded = throughput;
+      }
+      worst = Math.min(worst, throughput);
+      System.out.printf(
+          "%8d %12.0f %8.2f\n", threads, throughput, throughput / singleThreaded);
+      if (threads == maxThreads) {
+        break;
+      }
+    }
+    // More threads may not help on a small machine, but they should never make things much
+    // worse; that is the sign of a lock that every execution contends for.
+    Assert.assertTrue(
+        worst >= singleThreaded / 2,
+        String.format(
+            "throughput fell to %.0f ops/s, from %.0f with one thread", worst, singleThreaded));
+  }
+}
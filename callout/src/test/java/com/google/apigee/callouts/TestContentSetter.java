@@ -59,4 +59,25 @@ public class TestContentSetter extends TestBase {
     Object output = msg.getContent();
     Assert.assertNotNull(output, "no output");
   }
+
+  @Test
+  public void setContent_Metrics() throws Exception {
+    byte[] imageBytes = loadImageBytes("Logs_512px.png.b64");
+    msgCtxt.setVariable("imageData", imageBytes);
+
+    Properties props = new Properties();
+    props.put("contentVar", "imageData");
+    props.put("contentType", "image/png");
+    props.put("metrics", "true");
+
+    ContentSetter callout = new ContentSetter(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+
+    Assert.assertEquals(msgCtxt.getVariable("cs_payload_length"), imageBytes.length + "");
+    Assert.assertEquals(msgCtxt.getVariable("cs_metrics_bytes_written"), imageBytes.length + "");
+    Assert.assertNotNull(msgCtxt.getVariable("cs_metrics_setup_nanos"));
+    Assert.assertNotNull(msgCtxt.getVariable("cs_metrics_set_nanos"));
+    Assert.assertNotNull(msgCtxt.getVariable("cs_metrics_total_nanos"));
+  }
 }
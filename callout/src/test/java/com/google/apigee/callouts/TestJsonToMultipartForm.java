@@ -0,0 +1,227 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.callouts;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.multipartform.JsonFormReader;
+import com.google.apigee.multipartform.MultipartReader;
+import com.google.apigee.multipartform.Part;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Properties;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestJsonToMultipartForm {
+  private static final String RULES =
+      "{"
+          + " \"/file/data\" : { \"name\" : \"upload\", \"base64\" : true,"
+          + "   \"file-name-field\" : \"name\", \"content-type-field\" : \"type\" },"
+          + " \"/file/name\" : { \"ignore\" : true },"
+          + " \"/file/type\" : { \"ignore\" : true },"
+          + " \"/attachments/*\" : { \"name\" : \"attachment\", \"base64\" : true },"
+          + " \"/metadata\" : { \"json\" : true },"
+          + " \"/client\" : { \"ignore\" : true }"
+          + "}";
+
+  private static byte[] binary(int size, int seed) {
+    byte[] b = new byte[size];
+    for (int i = 0; i < b.length; i++) {
+      b[i] = (byte) (i * seed);
+    }
+    return b;
+  }
+
+  private static String document(byte[] file, byte[] attachment) {
+    Base64.Encoder encoder = Base64.getEncoder();
+    return "{\"title\":\"Quarterly \\\"report\\\"\",\"count\":3,\"draft\":false,\"note\":null,"
+        + "\"client\":{\"id\":\"abc\",\"tags\":[1,2]},"
+        + "\"file\":{\"data\":\""
+        + encoder.encodeToString(file)
+        + "\",\"name\":\"report.pdf\",\"type\":\"application/pdf\"},"
+        + "\"attachments\":[\"data:image/png;base64,"
+        + encoder.encodeToString(attachment)
+        + "\"],"
+        + "\"metadata\":{\"pages\":[1,2,3],\"author\":\"Ann\"}}";
+  }
+
+  @Test
+  public void readerMapsValuesToParts() throws Exception {
+    byte[] file = binary(20000, 31);
+    byte[] attachment = binary(100, 7);
+    List<Part> parts =
+        new JsonFormReader(RULES, false)
+            .read(
+                new ByteArrayInputStream(
+                    document(file, attachment).getBytes(StandardCharsets.UTF_8)),
+                null);
+    Assert.assertEquals(parts.size(), 6, "parts");
+
+    Assert.assertEquals(parts.get(0).getName(), "title");
+    Assert.assertEquals(parts.get(0).getContentType(), "text/plain");
+    Assert.assertEquals(
+        new String(parts.get(0).getPartContent(), StandardCharsets.UTF_8), "Quarterly \"report\"");
+    Assert.assertEquals(new String(parts.get(1).getPartContent(), StandardCharsets.UTF_8), "3");
+    Assert.assertEquals(parts.get(2).getName(), "draft");
+    Assert.assertEquals(new String(parts.get(2).getPartContent(), StandardCharsets.UTF_8), "false");
+
+    // the file name and type come after the data
+    Part upload = parts.get(3);
+    Assert.assertEquals(upload.getName(), "upload");
+    Assert.assertEquals(upload.getFileName(), "report.pdf");
+    Assert.assertEquals(upload.getContentType(), "application/pdf");
+    Assert.assertEquals(upload.getPartContent(), file);
+
+    Part image = parts.get(4);
+    Assert.assertEquals(image.getName(), "attachment");
+    Assert.assertEquals(image.getContentType(), "image/png");
+    Assert.assertEquals(image.getPartContent(), attachment);
+
+    Part metadata = parts.get(5);
+    Assert.assertEquals(metadata.getName(), "metadata");
+    Assert.assertEquals(metadata.getContentType(), "application/json");
+    Assert.assertEquals(
+        new String(metadata.getPartContent(), StandardCharsets.UTF_8),
+        "{\"pages\":[1,2,3],\"author\":\"Ann\"}");
+  }
+
+  @Test
+  public void unmatchedValuesCanBeIgnored() throws Exception {
+    List<Part> parts =
+        new JsonFormReader(RULES, true)
+            .read(
+                new ByteArrayInputStream(
+                    document(new byte[10], new byte[10]).getBytes(StandardCharsets.UTF_8)),
+                null);
+    Assert.assertEquals(parts.size(), 3, "parts");
+    Assert.assertEquals(parts.get(0).getName(), "upload");
+  }
+
+  @Test
+  public void fieldRulesWithinArrays() throws Exception {
+    // there are no sibling properties for a value within an array
+    String rules =
+        "{ \"/files/*\" : { \"base64\" : true, \"file-name-field\" : \"n\" } }";
+    List<Part> parts =
+        new JsonFormReader(rules, false)
+            .read(
+                new ByteArrayInputStream(
+                    "{\"files\":[\"YQ==\",\"Yg==\"]}".getBytes(StandardCharsets.UTF_8)),
+                null);
+    Assert.assertEquals(parts.size(), 2, "parts");
+    Assert.assertEquals(parts.get(1).getPartContent(), new byte[] {'b'});
+    Assert.assertNull(parts.get(1).getFileName());
+  }
+
+  @Test
+  public void dataUrlWithoutMediaType() throws Exception {
+    String rules = "{ \"/file\" : { \"base64\" : true } }";
+    List<Part> parts =
+        new JsonFormReader(rules, false)
+            .read(
+                new ByteArrayInputStream(
+                    "{\"file\":\"data:;base64,YQ==\"}".getBytes(StandardCharsets.UTF_8)),
+                null);
+    Assert.assertEquals(parts.get(0).getContentType(), "application/octet-stream");
+    Assert.assertEquals(parts.get(0).getPartContent(), new byte[] {'a'});
+  }
+
+  @Test
+  public void rejectsCharactersOutsideTheAlphabet() throws Exception {
+    // a MIME part may break its base64 into lines; a JSON value may not
+    String rules = "{ \"/file\" : { \"base64\" : true } }";
+    for (String value : new String[] {"Y Q==", "YQ==\\n", "YQ=x", "YWJj!", "Y"}) {
+      try {
+        new JsonFormReader(rules, false)
+            .read(
+                new ByteArrayInputStream(
+                    ("{\"file\":\"" + value + "\"}").getBytes(StandardCharsets.UTF_8)),
+                null);
+        Assert.fail("accepted " + value);
+      } catch (IllegalStateException e) {
+        Assert.assertTrue(e.getMessage().startsWith("part file: not valid base64"), e.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void calloutReplacesContent() throws Exception {
+    byte[] file = binary(100000, 13);
+    byte[] attachment = binary(3000, 5);
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    message.setHeader("content-type", "application/json");
+    message.setContent(
+        new ByteArrayInputStream(document(file, attachment).getBytes(StandardCharsets.UTF_8)));
+
+    Properties props = new Properties();
+    props.put("rules", RULES);
+    props.put("unmatched", "ignore");
+    JsonToMultipartForm callout = new JsonToMultipartForm(props);
+    ExecutionResult result = callout.execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+    Assert.assertEquals(msgCtxt.getVariable("mpf_itemcount"), "3");
+    Assert.assertEquals(msgCtxt.getVariable("mpf_items"), "upload, attachment, metadata");
+    String boundary = msgCtxt.getVariable("mpf_boundary");
+    Assert.assertEquals(
+        message.getHeader("content-type"), "multipart/form-data; boundary=" + boundary);
+
+    byte[] body = TestBase.readAll(message.getContentAsStream());
+    Assert.assertEquals(message.getHeader("content-length"), Integer.toString(body.length));
+    MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body), boundary, 4096);
+    List<byte[]> contents = new ArrayList<byte[]>();
+    Part part;
+    while ((part = reader.nextPart()) != null) {
+      contents.add(TestBase.readAll(reader.getPartStream()));
+    }
+    Assert.assertEquals(contents.size(), 3, "parts");
+    Assert.assertEquals(contents.get(0), file);
+    Assert.assertEquals(contents.get(1), attachment);
+  }
+
+  @Test
+  public void rejectsInvalidJson() throws Exception {
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    message.setHeader("content-type", "application/json");
+    message.setContent(
+        new ByteArrayInputStream("{\"a\":\"b\",".getBytes(StandardCharsets.UTF_8)));
+    ExecutionResult result =
+        new JsonToMultipartForm(new Properties()).execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.ABORT, "ExecutionResult");
+    Assert.assertNotNull(msgCtxt.getVariable("mpf_error"), "error");
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void rejectsInvalidRules() {
+    new JsonFormReader("{\"file\" : true}", false);
+  }
+}
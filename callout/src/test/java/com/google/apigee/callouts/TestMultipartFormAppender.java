@@ -0,0 +1,233 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.callouts;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.multipartform.MultipartAppendingInputStream;
+import com.google.apigee.multipartform.MultipartReader;
+import com.google.apigee.multipartform.Part;
+import com.google.apigee.stream.Content;
+import com.google.apigee.workload.MultipartWorkload;
+import com.google.apigee.workload.MultipartWorkload.Malformation;
+import com.google.apigee.workload.MultipartWorkload.PartSpec;
+import com.google.apigee.workload.MultipartWorkload.SizeDistribution;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestMultipartFormAppender {
+
+  private static List<Part> signature() {
+    return Arrays.asList(
+        new Part("signature")
+            .withContentType("text/plain")
+            .withPartContent("c2lnbmF0dXJl".getBytes(StandardCharsets.UTF_8)));
+  }
+
+  // the names and contents of the parts in a body
+  private static List<String> read(byte[] body, String boundary) throws IOException {
+    MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body), boundary, 4096);
+    List<String> parts = new ArrayList<String>();
+    Part part;
+    while ((part = reader.nextPart()) != null) {
+      parts.add(
+          part.getName()
+              + "="
+              + new String(TestBase.readAll(reader.getPartStream()), StandardCharsets.ISO_8859_1));
+    }
+    return parts;
+  }
+
+  @Test
+  public void appendsToWorkload() throws Exception {
+    MultipartWorkload workload =
+        new MultipartWorkload()
+            .withSeed(46)
+            .withPartCount(6)
+            .withSizes(SizeDistribution.uniform(0, 50000))
+            .withBinaryFraction(0.5)
+            .withNearMissesPerPart(20);
+    List<PartSpec> specs = workload.getParts();
+    for (int bufferSize : new int[] {1, 64, 8192}) {
+      byte[] body =
+          TestBase.readAll(
+              new MultipartAppendingInputStream(
+                  workload.openStream(), workload.getBoundary(), signature(), bufferSize));
+      List<String> parts = read(body, workload.getBoundary());
+      Assert.assertEquals(parts.size(), specs.size() + 1, "parts");
+      for (int i = 0; i < specs.size(); i++) {
+        Assert.assertEquals(
+            parts.get(i),
+            specs.get(i).getName()
+                + "="
+                + new String(
+                    TestBase.readAll(specs.get(i).openContent()), StandardCharsets.ISO_8859_1));
+      }
+      Assert.assertEquals(parts.get(specs.size()), "signature=c2lnbmF0dXJl");
+    }
+  }
+
+  @Test
+  public void keepsPreambleAndDropsEpilogue() throws Exception {
+    String form =
+        "preamble\r\n--XYZ\r\n"
+            + "Content-Disposition: form-data; name=\"a\"\r\n"
+            + "\r\n"
+            + "one\r\n--XYZ--\r\nepilogue";
+    byte[] body =
+        TestBase.readAll(
+            new MultipartAppendingInputStream(
+                new ByteArrayInputStream(form.getBytes(StandardCharsets.UTF_8)),
+                "XYZ",
+                signature(),
+                64));
+    String text = new String(body, StandardCharsets.UTF_8);
+    Assert.assertTrue(text.startsWith("preamble\r\n--XYZ\r\n"));
+    Assert.assertTrue(text.endsWith("\r\nc2lnbmF0dXJl\r\n--XYZ--\r\n"), text);
+    Assert.assertEquals(read(body, "XYZ"), Arrays.asList("a=one", "signature=c2lnbmF0dXJl"));
+  }
+
+  @Test
+  public void appendsToEmptyForm() throws Exception {
+    byte[] body =
+        TestBase.readAll(
+            new MultipartAppendingInputStream(
+                new ByteArrayInputStream("--XYZ--\r\n".getBytes(StandardCharsets.UTF_8)),
+                "XYZ",
+                signature(),
+                64));
+    Assert.assertEquals(read(body, "XYZ"), Arrays.asList("signature=c2lnbmF0dXJl"));
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void truncatedBodyFailsTheRead() throws Exception {
+    MultipartWorkload workload =
+        new MultipartWorkload()
+            .withSeed(47)
+            .withPartCount(3)
+            .withSizes(SizeDistribution.uniform(1000, 5000))
+            .withMalformation(Malformation.TRUNCATED);
+    TestBase.readAll(
+        new MultipartAppendingInputStream(
+            workload.openStream(), workload.getBoundary(), signature(), 2048));
+  }
+
+  @Test
+  public void closeClosesBothForms() throws Exception {
+    final AtomicInteger closed = new AtomicInteger();
+    final byte[] signature = "c2lnbmF0dXJl".getBytes(StandardCharsets.UTF_8);
+    Content content =
+        new Content() {
+          public long length() {
+            return signature.length;
+          }
+
+          public InputStream openStream() {
+            return new ByteArrayInputStream(signature) {
+              public void close() {
+                closed.incrementAndGet();
+              }
+            };
+          }
+
+          public byte[] toByteArray() {
+            return signature.clone();
+          }
+        };
+    InputStream source =
+        new ByteArrayInputStream("--XYZ--\r\n".getBytes(StandardCharsets.UTF_8)) {
+          public void close() {
+            closed.incrementAndGet();
+          }
+        };
+    InputStream in =
+        new MultipartAppendingInputStream(
+            source, "XYZ", Arrays.asList(new Part("signature").withPartContent(content)), 64);
+    in.read();
+    in.close();
+    Assert.assertEquals(closed.get(), 2, "streams closed");
+  }
+
+  @Test
+  public void calloutAppendsParts() throws Exception {
+    MultipartWorkload workload =
+        new MultipartWorkload()
+            .withSeed(48)
+            .withPartCount(3)
+            .withSizes(SizeDistribution.uniform(100, 10000));
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    message.setHeader("content-type", workload.getContentType());
+    message.setHeader("content-length", Long.toString(workload.getContentLength()));
+    message.setContent(workload.openStream());
+    msgCtxt.setVariable("context_json", "{\"client\":\"abc\"}");
+
+    Properties props = new Properties();
+    props.put(
+        "descriptor",
+        "{\n"
+            + "  \"context\" : {\n"
+            + "    \"content-var\" : \"context_json\",\n"
+            + "    \"content-type\" : \"application/json\",\n"
+            + "    \"want-b64-decode\" : false\n"
+            + "  }\n"
+            + "}\n");
+    ExecutionResult result =
+        new MultipartFormAppender(props).execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+    Assert.assertEquals(message.getHeader("content-type"), workload.getContentType());
+    Assert.assertNull(message.getHeader("content-length"), "content-length");
+
+    List<String> parts =
+        read(TestBase.readAll(message.getContentAsStream()), workload.getBoundary());
+    Assert.assertEquals(parts.size(), 4, "parts");
+    Assert.assertEquals(parts.get(3), "context={\"client\":\"abc\"}");
+  }
+
+  @Test
+  public void rejectsOtherContent() throws Exception {
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    message.setHeader("content-type", "application/json");
+    message.setContent(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)));
+    Properties props = new Properties();
+    props.put("descriptor", "{ }");
+    ExecutionResult result =
+        new MultipartFormAppender(props).execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.ABORT, "ExecutionResult");
+    Assert.assertNotNull(msgCtxt.getVariable("mpf_error"), "error");
+  }
+}
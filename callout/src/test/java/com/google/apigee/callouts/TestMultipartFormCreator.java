@@ -18,17 +18,26 @@ package com.google.apigee.callouts;
 
 import com.apigee.flow.execution.ExecutionResult;
 import com.apigee.flow.message.Message;
+import com.google.apigee.stream.ContentDigest;
+import com.google.apigee.stream.QuotedPrintableDecodingOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
 import java.util.Properties;
+import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -186,4 +195,372 @@ public class TestMultipartFormCreator extends TestBase {
     copyInputStreamToFile(is, new File("./create_Json_MultipleParts.out"));
   }
 
+  private static int indexOf(byte[] haystack, byte[] needle, int from) {
+    outer:
+    for (int i = from; i <= haystack.length - needle.length; i++) {
+      for (int j = 0; j < needle.length; j++) {
+        if (haystack[i + j] != needle[j]) continue outer;
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  @Test
+  public void create_CompressedParts() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      sb.append("line ").append(i).append(" of a compressible text part\n");
+    }
+    String text = sb.toString();
+    msgCtxt.setVariable("bigText", text);
+    msgCtxt.setVariable("smallText", "tiny");
+
+    String descriptorJson =
+        "{\n"
+            + "  \"big.txt\" : {\n"
+            + "    \"content-var\" :  \"bigText\",\n"
+            + "    \"content-type\" : \"text/plain\",\n"
+            + "    \"want-b64-decode\": false,\n"
+            + "    \"compression\": \"gzip\",\n"
+            + "    \"compression-level\": 9,\n"
+            + "    \"compression-min-size\": 1024\n"
+            + "  },\n"
+            + "  \"small.txt\" : {\n"
+            + "    \"content-var\" :  \"smallText\",\n"
+            + "    \"content-type\" : \"text/plain\",\n"
+            + "    \"want-b64-decode\": false,\n"
+            + "    \"compression\": \"gzip\",\n"
+            + "    \"compression-min-size\": 1024\n"
+            + "  }\n"
+            + "}\n";
+
+    Properties props = new Properties();
+    props.put("descriptor", descriptorJson);
+
+    MultipartFormCreatorV2 callout = new MultipartFormCreatorV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+
+    Message msg = msgCtxt.getVariable("message");
+    byte[] payload = readAll(msg.getContentAsStream());
+    Assert.assertTrue(payload.length < text.length() / 2, "payload is compressed");
+
+    // only the big part is compressed
+    byte[] marker = "Content-Encoding: gzip\r\n\r\n".getBytes(StandardCharsets.UTF_8);
+    int ix = indexOf(payload, marker, 0);
+    Assert.assertTrue(ix > 0, "big part has content-encoding");
+    Assert.assertEquals(indexOf(payload, marker, ix + 1), -1, "small part is not compressed");
+    Assert.assertTrue(
+        indexOf(payload, "\r\n\r\ntiny\r\n".getBytes(StandardCharsets.UTF_8), 0) > 0,
+        "small part is sent as is");
+
+    int start = ix + marker.length;
+    byte[] inflated =
+        readAll(
+            new GZIPInputStream(
+                new ByteArrayInputStream(payload, start, payload.length - start)));
+    Assert.assertEquals(new String(inflated, StandardCharsets.UTF_8), text);
+  }
+
+  @Test
+  public void create_TransferEncodings() throws Exception {
+    byte[] binary = new byte[3000];
+    new Random(7).nextBytes(binary);
+    msgCtxt.setVariable("binaryData", binary);
+    String text = "caf\u00e9 = coffee\r\nequals sign: = and a tab\t\r\n" + repeat("long ", 40);
+    msgCtxt.setVariable("qpText", text);
+
+    String descriptorJson =
+        "{\n"
+            + "  \"data.bin\" : {\n"
+            + "    \"content-var\" :  \"binaryData\",\n"
+            + "    \"content-type\" : \"application/octet-stream\",\n"
+            + "    \"want-b64-decode\": false,\n"
+            + "    \"transfer-encoding\": \"base64\"\n"
+            + "  },\n"
+            + "  \"text.txt\" : {\n"
+            + "    \"content-var\" :  \"qpText\",\n"
+            + "    \"content-type\" : \"text/plain\",\n"
+            + "    \"want-b64-decode\": false,\n"
+            + "    \"transfer-encoding\": \"quoted-printable\"\n"
+            + "  }\n"
+            + "}\n";
+
+    Properties props = new Properties();
+    props.put("descriptor", descriptorJson);
+
+    MultipartFormCreatorV2 callout = new MultipartFormCreatorV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+
+    Message msg = msgCtxt.getVariable("message");
+    byte[] payload = readAll(msg.getContentAsStream());
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_payload_length"), payload.length + "", "precomputed length");
+
+    // every line of the encoded form is within the MIME limit
+    String form = new String(payload, StandardCharsets.US_ASCII);
+    for (String line : form.split("\r\n")) {
+      Assert.assertTrue(line.length() <= 76, "line length: " + line);
+    }
+
+    String boundary = msgCtxt.getVariable("mpf_boundary");
+    String b64Marker = "Content-Transfer-Encoding: base64\r\n\r\n";
+    int start = form.indexOf(b64Marker) + b64Marker.length();
+    int end = form.indexOf("\r\n--" + boundary, start);
+    Assert.assertEquals(
+        Base64.getMimeDecoder().decode(form.substring(start, end)), binary);
+
+    String qpMarker = "Content-Transfer-Encoding: quoted-printable\r\n\r\n";
+    start = form.indexOf(qpMarker) + qpMarker.length();
+    end = form.indexOf("\r\n--" + boundary, start);
+    ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+    try (OutputStream out =
+        new QuotedPrintableDecodingOutputStream(decoded)) {
+      out.write(form.substring(start, end).getBytes(StandardCharsets.US_ASCII));
+    }
+    Assert.assertEquals(new String(decoded.toByteArray(), StandardCharsets.UTF_8), text);
+  }
+
+  @Test
+  public void create_Metrics() throws Exception {
+    byte[] binary = new byte[5000];
+    new Random(37).nextBytes(binary);
+    msgCtxt.setVariable("binaryData", binary);
+    msgCtxt.setVariable("textData", "Hello, World");
+
+    String descriptorJson =
+        "{\n"
+            + "  \"data.bin\" : {\n"
+            + "    \"content-var\" :  \"binaryData\",\n"
+            + "    \"content-type\" : \"application/octet-stream\",\n"
+            + "    \"want-b64-decode\": false\n"
+            + "  },\n"
+            + "  \"hello\" : {\n"
+            + "    \"content-var\" :  \"textData\",\n"
+            + "    \"content-type\" : \"text/plain\",\n"
+            + "    \"want-b64-decode\": false\n"
+            + "  }\n"
+            + "}\n";
+
+    Properties props = new Properties();
+    props.put("descriptor", descriptorJson);
+    props.put("metrics", "true");
+
+    MultipartFormCreatorV2 callout = new MultipartFormCreatorV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+
+    Assert.assertEquals(msgCtxt.getVariable("mpf_metrics_parts"), "2");
+    Assert.assertEquals(msgCtxt.getVariable("mpf_metrics_bytes_read"), (5000 + 12) + "");
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_metrics_bytes_written"),
+        (String) msgCtxt.getVariable("mpf_payload_length"));
+    for (String phase : new String[] {"setup", "parts", "encode", "total"}) {
+      Assert.assertNotNull(msgCtxt.getVariable("mpf_metrics_" + phase + "_nanos"), phase);
+    }
+  }
+
+  private static String repeat(String s, int count) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      sb.append(s);
+    }
+    return sb.toString();
+  }
+
+  private static String digestOf(String algorithm, byte[] content, boolean base64)
+      throws Exception {
+    return ContentDigest.encode(MessageDigest.getInstance(algorithm).digest(content), base64);
+  }
+
+  private static final String DIGEST_DESCRIPTOR =
+      "{\n"
+          + "  \"data.bin\" : {\n"
+          + "    \"content-var\" :  \"binaryData\",\n"
+          + "    \"content-type\" : \"application/octet-stream\",\n"
+          + "    \"want-b64-decode\": false,\n"
+          + "    \"transfer-encoding\": \"base64\"\n"
+          + "  },\n"
+          + "  \"note.txt\" : {\n"
+          + "    \"content-var\" :  \"noteText\",\n"
+          + "    \"content-type\" : \"text/plain\",\n"
+          + "    \"want-b64-decode\": false\n"
+          + "  }\n"
+          + "}\n";
+
+  @Test
+  public void create_Digests_Streamed() throws Exception {
+    byte[] binary = new byte[20000];
+    new Random(49).nextBytes(binary);
+    msgCtxt.setVariable("binaryData", binary);
+    msgCtxt.setVariable("noteText", "a note");
+
+    Properties props = new Properties();
+    props.put("descriptor", DIGEST_DESCRIPTOR);
+    props.put("part-digests", "sha256");
+    props.put("digests", "sha256, md5");
+
+    MultipartFormCreatorV2 callout = new MultipartFormCreatorV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+    // the form is streamed; it is digested in the one pass that sends it
+    Assert.assertNull(msgCtxt.getVariable("mpf_payload_sha256"), "digest before sending");
+    Assert.assertNull(msgCtxt.getVariable("mpf_item_sha256_1"), "part digest before sending");
+
+    Message msg = msgCtxt.getVariable("message");
+    Assert.assertNull(msg.getHeader("content-digest"));
+    byte[] payload = readAll(msg.getContentAsStream());
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_payload_sha256"), digestOf("SHA-256", payload, false));
+    Assert.assertEquals(msgCtxt.getVariable("mpf_payload_md5"), digestOf("MD5", payload, false));
+    // a part is digested before its transfer encoding
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_item_sha256_1"), digestOf("SHA-256", binary, false));
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_item_sha256_2"),
+        digestOf("SHA-256", "a note".getBytes(StandardCharsets.UTF_8), false));
+  }
+
+  @Test
+  public void create_Digests_Assembled() throws Exception {
+    String text = repeat("compressible text ", 500);
+    msgCtxt.setVariable("bigText", text);
+
+    String descriptorJson =
+        "{\n"
+            + "  \"big.txt\" : {\n"
+            + "    \"content-var\" :  \"bigText\",\n"
+            + "    \"content-type\" : \"text/plain\",\n"
+            + "    \"want-b64-decode\": false,\n"
+            + "    \"compression\": \"gzip\"\n"
+            + "  }\n"
+            + "}\n";
+    Properties props = new Properties();
+    props.put("descriptor", descriptorJson);
+    props.put("part-digests", "sha256");
+    props.put("digests", "sha256");
+
+    MultipartFormCreatorV2 callout = new MultipartFormCreatorV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+    // the form is assembled within the policy, so its digests are known when it returns
+    String sha256 = msgCtxt.getVariable("mpf_payload_sha256");
+    Assert.assertNotNull(sha256, "digest before sending");
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_item_sha256_1"),
+        digestOf("SHA-256", text.getBytes(StandardCharsets.UTF_8), false));
+
+    Message msg = msgCtxt.getVariable("message");
+    Assert.assertEquals(sha256, digestOf("SHA-256", readAll(msg.getContentAsStream()), false));
+  }
+
+  @Test
+  public void create_Digests_Headers() throws Exception {
+    byte[] binary = new byte[20000];
+    new Random(50).nextBytes(binary);
+    msgCtxt.setVariable("binaryData", binary);
+    msgCtxt.setVariable("noteText", "a note");
+
+    Properties props = new Properties();
+    props.put("descriptor", DIGEST_DESCRIPTOR);
+    props.put("part-digests", "sha256");
+    props.put("part-digest-header", "content-digest");
+    props.put("digests", "md5");
+    props.put("digest-header", "content-md5");
+    props.put("digest-encoding", "base64");
+
+    MultipartFormCreatorV2 callout = new MultipartFormCreatorV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+    // the header must come before the body, so the digests are known now
+    String md5 = msgCtxt.getVariable("mpf_payload_md5");
+    Assert.assertNotNull(md5, "digest before sending");
+
+    Message msg = msgCtxt.getVariable("message");
+    Assert.assertEquals(msg.getHeader("content-md5"), md5);
+    byte[] payload = readAll(msg.getContentAsStream());
+    Assert.assertEquals(md5, digestOf("MD5", payload, true));
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_payload_length"), payload.length + "", "precomputed length");
+    String form = new String(payload, StandardCharsets.US_ASCII);
+    Assert.assertTrue(
+        form.contains(
+            "Content-Transfer-Encoding: base64\r\n"
+                + "Content-Digest: sha-256=:"
+                + digestOf("SHA-256", binary, true)
+                + ":\r\n\r\n"),
+        form.substring(0, 400));
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_item_sha256_1"), digestOf("SHA-256", binary, true));
+  }
+
+  @Test
+  public void create_Digests_Compressed() throws Exception {
+    msgCtxt.setVariable("bigText", repeat("compressible text ", 500));
+
+    String descriptorJson =
+        "{\n"
+            + "  \"big.txt\" : {\n"
+            + "    \"content-var\" :  \"bigText\",\n"
+            + "    \"content-type\" : \"text/plain\",\n"
+            + "    \"want-b64-decode\": false,\n"
+            + "    \"compression\": \"gzip\"\n"
+            + "  }\n"
+            + "}\n";
+    Properties props = new Properties();
+    props.put("descriptor", descriptorJson);
+    props.put("digests", "sha256, sha512");
+    props.put("digest-header", "content-digest");
+
+    // the form is assembled in the callout, and digested as it is
+    MultipartFormCreatorV2 callout = new MultipartFormCreatorV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+    Message msg = msgCtxt.getVariable("message");
+    byte[] payload = readAll(msg.getContentAsStream());
+    Assert.assertEquals(
+        msg.getHeader("content-digest"),
+        "sha-256=:"
+            + digestOf("SHA-256", payload, true)
+            + ":, sha-512=:"
+            + digestOf("SHA-512", payload, true)
+            + ":");
+
+    // a part digest header would not be of the content as sent
+    props.put("part-digests", "md5");
+    props.put("part-digest-header", "content-md5");
+    callout = new MultipartFormCreatorV2(props);
+    actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_error"),
+        "part big.txt: part-digest-header cannot be used with compression");
+  }
+
+  @Test
+  public void create_Digests_BadConfiguration() throws Exception {
+    msgCtxt.setVariable("binaryData", new byte[10]);
+    msgCtxt.setVariable("noteText", "a note");
+
+    Properties props = new Properties();
+    props.put("descriptor", DIGEST_DESCRIPTOR);
+    props.put("digests", "sha256");
+    props.put("digest-header", "content-md5");
+
+    MultipartFormCreatorV2 callout = new MultipartFormCreatorV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_error"),
+        "configuration error: digest-header content-md5 needs md5 in digests");
+  }
 }
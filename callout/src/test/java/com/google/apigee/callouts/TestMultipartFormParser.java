@@ -18,12 +18,37 @@ package com.google.apigee.callouts;
 
 import com.apigee.flow.execution.ExecutionResult;
 import com.apigee.flow.message.Message;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.multipartform.MultipartForm;
+import com.google.apigee.multipartform.Part;
+import com.google.apigee.stream.Checksums;
+import com.google.apigee.stream.Content;
+import com.google.apigee.stream.ContentDigest;
+import com.google.apigee.stream.DirectBufferArena;
+import com.google.apigee.stream.SpillFiles;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Properties;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.Checksum;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
 public class TestMultipartFormParser extends TestBase {
@@ -191,4 +216,626 @@ public class TestMultipartFormParser extends TestBase {
     Assert.assertTrue(ctype2 instanceof String);
     Assert.assertEquals(ctype2, "image/png");
   }
+
+  @Test
+  public void parse_DirectMemory() throws Exception {
+    Message msg = msgCtxt.getMessage();
+    byte[] payloadBytes = loadImageBytes("MultiPart-payload.2.out");
+    msg.setContent(new ByteArrayInputStream(payloadBytes));
+    msg.setHeader(
+        "content-type", "multipart/form-data; boundary=----------------------QCN1DGMIPH8GPY");
+
+    Properties props = new Properties();
+    props.put("source", "message");
+    props.put("direct-memory", "true");
+    props.put("debug", "true");
+
+    MultipartFormParserV2 callout = new MultipartFormParserV2(props);
+
+    // execute and retrieve output
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    ExecutionResult expectedResult = ExecutionResult.SUCCESS;
+    Assert.assertEquals(actualResult, expectedResult, "ExecutionResult");
+
+    // check result and output
+    Object error = msgCtxt.getVariable("mpf_error");
+    Assert.assertNull(error, "error");
+
+    Object content1 = msgCtxt.getVariable("mpf_item_content_1_string");
+    Assert.assertEquals(content1, "value-goes-here", "plain text content");
+
+    Object content2 = msgCtxt.getVariable("mpf_item_content_2");
+    Assert.assertTrue(content2 instanceof Content);
+    Assert.assertEquals(((Content) content2).length(), 15319L);
+    Assert.assertEquals(msgCtxt.getVariable("mpf_item_size_2"), "15319");
+
+    DirectBufferArena arena = msgCtxt.getVariable("mpf_arena");
+    Assert.assertNotNull(arena, "arena");
+    arena.close();
+  }
+
+  @Test
+  public void parse_Spill() throws Exception {
+    Message msg = msgCtxt.getMessage();
+    byte[] payloadBytes = loadImageBytes("MultiPart-payload.2.out");
+    msg.setContent(new ByteArrayInputStream(payloadBytes));
+    msg.setHeader(
+        "content-type", "multipart/form-data; boundary=----------------------QCN1DGMIPH8GPY");
+    Path spillDirectory = Files.createTempDirectory("spill");
+
+    Properties props = new Properties();
+    props.put("spill-threshold", "4096");
+    props.put("spill-directory", spillDirectory.toString());
+
+    MultipartFormParserV2 callout = new MultipartFormParserV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+
+    // the small part stays in memory
+    Assert.assertEquals(msgCtxt.getVariable("mpf_item_content_1_string"), "value-goes-here");
+    Content content2 = msgCtxt.getVariable("mpf_item_content_2");
+    Assert.assertTrue(SpillFiles.isSpilled(content2), "large part is spilled");
+    Assert.assertEquals(content2.length(), 15319L);
+    Assert.assertEquals(msgCtxt.getVariable("mpf_item_size_2"), "15319");
+    Assert.assertEquals(countFiles(spillDirectory), 1);
+    byte[] expected = content2.toByteArray();
+
+    // setting the content into a message, as its last use, and reading it,
+    // deletes the file
+    Properties csProps = new Properties();
+    csProps.put("contentVar", "mpf_item_content_2");
+    csProps.put("release-parsed-content", "true");
+    ContentSetter setter = new ContentSetter(csProps);
+    Assert.assertEquals(setter.execute(msgCtxt, exeCtxt), ExecutionResult.SUCCESS);
+    try (InputStream in = msg.getContentAsStream()) {
+      Assert.assertEquals(readAll(in), expected);
+    }
+    Assert.assertEquals(countFiles(spillDirectory), 0);
+    Files.delete(spillDirectory);
+  }
+
+  @Test
+  public void parse_Spill_NewThreshold() throws Exception {
+    // a callout with a different threshold releases the spill files it replaces
+    byte[] payloadBytes = loadImageBytes("MultiPart-payload.2.out");
+    Path spillDirectory = Files.createTempDirectory("spill");
+    SpillFiles first = null;
+    for (String threshold : new String[] {"4096", "8192"}) {
+      Message msg = msgCtxt.getMessage();
+      msg.setContent(new ByteArrayInputStream(payloadBytes));
+      msg.setHeader(
+          "content-type", "multipart/form-data; boundary=----------------------QCN1DGMIPH8GPY");
+      Properties props = new Properties();
+      props.put("spill-threshold", threshold);
+      props.put("spill-directory", spillDirectory.toString());
+      ExecutionResult actualResult = new MultipartFormParserV2(props).execute(msgCtxt, exeCtxt);
+      Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+      if (first == null) {
+        first = msgCtxt.getVariable("mpf_spill");
+      }
+    }
+    SpillFiles second = msgCtxt.getVariable("mpf_spill");
+    Assert.assertTrue(second != first, "new spill files");
+    Assert.assertTrue(first.isReleased(), "replaced spill files are released");
+    Assert.assertEquals(countFiles(spillDirectory), 1);
+    second.close();
+    Assert.assertEquals(countFiles(spillDirectory), 0);
+    Files.delete(spillDirectory);
+  }
+
+  @Test
+  public void parse_DirectMemory_OutlivesCreatedMessage() throws Exception {
+    Message msg = msgCtxt.getMessage();
+    msg.setContent(new ByteArrayInputStream(loadImageBytes("MultiPart-payload.2.out")));
+    msg.setHeader(
+        "content-type", "multipart/form-data; boundary=----------------------QCN1DGMIPH8GPY");
+    Properties props = new Properties();
+    props.put("direct-memory", "true");
+    Assert.assertEquals(
+        new MultipartFormParserV2(props).execute(msgCtxt, exeCtxt), ExecutionResult.SUCCESS);
+    DirectBufferArena arena = msgCtxt.getVariable("mpf_arena");
+    Content content2 = msgCtxt.getVariable("mpf_item_content_2");
+    byte[] expected = content2.toByteArray();
+
+    // a form with no content from the arena does not hold it
+    msgCtxt.setVariable("greeting", "hello");
+    Properties createProps = new Properties();
+    createProps.put(
+        "descriptor",
+        "{ \"a\" : { \"content-var\" : \"greeting\", \"content-type\" : \"text/plain\","
+            + " \"want-b64-decode\" : false } }");
+    createProps.put("destination", "created");
+    msgCtxt.setVariable("created", new FakeMessage());
+    Assert.assertEquals(
+        new MultipartFormCreatorV2(createProps).execute(msgCtxt, exeCtxt),
+        ExecutionResult.SUCCESS);
+    Message created = msgCtxt.getVariable("created");
+    readAll(created.getContentAsStream());
+    created.getContentAsStream().close();
+    Assert.assertFalse(arena.isReleased());
+
+    // a message that carries arena content holds it until it has been sent
+    Properties csProps = new Properties();
+    csProps.put("contentVar", "mpf_item_content_2");
+    csProps.put("destination", "target");
+    msgCtxt.setVariable("target", new FakeMessage());
+    Assert.assertEquals(
+        new ContentSetter(csProps).execute(msgCtxt, exeCtxt), ExecutionResult.SUCCESS);
+    Message target = msgCtxt.getVariable("target");
+    target.getContentAsStream().close();
+    Assert.assertFalse(arena.isReleased());
+
+    // so a later message can still be set from the parsed content; as its last
+    // use, the arena is released once it has been sent
+    csProps.put("destination", "response");
+    msgCtxt.setVariable("response", new FakeMessage());
+    csProps.put("release-parsed-content", "true");
+    Assert.assertEquals(
+        new ContentSetter(csProps).execute(msgCtxt, exeCtxt), ExecutionResult.SUCCESS);
+    Message response = msgCtxt.getVariable("response");
+    Assert.assertFalse(arena.isReleased());
+    try (InputStream in = response.getContentAsStream()) {
+      Assert.assertEquals(readAll(in), expected);
+    }
+    Assert.assertTrue(arena.isReleased());
+  }
+
+  @Test
+  public void parse_Metrics() throws Exception {
+    Message msg = msgCtxt.getMessage();
+    byte[] payloadBytes = loadImageBytes("MultiPart-payload.out");
+    msg.setContent(new ByteArrayInputStream(payloadBytes));
+    msg.setHeader(
+        "content-type", "multipart/form-data; boundary=----------------------QCN1DGMIPH8GPY");
+
+    Properties props = new Properties();
+    props.put("metrics", "true");
+
+    MultipartFormParserV2 callout = new MultipartFormParserV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+
+    String itemCount = msgCtxt.getVariable("mpf_itemcount");
+    Assert.assertEquals(msgCtxt.getVariable("mpf_metrics_parts"), itemCount);
+    Assert.assertEquals(msgCtxt.getVariable("mpf_metrics_bytes_read"), payloadBytes.length + "");
+    long written = 0;
+    for (int i = 1; i <= Integer.parseInt(itemCount); i++) {
+      written += Long.parseLong(msgCtxt.getVariable("mpf_item_size_" + i));
+    }
+    Assert.assertEquals(msgCtxt.getVariable("mpf_metrics_bytes_written"), written + "");
+    Assert.assertNotNull(msgCtxt.getVariable("mpf_metrics_buffer_growths"));
+
+    long total = Long.parseLong(msgCtxt.getVariable("mpf_metrics_total_nanos"));
+    long phases = 0;
+    for (String phase : new String[] {"setup", "scan", "headers", "publish"}) {
+      long nanos = Long.parseLong(msgCtxt.getVariable("mpf_metrics_" + phase + "_nanos"));
+      Assert.assertTrue(nanos >= 0, phase);
+      phases += nanos;
+    }
+    Assert.assertTrue(phases <= total, "phases within the total");
+  }
+
+  @Test
+  public void parse_NoMetricsByDefault() throws Exception {
+    Message msg = msgCtxt.getMessage();
+    msg.setContent(new ByteArrayInputStream(loadImageBytes("MultiPart-payload.out")));
+    msg.setHeader(
+        "content-type", "multipart/form-data; boundary=----------------------QCN1DGMIPH8GPY");
+
+    MultipartFormParserV2 callout = new MultipartFormParserV2(new Properties());
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_metrics_total_nanos"));
+    Assert.assertNull(msgCtxt.getVariable("mpf_metrics_bytes_read"));
+  }
+
+  private static int countFiles(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return (int) files.count();
+    }
+  }
+
+  private static byte[] compress(byte[] bytes, String coding) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (OutputStream out =
+        coding.equals("gzip")
+            ? new GZIPOutputStream(baos)
+            : new DeflaterOutputStream(baos, new Deflater(6, coding.equals("raw")))) {
+      out.write(bytes);
+    }
+    return baos.toByteArray();
+  }
+
+  @DataProvider(name = "codings")
+  public Object[][] codings() {
+    return new Object[][] {{"gzip", "gzip"}, {"zlib", "deflate"}, {"raw", "deflate"}};
+  }
+
+  @Test(dataProvider = "codings")
+  public void parse_ContentEncoding(String format, String contentEncoding) throws Exception {
+    Message msg = msgCtxt.getMessage();
+    byte[] payloadBytes = loadImageBytes("MultiPart-payload.2.out");
+    msg.setContent(new ByteArrayInputStream(compress(payloadBytes, format)));
+    msg.setHeader(
+        "content-type", "multipart/form-data; boundary=----------------------QCN1DGMIPH8GPY");
+    msg.setHeader("content-encoding", contentEncoding);
+
+    Properties props = new Properties();
+    props.put("source", "message");
+
+    MultipartFormParserV2 callout = new MultipartFormParserV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+
+    Assert.assertEquals(msgCtxt.getVariable("mpf_itemcount"), "2");
+    Assert.assertEquals(msgCtxt.getVariable("mpf_item_content_1_string"), "value-goes-here");
+    Assert.assertEquals(msgCtxt.getVariable("mpf_item_size_2"), "15319");
+  }
+
+  @Test
+  public void parse_ContentEncoding_OverLimit() throws Exception {
+    Message msg = msgCtxt.getMessage();
+    // a small gzip that inflates to a large body
+    byte[] payloadBytes = new byte[4 * 1024 * 1024];
+    byte[] compressed = compress(payloadBytes, "gzip");
+    Assert.assertTrue(compressed.length < 16 * 1024);
+    msg.setContent(new ByteArrayInputStream(compressed));
+    msg.setHeader("content-type", "multipart/form-data; boundary=XYZ");
+    msg.setHeader("content-encoding", "gzip");
+
+    Properties props = new Properties();
+    props.put("source", "message");
+    props.put("decoded-size-limit", "1048576");
+
+    MultipartFormParserV2 callout = new MultipartFormParserV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.ABORT, "ExecutionResult");
+    String error = msgCtxt.getVariable("mpf_error");
+    Assert.assertNotNull(error, "error");
+    Assert.assertTrue(error.contains("exceeds the limit"), error);
+  }
+
+  private static String hex(byte[] digest) {
+    return ContentDigest.encode(digest, false);
+  }
+
+  private static String crc32c(byte[] content) {
+    Checksum crc = Checksums.newCrc32c();
+    crc.update(content, 0, content.length);
+    return String.format("%08x", crc.getValue());
+  }
+
+  @DataProvider(name = "storage")
+  public Object[][] storage() {
+    return new Object[][] {{"heap"}, {"direct-memory"}, {"spill-threshold"}};
+  }
+
+  @Test(dataProvider = "storage")
+  public void parse_Digests(String storage) throws Exception {
+    Message msg = msgCtxt.getMessage();
+    byte[] payloadBytes = loadImageBytes("MultiPart-payload.2.out");
+    msg.setContent(new ByteArrayInputStream(payloadBytes));
+    msg.setHeader(
+        "content-type", "multipart/form-data; boundary=----------------------QCN1DGMIPH8GPY");
+    Path spillDirectory = Files.createTempDirectory("spill");
+
+    Properties props = new Properties();
+    props.put("digests", "SHA-256, md5, crc32c");
+    if (storage.equals("direct-memory")) {
+      props.put("direct-memory", "true");
+    } else if (storage.equals("spill-threshold")) {
+      props.put("spill-threshold", "4096");
+      props.put("spill-directory", spillDirectory.toString());
+    }
+
+    MultipartFormParserV2 callout = new MultipartFormParserV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+
+    for (int i = 1; i <= 2; i++) {
+      Object variable = msgCtxt.getVariable("mpf_item_content_" + i);
+      byte[] content =
+          (variable instanceof Content) ? ((Content) variable).toByteArray() : (byte[]) variable;
+      Assert.assertEquals(
+          msgCtxt.getVariable("mpf_item_sha256_" + i),
+          hex(MessageDigest.getInstance("SHA-256").digest(content)));
+      Assert.assertEquals(
+          msgCtxt.getVariable("mpf_item_md5_" + i),
+          hex(MessageDigest.getInstance("MD5").digest(content)));
+      Assert.assertEquals(msgCtxt.getVariable("mpf_item_crc32c_" + i), crc32c(content));
+    }
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_item_md5_1"),
+        hex(MessageDigest.getInstance("MD5").digest("value-goes-here".getBytes("UTF-8"))));
+
+    DirectBufferArena arena = msgCtxt.getVariable("mpf_arena");
+    if (arena != null) {
+      arena.close();
+    }
+    SpillFiles spillFiles = msgCtxt.getVariable("mpf_spill");
+    if (spillFiles != null) {
+      spillFiles.close();
+    }
+    Assert.assertEquals(countFiles(spillDirectory), 0);
+    Files.delete(spillDirectory);
+  }
+
+  @Test
+  public void parse_Digests_ExactPartContent() throws Exception {
+    // a form as browsers and curl send it, where each delimiter line is "--"
+    // and the boundary, after a CRLF that belongs to the delimiter; with
+    // exact-part-content, that CRLF is left out of the part
+    byte[] file = new byte[70000];
+    new Random(48).nextBytes(file);
+    file[file.length - 2] = '\r';
+    file[file.length - 1] = '\n';
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    body.write(
+        ascii(
+            "--XYZ\r\n"
+                + "Content-Disposition: form-data; name=\"upload\"; filename=\"a.bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n"));
+    body.write(file);
+    body.write(
+        ascii(
+            "\r\n--XYZ\r\n"
+                + "Content-Disposition: form-data; name=\"note\"\r\n\r\n"
+                + "hi\r\n--XYZ--\r\n"));
+    Message msg = msgCtxt.getMessage();
+    msg.setContent(new ByteArrayInputStream(body.toByteArray()));
+    msg.setHeader("content-type", "multipart/form-data; boundary=XYZ");
+
+    Properties props = new Properties();
+    props.put("digests", "sha256");
+    props.put("exact-part-content", "true");
+    ExecutionResult actualResult = new MultipartFormParserV2(props).execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_item_sha256_1"),
+        hex(MessageDigest.getInstance("SHA-256").digest(file)));
+    Assert.assertEquals(msgCtxt.getVariable("mpf_item_size_1"), file.length + "");
+    Assert.assertEquals(msgCtxt.getVariable("mpf_item_content_1"), file);
+    Assert.assertEquals(msgCtxt.getVariable("mpf_item_content_2_string"), "hi");
+  }
+
+  @Test
+  public void parse_Digests_UrlEncoded_Base64() throws Exception {
+    Message msg = msgCtxt.getMessage();
+    msg.setContent(
+        new ByteArrayInputStream("a=hello+world&b=%00%01".getBytes(StandardCharsets.UTF_8)));
+    msg.setHeader("content-type", "application/x-www-form-urlencoded");
+
+    Properties props = new Properties();
+    props.put("digests", "sha256");
+    props.put("digest-encoding", "base64");
+
+    MultipartFormParserV2 callout = new MultipartFormParserV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_item_sha256_1"),
+        Base64.getEncoder()
+            .encodeToString(
+                MessageDigest.getInstance("SHA-256")
+                    .digest("hello world".getBytes(StandardCharsets.UTF_8))));
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_item_sha256_2"),
+        Base64.getEncoder()
+            .encodeToString(MessageDigest.getInstance("SHA-256").digest(new byte[] {0, 1})));
+    Assert.assertNull(msgCtxt.getVariable("mpf_item_md5_1"));
+  }
+
+  @Test
+  public void parse_Digests_Unsupported() throws Exception {
+    Message msg = msgCtxt.getMessage();
+    msg.setContent(new ByteArrayInputStream("a=1".getBytes(StandardCharsets.UTF_8)));
+    msg.setHeader("content-type", "application/x-www-form-urlencoded");
+
+    Properties props = new Properties();
+    props.put("digests", "sha256, whirlpool");
+
+    MultipartFormParserV2 callout = new MultipartFormParserV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.ABORT, "ExecutionResult");
+    Assert.assertEquals(msgCtxt.getVariable("mpf_error"), "unsupported digest: whirlpool");
+  }
+
+  private static final String SCHEMA =
+      "{\n"
+          + "  \"fields\" : {\n"
+          + "    \"document\" : { \"required\" : true,"
+          + " \"content-types\" : [ \"application/pdf\", \"image/*\" ], \"max-size\" : 1000 },\n"
+          + "    \"note\" : { \"max-size\" : 100 }\n"
+          + "  }\n"
+          + "}\n";
+
+  private static byte[] ascii(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  // A form whose last part has a great deal of content, made as it is read;
+  // the count of bytes read shows how far the parser got.
+  private static final class LargeForm extends InputStream {
+    private final InputStream form;
+    long count;
+
+    LargeForm(String headers, long contentLength) {
+      InputStream content =
+          new InputStream() {
+            private long remaining = contentLength;
+
+            public int read() {
+              return (remaining-- > 0) ? 'x' : -1;
+            }
+
+            public int read(byte[] b, int off, int len) {
+              if (remaining <= 0) {
+                return -1;
+              }
+              int n = (int) Math.min(len, remaining);
+              Arrays.fill(b, off, off + n, (byte) 'x');
+              remaining -= n;
+              return n;
+            }
+          };
+      form =
+          new SequenceInputStream(
+              new SequenceInputStream(new ByteArrayInputStream(ascii(headers)), content),
+              new ByteArrayInputStream(ascii("\r\n--XYZ--\r\n")));
+    }
+
+    public int read() throws IOException {
+      int b = form.read();
+      count += (b == -1) ? 0 : 1;
+      return b;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = form.read(b, off, len);
+      count += (n == -1) ? 0 : n;
+      return n;
+    }
+  }
+
+  private ExecutionResult parseWithSchema(InputStream body, String contentType) {
+    Message msg = msgCtxt.getMessage();
+    msg.setContent(body);
+    msg.setHeader("content-type", contentType);
+    Properties props = new Properties();
+    props.put("schema", SCHEMA);
+    return new MultipartFormParserV2(props).execute(msgCtxt, exeCtxt);
+  }
+
+  @Test
+  public void parse_Schema_Valid() throws Exception {
+    MultipartForm form =
+        new MultipartForm(
+            "XYZ",
+            Arrays.asList(
+                new Part("note").withContentType("text/plain").withPartContent(ascii("hello")),
+                new Part("document")
+                    .withContentType("application/pdf; version=1.7")
+                    .withFileName("doc.pdf")
+                    .withPartContent(new byte[900])));
+    Assert.assertEquals(
+        parseWithSchema(form.openStream(), form.getContentType()), ExecutionResult.SUCCESS);
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+    Assert.assertEquals(msgCtxt.getVariable("mpf_itemcount"), "2");
+    Assert.assertEquals(msgCtxt.getVariable("mpf_items"), "note, document");
+  }
+
+  @Test
+  public void parse_Schema_UnexpectedField() throws Exception {
+    LargeForm body =
+        new LargeForm(
+            "--XYZ\r\n"
+                + "Content-Disposition: form-data; name=\"extra\"; filename=\"big.bin\"\r\n"
+                + "Content-Type: application/pdf\r\n\r\n",
+            100L * 1024 * 1024);
+    Assert.assertEquals(
+        parseWithSchema(body, "multipart/form-data; boundary=XYZ"), ExecutionResult.ABORT);
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_error"), "schema violation: field extra is not expected");
+    // the part is rejected from its headers, before its content is read
+    Assert.assertTrue(body.count < 256 * 1024, "bytes read: " + body.count);
+  }
+
+  @Test
+  public void parse_Schema_ContentType() throws Exception {
+    LargeForm body =
+        new LargeForm(
+            "--XYZ\r\n"
+                + "Content-Disposition: form-data; name=\"document\"; filename=\"a.exe\"\r\n"
+                + "Content-Type: application/x-msdownload\r\n\r\n",
+            100L * 1024 * 1024);
+    Assert.assertEquals(
+        parseWithSchema(body, "multipart/form-data; boundary=XYZ"), ExecutionResult.ABORT);
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_error"),
+        "schema violation: field document may not have content-type application/x-msdownload");
+    Assert.assertTrue(body.count < 256 * 1024, "bytes read: " + body.count);
+  }
+
+  @Test
+  public void parse_Schema_MaxSize() throws Exception {
+    LargeForm body =
+        new LargeForm(
+            "--XYZ\r\n"
+                + "Content-Disposition: form-data; name=\"document\"; filename=\"a.png\"\r\n"
+                + "Content-Type: image/png\r\n\r\n",
+            100L * 1024 * 1024);
+    Assert.assertEquals(
+        parseWithSchema(body, "multipart/form-data; boundary=XYZ"), ExecutionResult.ABORT);
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_error"), "part document exceeds the limit of 1000 bytes");
+    // the size is checked as the content is read
+    Assert.assertTrue(body.count < 256 * 1024, "bytes read: " + body.count);
+  }
+
+  @Test
+  public void parse_Schema_Required() throws Exception {
+    MultipartForm form =
+        new MultipartForm(
+            "XYZ",
+            Arrays.asList(
+                new Part("note").withContentType("text/plain").withPartContent(ascii("hello"))));
+    Assert.assertEquals(
+        parseWithSchema(form.openStream(), form.getContentType()), ExecutionResult.ABORT);
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_error"), "schema violation: field document is required");
+  }
+
+  @Test
+  public void parse_Schema_UrlEncoded() throws Exception {
+    Assert.assertEquals(
+        parseWithSchema(
+            new ByteArrayInputStream(ascii("document=x&note=" + repeat('y', 101))),
+            "application/x-www-form-urlencoded"),
+        ExecutionResult.ABORT);
+    // a urlencoded field has no content-type header; it is text/plain
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_error"),
+        "schema violation: field document may not have content-type text/plain");
+  }
+
+  @Test
+  public void parse_Schema_UrlEncoded_InStream() throws Exception {
+    // a field is checked when its name ends, and its value as it is decoded
+    LargeForm body = new LargeForm("note=", 100L * 1024 * 1024);
+    Assert.assertEquals(
+        parseWithSchema(body, "application/x-www-form-urlencoded"), ExecutionResult.ABORT);
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_error"), "part note exceeds the limit of 100 bytes");
+    Assert.assertTrue(body.count < 256 * 1024, "bytes read: " + body.count);
+
+    body = new LargeForm("extra=", 100L * 1024 * 1024);
+    Assert.assertEquals(
+        parseWithSchema(body, "application/x-www-form-urlencoded"), ExecutionResult.ABORT);
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_error"), "schema violation: field extra is not expected");
+    Assert.assertTrue(body.count < 256 * 1024, "bytes read: " + body.count);
+  }
+
+  private static String repeat(char c, int count) {
+    char[] chars = new char[count];
+    Arrays.fill(chars, c);
+    return new String(chars);
+  }
+
+  @Test
+  public void parse_Schema_Invalid() throws Exception {
+    Message msg = msgCtxt.getMessage();
+    msg.setContent(new ByteArrayInputStream(ascii("a=1")));
+    msg.setHeader("content-type", "application/x-www-form-urlencoded");
+    Properties props = new Properties();
+    props.put("schema", "{ \"fields\" : [ ] }");
+    ExecutionResult actualResult = new MultipartFormParserV2(props).execute(msgCtxt, exeCtxt);
+    Assert.assertEquals(actualResult, ExecutionResult.ABORT, "ExecutionResult");
+    Assert.assertEquals(
+        msgCtxt.getVariable("mpf_error"),
+        "configuration error: schema has a value of the wrong type");
+  }
 }
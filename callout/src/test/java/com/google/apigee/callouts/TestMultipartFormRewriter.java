@@ -0,0 +1,218 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.callouts;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.multipartform.MultipartReader;
+import com.google.apigee.multipartform.MultipartRewritingInputStream;
+import com.google.apigee.multipartform.PartRewrite;
+import com.google.apigee.workload.MultipartWorkload;
+import com.google.apigee.workload.MultipartWorkload.Malformation;
+import com.google.apigee.workload.MultipartWorkload.PartSpec;
+import com.google.apigee.workload.MultipartWorkload.SizeDistribution;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestMultipartFormRewriter {
+  private static final String RULES =
+      "{"
+          + " \"meta\" : { \"drop\" : true },"
+          + " \"file\" : { \"name\" : \"document\", \"file-name\" : \"report.pdf\","
+          + "   \"headers\" : { \"content-type\" : \"application/pdf\", \"x-client\" : null,"
+          + "     \"x-checked\" : \"yes\" } }"
+          + "}";
+
+  // a form with headers that MultipartForm does not write
+  private static byte[] form() {
+    return ("--XYZ\r\n"
+            + "Content-Disposition: form-data; name=\"title\"\r\n"
+            + "X-Trace: 1\r\n"
+            + "\r\n"
+            + "hello\r\n"
+            + "--XYZ\r\n"
+            + "Content-Disposition: form-data; name=\"meta\"\r\n"
+            + "\r\n"
+            + "{\"secret\":true}\r\n"
+            + "--XYZ\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"a.bin\"\r\n"
+            + "Content-Type: application/octet-stream\r\n"
+            + "X-Client: mobile\r\n"
+            + "\r\n"
+            + "\u0001\u0002--XY\r\n\r\n-XYZ\r\n"
+            + "--XYZ--\r\n")
+        .getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static class ReadPart {
+    final String headers;
+    final byte[] content;
+
+    ReadPart(String headers, byte[] content) {
+      this.headers = headers;
+      this.content = content;
+    }
+  }
+
+  private static List<ReadPart> readParts(byte[] body, String boundary) throws IOException {
+    MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body), boundary, 4096);
+    List<ReadPart> parts = new ArrayList<ReadPart>();
+    while (reader.nextPart() != null) {
+      parts.add(
+          new ReadPart(
+              new String(reader.getHeaderBytes(), StandardCharsets.UTF_8),
+              TestBase.readAll(reader.getPartStream())));
+    }
+    return parts;
+  }
+
+  @Test
+  public void rewritesParts() throws Exception {
+    for (int bufferSize : new int[] {1, 64, 8192}) {
+      byte[] body =
+          TestBase.readAll(
+              new MultipartRewritingInputStream(
+                  new ByteArrayInputStream(form()),
+                  "XYZ",
+                  "NEW",
+                  bufferSize,
+                  MultipartFormRewriter.compileRules(RULES, false)));
+      List<ReadPart> parts = readParts(body, "NEW");
+      Assert.assertEquals(parts.size(), 2, "parts");
+      // untouched headers are copied as they are
+      Assert.assertEquals(
+          parts.get(0).headers,
+          "Content-Disposition: form-data; name=\"title\"\r\nX-Trace: 1\r\n\r\n");
+      Assert.assertEquals(new String(parts.get(0).content, StandardCharsets.UTF_8), "hello");
+      Assert.assertEquals(
+          parts.get(1).headers,
+          "Content-Disposition: form-data; name=\"document\"; filename=\"report.pdf\"\r\n"
+              + "Content-Type: application/pdf\r\n"
+              + "x-checked: yes\r\n"
+              + "\r\n");
+      Assert.assertEquals(
+          new String(parts.get(1).content, StandardCharsets.UTF_8), "\u0001\u0002--XY\r\n\r\n-XYZ");
+    }
+  }
+
+  @Test
+  public void copiesWorkloadContent() throws Exception {
+    MultipartWorkload workload =
+        new MultipartWorkload()
+            .withSeed(45)
+            .withPartCount(10)
+            .withSizes(SizeDistribution.uniform(0, 100000))
+            .withBinaryFraction(0.5)
+            .withNearMissesPerPart(20);
+    List<PartSpec> specs = workload.getParts();
+    String dropped = specs.get(3).getName();
+    byte[] body =
+        TestBase.readAll(
+            new MultipartRewritingInputStream(
+                workload.openStream(),
+                workload.getBoundary(),
+                "----rewritten",
+                2048,
+                part -> part.getName().equals(dropped) ? new PartRewrite().withDrop(true) : null));
+    List<ReadPart> parts = readParts(body, "----rewritten");
+    Assert.assertEquals(parts.size(), specs.size() - 1, "parts");
+    int j = 0;
+    for (int i = 0; i < specs.size(); i++) {
+      if (i == 3) {
+        continue;
+      }
+      Assert.assertEquals(parts.get(j++).content, TestBase.readAll(specs.get(i).openContent()));
+    }
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void truncatedBodyFailsTheRead() throws Exception {
+    MultipartWorkload workload =
+        new MultipartWorkload()
+            .withSeed(46)
+            .withPartCount(3)
+            .withSizes(SizeDistribution.uniform(1000, 5000))
+            .withMalformation(Malformation.TRUNCATED);
+    TestBase.readAll(
+        new MultipartRewritingInputStream(
+            workload.openStream(),
+            workload.getBoundary(),
+            workload.getBoundary(),
+            2048,
+            part -> null));
+  }
+
+  @Test
+  public void calloutRewritesMessage() throws Exception {
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    byte[] form = form();
+    message.setHeader("content-type", "multipart/form-data; boundary=XYZ");
+    message.setHeader("content-length", Integer.toString(form.length));
+    message.setContent(new ByteArrayInputStream(form));
+
+    Properties props = new Properties();
+    props.put("rules", "{ \"file\" : { \"name\" : \"upload\" } }");
+    props.put("unmatched", "drop");
+    props.put("new-boundary", "true");
+    ExecutionResult result =
+        new MultipartFormRewriter(props).execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+    String boundary = msgCtxt.getVariable("mpf_boundary");
+    Assert.assertNotEquals(boundary, "XYZ");
+    Assert.assertEquals(
+        message.getHeader("content-type"), "multipart/form-data; boundary=" + boundary);
+    Assert.assertNull(message.getHeader("content-length"), "content-length");
+
+    List<ReadPart> parts = readParts(TestBase.readAll(message.getContentAsStream()), boundary);
+    Assert.assertEquals(parts.size(), 1, "parts");
+    Assert.assertTrue(
+        parts.get(0).headers.startsWith(
+            "Content-Disposition: form-data; name=\"upload\"; filename=\"a.bin\"\r\n"));
+    Assert.assertTrue(parts.get(0).headers.contains("X-Client: mobile\r\n"));
+  }
+
+  @Test
+  public void rejectsInvalidRules() throws Exception {
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    message.setHeader("content-type", "multipart/form-data; boundary=XYZ");
+    message.setContent(new ByteArrayInputStream(form()));
+    Properties props = new Properties();
+    props.put("rules", "{ \"file\" : { \"headers\" : { \"content-type\" : 3 } } }");
+    ExecutionResult result =
+        new MultipartFormRewriter(props).execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.ABORT, "ExecutionResult");
+    Assert.assertNotNull(msgCtxt.getVariable("mpf_error"), "error");
+  }
+}
@@ -0,0 +1,207 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.callouts;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.multipartform.MultipartForm;
+import com.google.apigee.multipartform.MultipartToJsonInputStream;
+import com.google.apigee.multipartform.Part;
+import com.google.apigee.workload.MultipartWorkload;
+import com.google.apigee.workload.MultipartWorkload.Malformation;
+import com.google.apigee.workload.MultipartWorkload.PartSpec;
+import com.google.apigee.workload.MultipartWorkload.SizeDistribution;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Properties;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestMultipartFormToJson {
+
+  private static JsonArray transcode(InputStream form, String boundary, int bufferSize)
+      throws IOException {
+    InputStream json =
+        new MultipartToJsonInputStream(
+            form, boundary, bufferSize, mediaType -> mediaType.startsWith("text/"));
+    return Json.createReader(new ByteArrayInputStream(TestBase.readAll(json)))
+        .readObject()
+        .getJsonArray("parts");
+  }
+
+  private static byte[] content(JsonObject part) {
+    String content = part.getString("content");
+    return part.getString("encoding").equals("base64")
+        ? Base64.getDecoder().decode(content)
+        : content.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void transcodesParts() throws Exception {
+    byte[] binary = new byte[5000];
+    for (int i = 0; i < binary.length; i++) {
+      binary[i] = (byte) (i * 31);
+    }
+    String text = "line one\r\n\"quoted\" \\ tab\t, été \u0001";
+    List<Part> parts = new ArrayList<Part>();
+    parts.add(
+        new Part("greeting")
+            .withContentType("text/plain; charset=UTF-8")
+            .withPartContent(text.getBytes(StandardCharsets.UTF_8)));
+    parts.add(
+        new Part("image")
+            .withContentType("image/png")
+            .withFileName("résumé b.png")
+            .withPartContent(binary));
+    parts.add(
+        new Part("encoded")
+            .withContentType("application/octet-stream")
+            .withTransferEncoding("base64")
+            .withPartContent(binary));
+    parts.add(
+        new Part("printable")
+            .withContentType("text/plain")
+            .withTransferEncoding("quoted-printable")
+            .withPartContent(text.getBytes(StandardCharsets.UTF_8)));
+    parts.add(new Part("empty").withContentType("text/plain").withPartContent(new byte[0]));
+    MultipartForm form = new MultipartForm("----XYZ", parts);
+
+    for (int bufferSize : new int[] {1, 64, 8192}) {
+      JsonArray json = transcode(form.openStream(), "----XYZ", bufferSize);
+      Assert.assertEquals(json.size(), 5, "parts");
+      JsonObject greeting = json.getJsonObject(0);
+      Assert.assertEquals(greeting.getString("name"), "greeting");
+      Assert.assertEquals(greeting.getString("content-type"), "text/plain; charset=UTF-8");
+      Assert.assertEquals(greeting.getString("encoding"), "text");
+      Assert.assertEquals(greeting.getString("content"), text);
+      Assert.assertFalse(greeting.containsKey("filename"));
+      JsonObject image = json.getJsonObject(1);
+      Assert.assertEquals(image.getString("filename"), "résumé b.png");
+      Assert.assertEquals(image.getString("encoding"), "base64");
+      Assert.assertEquals(content(image), binary);
+      Assert.assertEquals(image.getInt("size"), binary.length);
+      // transfer encodings are undone
+      Assert.assertEquals(content(json.getJsonObject(2)), binary);
+      Assert.assertEquals(json.getJsonObject(3).getString("content"), text);
+      Assert.assertEquals(json.getJsonObject(4).getString("content"), "");
+      Assert.assertEquals(json.getJsonObject(4).getInt("size"), 0);
+    }
+  }
+
+  @Test
+  public void matchesWorkloadContent() throws Exception {
+    MultipartWorkload workload =
+        new MultipartWorkload()
+            .withSeed(43)
+            .withPartCount(12)
+            .withSizes(SizeDistribution.uniform(0, 200000))
+            .withBinaryFraction(0.5)
+            .withNearMissesPerPart(20);
+    JsonArray json = transcode(workload.openStream(), workload.getBoundary(), 2048);
+    List<PartSpec> specs = workload.getParts();
+    Assert.assertEquals(json.size(), specs.size(), "parts");
+    for (int i = 0; i < specs.size(); i++) {
+      JsonObject part = json.getJsonObject(i);
+      PartSpec spec = specs.get(i);
+      Assert.assertEquals(part.getString("name"), spec.getName());
+      Assert.assertEquals(part.getString("encoding"), spec.isBinary() ? "base64" : "text");
+      Assert.assertEquals(content(part), TestBase.readAll(spec.openContent()), spec.getName());
+    }
+  }
+
+  @Test(expectedExceptions = IOException.class)
+  public void truncatedBodyFailsTheRead() throws Exception {
+    MultipartWorkload workload =
+        new MultipartWorkload()
+            .withSeed(44)
+            .withPartCount(3)
+            .withSizes(SizeDistribution.uniform(1000, 5000))
+            .withMalformation(Malformation.TRUNCATED);
+    transcode(workload.openStream(), workload.getBoundary(), 2048);
+  }
+
+  @Test
+  public void calloutReplacesContent() throws Exception {
+    MultipartWorkload workload =
+        new MultipartWorkload()
+            .withSeed(45)
+            .withPartCount(4)
+            .withSizes(SizeDistribution.uniform(100, 10000))
+            .withBinaryFraction(0.5);
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    message.setHeader("content-type", workload.getContentType());
+    message.setHeader("content-length", Long.toString(workload.getContentLength()));
+    message.setContent(workload.openStream());
+
+    Properties props = new Properties();
+    props.put("text-content-types", "text/*");
+    ExecutionResult result =
+        new MultipartFormToJson(props).execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+    Assert.assertEquals(message.getHeader("content-type"), "application/json");
+    Assert.assertNull(message.getHeader("content-length"), "content-length");
+
+    JsonArray json =
+        Json.createReader(message.getContentAsStream()).readObject().getJsonArray("parts");
+    Assert.assertEquals(json.size(), 4, "parts");
+    for (int i = 0; i < 4; i++) {
+      Assert.assertEquals(
+          content(json.getJsonObject(i)),
+          TestBase.readAll(workload.getParts().get(i).openContent()));
+    }
+  }
+
+  @Test
+  public void rejectsOtherContent() throws Exception {
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    message.setHeader("content-type", "application/json");
+    message.setContent(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)));
+    ExecutionResult result =
+        new MultipartFormToJson(new Properties()).execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.ABORT, "ExecutionResult");
+    Assert.assertNotNull(msgCtxt.getVariable("mpf_error"), "error");
+  }
+
+  @Test
+  public void mediaTypePatterns() {
+    Assert.assertTrue(MultipartFormToJson.matches("text/*", "text/csv"));
+    Assert.assertTrue(MultipartFormToJson.matches("application/*+json", "application/ld+json"));
+    Assert.assertFalse(MultipartFormToJson.matches("application/*+json", "application/json"));
+    Assert.assertTrue(MultipartFormToJson.matches("application/json", "application/json"));
+    Assert.assertFalse(MultipartFormToJson.matches("text/*", "image/text"));
+  }
+}
@@ -0,0 +1,233 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.callouts;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.apigee.flow.message.Message;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.stream.Content;
+import com.google.apigee.stream.SpillFiles;
+import com.google.apigee.workload.MultipartWorkload;
+import com.google.apigee.workload.MultipartWorkload.PartSpec;
+import com.google.apigee.workload.MultipartWorkload.SizeDistribution;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Pushes multi-gigabyte bodies through the parser and the creator, and checks that the heap in use
+ * does not grow with the size of the body. These tests take minutes, and write the parsed parts to
+ * temporary files, so they are not run by default; run them with "mvn test -Psoak", which also
+ * gives the JVM a deliberately small heap. The system property soak.gigabytes sets the size of the
+ * largest body.
+ */
+public class TestStreamingSoak {
+  private static final long MEGABYTE = 1024L * 1024;
+  private static final long GIGABYTE = 1024L * MEGABYTE;
+  private static final int PART_COUNT = 8;
+  // the heap may vary this much between runs, whatever the payload size
+  private static final long HEAP_SLACK = 16 * MEGABYTE;
+
+  private interface Operation {
+    void run() throws Exception;
+  }
+
+  private static long largestBody() {
+    double gigabytes = Double.parseDouble(System.getProperty("soak.gigabytes", "2"));
+    return (long) (gigabytes * GIGABYTE);
+  }
+
+  private static MultipartWorkload workload(long bodySize) {
+    return new MultipartWorkload()
+        .withSeed(34)
+        .withPartCount(PART_COUNT)
+        .withSizes(SizeDistribution.fixed(bodySize / PART_COUNT))
+        .withBinaryFraction(0.5)
+        .withBoundaryLength(40)
+        .withNearMissesPerPart(64);
+  }
+
+  private static FakeMessageContext newContext(FakeMessage message) {
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    return msgCtxt;
+  }
+
+  /** Runs the operation, and returns the most heap in use at any time while it ran. */
+  private static long heapHighWater(Operation operation) throws Exception {
+    final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    final AtomicLong highWater = new AtomicLong();
+    System.gc();
+    Thread sampler =
+        new Thread(
+            () -> {
+              while (!Thread.currentThread().isInterrupted()) {
+                long used = memory.getHeapMemoryUsage().getUsed();
+                highWater.accumulateAndGet(used, Math::max);
+                try {
+                  Thread.sleep(5);
+                } catch (InterruptedException e) {
+                  return;
+                }
+              }
+            });
+    sampler.setDaemon(true);
+    sampler.start();
+    try {
+      operation.run();
+    } finally {
+      sampler.interrupt();
+      sampler.join();
+    }
+    return highWater.get();
+  }
+
+  private static void checkFlat(String name, long small, long large) {
+    System.out.printf(
+        "%s: heap high-water %d MiB for the small body, %d MiB for the large one\n",
+        name, small / MEGABYTE, large / MEGABYTE);
+    Assert.assertTrue(
+        large <= small + small / 4 + HEAP_SLACK,
+        String.format("%s: heap grew from %d to %d bytes", name, small, large));
+  }
+
+  private static long countFiles(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+
+  private static void parse(long bodySize, Path spillDirectory) throws Exception {
+    MultipartWorkload workload = workload(bodySize);
+    FakeMessage message = new FakeMessage();
+    FakeMessageContext msgCtxt = newContext(message);
+    message.setHeader("content-type", workload.getContentType());
+    message.setContent(workload.openStream());
+
+    Properties props = new Properties();
+    props.put("spill-threshold", Long.toString(MEGABYTE));
+    props.put("spill-directory", spillDirectory.toString());
+    props.put("decoded-size-limit", Long.toString(Long.MAX_VALUE));
+    MultipartFormParserV2 callout = new MultipartFormParserV2(props);
+    ExecutionResult result = callout.execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertEquals(msgCtxt.getVariable("mpf_itemcount"), PART_COUNT + "");
+
+    List<PartSpec> parts = workload.getParts();
+    for (int i = 0; i < PART_COUNT; i++) {
+      Content content = msgCtxt.getVariable("mpf_item_content_" + (i + 1));
+      Assert.assertTrue(SpillFiles.isSpilled(content));
+      // The parser keeps the CRLF that precedes a "--" delimiter line.
+      Assert.assertEquals(content.length(), parts.get(i).getSize() + 2);
+    }
+    SpillFiles spillFiles = msgCtxt.getVariable("mpf_spill");
+    spillFiles.close();
+    Assert.assertEquals(countFiles(spillDirectory), 0L, "spill files deleted");
+  }
+
+  @Test(groups = "soak")
+  public void parse_ConstantHeap() throws Exception {
+    final Path spillDirectory = Files.createTempDirectory("soak");
+    try {
+      long large = largestBody();
+      long smallHighWater = heapHighWater(() -> parse(large / 8, spillDirectory));
+      long largeHighWater = heapHighWater(() -> parse(large, spillDirectory));
+      checkFlat("parse", smallHighWater, largeHighWater);
+    } finally {
+      Files.delete(spillDirectory);
+    }
+  }
+
+  /** Content generated as it is read, so a part can be larger than the heap. */
+  private static class GeneratedContent implements Content {
+    private final PartSpec part;
+
+    GeneratedContent(PartSpec part) {
+      this.part = part;
+    }
+
+    public long length() {
+      return part.getSize();
+    }
+
+    public InputStream openStream() {
+      return part.openContent();
+    }
+
+    public byte[] toByteArray() {
+      throw new UnsupportedOperationException("too large for a byte array");
+    }
+  }
+
+  private static void create(long bodySize) throws Exception {
+    List<PartSpec> parts = workload(bodySize).getParts();
+    FakeMessage message = new FakeMessage();
+    FakeMessageContext msgCtxt = newContext(message);
+    StringBuilder descriptor = new StringBuilder("{\n");
+    for (PartSpec part : parts) {
+      msgCtxt.setVariable("content_" + part.getIndex(), new GeneratedContent(part));
+      descriptor
+          .append(String.format("  \"%s\" : {\n", part.getName()))
+          .append(String.format("    \"content-var\" : \"content_%d\",\n", part.getIndex()))
+          .append(String.format("    \"content-type\" : \"%s\",\n", part.getContentType()))
+          .append("    \"want-b64-decode\" : false\n")
+          .append((part.getIndex() < parts.size() - 1) ? "  },\n" : "  }\n");
+    }
+    descriptor.append("}\n");
+
+    Properties props = new Properties();
+    props.put("descriptor", descriptor.toString());
+    MultipartFormCreatorV2 callout = new MultipartFormCreatorV2(props);
+    ExecutionResult result = callout.execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+
+    Message output = msgCtxt.getVariable("message");
+    long length = 0;
+    byte[] chunk = new byte[8192];
+    try (InputStream in = output.getContentAsStream()) {
+      int n;
+      while ((n = in.read(chunk, 0, chunk.length)) != -1) {
+        length += n;
+      }
+    }
+    Assert.assertEquals(msgCtxt.getVariable("mpf_payload_length"), length + "");
+    Assert.assertTrue(length > bodySize, "all parts written");
+  }
+
+  @Test(groups = "soak")
+  public void create_ConstantHeap() throws Exception {
+    long large = largestBody();
+    long smallHighWater = heapHighWater(() -> create(large / 8));
+    long largeHighWater = heapHighWater(() -> create(large));
+    checkFlat("create", smallHighWater, largeHighWater);
+  }
+}
@@ -0,0 +1,229 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.callouts;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.multipartform.MultipartForm;
+import com.google.apigee.multipartform.MultipartReader;
+import com.google.apigee.multipartform.MultipartToZipInputStream;
+import com.google.apigee.multipartform.Part;
+import com.google.apigee.multipartform.ZipToMultipartInputStream;
+import com.google.apigee.stream.LimitExceededException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestZipConversion {
+
+  private static byte[] random(int size, long seed) {
+    byte[] b = new byte[size];
+    new Random(seed).nextBytes(b);
+    return b;
+  }
+
+  private static byte[] text(int size) {
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < size) {
+      sb.append("the quick brown fox jumps over the lazy dog\r\n");
+    }
+    return sb.substring(0, size).getBytes(StandardCharsets.UTF_8);
+  }
+
+  // entry name to content, in order, with the compressed sizes in a second map
+  private static Map<String, byte[]> unzip(byte[] zip, Map<String, Long> compressedSizes)
+      throws IOException {
+    Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+    try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+      ZipEntry entry;
+      while ((entry = in.getNextEntry()) != null) {
+        entries.put(entry.getName(), TestBase.readAll(in));
+        compressedSizes.put(entry.getName(), entry.getCompressedSize());
+      }
+    }
+    return entries;
+  }
+
+  private static MultipartForm form(byte[] image, byte[] notes) {
+    List<Part> parts = new ArrayList<Part>();
+    parts.add(new Part("photo").withContentType("image/png").withFileName("photo.png")
+        .withPartContent(image));
+    parts.add(new Part("notes").withContentType("text/plain").withFileName("../../notes.txt")
+        .withPartContent(notes));
+    parts.add(new Part("more").withContentType("text/plain").withFileName("notes.txt")
+        .withTransferEncoding("base64").withPartContent(notes));
+    parts.add(new Part("comment").withContentType("text/plain")
+        .withPartContent("looks good".getBytes(StandardCharsets.UTF_8)));
+    return new MultipartForm("----XYZ", parts);
+  }
+
+  @Test
+  public void formToZip() throws Exception {
+    byte[] image = random(40000, 1);
+    byte[] notes = text(30000);
+    for (int bufferSize : new int[] {64, 8192}) {
+      MultipartToZipInputStream zip =
+          new MultipartToZipInputStream(
+              form(image, notes).openStream(),
+              "----XYZ",
+              bufferSize,
+              mediaType -> mediaType.startsWith("image/"));
+      Map<String, Long> compressedSizes = new LinkedHashMap<String, Long>();
+      Map<String, byte[]> entries = unzip(TestBase.readAll(zip), compressedSizes);
+      Assert.assertEquals(zip.getEntryCount(), 4, "entries");
+      Assert.assertEquals(
+          new ArrayList<String>(entries.keySet()),
+          java.util.Arrays.asList("photo.png", "notes.txt", "notes-2.txt", "comment"));
+      Assert.assertEquals(entries.get("photo.png"), image);
+      Assert.assertEquals(entries.get("notes.txt"), notes);
+      // the transfer encoding is undone
+      Assert.assertEquals(entries.get("notes-2.txt"), notes);
+      Assert.assertEquals(new String(entries.get("comment"), StandardCharsets.UTF_8), "looks good");
+      // text is deflated; the image is not
+      Assert.assertTrue(compressedSizes.get("notes.txt") < notes.length / 4);
+      Assert.assertTrue(compressedSizes.get("photo.png") >= image.length);
+    }
+  }
+
+  private static byte[] archive(Map<String, byte[]> files) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(out)) {
+      zip.putNextEntry(new ZipEntry("docs/"));
+      zip.closeEntry();
+      for (Map.Entry<String, byte[]> file : files.entrySet()) {
+        zip.putNextEntry(new ZipEntry(file.getKey()));
+        zip.write(file.getValue());
+        zip.closeEntry();
+      }
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void zipToForm() throws Exception {
+    Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+    files.put("docs/report.pdf", random(50000, 2));
+    files.put("readme.txt", text(1000));
+    files.put("data.bin", random(10, 3));
+    byte[] form =
+        TestBase.readAll(
+            new ZipToMultipartInputStream(
+                new ByteArrayInputStream(archive(files)), "----ZZZ", "files", 1000000));
+
+    MultipartReader reader = new MultipartReader(new ByteArrayInputStream(form), "----ZZZ", 4096);
+    List<Part> parts = new ArrayList<Part>();
+    List<byte[]> contents = new ArrayList<byte[]>();
+    Part part;
+    while ((part = reader.nextPart()) != null) {
+      parts.add(part);
+      contents.add(TestBase.readAll(reader.getPartStream()));
+    }
+    Assert.assertEquals(parts.size(), 3, "parts");
+    Assert.assertEquals(parts.get(0).getName(), "files");
+    Assert.assertEquals(parts.get(0).getFileName(), "report.pdf");
+    Assert.assertEquals(parts.get(0).getContentType(), "application/pdf");
+    Assert.assertEquals(contents.get(0), files.get("docs/report.pdf"));
+    Assert.assertEquals(parts.get(1).getContentType(), "text/plain");
+    Assert.assertEquals(contents.get(1), files.get("readme.txt"));
+    Assert.assertEquals(parts.get(2).getContentType(), "application/octet-stream");
+    Assert.assertEquals(contents.get(2), files.get("data.bin"));
+  }
+
+  @Test(expectedExceptions = LimitExceededException.class)
+  public void zipToFormEnforcesTheLimit() throws Exception {
+    Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+    files.put("zeros.bin", new byte[2000000]);
+    TestBase.readAll(
+        new ZipToMultipartInputStream(
+            new ByteArrayInputStream(archive(files)), "----ZZZ", null, 1000000));
+  }
+
+  private static FakeMessageContext context(FakeMessage message) {
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    return msgCtxt;
+  }
+
+  @Test
+  public void calloutsRoundTrip() throws Exception {
+    byte[] image = random(20000, 4);
+    byte[] notes = text(20000);
+    FakeMessage message = new FakeMessage();
+    FakeMessageContext msgCtxt = context(message);
+    MultipartForm form = form(image, notes);
+    message.setHeader("content-type", form.getContentType());
+    message.setContent(form.openStream());
+
+    ExecutionResult result =
+        new MultipartFormToZip(new Properties()).execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertEquals(message.getHeader("content-type"), "application/zip");
+    byte[] zip = TestBase.readAll(message.getContentAsStream());
+
+    message = new FakeMessage();
+    msgCtxt = context(message);
+    message.setHeader("content-type", "application/zip");
+    message.setContent(new ByteArrayInputStream(zip));
+    result = new ZipToMultipartForm(new Properties()).execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.SUCCESS, "ExecutionResult");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "error");
+    String boundary = msgCtxt.getVariable("mpf_boundary");
+    Assert.assertEquals(
+        message.getHeader("content-type"), "multipart/form-data; boundary=" + boundary);
+
+    MultipartReader reader =
+        new MultipartReader(message.getContentAsStream(), boundary, 4096);
+    Part part = reader.nextPart();
+    Assert.assertEquals(part.getName(), "photo.png");
+    Assert.assertEquals(part.getContentType(), "image/png");
+    Assert.assertEquals(TestBase.readAll(reader.getPartStream()), image);
+    part = reader.nextPart();
+    Assert.assertEquals(part.getName(), "notes.txt");
+    Assert.assertEquals(TestBase.readAll(reader.getPartStream()), notes);
+  }
+
+  @Test
+  public void rejectsOtherContent() throws Exception {
+    FakeMessage message = new FakeMessage();
+    FakeMessageContext msgCtxt = context(message);
+    message.setHeader("content-type", "application/json");
+    message.setContent(new ByteArrayInputStream("{}".getBytes(StandardCharsets.UTF_8)));
+    Assert.assertEquals(
+        new MultipartFormToZip(new Properties()).execute(msgCtxt, new FakeExecutionContext()),
+        ExecutionResult.ABORT);
+    Assert.assertEquals(
+        new ZipToMultipartForm(new Properties()).execute(msgCtxt, new FakeExecutionContext()),
+        ExecutionResult.ABORT);
+  }
+}
@@ -0,0 +1,212 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.metrics;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.google.apigee.callouts.MultipartFormParserV2;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.stream.Bytes;
+import com.google.apigee.stream.DirectBufferArena;
+import com.google.apigee.workload.MultipartWorkload;
+import com.google.apigee.workload.MultipartWorkload.Malformation;
+import com.google.apigee.workload.MultipartWorkload.SizeDistribution;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestCalloutMetrics {
+
+  private static MultipartWorkload workload() {
+    return new MultipartWorkload()
+        .withSeed(38)
+        .withPartCount(5)
+        .withSizes(SizeDistribution.uniform(100, 100000))
+        .withBinaryFraction(0.5);
+  }
+
+  private static FakeMessageContext parse(
+      MultipartWorkload workload, Properties props, ExecutionResult expected) throws IOException {
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    message.setHeader("content-type", workload.getContentType());
+    message.setContent(workload.openStream());
+    ExecutionResult result =
+        new MultipartFormParserV2(props).execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, expected, "ExecutionResult");
+    return msgCtxt;
+  }
+
+  @Test
+  public void histogramBuckets() {
+    for (long v : new long[] {0, 1, 15, 16, 17, 100, 1000, 123456789L, Long.MAX_VALUE}) {
+      long upper = Histogram.upperBoundOf(Histogram.bucketOf(v));
+      Assert.assertTrue(upper >= v, "upper bound of " + v);
+      Assert.assertTrue(upper - v <= v / 16, "bucket width at " + v);
+    }
+  }
+
+  @Test
+  public void histogramPercentiles() {
+    Histogram histogram = new Histogram();
+    for (long v = 1; v <= 10000; v++) {
+      histogram.record(v);
+    }
+    Assert.assertEquals(histogram.getCount(), 10000L);
+    Assert.assertEquals(histogram.getMax(), 10000L);
+    Assert.assertEquals(histogram.getMean(), 5000L);
+    long p50 = histogram.percentile(0.50);
+    Assert.assertTrue(p50 >= 5000 && p50 <= 5000 + 5000 / 16, "p50 " + p50);
+    long p99 = histogram.percentile(0.99);
+    Assert.assertTrue(p99 >= 9900 && p99 <= 10000, "p99 " + p99);
+    Assert.assertEquals(histogram.percentile(1.0), 10000L);
+
+    histogram.reset();
+    Assert.assertEquals(histogram.getCount(), 0L);
+    Assert.assertEquals(histogram.percentile(0.5), 0L);
+  }
+
+  @Test
+  public void histogramConcurrentRecording() throws Exception {
+    final Histogram histogram = new Histogram();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int t = 0; t < 8; t++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                for (int i = 0; i < 20000; i++) {
+                  histogram.record(i % 1000);
+                }
+              });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Assert.assertEquals(histogram.getCount(), 8 * 20000L);
+    Assert.assertEquals(histogram.getMax(), 999L);
+    long total = 0;
+    for (long[] row : histogram.powerOfTwoBuckets()) {
+      total += row[1];
+    }
+    Assert.assertEquals(total, 8 * 20000L);
+  }
+
+  @Test
+  public void parsesAreCounted() throws Exception {
+    CalloutMetrics registry = CalloutMetrics.getInstance();
+    long parses = registry.getParseCount();
+    long failures = registry.getParseFailureCount();
+    long bytes = registry.getBytesParsed();
+    long parts = registry.getPartsParsed();
+    long latencies = registry.getParseLatencyNanos().get("count");
+
+    MultipartWorkload workload = workload();
+    parse(workload, new Properties(), ExecutionResult.SUCCESS);
+
+    Assert.assertEquals(registry.getParseCount(), parses + 1);
+    Assert.assertEquals(registry.getParseFailureCount(), failures);
+    long length = Bytes.transfer(workload.openStream(), new ByteArrayOutputStream());
+    Assert.assertEquals(registry.getBytesParsed(), bytes + length);
+    Assert.assertEquals(registry.getPartsParsed(), parts + 5);
+    Assert.assertEquals((long) registry.getParseLatencyNanos().get("count"), latencies + 1);
+  }
+
+  @Test
+  public void limitViolationsAreCounted() throws Exception {
+    CalloutMetrics registry = CalloutMetrics.getInstance();
+    long violations = registry.getLimitViolationCount();
+    long failures = registry.getParseFailureCount();
+
+    // headers too large: rejected
+    parse(
+        workload().withMalformation(Malformation.OVERSIZED_HEADER),
+        new Properties(),
+        ExecutionResult.ABORT);
+    Assert.assertEquals(registry.getLimitViolationCount(), violations + 1);
+    Assert.assertEquals(registry.getParseFailureCount(), failures + 1);
+
+    // a part over the size limit: parsing stops there
+    Properties props = new Properties();
+    props.put("size-limit", "50");
+    parse(workload(), props, ExecutionResult.SUCCESS);
+    Assert.assertEquals(registry.getLimitViolationCount(), violations + 2);
+  }
+
+  @Test
+  public void directPoolHitRate() throws Exception {
+    CalloutMetrics registry = CalloutMetrics.getInstance();
+    Properties props = new Properties();
+    props.put("direct-memory", "true");
+    DirectBufferArena arena = parse(workload(), props, ExecutionResult.SUCCESS)
+        .getVariable("mpf_arena");
+    arena.close();
+    long hits = registry.getDirectPoolHits();
+    arena = parse(workload(), props, ExecutionResult.SUCCESS).getVariable("mpf_arena");
+    arena.close();
+    // the blocks of the first parse went back to the pool, and were reused
+    Assert.assertTrue(registry.getDirectPoolHits() > hits, "pool hits");
+    Assert.assertTrue(registry.getDirectPoolHitRate() > 0.0, "hit rate");
+    Assert.assertTrue(registry.getDirectPoolBlocks() > 0, "pooled blocks");
+  }
+
+  @Test
+  public void registeredWithPlatformServer() throws Exception {
+    CalloutMetrics registry = CalloutMetrics.getInstance();
+    ObjectName name = registry.getRegisteredName();
+    Assert.assertNotNull(name, "registered");
+    parse(workload(), new Properties(), ExecutionResult.SUCCESS);
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    Assert.assertEquals(server.getAttribute(name, "ParseCount"), registry.getParseCount());
+    Object latency = server.getAttribute(name, "ParseLatencyNanos");
+    Assert.assertTrue(latency instanceof TabularData, "open type for a map");
+    Assert.assertEquals(((TabularData) latency).size(), 7);
+  }
+
+  @Test
+  public void registrationReplacesAnEarlierOne() throws Exception {
+    // as when the proxy is redeployed, and the callouts are loaded again
+    MBeanServer server = MBeanServerFactory.newMBeanServer();
+    CalloutMetrics earlier = new CalloutMetrics();
+    earlier.register(server);
+    CalloutMetrics later = new CalloutMetrics();
+    later.recordContentSet(1000L, true);
+    later.register(server);
+
+    ObjectName name = new ObjectName(CalloutMetrics.OBJECT_NAME);
+    Assert.assertEquals(later.getRegisteredName(), name);
+    Assert.assertEquals(
+        server.queryNames(new ObjectName("com.google.apigee.callouts:*"), null).size(), 1);
+    Assert.assertEquals(server.getAttribute(name, "ContentSetCount"), 1L);
+  }
+}
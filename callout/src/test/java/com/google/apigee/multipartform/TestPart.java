@@ -181,6 +181,81 @@ public class TestPart {
         "json_data:with_colon", // Name should include the colon
         "application/json; charset=utf-8", // Type includes parameters
         "{\"time\":\"10:30\"}".getBytes(StandardCharsets.UTF_8)
+      },
+      {
+        11,
+        "base64 transfer encoding, with MIME line breaks",
+        inputBytes(
+            new String[] {
+              "Content-Disposition: form-data; name=\"file1\"",
+              "Content-Type: image/jpeg",
+              "Content-Transfer-Encoding: base64"
+            },
+            "/9j/\r\n4AAQ\r\nSkZJRg==",
+            CRLF),
+        "file1",
+        "image/jpeg",
+        new byte[] {
+          (byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0, 0x00, 0x10, 'J', 'F', 'I', 'F'
+        }
+      },
+      {
+        12,
+        "base64 transfer encoding, unpadded",
+        inputBytes(
+            new String[] {
+              "Content-Disposition: form-data; name=\"text\"",
+              "Content-Transfer-Encoding: BASE64"
+            },
+            "aGVsbG8",
+            CRLF),
+        "text",
+        "text/plain",
+        "hello".getBytes(StandardCharsets.UTF_8)
+      },
+      {
+        13,
+        "quoted-printable transfer encoding",
+        inputBytes(
+            new String[] {
+              "Content-Disposition: form-data; name=\"qp\"",
+              "Content-Type: text/plain; charset=utf-8",
+              "Content-Transfer-Encoding: quoted-printable"
+            },
+            "caf=C3=A9 au lait, soft=\r\nbreak  \r\nnext =3D line=\r\n",
+            CRLF),
+        "qp",
+        "text/plain; charset=utf-8",
+        "café au lait, softbreak\r\nnext = line".getBytes(StandardCharsets.UTF_8)
+      },
+      {
+        15,
+        "quoted-printable equals sign before whitespace",
+        inputBytes(
+            new String[] {
+              "Content-Disposition: form-data; name=\"qp\"",
+              "Content-Transfer-Encoding: quoted-printable"
+            },
+            "a = b, c=\t z, soft= \t\r\nbreak",
+            CRLF),
+        "qp",
+        "text/plain",
+        "a = b, c=\t z, softbreak".getBytes(StandardCharsets.UTF_8)
+      },
+      {
+        14,
+        "identity transfer encoding",
+        inputBytes(
+            new String[] {
+              "Content-Disposition: form-data; name=\"bin\"",
+              "Content-Type: application/octet-stream",
+              "Content-Transfer-Encoding: binary"
+            },
+            JPEGDATA,
+            CRLF),
+        "bin",
+        "application/octet-stream",
+        JPEGDATA
       }
     };
   }
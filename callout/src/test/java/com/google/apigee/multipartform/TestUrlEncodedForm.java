@@ -0,0 +1,220 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.multipartform;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.google.apigee.callouts.MultipartFormCreatorV2;
+import com.google.apigee.callouts.MultipartFormParserV2;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.stream.ByteArrayContentOutputStream;
+import com.google.apigee.stream.Bytes;
+import com.google.apigee.stream.UrlEncodingInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestUrlEncodedForm {
+
+  private static List<Part> read(String body, int bufferSize, long sizeLimit) throws IOException {
+    UrlEncodedFormReader reader =
+        new UrlEncodedFormReader(
+            new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)),
+            bufferSize,
+            () -> new ByteArrayContentOutputStream(16),
+            sizeLimit);
+    List<Part> parts = new ArrayList<Part>();
+    Part part;
+    while ((part = reader.next()) != null) {
+      parts.add(part);
+    }
+    return parts;
+  }
+
+  private static String value(Part part) {
+    return new String(part.getPartContent(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void decodesFields() throws Exception {
+    String body = "a=1&b=hello+world&&c=%E2%82%AC%2b&d&=e&f=100%&g=%zz%4";
+    // every buffer size, so that escapes straddle the reads
+    for (int bufferSize : new int[] {1, 2, 3, 5, 16, 8192}) {
+      List<Part> parts = read(body, bufferSize, 0);
+      Assert.assertEquals(parts.size(), 7, "fields");
+      Assert.assertEquals(parts.get(0).getName(), "a");
+      Assert.assertEquals(value(parts.get(0)), "1");
+      Assert.assertEquals(value(parts.get(1)), "hello world");
+      Assert.assertEquals(value(parts.get(2)), "€+");
+      Assert.assertEquals(parts.get(3).getName(), "d");
+      Assert.assertEquals(value(parts.get(3)), "");
+      Assert.assertEquals(parts.get(4).getName(), "");
+      Assert.assertEquals(value(parts.get(4)), "e");
+      // a "%" without two hex digits is kept
+      Assert.assertEquals(value(parts.get(5)), "100%");
+      Assert.assertEquals(value(parts.get(6)), "%zz%4");
+      Assert.assertEquals(parts.get(6).getContentType(), "text/plain");
+    }
+  }
+
+  @Test
+  public void matchesUrlDecoder() throws Exception {
+    Random random = new Random(42);
+    StringBuilder body = new StringBuilder();
+    List<String> values = new ArrayList<String>();
+    for (int i = 0; i < 500; i++) {
+      StringBuilder value = new StringBuilder();
+      int length = random.nextInt(200);
+      for (int j = 0; j < length; j++) {
+        value.append((char) (32 + random.nextInt(0x3000)));
+      }
+      values.add(value.toString());
+      if (i > 0) {
+        body.append('&');
+      }
+      body.append("field").append(i).append('=');
+      body.append(URLEncoder.encode(value.toString(), "UTF-8"));
+    }
+    List<Part> parts = read(body.toString(), 64, 0);
+    Assert.assertEquals(parts.size(), values.size());
+    for (int i = 0; i < parts.size(); i++) {
+      Assert.assertEquals(parts.get(i).getName(), "field" + i);
+      Assert.assertEquals(value(parts.get(i)), values.get(i), "field" + i);
+    }
+  }
+
+  @Test
+  public void stopsAtSizeLimit() throws Exception {
+    UrlEncodedFormReader reader =
+        new UrlEncodedFormReader(
+            new ByteArrayInputStream("a=1&b=0123456789&c=2".getBytes(StandardCharsets.UTF_8)),
+            4,
+            () -> new ByteArrayContentOutputStream(16),
+            5);
+    Assert.assertEquals(value(reader.next()), "1");
+    Assert.assertNull(reader.next());
+    Assert.assertTrue(reader.isLimitReached());
+  }
+
+  @Test
+  public void encodesForm() throws Exception {
+    List<Part> parts = new ArrayList<Part>();
+    Part first = new Part("user name");
+    first.setPartContent("Jürgen & co.".getBytes(StandardCharsets.UTF_8));
+    parts.add(first);
+    Part second = new Part("empty");
+    second.setPartContent(new byte[0]);
+    parts.add(second);
+
+    UrlEncodedForm form = new UrlEncodedForm(parts);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Bytes.transfer(form.openStream(), out);
+    String encoded = new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    Assert.assertEquals(encoded, "user+name=J%C3%BCrgen+%26+co.&empty=");
+    Assert.assertEquals(form.getContentLength(), encoded.length());
+    String value = encoded.substring(encoded.indexOf('=') + 1, encoded.indexOf('&'));
+    Assert.assertEquals(URLDecoder.decode(value, "UTF-8"), "Jürgen & co.");
+
+    byte[] binary = new byte[256];
+    for (int i = 0; i < binary.length; i++) {
+      binary[i] = (byte) i;
+    }
+    out.reset();
+    Bytes.transfer(new UrlEncodingInputStream(new ByteArrayInputStream(binary)), out);
+    byte[] streamed = out.toByteArray();
+    Assert.assertEquals(
+        UrlEncodingInputStream.encodedLength(binary, 0, binary.length), streamed.length);
+    Assert.assertEquals(UrlEncodingInputStream.encode(binary), streamed);
+  }
+
+  @Test
+  public void roundTripThroughCallouts() throws Exception {
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    msgCtxt.setVariable("v1", "alpha=1&beta=2");
+    msgCtxt.setVariable("v2", "été 100%");
+    Properties props = new Properties();
+    props.put("content-type", "application/x-www-form-urlencoded");
+    props.put(
+        "descriptor",
+        "{ \"query\" : { \"content-var\" : \"v1\", \"content-type\" : \"text/plain\","
+            + " \"want-b64-decode\": false },"
+            + " \"season\" : { \"content-var\" : \"v2\", \"content-type\" : \"text/plain\","
+            + " \"want-b64-decode\": false } }");
+    ExecutionResult result =
+        new MultipartFormCreatorV2(props).execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.SUCCESS, "create");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "create error");
+    Assert.assertEquals(message.getHeader("content-type"), "application/x-www-form-urlencoded");
+    Assert.assertNull(msgCtxt.getVariable("mpf_boundary"), "boundary");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Bytes.transfer(message.getContentAsStream(), out);
+    byte[] body = out.toByteArray();
+
+    FakeMessage received = new FakeMessage();
+    received.setVerbose(false);
+    FakeMessageContext parseCtxt = new FakeMessageContext(received);
+    parseCtxt.setVerbose(false);
+    parseCtxt.setVariable("message", received);
+    received.setHeader("content-type", "application/x-www-form-urlencoded; charset=UTF-8");
+    received.setContent(new ByteArrayInputStream(body));
+    result =
+        new MultipartFormParserV2(new Properties()).execute(parseCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.SUCCESS, "parse");
+    Assert.assertEquals(parseCtxt.getVariable("mpf_itemcount"), "2");
+    Assert.assertEquals(parseCtxt.getVariable("mpf_item_filename_1"), "query");
+    Assert.assertEquals(
+        new String((byte[]) parseCtxt.getVariable("mpf_item_content_1"), StandardCharsets.UTF_8),
+        "alpha=1&beta=2");
+    Assert.assertEquals(parseCtxt.getVariable("mpf_item_filename_2"), "season");
+    Assert.assertEquals(
+        new String((byte[]) parseCtxt.getVariable("mpf_item_content_2"), StandardCharsets.UTF_8),
+        "été 100%");
+  }
+
+  @Test
+  public void rejectsEncodingsForUrlEncoded() throws Exception {
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    msgCtxt.setVariable("v1", "hello");
+    Properties props = new Properties();
+    props.put("content-type", "application/x-www-form-urlencoded");
+    props.put(
+        "descriptor",
+        "{ \"a\" : { \"content-var\" : \"v1\", \"content-type\" : \"text/plain\","
+            + " \"want-b64-decode\": false, \"compression\": \"gzip\" } }");
+    new MultipartFormCreatorV2(props).execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertNotNull(msgCtxt.getVariable("mpf_error"), "error");
+  }
+}
@@ -0,0 +1,167 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.stream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestBytes {
+
+  @Test
+  public void mismatch() {
+    byte[] a = "xxabcdef".getBytes(StandardCharsets.UTF_8);
+    byte[] b = "abcdXf".getBytes(StandardCharsets.UTF_8);
+    Assert.assertEquals(Bytes.mismatch(a, 2, b, 0, 4), -1);
+    Assert.assertEquals(Bytes.mismatch(a, 2, b, 0, 6), 4);
+    Assert.assertEquals(Bytes.mismatch(a, 0, b, 0, 0), -1);
+    Assert.assertEquals(Bytes.mismatch(a, 0, b, 0, 3), 0);
+  }
+
+  @Test
+  public void readFullyAndTransfer() throws Exception {
+    byte[] data = new byte[100000];
+    new Random(41).nextBytes(data);
+    // a stream that returns at most 7 bytes per read
+    InputStream trickle =
+        new FilterInputStream(new ByteArrayInputStream(data)) {
+          public int read(byte[] b, int off, int len) throws java.io.IOException {
+            return super.read(b, off, Math.min(len, 7));
+          }
+        };
+    byte[] head = new byte[1000];
+    Assert.assertEquals(Bytes.readFully(trickle, head, 0, head.length), 1000);
+    ByteArrayOutputStream rest = new ByteArrayOutputStream();
+    Assert.assertEquals(Bytes.transfer(trickle, rest), data.length - 1000L);
+    Assert.assertEquals(Bytes.readFully(trickle, head, 0, 10), 0);
+    Assert.assertEquals(head[999], data[999]);
+    Assert.assertEquals(rest.toByteArray()[0], data[1000]);
+  }
+
+  @Test
+  public void bufferGetLeavesPosition() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+    for (int i = 0; i < 64; i++) {
+      buffer.put((byte) i);
+    }
+    byte[] out = new byte[10];
+    Buffers.get(buffer, 20, out, 2, 8);
+    Assert.assertEquals(buffer.position(), 64);
+    Assert.assertEquals(out[2], (byte) 20);
+    Assert.assertEquals(out[9], (byte) 27);
+  }
+
+  private static String extractAll(StreamSearcher searcher, InputStream in) throws Exception {
+    StringBuilder sb = new StringBuilder();
+    searcher.search(in);
+    for (; ; ) {
+      ByteArrayOutputStream part = new ByteArrayOutputStream();
+      long n = searcher.searchAndExtract(in, part);
+      if (n == -1) {
+        break;
+      }
+      Assert.assertEquals(n, part.size(), "bytes written");
+      sb.append(new String(part.toByteArray(), StandardCharsets.ISO_8859_1)).append('|');
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void chunkedSearchMatchesByteAtATime() throws Exception {
+    Random random = new Random(41);
+    String boundary = "--------------------XYZZY41";
+    for (int trial = 0; trial < 200; trial++) {
+      StringBuilder body = new StringBuilder("preamble\r\n" + boundary);
+      int parts = 1 + random.nextInt(4);
+      for (int p = 0; p < parts; p++) {
+        body.append("\r\n");
+        // sizes around the chunk size, and content that nearly matches
+        int size = random.nextBoolean() ? random.nextInt(40) : 8150 + random.nextInt(100);
+        for (int k = 0; k < size; k++) {
+          int r = random.nextInt(10);
+          body.append(r == 0 ? '-' : r == 1 ? "\r\n--------X".charAt(random.nextInt(10)) : 'a');
+        }
+        body.append("\r\n").append(boundary);
+      }
+      body.append("--\r\n");
+      byte[] bytes = body.toString().getBytes(StandardCharsets.ISO_8859_1);
+      byte[] pattern = boundary.getBytes(StandardCharsets.ISO_8859_1);
+
+      // FilterInputStream does not support mark, so this takes the byte-at-a-time path
+      String expected =
+          extractAll(
+              new StreamSearcher(pattern),
+              new FilterInputStream(new ByteArrayInputStream(bytes)) {});
+      String actual =
+          extractAll(
+              new StreamSearcher(pattern),
+              new BufferedInputStream(new ByteArrayInputStream(bytes), 1 + random.nextInt(4096)));
+      Assert.assertEquals(actual, expected, "trial " + trial);
+    }
+  }
+
+  @Test
+  public void delimiterPrefixIsLeftOut() throws Exception {
+    // with the bare boundary as the pattern, the two bytes before it are left
+    // out; with exactParts, so is the CRLF before a "--" that belongs to the
+    // delimiter, and without the "--", still only two bytes
+    byte[] pattern = "XYZ".getBytes(StandardCharsets.ISO_8859_1);
+    String standard = "--XYZ\r\nabc\r\n\r\n--XYZ\r\n--\r\n--XYZ--\r\n";
+    String bare = "XYZ\r\nabc\r\n\r\nXYZ\r\n--\r\nXYZ--\r\n";
+    String[][] cases = {
+      {standard, "false", "abc\r\n\r\n|--\r\n|"},
+      {standard, "true", "abc\r\n|--|"},
+      {bare, "false", "abc\r\n|--|"},
+      {bare, "true", "abc\r\n|--|"},
+    };
+    for (String[] c : cases) {
+      byte[] bytes = c[0].getBytes(StandardCharsets.ISO_8859_1);
+      boolean exactParts = Boolean.parseBoolean(c[1]);
+      String byteAtATime =
+          extractAll(
+              new StreamSearcher(pattern, 0, exactParts),
+              new FilterInputStream(new ByteArrayInputStream(bytes)) {});
+      String chunked =
+          extractAll(
+              new StreamSearcher(pattern, 0, exactParts),
+              new BufferedInputStream(new ByteArrayInputStream(bytes)));
+      Assert.assertEquals(byteAtATime, c[2], "exactParts " + exactParts);
+      Assert.assertEquals(chunked, byteAtATime, "exactParts " + exactParts);
+    }
+  }
+
+  @Test
+  public void chunkedSearchLimit() throws Exception {
+    byte[] bytes =
+        ("--b\r\n" + new String(new char[20000]).replace('\0', 'a') + "\r\n--b--")
+            .getBytes(StandardCharsets.ISO_8859_1);
+    StreamSearcher searcher =
+        new StreamSearcher("--b".getBytes(StandardCharsets.ISO_8859_1), 10000);
+    InputStream in = new BufferedInputStream(new ByteArrayInputStream(bytes));
+    searcher.search(in);
+    Assert.assertEquals(searcher.searchAndExtract(in, new ByteArrayOutputStream()), -1L);
+    Assert.assertTrue(searcher.isLimitReached(), "limit reached");
+  }
+}
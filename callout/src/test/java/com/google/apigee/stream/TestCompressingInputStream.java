@@ -0,0 +1,79 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class TestCompressingInputStream {
+
+  private static byte[] sample(int length) {
+    // partly compressible: random words from a small vocabulary
+    String[] words = {"multipart ", "form-data ", "boundary ", "\r\n", "content "};
+    Random random = new Random(length);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    while (out.size() < length) {
+      byte[] w = words[random.nextInt(words.length)].getBytes();
+      out.write(w, 0, Math.min(w.length, length - out.size()));
+    }
+    return out.toByteArray();
+  }
+
+  @DataProvider(name = "cases")
+  public Object[][] cases() {
+    return new Object[][] {
+      {"gzip", 0, -1},
+      {"gzip", 1, 1},
+      {"gzip", 100000, 9},
+      {"deflate", 0, -1},
+      {"deflate", 70000, 0},
+      {"deflate", 100000, 6}
+    };
+  }
+
+  @Test(dataProvider = "cases")
+  public void roundTrip(String coding, int length, int level) throws Exception {
+    byte[] original = sample(length);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Bytes.transfer(
+        new CompressingInputStream(new ByteArrayInputStream(original), coding, level), out);
+    byte[] compressed = out.toByteArray();
+    InputStream inflated =
+        coding.equals("gzip")
+            ? new GZIPInputStream(new ByteArrayInputStream(compressed))
+            : new InflaterInputStream(new ByteArrayInputStream(compressed));
+    out.reset();
+    Bytes.transfer(inflated, out);
+    Assert.assertEquals(out.toByteArray(), original);
+    if (length > 1000 && level != 0) {
+      Assert.assertTrue(compressed.length < original.length / 2, "compressed");
+    }
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void unsupportedCoding() {
+    new CompressingInputStream(new ByteArrayInputStream(new byte[0]), "br", -1);
+  }
+}
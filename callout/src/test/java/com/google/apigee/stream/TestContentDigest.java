@@ -0,0 +1,105 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+
+package com.google.apigee.stream;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Checksum;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestContentDigest {
+
+  @Test
+  public void crc32cKnownValues() {
+    Checksum crc = Checksums.newCrc32c();
+    byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+    crc.update(check, 0, check.length);
+    Assert.assertEquals(crc.getValue(), 0xE3069283L);
+    crc.reset();
+    byte[] zeros = new byte[32];
+    crc.update(zeros, 0, zeros.length);
+    Assert.assertEquals(crc.getValue(), 0x8A9136AAL);
+  }
+
+  @Test
+  public void crc32cInPieces() {
+    byte[] data = new byte[10000];
+    new Random(48).nextBytes(data);
+    Checksum whole = Checksums.newCrc32c();
+    whole.update(data, 0, data.length);
+    // pieces of every length up to 17, at every alignment
+    Checksum pieces = Checksums.newCrc32c();
+    int off = 0;
+    for (int len = 0; off < data.length; len = (len + 1) % 18) {
+      int n = Math.min(len, data.length - off);
+      if (n == 1) {
+        pieces.update(data[off]);
+      } else {
+        pieces.update(data, off, n);
+      }
+      off += n;
+    }
+    Assert.assertEquals(pieces.getValue(), whole.getValue());
+  }
+
+  @Test
+  public void algorithms() {
+    Assert.assertEquals(
+        ContentDigest.algorithms("SHA-256, md5,crc32c, sha256"),
+        Arrays.asList("sha256", "md5", "crc32c"));
+    Assert.assertTrue(ContentDigest.algorithms(null).isEmpty());
+    try {
+      ContentDigest.algorithms("sha256, crc64");
+      Assert.fail("crc64");
+    } catch (IllegalStateException expected) {
+      Assert.assertEquals(expected.getMessage(), "unsupported digest: crc64");
+    }
+  }
+
+  @Test
+  public void encode() {
+    byte[] digest = {0, 1, (byte) 0xAB, (byte) 0xFF};
+    Assert.assertEquals(ContentDigest.encode(digest, false), "0001abff");
+    Assert.assertEquals(ContentDigest.encode(digest, true), "AAGr/w==");
+  }
+
+  @Test
+  public void digestingOutputStream() throws Exception {
+    byte[] data = new byte[70000];
+    new Random(49).nextBytes(data);
+    DigestingContentOutputStream out =
+        new DigestingContentOutputStream(
+            new ByteArrayContentOutputStream(16), Arrays.asList("sha512", "crc32c"));
+    for (int off = 0; off < data.length; off += 999) {
+      out.write(data, off, Math.min(999, data.length - off));
+    }
+    out.close();
+    Assert.assertEquals(out.toContent().toByteArray(), data);
+    Map<String, byte[]> digests = out.getDigests();
+    Assert.assertEquals(new ArrayList<String>(digests.keySet()), Arrays.asList("sha512", "crc32c"));
+    Assert.assertEquals(digests.get("sha512"), MessageDigest.getInstance("SHA-512").digest(data));
+    Checksum crc = Checksums.newCrc32c();
+    crc.update(data, 0, data.length);
+    Assert.assertEquals(
+        ContentDigest.encode(digests.get("crc32c"), false), String.format("%08x", crc.getValue()));
+    Assert.assertSame(out.getDigests(), digests, "digests are kept");
+  }
+}
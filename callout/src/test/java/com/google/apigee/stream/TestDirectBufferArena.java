@@ -0,0 +1,173 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestDirectBufferArena {
+
+  private static byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    new Random(length).nextBytes(bytes);
+    return bytes;
+  }
+
+  @Test
+  public void contentSpanningBlocks() throws Exception {
+    try (DirectBufferArena arena = new DirectBufferArena(true)) {
+      byte[] small = randomBytes(17);
+      byte[] large = randomBytes(DirectBufferArena.BLOCK_SIZE * 2 + 123);
+
+      ContentOutputStream out1 = arena.newOutputStream();
+      out1.write(small, 0, small.length);
+      Content c1 = out1.toContent();
+
+      ContentOutputStream out2 = arena.newOutputStream();
+      for (int i = 0; i < large.length; i += 1000) {
+        out2.write(large, i, Math.min(1000, large.length - i));
+      }
+      Content c2 = out2.toContent();
+
+      Assert.assertEquals(c1.length(), small.length);
+      Assert.assertEquals(c1.toByteArray(), small);
+      Assert.assertEquals(c2.length(), large.length);
+      Assert.assertEquals(c2.toByteArray(), large);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      Bytes.transfer(c2.openStream(), out);
+      Assert.assertEquals(out.toByteArray(), large);
+    }
+  }
+
+  @Test
+  public void interleavedWriters() throws Exception {
+    try (DirectBufferArena arena = new DirectBufferArena()) {
+      ContentOutputStream out1 = arena.newOutputStream();
+      ContentOutputStream out2 = arena.newOutputStream();
+      for (int i = 0; i < 100; i++) {
+        out1.write('a');
+        out2.write('b');
+      }
+      Assert.assertEquals(new String(out1.toContent().toByteArray(), "UTF-8").replace("a", ""), "");
+      Assert.assertEquals(new String(out2.toContent().toByteArray(), "UTF-8").replace("b", ""), "");
+      Assert.assertEquals(out2.toContent().length(), 100L);
+    }
+  }
+
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void releasedContentIsUnreadable() throws Exception {
+    DirectBufferArena arena = new DirectBufferArena();
+    ContentOutputStream out = arena.newOutputStream();
+    out.write(randomBytes(10), 0, 10);
+    Content content = out.toContent();
+    arena.close();
+    Assert.assertTrue(arena.isReleased());
+    content.openStream();
+  }
+
+  @Test
+  public void releaseOnClose() throws Exception {
+    DirectBufferArena arena = new DirectBufferArena();
+    byte[] bytes = randomBytes(5000);
+    Content content = arena.copyOf(new ByteArrayInputStream(bytes));
+    try (InputStream in = arena.releaseOnClose(content.openStream())) {
+      // the stream keeps the blocks after the creator is done with them
+      arena.close();
+      Assert.assertFalse(arena.isReleased());
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      Bytes.transfer(in, out);
+      Assert.assertEquals(out.toByteArray(), bytes);
+    }
+    Assert.assertTrue(arena.isReleased());
+  }
+
+  @Test
+  public void eachStreamHoldsTheArena() throws Exception {
+    DirectBufferArena arena = new DirectBufferArena();
+    byte[] bytes = randomBytes(5000);
+    Content content = arena.copyOf(new ByteArrayInputStream(bytes));
+    Assert.assertTrue(arena.holds(content));
+    Assert.assertFalse(new DirectBufferArena().holds(content));
+    InputStream first = arena.releaseOnClose(content.openStream());
+    InputStream second = arena.releaseOnClose(content.openStream());
+    arena.close();
+    first.close();
+    first.close();
+    Assert.assertFalse(arena.isReleased());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Bytes.transfer(second, out);
+    Assert.assertEquals(out.toByteArray(), bytes);
+    second.close();
+    Assert.assertTrue(arena.isReleased());
+  }
+
+  @Test
+  public void readsDoNotOverlapRecycling() throws Exception {
+    // a read that races the release either completes or fails; it never copies
+    // from a block that has gone back to the pool
+    byte[] bytes = new byte[DirectBufferArena.BLOCK_SIZE * 4];
+    Arrays.fill(bytes, (byte) 7);
+    for (int i = 0; i < 20; i++) {
+      DirectBufferArena arena = new DirectBufferArena();
+      Content content = arena.copyOf(new ByteArrayInputStream(bytes));
+      InputStream in = content.openStream();
+      Thread closer = new Thread(arena::close);
+      closer.start();
+      byte[] chunk = new byte[1000];
+      try {
+        int n;
+        while ((n = in.read(chunk, 0, chunk.length)) != -1) {
+          for (int j = 0; j < n; j++) {
+            Assert.assertEquals(chunk[j], (byte) 7);
+          }
+          // blocks handed to another arena are overwritten
+          try (DirectBufferArena other = new DirectBufferArena()) {
+            other.copyOf(new ByteArrayInputStream(new byte[DirectBufferArena.BLOCK_SIZE]));
+          }
+        }
+      } catch (IllegalStateException expected) {
+        // released
+      }
+      closer.join();
+    }
+  }
+
+  private static void leakAnArena() throws IOException {
+    DirectBufferArena arena = new DirectBufferArena(true);
+    arena.newOutputStream().write(randomBytes(100), 0, 100);
+  }
+
+  @Test
+  public void leakDetection() throws Exception {
+    long before = DirectBufferArena.getLeakCount();
+    leakAnArena();
+    for (int i = 0; i < 50 && DirectBufferArena.getLeakCount() == before; i++) {
+      System.gc();
+      Thread.sleep(20);
+      DirectBufferArena.reclaimLeaks();
+    }
+    Assert.assertEquals(DirectBufferArena.getLeakCount(), before + 1);
+    Assert.assertTrue(DirectBufferArena.getLastLeakSite().contains("leakAnArena"));
+  }
+}
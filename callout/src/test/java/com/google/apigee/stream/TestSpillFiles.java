@@ -0,0 +1,114 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestSpillFiles {
+
+  private static byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    new Random(length).nextBytes(bytes);
+    return bytes;
+  }
+
+  private static long countFiles(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+
+  private static Content write(SpillFiles spillFiles, byte[] bytes) throws IOException {
+    ContentOutputStream out = spillFiles.newOutputStream();
+    for (int i = 0; i < bytes.length; i += 700) {
+      out.write(bytes, i, Math.min(700, bytes.length - i));
+    }
+    out.close();
+    return out.toContent();
+  }
+
+  @Test
+  public void spillsAboveThreshold() throws Exception {
+    Path directory = Files.createTempDirectory("spill");
+    byte[] small = randomBytes(1000);
+    byte[] large = randomBytes(10000);
+    try (SpillFiles spillFiles = new SpillFiles(directory, 4096)) {
+      Content c1 = write(spillFiles, small);
+      Content c2 = write(spillFiles, large);
+
+      Assert.assertFalse(SpillFiles.isSpilled(c1));
+      Assert.assertTrue(SpillFiles.isSpilled(c2));
+      Assert.assertEquals(countFiles(directory), 1L);
+      Assert.assertEquals(c1.toByteArray(), small);
+      Assert.assertEquals(c2.length(), (long) large.length);
+      Assert.assertEquals(c2.toByteArray(), large);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      Bytes.transfer(c2.openStream(), out);
+      Assert.assertEquals(out.toByteArray(), large);
+    }
+    Assert.assertEquals(countFiles(directory), 0L);
+    Files.delete(directory);
+  }
+
+  @Test
+  public void releaseOnClose() throws Exception {
+    Path directory = Files.createTempDirectory("spill");
+    byte[] large = randomBytes(10000);
+    SpillFiles spillFiles = new SpillFiles(directory, 100);
+    Content content = write(spillFiles, large);
+    try (InputStream in = spillFiles.releaseOnClose(content.openStream())) {
+      // the stream keeps the files after the creator is done with them
+      spillFiles.close();
+      Assert.assertFalse(spillFiles.isReleased());
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      Bytes.transfer(in, out);
+      Assert.assertEquals(out.toByteArray(), large);
+    }
+    Assert.assertTrue(spillFiles.isReleased());
+    Assert.assertEquals(countFiles(directory), 0L);
+    try {
+      content.openStream();
+      Assert.fail("expected an exception");
+    } catch (IllegalStateException expected) {
+    }
+    Files.delete(directory);
+  }
+
+  @Test
+  public void abandonedFilesAreDeleted() throws Exception {
+    Path directory = Files.createTempDirectory("spill");
+    write(new SpillFiles(directory, 100), randomBytes(1000));
+    Assert.assertEquals(countFiles(directory), 1L);
+    for (int i = 0; i < 20 && countFiles(directory) > 0; i++) {
+      System.gc();
+      Thread.sleep(50);
+      // creating another instance deletes the files of those that were collected
+      new SpillFiles(directory, 100).close();
+    }
+    Assert.assertEquals(countFiles(directory), 0L);
+    Files.delete(directory);
+  }
+}
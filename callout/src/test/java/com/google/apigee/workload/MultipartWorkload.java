@@ -0,0 +1,512 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.workload;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Generates synthetic multipart/form-data bodies for load tests, soak tests and benchmarks. A
+ * workload with the same settings and seed always produces the same bytes. The body is produced as
+ * it is read, so its size is not limited by memory; {@link #getContentLength()} gives the size
+ * without generating it.
+ *
+ * <p>The body follows RFC 7578: each delimiter line is "--" followed by the boundary. Text parts
+ * are lowercase words, binary parts are random bytes. Neither can contain the boundary, except
+ * where a malformation puts it there.
+ */
+public class MultipartWorkload {
+  public static final int MAX_BOUNDARY_LENGTH = 70;
+  private static final int BLOCK_SIZE = 4096;
+  private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+  private static final char[] boundaryChars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+  private static final String[] words = {
+    "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit", "sed", "do",
+    "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore", "magna", "aliqua", "enim"
+  };
+
+  /** Ways to break a body. Each applies to the body as a whole. */
+  public enum Malformation {
+    NONE,
+    /** the close delimiter is omitted. */
+    MISSING_CLOSE_DELIMITER,
+    /** the body stops halfway through the content of the last part. */
+    TRUNCATED,
+    /** the first part has no empty line between its headers and its content. */
+    MISSING_HEADER_SEPARATOR,
+    /** the Content-Disposition header of the first part has no name. */
+    MISSING_NAME,
+    /** the first part has a header longer than any parser should accept. */
+    OVERSIZED_HEADER,
+    /** the body uses a boundary other than the one in the content-type. */
+    WRONG_BOUNDARY
+  }
+
+  /** Chooses the size of each part. */
+  public interface SizeDistribution {
+    long next(Random random);
+
+    static SizeDistribution fixed(long size) {
+      return random -> size;
+    }
+
+    /** Sizes spread evenly between min and max, inclusive. */
+    static SizeDistribution uniform(long min, long max) {
+      return random -> min + (long) (random.nextDouble() * (max - min + 1));
+    }
+
+    /**
+     * Sizes with a long tail, like uploads seen in practice: most parts are near the median, a few
+     * are much larger. Sizes are capped at max.
+     */
+    static SizeDistribution logNormal(long median, double sigma, long max) {
+      return random ->
+          Math.min(max, Math.round(median * Math.exp(sigma * random.nextGaussian())));
+    }
+  }
+
+  private long seed = 1L;
+  private int partCount = 1;
+  private SizeDistribution sizes = SizeDistribution.fixed(1024);
+  private double binaryFraction = 0.0;
+  private int boundaryLength = 32;
+  private int nearMissesPerPart = 0;
+  private Malformation malformation = Malformation.NONE;
+
+  // computed lazily, from the settings above
+  private String boundary;
+  private List<PartSpec> parts;
+
+  public MultipartWorkload withSeed(long seed) {
+    this.seed = seed;
+    return reset();
+  }
+
+  public MultipartWorkload withPartCount(int partCount) {
+    if (partCount < 1) {
+      throw new IllegalArgumentException("partCount must be positive");
+    }
+    this.partCount = partCount;
+    return reset();
+  }
+
+  public MultipartWorkload withSizes(SizeDistribution sizes) {
+    this.sizes = sizes;
+    return reset();
+  }
+
+  /** The share of parts, between 0 and 1, that are binary files rather than text fields. */
+  public MultipartWorkload withBinaryFraction(double binaryFraction) {
+    if (binaryFraction < 0 || binaryFraction > 1) {
+      throw new IllegalArgumentException("binaryFraction must be between 0 and 1");
+    }
+    this.binaryFraction = binaryFraction;
+    return reset();
+  }
+
+  public MultipartWorkload withBoundaryLength(int boundaryLength) {
+    if (boundaryLength < 1 || boundaryLength > MAX_BOUNDARY_LENGTH) {
+      throw new IllegalArgumentException(
+          String.format("boundaryLength must be between 1 and %d", MAX_BOUNDARY_LENGTH));
+    }
+    this.boundaryLength = boundaryLength;
+    return reset();
+  }
+
+  /**
+   * Puts sequences into the content of each part that look like a delimiter, a CRLF, two dashes,
+   * and most of the boundary, but differ from it in the last byte. Parts too small to hold them get
+   * fewer.
+   */
+  public MultipartWorkload withNearMissesPerPart(int nearMissesPerPart) {
+    this.nearMissesPerPart = nearMissesPerPart;
+    return reset();
+  }
+
+  public MultipartWorkload withMalformation(Malformation malformation) {
+    this.malformation = malformation;
+    return reset();
+  }
+
+  private MultipartWorkload reset() {
+    boundary = null;
+    parts = null;
+    return this;
+  }
+
+  public String getBoundary() {
+    plan();
+    return boundary;
+  }
+
+  public String getContentType() {
+    return "multipart/form-data; boundary=" + getBoundary();
+  }
+
+  /** The parts as they would be, were the body not malformed. */
+  public List<PartSpec> getParts() {
+    plan();
+    return Collections.unmodifiableList(parts);
+  }
+
+  private void plan() {
+    if (parts != null) {
+      return;
+    }
+    Random random = new Random(seed);
+    StringBuilder sb = new StringBuilder(boundaryLength);
+    // like the boundaries browsers and the creator use: dashes, then random characters
+    int randomLength = Math.min(boundaryLength, 16);
+    for (int i = 0; i < boundaryLength - randomLength; i++) {
+      sb.append('-');
+    }
+    for (int i = 0; i < randomLength; i++) {
+      sb.append(boundaryChars[random.nextInt(boundaryChars.length)]);
+    }
+    boundary = sb.toString();
+
+    parts = new ArrayList<PartSpec>(partCount);
+    for (int i = 0; i < partCount; i++) {
+      boolean binary = random.nextDouble() < binaryFraction;
+      long size = Math.max(0, sizes.next(random));
+      parts.add(new PartSpec(i, binary, size, random.nextLong()));
+    }
+  }
+
+  private byte[] leader(PartSpec part, String delimiterBoundary) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("--").append(delimiterBoundary).append("\r\n");
+    if (part.index == 0 && malformation == Malformation.MISSING_NAME) {
+      sb.append("Content-Disposition: form-data\r\n");
+    } else {
+      sb.append("Content-Disposition: form-data; name=\"").append(part.getName()).append("\"");
+      if (part.getFileName() != null) {
+        sb.append("; filename=\"").append(part.getFileName()).append("\"");
+      }
+      sb.append("\r\n");
+    }
+    sb.append("Content-Type: ").append(part.getContentType()).append("\r\n");
+    if (part.index == 0 && malformation == Malformation.OVERSIZED_HEADER) {
+      sb.append("X-Padding: ");
+      for (int i = 0; i < 32 * 1024; i++) {
+        sb.append('x');
+      }
+      sb.append("\r\n");
+    }
+    if (!(part.index == 0 && malformation == Malformation.MISSING_HEADER_SEPARATOR)) {
+      sb.append("\r\n");
+    }
+    return sb.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private String delimiterBoundary() {
+    if (malformation != Malformation.WRONG_BOUNDARY) {
+      return boundary;
+    }
+    // same length, different last character
+    char last = boundary.charAt(boundary.length() - 1);
+    return boundary.substring(0, boundary.length() - 1) + (last == 'A' ? 'B' : 'A');
+  }
+
+  private byte[] closeDelimiter(String delimiterBoundary) {
+    return ("\r\n--" + delimiterBoundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private long fullLength() {
+    String delimiterBoundary = delimiterBoundary();
+    long length = 0;
+    for (PartSpec part : parts) {
+      if (part.index > 0) {
+        length += CRLF.length;
+      }
+      length += leader(part, delimiterBoundary).length + part.size;
+    }
+    if (malformation != Malformation.MISSING_CLOSE_DELIMITER
+        && malformation != Malformation.TRUNCATED) {
+      length += closeDelimiter(delimiterBoundary).length;
+    }
+    return length;
+  }
+
+  /** The exact number of bytes that {@link #openStream()} returns. */
+  public long getContentLength() {
+    plan();
+    long length = fullLength();
+    if (malformation == Malformation.TRUNCATED) {
+      length -= parts.get(parts.size() - 1).size - parts.get(parts.size() - 1).size / 2;
+    }
+    return length;
+  }
+
+  /** Returns a new stream over the body. Each stream returns the same bytes. */
+  public InputStream openStream() {
+    plan();
+    final String delimiterBoundary = delimiterBoundary();
+    final Iterator<PartSpec> partIterator = parts.iterator();
+    Enumeration<InputStream> streams =
+        new Enumeration<InputStream>() {
+          private PartSpec pending;
+          private boolean done;
+
+          public boolean hasMoreElements() {
+            return pending != null || partIterator.hasNext() || !done;
+          }
+
+          public InputStream nextElement() {
+            if (pending != null) {
+              InputStream content = pending.openContent();
+              pending = null;
+              return content;
+            }
+            if (partIterator.hasNext()) {
+              pending = partIterator.next();
+              byte[] leader = leader(pending, delimiterBoundary);
+              if (pending.index > 0) {
+                byte[] withCrlf = Arrays.copyOf(CRLF, CRLF.length + leader.length);
+                System.arraycopy(leader, 0, withCrlf, CRLF.length, leader.length);
+                leader = withCrlf;
+              }
+              return new ByteArrayInputStream(leader);
+            }
+            if (!done) {
+              done = true;
+              boolean closed =
+                  malformation != Malformation.MISSING_CLOSE_DELIMITER
+                      && malformation != Malformation.TRUNCATED;
+              return new ByteArrayInputStream(
+                  closed ? closeDelimiter(delimiterBoundary) : new byte[0]);
+            }
+            throw new NoSuchElementException();
+          }
+        };
+    InputStream body = new SequenceInputStream(streams);
+    if (malformation == Malformation.TRUNCATED) {
+      body = new BoundedInputStream(body, getContentLength());
+    }
+    return body;
+  }
+
+  /** One part of the body. */
+  public class PartSpec {
+    private final int index;
+    private final boolean binary;
+    private final long size;
+    private final long seed;
+
+    PartSpec(int index, boolean binary, long size, long seed) {
+      this.index = index;
+      this.binary = binary;
+      this.size = size;
+      this.seed = seed;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public String getName() {
+      return binary ? String.format("file%d.bin", index) : String.format("field%d", index);
+    }
+
+    /** Binary parts are sent as files; text parts are plain fields, without a file name. */
+    public String getFileName() {
+      return binary ? getName() : null;
+    }
+
+    public String getContentType() {
+      return binary ? "application/octet-stream" : "text/plain";
+    }
+
+    public boolean isBinary() {
+      return binary;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    /** Returns a new stream over the content of this part. */
+    public InputStream openContent() {
+      return new ContentStream(this);
+    }
+  }
+
+  // Produces the content of a part, in blocks generated from the seed of the
+  // part. Blocks are the same no matter how the stream is read.
+  private class ContentStream extends InputStream {
+    private final Random random;
+    private final boolean binary;
+    private final long[] nearMissOffsets;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private int blockPosition;
+    private int blockCount;
+    private long position;
+    private final long size;
+    private int nextNearMiss;
+    private byte[] nearMiss;
+    private int nearMissPosition;
+    private int wordIndex = -1;
+    private int wordPosition;
+    private int wordsOnLine;
+
+    ContentStream(PartSpec part) {
+      this.random = new Random(part.seed);
+      this.binary = part.binary;
+      this.size = part.size;
+      int nearMissLength = nearMiss(0).length;
+      int count = (int) Math.min(nearMissesPerPart, size / (nearMissLength + 1));
+      long[] offsets = new long[count];
+      // one near miss in each of count equal slices of the content
+      for (int i = 0; i < count; i++) {
+        long slice = size / count;
+        offsets[i] = i * slice + (long) (random.nextDouble() * (slice - nearMissLength));
+      }
+      this.nearMissOffsets = offsets;
+    }
+
+    // the boundary, but for the last byte
+    private byte[] nearMiss(int variant) {
+      char last = boundary.charAt(boundary.length() - 1);
+      char other = boundaryChars[variant % boundaryChars.length];
+      if (other == last) {
+        other = (last == 'Z') ? 'Y' : 'Z';
+      }
+      return ("\r\n--" + boundary.substring(0, boundary.length() - 1) + other)
+          .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void fill() {
+      blockPosition = 0;
+      blockCount = (int) Math.min(BLOCK_SIZE, size - position);
+      if (binary) {
+        random.nextBytes(block);
+      } else {
+        for (int i = 0; i < blockCount; i++) {
+          block[i] = nextTextByte();
+        }
+      }
+      // overlay the near misses, which may span blocks
+      for (int i = 0; i < blockCount; i++) {
+        if (nearMiss == null
+            && nextNearMiss < nearMissOffsets.length
+            && position + i == nearMissOffsets[nextNearMiss]) {
+          nearMiss = nearMiss(nextNearMiss++);
+          nearMissPosition = 0;
+        }
+        if (nearMiss != null) {
+          block[i] = nearMiss[nearMissPosition++];
+          if (nearMissPosition == nearMiss.length) {
+            nearMiss = null;
+          }
+        }
+      }
+    }
+
+    private byte nextTextByte() {
+      if (wordIndex < 0) {
+        wordIndex = random.nextInt(words.length);
+        wordPosition = 0;
+      }
+      String word = words[wordIndex];
+      if (wordPosition < word.length()) {
+        return (byte) word.charAt(wordPosition++);
+      }
+      wordIndex = -1;
+      if (++wordsOnLine == 12) {
+        wordsOnLine = 0;
+        return '\n';
+      }
+      return ' ';
+    }
+
+    public int read() throws IOException {
+      if (blockPosition == blockCount) {
+        if (position == size) {
+          return -1;
+        }
+        fill();
+      }
+      position++;
+      return block[blockPosition++] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (blockPosition == blockCount) {
+        if (position == size) {
+          return -1;
+        }
+        fill();
+      }
+      int n = Math.min(len, blockCount - blockPosition);
+      System.arraycopy(block, blockPosition, b, off, n);
+      blockPosition += n;
+      position += n;
+      return n;
+    }
+  }
+
+  private static class BoundedInputStream extends InputStream {
+    private final InputStream in;
+    private long remaining;
+
+    BoundedInputStream(InputStream in, long limit) {
+      this.in = in;
+      this.remaining = limit;
+    }
+
+    public int read() throws IOException {
+      if (remaining == 0) {
+        return -1;
+      }
+      int b = in.read();
+      if (b != -1) {
+        remaining--;
+      }
+      return b;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining == 0) {
+        return -1;
+      }
+      int n = in.read(b, off, (int) Math.min(len, remaining));
+      if (n > 0) {
+        remaining -= n;
+      }
+      return n;
+    }
+
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
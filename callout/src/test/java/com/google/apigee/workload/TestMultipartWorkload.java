@@ -0,0 +1,177 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.workload;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.google.apigee.callouts.MultipartFormParserV2;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.workload.MultipartWorkload.Malformation;
+import com.google.apigee.workload.MultipartWorkload.PartSpec;
+import com.google.apigee.workload.MultipartWorkload.SizeDistribution;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestMultipartWorkload {
+
+  private static byte[] readAll(InputStream in, int chunkSize) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] chunk = new byte[chunkSize];
+    int n;
+    while ((n = in.read(chunk, 0, chunk.length)) != -1) {
+      out.write(chunk, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  private static MultipartWorkload mixed() {
+    return new MultipartWorkload()
+        .withSeed(42)
+        .withPartCount(12)
+        .withSizes(SizeDistribution.logNormal(2000, 1.0, 50000))
+        .withBinaryFraction(0.5)
+        .withBoundaryLength(40)
+        .withNearMissesPerPart(3);
+  }
+
+  private static FakeMessageContext parse(MultipartWorkload workload, ExecutionResult expected) {
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    message.setHeader("content-type", workload.getContentType());
+    message.setContent(workload.openStream());
+
+    Map<String, String> props = new HashMap<String, String>();
+    MultipartFormParserV2 callout = new MultipartFormParserV2(props);
+    ExecutionResult actualResult = callout.execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(actualResult, expected, "ExecutionResult");
+    return msgCtxt;
+  }
+
+  @Test
+  public void sameSeedSameBytes() throws Exception {
+    byte[] first = readAll(mixed().openStream(), 8192);
+    byte[] second = readAll(mixed().openStream(), 7);
+    Assert.assertEquals(second, first);
+    Assert.assertEquals((long) first.length, mixed().getContentLength());
+
+    byte[] other = readAll(mixed().withSeed(43).openStream(), 8192);
+    Assert.assertNotEquals(other, first);
+  }
+
+  @Test
+  public void shapes() throws Exception {
+    MultipartWorkload workload = mixed();
+    List<PartSpec> parts = workload.getParts();
+    Assert.assertEquals(parts.size(), 12);
+    Assert.assertEquals(workload.getBoundary().length(), 40);
+    int binary = 0;
+    for (PartSpec part : parts) {
+      Assert.assertTrue(part.getSize() <= 50000, "size cap");
+      Assert.assertEquals(readAll(part.openContent(), 1000).length, (int) part.getSize());
+      if (part.isBinary()) {
+        binary++;
+      }
+    }
+    Assert.assertTrue(binary > 0 && binary < parts.size(), "mix of binary and text");
+  }
+
+  @Test
+  public void nearMissesDoNotSplitParts() throws Exception {
+    MultipartWorkload workload = mixed();
+    byte[] body = readAll(workload.openStream(), 8192);
+    String nearMiss = "\r\n--" + workload.getBoundary().substring(0, 39);
+    int count = 0;
+    for (int ix = 0; (ix = indexOf(body, nearMiss, ix)) >= 0; ix++) {
+      count++;
+    }
+    // each part has its delimiter, plus near misses if it is large enough
+    Assert.assertTrue(count > 12, "near misses: " + count);
+
+    FakeMessageContext msgCtxt = parse(workload, ExecutionResult.SUCCESS);
+    Assert.assertEquals(msgCtxt.getVariable("mpf_itemcount"), "12");
+    List<PartSpec> parts = workload.getParts();
+    for (int i = 0; i < parts.size(); i++) {
+      PartSpec part = parts.get(i);
+      byte[] expected = readAll(part.openContent(), 8192);
+      byte[] actual = msgCtxt.getVariable("mpf_item_content_" + (i + 1));
+      Assert.assertEquals(msgCtxt.getVariable("mpf_item_filename_" + (i + 1)), part.getName());
+      // The parser keeps the CRLF that precedes a "--" delimiter line.
+      Assert.assertEquals(actual.length, expected.length + 2, "length of " + part.getName());
+      Assert.assertEquals(Arrays.copyOf(actual, expected.length), expected);
+    }
+  }
+
+  private static int indexOf(byte[] data, String s, int from) {
+    byte[] pattern = s.getBytes(StandardCharsets.US_ASCII);
+    outer:
+    for (int i = from; i <= data.length - pattern.length; i++) {
+      for (int j = 0; j < pattern.length; j++) {
+        if (data[i + j] != pattern[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  @Test
+  public void malformedLengths() throws Exception {
+    for (Malformation malformation : Malformation.values()) {
+      MultipartWorkload workload = mixed().withMalformation(malformation);
+      byte[] body = readAll(workload.openStream(), 4096);
+      Assert.assertEquals((long) body.length, workload.getContentLength(), malformation.name());
+    }
+  }
+
+  @Test
+  public void malformedBodies() throws Exception {
+    // no delimiter matches, so there are no parts
+    FakeMessageContext msgCtxt =
+        parse(mixed().withMalformation(Malformation.WRONG_BOUNDARY), ExecutionResult.SUCCESS);
+    Assert.assertEquals(msgCtxt.getVariable("mpf_itemcount"), "0");
+
+    msgCtxt = parse(mixed().withMalformation(Malformation.OVERSIZED_HEADER), ExecutionResult.ABORT);
+    Assert.assertNotNull(msgCtxt.getVariable("mpf_error"));
+
+    msgCtxt = parse(mixed().withMalformation(Malformation.MISSING_NAME), ExecutionResult.ABORT);
+    Assert.assertNotNull(msgCtxt.getVariable("mpf_error"));
+
+    // without a close delimiter, the last part is never completed
+    msgCtxt =
+        parse(
+            mixed().withMalformation(Malformation.MISSING_CLOSE_DELIMITER),
+            ExecutionResult.SUCCESS);
+    Assert.assertEquals(msgCtxt.getVariable("mpf_itemcount"), "11");
+
+    msgCtxt = parse(mixed().withMalformation(Malformation.TRUNCATED), ExecutionResult.SUCCESS);
+    Assert.assertEquals(msgCtxt.getVariable("mpf_itemcount"), "11");
+  }
+}
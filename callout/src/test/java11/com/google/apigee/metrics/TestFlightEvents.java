@@ -0,0 +1,151 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.metrics;
+
+import com.apigee.flow.execution.ExecutionResult;
+import com.google.apigee.callouts.MultipartFormCreatorV2;
+import com.google.apigee.callouts.MultipartFormParserV2;
+import com.google.apigee.fakes.FakeExecutionContext;
+import com.google.apigee.fakes.FakeMessage;
+import com.google.apigee.fakes.FakeMessageContext;
+import com.google.apigee.workload.MultipartWorkload;
+import com.google.apigee.workload.MultipartWorkload.SizeDistribution;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestFlightEvents {
+  private static final String[] EVENT_NAMES = {
+    "com.google.apigee.BoundaryScan",
+    "com.google.apigee.PartHeaders",
+    "com.google.apigee.PartMaterialization",
+    "com.google.apigee.DescriptorCompilation",
+    "com.google.apigee.PayloadAssembly"
+  };
+
+  private static FakeMessageContext newContext() {
+    FakeMessage message = new FakeMessage();
+    message.setVerbose(false);
+    FakeMessageContext msgCtxt = new FakeMessageContext(message);
+    msgCtxt.setVerbose(false);
+    msgCtxt.setVariable("message", message);
+    return msgCtxt;
+  }
+
+  private static void parseAndCreate() throws Exception {
+    MultipartWorkload workload =
+        new MultipartWorkload()
+            .withSeed(39)
+            .withPartCount(3)
+            .withSizes(SizeDistribution.uniform(100, 10000));
+    FakeMessageContext msgCtxt = newContext();
+    msgCtxt.getMessage().setHeader("content-type", workload.getContentType());
+    msgCtxt.getMessage().setContent(workload.openStream());
+    ExecutionResult result =
+        new MultipartFormParserV2(new Properties()).execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.SUCCESS, "parse");
+
+    msgCtxt = newContext();
+    msgCtxt.setVariable("text", "Hello, World");
+    Properties props = new Properties();
+    props.put(
+        "descriptor",
+        "{ \"hello.txt\" : { \"content-var\" : \"text\", \"content-type\" : \"text/plain\","
+            + " \"want-b64-decode\" : false } }");
+    result = new MultipartFormCreatorV2(props).execute(msgCtxt, new FakeExecutionContext());
+    Assert.assertEquals(result, ExecutionResult.SUCCESS, "create");
+    Assert.assertNull(msgCtxt.getVariable("mpf_error"), "create error");
+  }
+
+  @Test(groups = "multi-release")
+  public void loadedWhereAvailable() {
+    Assert.assertTrue(FlightEvents.INSTANCE.isAvailable(), "available");
+    // the implementation is only in META-INF/versions/11 of the jar, so it is named, not referenced
+    Assert.assertEquals(
+        FlightEvents.INSTANCE.getClass().getName(),
+        "com.google.apigee.metrics.JfrFlightEvents",
+        "implementation");
+  }
+
+  @Test(groups = "multi-release")
+  public void nothingBegunWhenNotRecording() {
+    for (FlightEvents.Kind kind : FlightEvents.Kind.values()) {
+      Assert.assertNull(FlightEvents.INSTANCE.begin(kind), kind.toString());
+    }
+    // and ending nothing is harmless
+    FlightEvents.INSTANCE.end(null, "x", 1, "heap");
+  }
+
+  @Test(groups = "multi-release")
+  public void eventsAreRecorded() throws Exception {
+    Path file = Files.createTempFile("mpf-", ".jfr");
+    try {
+      try (Recording recording = new Recording()) {
+        for (String name : EVENT_NAMES) {
+          recording.enable(name).withoutThreshold();
+        }
+        recording.start();
+        parseAndCreate();
+        recording.stop();
+        recording.dump(file);
+      }
+
+      Map<String, List<RecordedEvent>> byName = new HashMap<String, List<RecordedEvent>>();
+      for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+        byName
+            .computeIfAbsent(event.getEventType().getName(), k -> new ArrayList<RecordedEvent>())
+            .add(event);
+      }
+      for (String name : EVENT_NAMES) {
+        Assert.assertTrue(byName.containsKey(name), "recorded " + name);
+      }
+
+      // one scan per part, plus the one that finds the final delimiter
+      Assert.assertEquals(byName.get("com.google.apigee.BoundaryScan").size(), 4);
+      List<RecordedEvent> headers = byName.get("com.google.apigee.PartHeaders");
+      Assert.assertEquals(headers.size(), 3);
+      Assert.assertNotNull(headers.get(0).getString("partName"), "part name");
+
+      List<RecordedEvent> parts = byName.get("com.google.apigee.PartMaterialization");
+      Assert.assertEquals(parts.size(), 3);
+      for (RecordedEvent part : parts) {
+        Assert.assertNotNull(part.getString("partName"), "part name");
+        Assert.assertTrue(part.getLong("size") >= 100, "size");
+        Assert.assertEquals(part.getString("engine"), "heap");
+      }
+
+      RecordedEvent descriptor = byName.get("com.google.apigee.DescriptorCompilation").get(0);
+      Assert.assertEquals(descriptor.getString("engine"), "javax.json");
+      Assert.assertTrue(descriptor.getLong("size") > 0, "descriptor size");
+
+      RecordedEvent assembly = byName.get("com.google.apigee.PayloadAssembly").get(0);
+      Assert.assertEquals(assembly.getString("engine"), "streamed");
+      Assert.assertTrue(assembly.getLong("size") > "Hello, World".length(), "form size");
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+}
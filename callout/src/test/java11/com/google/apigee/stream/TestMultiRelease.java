@@ -0,0 +1,50 @@
+// Copyright © 2025 Google LLC.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+// ------------------------------------------------------------------
+
+package com.google.apigee.stream;
+
+import java.net.URL;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that the jar is used as a multi-release jar: on this runtime, the classes come from
+ * META-INF/versions. These run against the packaged jar, after the unit tests have checked the
+ * Java 8 classes.
+ */
+public class TestMultiRelease {
+
+  private static String origin(Class<?> c) {
+    URL url = c.getResource(c.getSimpleName() + ".class");
+    Assert.assertNotNull(url, c.getName());
+    return url.toString();
+  }
+
+  @Test(groups = "multi-release")
+  public void versionedClassesAreLoaded() {
+    Assert.assertTrue(origin(Bytes.class).contains("META-INF/versions/11/"), origin(Bytes.class));
+    Assert.assertTrue(
+        origin(Checksums.class).contains("META-INF/versions/11/"), origin(Checksums.class));
+    Assert.assertTrue(
+        Checksums.newCrc32c() instanceof java.util.zip.CRC32C, "intrinsic CRC32C");
+    if (Runtime.version().feature() >= 17) {
+      Assert.assertTrue(
+          origin(Buffers.class).contains("META-INF/versions/17/"), origin(Buffers.class));
+    }
+    Assert.assertFalse(
+        origin(StreamSearcher.class).contains("META-INF/versions/"), "base class");
+  }
+}